@@ -0,0 +1,139 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.mockbukkit.mockbukkit.world.WorldMock;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Synthetic in-memory worlds shared by the benchmarks. Every world is solid stone with at most
+ * one block of {@link #ORE} placed relative to the search origin. Worlds come either as MockBukkit
+ * worlds or as an {@link ArrayBlockSource}, which needs no mock server at all.
+ */
+final class BenchmarkWorlds {
+
+    static final Material ORE = Material.DIAMOND_ORE;
+
+    /**
+     * Where the ore sits relative to the origin.
+     */
+    enum Scenario {
+        /**
+         * Ore right next to the origin: the cheapest possible hit.
+         */
+        ADJACENT,
+
+        /**
+         * Ore on the outermost shell of the default radius: the most expensive hit.
+         */
+        DISTANCE_19,
+
+        /**
+         * No ore at all: every search exhausts the full search cube.
+         */
+        NO_ORE,
+
+        /**
+         * Origin on the top build limit with ore below, so half the search cube is out of the world.
+         */
+        WORLD_TOP,
+
+        /**
+         * Origin on the bottom build limit with ore above.
+         */
+        WORLD_BOTTOM
+    }
+
+    /**
+     * Lowest and highest block Y coordinates of the in-memory worlds, as in the overworld.
+     */
+    private static final int MIN_HEIGHT = -64, MAX_HEIGHT = 320;
+
+    private BenchmarkWorlds() {
+    }
+
+    /**
+     * Creates a stone world with the chunks around spawn loaded, since searches never load
+     * chunks. MockBukkit must be mocked first.
+     */
+    static WorldMock create() {
+        WorldMock world = new WorldMock(Material.STONE, 100, 50);
+        for (int cx = -4; cx <= 4; cx++) {
+            for (int cz = -4; cz <= 4; cz++) {
+                world.loadChunk(cx, cz);
+            }
+        }
+        return world;
+    }
+
+    /**
+     * Places the ore for a scenario and returns the search origin.
+     */
+    static Location prepare(World world, Scenario scenario) {
+        Location spawn = world.getSpawnLocation();
+        int x = spawn.getBlockX(), z = spawn.getBlockZ();
+        return switch (scenario) {
+            case ADJACENT -> place(world, x, spawn.getBlockY(), z, 1, 0, 0);
+            case DISTANCE_19 -> place(world, x, spawn.getBlockY(), z, 19, -7, 12);
+            case NO_ORE -> new Location(world, x, spawn.getBlockY(), z);
+            case WORLD_TOP -> place(world, x, world.getMaxHeight() - 1, z, 3, -10, 0);
+            case WORLD_BOTTOM -> place(world, x, world.getMinHeight(), z, -3, 10, 0);
+        };
+    }
+
+    private static Location place(World world, int x, int y, int z, int dx, int dy, int dz) {
+        world.getBlockAt(x + dx, y + dy, z + dz).setType(ORE);
+        return new Location(world, x, y, z);
+    }
+
+    /**
+     * Creates an in-memory stone world reaching at least {@link OreLocator#SEARCH_RADIUS} blocks
+     * around the block origin.
+     */
+    static ArrayBlockSource createArray() {
+        return new ArrayBlockSource(-2, -2, 1, 1, MIN_HEIGHT, MAX_HEIGHT, Material.STONE);
+    }
+
+    /**
+     * Places the ore for a scenario in an in-memory world and returns the search origin.
+     */
+    static int[] prepare(ArrayBlockSource source, Scenario scenario) {
+        return switch (scenario) {
+            case ADJACENT -> place(source, 0, 50, 0, 1, 0, 0);
+            case DISTANCE_19 -> place(source, 0, 50, 0, 19, -7, 12);
+            case NO_ORE -> new int[]{0, 50, 0};
+            case WORLD_TOP -> place(source, 0, MAX_HEIGHT - 1, 0, 3, -10, 0);
+            case WORLD_BOTTOM -> place(source, 0, MIN_HEIGHT, 0, -3, 10, 0);
+        };
+    }
+
+    private static int[] place(ArrayBlockSource source, int x, int y, int z, int dx, int dy, int dz) {
+        source.setType(x + dx, y + dy, z + dz, ORE);
+        return new int[]{x, y, z};
+    }
+
+    /**
+     * Returns a plugin configuration mapping a diamond to {@link #ORE}, using the given search engine.
+     */
+    static YamlConfiguration config(SearchEngine engine) {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("text.oneblock_hot", "One block away!");
+        config.set("text.very_hot", "Very hot!");
+        config.set("text.hot", "Hot!");
+        config.set("text.warm", "Warm!");
+        config.set("text.lukewarm", "Lukewarm.");
+        config.set("text.cold", "Cold.");
+        config.set("text.very_cold", "Ice cold!");
+        config.set("text.inconclusive", "Too much rock to tell.");
+        config.set("chance.steal_block", 48);
+        config.set("functions.block_stealing", false);
+        config.set("search.engine", engine.name().toLowerCase(Locale.ROOT));
+        config.set("indicate.inhand", List.of("diamond", "emerald", "ancient_debris"));
+        config.set("indicate.lookfor", List.of("diamond_ore", "emerald_ore", "ancient_debris"));
+        return config;
+    }
+}
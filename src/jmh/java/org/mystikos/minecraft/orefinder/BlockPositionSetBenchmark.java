@@ -0,0 +1,111 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link BlockPositionSet} with a {@code HashSet<Long>} of packed positions. With
+ * {@code -prof gc}, {@code gc.alloc.rate.norm} of {@link #build()} approximates the memory each
+ * takes for {@link #positions} ore blocks spread over 32x32 chunks. {@link #nearest()} finds the
+ * nearest ore within the default radius; the boxed set probes shells around the origin, as a
+ * position set without spatial structure has to.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlockPositionSetBenchmark {
+
+    public enum Implementation {
+        PACKED,
+        BOXED
+    }
+
+    @Param
+    public Implementation implementation;
+
+    @Param({"10000", "100000"})
+    public int positions;
+
+    private int[] xs, ys, zs;
+    private BlockPositionSet packed;
+    private Set<Long> boxed;
+    private final Random queries = new Random(1);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(0);
+        xs = new int[positions];
+        ys = new int[positions];
+        zs = new int[positions];
+        for (int i = 0; i < positions; i++) {
+            xs[i] = random.nextInt(512);
+            ys[i] = random.nextInt(128) - 64;
+            zs[i] = random.nextInt(512);
+        }
+        packed = buildPacked();
+        boxed = buildBoxed();
+    }
+
+    @Benchmark
+    public Object build() {
+        return implementation == Implementation.PACKED ? buildPacked() : buildBoxed();
+    }
+
+    @Benchmark
+    public int nearest() {
+        int x = queries.nextInt(512), y = queries.nextInt(128) - 64, z = queries.nextInt(512);
+        int radius = OreLocator.SEARCH_RADIUS - 1;
+        if (implementation == Implementation.PACKED) {
+            return packed.nearest(x, y, z, radius);
+        }
+        for (int d = 0; d <= radius; d++) {
+            for (int dx = -d; dx <= d; dx++) {
+                for (int dy = -d; dy <= d; dy++) {
+                    for (int dz = -d; dz <= d; dz++) {
+                        if (Math.max(Math.abs(dx), Math.max(Math.abs(dy), Math.abs(dz))) != d) continue;
+                        if (boxed.contains(pack(x + dx, y + dy, z + dz))) return d;
+                    }
+                }
+            }
+        }
+        return OreLocator.NOT_FOUND;
+    }
+
+    private BlockPositionSet buildPacked() {
+        BlockPositionSet set = new BlockPositionSet();
+        for (int i = 0; i < positions; i++) {
+            set.add(xs[i], ys[i], zs[i]);
+        }
+        return set;
+    }
+
+    private Set<Long> buildBoxed() {
+        Set<Long> set = new HashSet<>();
+        for (int i = 0; i < positions; i++) {
+            set.add(pack(xs[i], ys[i], zs[i]));
+        }
+        return set;
+    }
+
+    private static long pack(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+}
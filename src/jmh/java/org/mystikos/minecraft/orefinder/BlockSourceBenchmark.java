@@ -0,0 +1,53 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.Material;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a single-ore search over an {@link ArrayBlockSource} across the {@link BenchmarkWorlds}
+ * scenarios. No mock server is started, so the numbers show the cost of the search itself,
+ * without any world lookups; compare them with {@link OreLocatorBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlockSourceBenchmark {
+
+    @Param
+    public BenchmarkWorlds.Scenario scenario;
+
+    private final OreLocator locator = new OreLocator();
+    private final Material[] targets = {BenchmarkWorlds.ORE};
+    private ArrayBlockSource source;
+    private int x, y, z;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        source = BenchmarkWorlds.createArray();
+        int[] origin = BenchmarkWorlds.prepare(source, scenario);
+        x = origin[0];
+        y = origin[1];
+        z = origin[2];
+    }
+
+    @Benchmark
+    public int getBlockTypeDistance() {
+        return locator.getBlockTypeDistances(source, x, y, z, targets, SearchProfile.DEFAULT)[0];
+    }
+}
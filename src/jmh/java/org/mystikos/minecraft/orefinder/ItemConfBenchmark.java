@@ -0,0 +1,66 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.Material;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the held-item lookups done on every click, for configured and unconfigured items.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ItemConfBenchmark {
+
+    private ItemConf ic;
+    private Material configured = Material.EMERALD;
+    private Material unconfigured = Material.STICK;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MockBukkit.mock();
+        ic = new ItemConf(new TestContext(BenchmarkWorlds.config(SearchEngine.SNAPSHOT), "ItemConfBenchmark"));
+        ic.init();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    @Benchmark
+    public Material getOreConfigured() {
+        return ic.getOre(configured);
+    }
+
+    @Benchmark
+    public Material getOreUnconfigured() {
+        return ic.getOre(unconfigured);
+    }
+
+    @Benchmark
+    public Material[] getTargetsConfigured() {
+        return ic.getTargets(configured);
+    }
+
+    @Benchmark
+    public SearchProfile getProfileConfigured() {
+        return ic.getProfile(configured);
+    }
+}
@@ -0,0 +1,84 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.world.WorldMock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a single-ore search with each {@link SearchEngine} across the {@link BenchmarkWorlds}
+ * scenarios. The snapshot and index engines include capturing the chunks, as a click would.
+ * The index is warm after the first invocation, so its numbers show the cached steady state;
+ * the distance field is built for the origin's column during setup, so its numbers are lookups.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OreLocatorBenchmark {
+
+    @Param
+    public BenchmarkWorlds.Scenario scenario;
+
+    @Param
+    public SearchEngine engine;
+
+    private final OreLocator locator = new OreLocator();
+    private final OreIndex index = new OreIndex();
+    private final DistanceField field = new DistanceField();
+    private final Material[] targets = {BenchmarkWorlds.ORE};
+    private Location origin;
+    private int x, y, z;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MockBukkit.mock();
+        WorldMock world = BenchmarkWorlds.create();
+        origin = BenchmarkWorlds.prepare(world, scenario);
+        x = origin.getBlockX();
+        y = origin.getBlockY();
+        z = origin.getBlockZ();
+        index.reset(Set.of(BenchmarkWorlds.ORE), 4096);
+        field.reset(Set.of(BenchmarkWorlds.ORE), SearchProfile.DEFAULT.reach(), 64L << 20);
+        int radius = field.chunkRadius();
+        int chunkX = x >> 4, chunkZ = z >> 4;
+        field.build(SnapshotRegion.capture(world, chunkX - radius, chunkZ - radius, chunkX + radius, chunkZ + radius),
+                chunkX, chunkZ, SectionFilter.NONE, field.stamp());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    @Benchmark
+    public int getBlockTypeDistance() {
+        Material target = BenchmarkWorlds.ORE;
+        return switch (engine) {
+            case WORLD -> locator.getBlockTypeDistance(origin, target);
+            case SNAPSHOT -> locator.getBlockTypeDistance(
+                    SnapshotRegion.capture(origin.getWorld(), x, z, OreLocator.SEARCH_RADIUS - 1), x, y, z, target);
+            case INDEX -> locator.getBlockTypeDistance(index, new WorldChunkSource(origin.getWorld()), index.stamp(),
+                    x, y, z, target);
+            case FIELD -> field.distances(origin.getWorld().getUID(), x, y, z, targets, SearchProfile.DEFAULT)[0];
+        };
+    }
+}
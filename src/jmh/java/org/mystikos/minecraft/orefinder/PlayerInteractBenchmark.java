@@ -0,0 +1,86 @@
+package org.mystikos.minecraft.orefinder;
+
+import net.kyori.adventure.text.Component;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.inventory.ItemStack;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.ServerMock;
+import org.mockbukkit.mockbukkit.entity.PlayerMock;
+import org.mockbukkit.mockbukkit.world.WorldMock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the whole click path through {@link PlayerInteractionListener#onPlayerInteract}:
+ * permission and item checks, the cooldown, the search and the chat message. The cooldown is
+ * cleared before every click with the same quit event a disconnect would fire.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlayerInteractBenchmark {
+
+    @Param
+    public BenchmarkWorlds.Scenario scenario;
+
+    @Param({"WORLD", "SNAPSHOT"})
+    public SearchEngine engine;
+
+    private PlayerMock player;
+    private PlayerInteractionListener listener;
+    private PlayerInteractEvent click;
+    private PlayerQuitEvent quit;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ServerMock server = MockBukkit.mock();
+        listener = new PlayerInteractionListener(new TestContext(BenchmarkWorlds.config(engine), "PlayerInteractBenchmark"));
+        listener.init();
+        WorldMock world = BenchmarkWorlds.create();
+        Location origin = BenchmarkWorlds.prepare(world, scenario);
+        player = server.addPlayer();
+        player.setOp(true);
+        ItemStack diamond = new ItemStack(Material.DIAMOND);
+        player.getInventory().setItemInMainHand(diamond);
+        click = new PlayerInteractEvent(player, Action.LEFT_CLICK_BLOCK, diamond, world.getBlockAt(origin), null);
+        quit = new PlayerQuitEvent(player, Component.empty(), PlayerQuitEvent.QuitReason.DISCONNECTED);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        listener.shutdown();
+        MockBukkit.unmock();
+    }
+
+    @Benchmark
+    public void onPlayerInteract(Blackhole blackhole) {
+        listener.onPlayerQuitEvent(quit);
+        listener.onPlayerInteract(click);
+        // Drain the chat queue so it does not grow for the whole run
+        String message;
+        while ((message = player.nextMessage()) != null) {
+            blackhole.consume(message);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.Material;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * A {@link BlockSource} holding a box of whole chunks in memory, with no server behind it.
+ * <p>
+ * Each block takes a single byte, an index into a palette of at most 256 block types, so a box
+ * the size of a default search takes well under a megabyte. This lets searches be tested and
+ * benchmarked without starting a mock server. Blocks are set up through
+ * {@link #setType(int, int, int, Material)} and may be read from any thread once set up.
+ * </p>
+ */
+final class ArrayBlockSource implements BlockSource {
+
+    private final UUID worldId;
+    private final int minChunkX;
+    private final int minChunkZ;
+    private final int chunksX;
+    private final int chunksZ;
+    private final int minHeight;
+    private final int maxHeight;
+    /**
+     * Number of blocks in one horizontal layer of the box.
+     */
+    private final int layerSize;
+    private final byte[] blocks;
+    private Material[] palette;
+
+    /**
+     * Creates a box of chunks filled with a single block type.
+     *
+     * @param minChunkX Lowest chunk X coordinate.
+     * @param minChunkZ Lowest chunk Z coordinate.
+     * @param maxChunkX Highest chunk X coordinate (inclusive).
+     * @param maxChunkZ Highest chunk Z coordinate (inclusive).
+     * @param minHeight Lowest block Y coordinate (inclusive).
+     * @param maxHeight Highest block Y coordinate (exclusive).
+     * @param fill      The type of every block to start with.
+     */
+    ArrayBlockSource(int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ, int minHeight, int maxHeight,
+                     Material fill) {
+        if (maxChunkX < minChunkX || maxChunkZ < minChunkZ || maxHeight <= minHeight) {
+            throw new IllegalArgumentException("Block source bounds are empty");
+        }
+        this.worldId = UUID.randomUUID();
+        this.minChunkX = minChunkX;
+        this.minChunkZ = minChunkZ;
+        this.chunksX = maxChunkX - minChunkX + 1;
+        this.chunksZ = maxChunkZ - minChunkZ + 1;
+        this.minHeight = minHeight;
+        this.maxHeight = maxHeight;
+        this.layerSize = Math.multiplyExact(chunksX * chunksZ, 256);
+        this.blocks = new byte[Math.multiplyExact(layerSize, maxHeight - minHeight)];
+        this.palette = new Material[]{fill};
+    }
+
+    @Override
+    public UUID getWorldId() {
+        return worldId;
+    }
+
+    @Override
+    public int getMinHeight() {
+        return minHeight;
+    }
+
+    @Override
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    /**
+     * Sets the type of the block at the given coordinates.
+     *
+     * @throws IllegalArgumentException if the position lies outside the box, or the box would
+     *                                  hold more than 256 block types
+     */
+    void setType(int x, int y, int z, Material type) {
+        int index = index(x, y, z);
+        if (index < 0) {
+            throw new IllegalArgumentException("Block " + x + ", " + y + ", " + z + " lies outside the block source");
+        }
+        int entry = Arrays.asList(palette).indexOf(type);
+        if (entry < 0) {
+            if (palette.length == 256) {
+                throw new IllegalArgumentException("A block source holds at most 256 block types");
+            }
+            entry = palette.length;
+            palette = Arrays.copyOf(palette, entry + 1);
+            palette[entry] = type;
+        }
+        blocks[index] = (byte) entry;
+    }
+
+    @Override
+    public Material getType(int x, int y, int z) {
+        int index = index(x, y, z);
+        return index < 0 ? null : palette[blocks[index] & 0xFF];
+    }
+
+    @Override
+    public boolean readSection(int chunkX, int sectionY, int chunkZ, Material[] types) {
+        int cx = chunkX - minChunkX, cz = chunkZ - minChunkZ;
+        if (cx < 0 || cx >= chunksX || cz < 0 || cz >= chunksZ) return false;
+        int column = (cx * chunksZ + cz) * 256;
+        int baseY = sectionY << 4;
+        for (int ly = 0; ly < 16; ly++) {
+            int y = baseY + ly;
+            if (y < minHeight || y >= maxHeight) {
+                Arrays.fill(types, ly << 8, (ly + 1) << 8, null);
+                continue;
+            }
+            int layer = (y - minHeight) * layerSize + column;
+            for (int i = 0; i < 256; i++) {
+                types[ly << 8 | i] = palette[blocks[layer + i] & 0xFF];
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the index of a block in {@link #blocks}, or -1 if it lies outside the box. Blocks
+     * are stored layer by layer, each layer chunk by chunk and each chunk layer in
+     * {@code z << 4 | x} order, so a section row is contiguous.
+     */
+    private int index(int x, int y, int z) {
+        int cx = (x >> 4) - minChunkX, cz = (z >> 4) - minChunkZ;
+        if (cx < 0 || cx >= chunksX || cz < 0 || cz >= chunksZ || y < minHeight || y >= maxHeight) return -1;
+        return (y - minHeight) * layerSize + (cx * chunksZ + cz) * 256 + ((z & 15) << 4 | (x & 15));
+    }
+}
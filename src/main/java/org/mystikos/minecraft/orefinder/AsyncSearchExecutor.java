@@ -0,0 +1,194 @@
+package org.mystikos.minecraft.orefinder;
+
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * Runs ore searches off the main server thread so they do not stall the server tick.
+ * <p>
+ * Searches run either on a small pool of platform threads or, with zero threads configured, each
+ * on a virtual thread of its own. Virtual threads suit searches that wait on the persisted ore
+ * index: its reads block under plain monitors, which no longer pin a virtual thread to its carrier
+ * since Java 24.
+ * </p>
+ * <p>
+ * Work is bounded twice: only a limited number of searches may be waiting or running at once,
+ * and each player may only have a limited number of them in flight. Requests beyond either
+ * limit are rejected rather than queued. Results are handed back to the main server thread
+ * through {@link OrefinderContext#runOnMainThread(Runnable)}.
+ * </p>
+ * <p>
+ * A player's searches are {@linkplain #cancel(UUID) cancelled} together, for example when the
+ * player quits: searches that have not started are skipped, running ones are told through the
+ * {@link BooleanSupplier} they are given, and no result is delivered for any of them.
+ * </p>
+ */
+final class AsyncSearchExecutor {
+
+    private final OrefinderContext plugin;
+    private final ExecutorService pool;
+    private final int capacity;
+    private final int perPlayerLimit;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final ConcurrentHashMap<UUID, Integer> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<UUID, AtomicBoolean> cancellations = new ConcurrentHashMap<>();
+
+    /**
+     * @param plugin         The plugin context used to return results to the main thread.
+     * @param threads        Number of worker threads, or 0 to run every search on a virtual
+     *                       thread of its own.
+     * @param queueCapacity  Maximum number of searches waiting for a worker. With virtual threads,
+     *                       which never wait for one, the maximum number of searches in flight.
+     * @param perPlayerLimit Maximum number of searches a single player may have in flight.
+     */
+    AsyncSearchExecutor(OrefinderContext plugin, int threads, int queueCapacity, int perPlayerLimit) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("Async search threads cannot be negative");
+        }
+        if (queueCapacity < 1 || perPlayerLimit < 1) {
+            throw new IllegalArgumentException("Async search queue size and per-player limit must be positive");
+        }
+        this.plugin = plugin;
+        this.perPlayerLimit = perPlayerLimit;
+        if (threads == 0) {
+            this.capacity = queueCapacity;
+            this.pool = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("OreFinder Search #", 1).factory());
+        } else {
+            this.capacity = threads + queueCapacity;
+            this.pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), new WorkerThreadFactory(),
+                    new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+
+    /**
+     * Queues a search that cannot be cancelled once it runs. See
+     * {@link #submit(UUID, Function, Consumer)}.
+     */
+    <T> boolean submit(UUID playerId, Supplier<T> search, Consumer<T> callback) {
+        return submit(playerId, cancelled -> search.get(), callback);
+    }
+
+    /**
+     * Queues a search for the given player.
+     *
+     * @param playerId The player the search is run for.
+     * @param search   The search to run off the main thread; must only touch thread-safe data. It
+     *                 is given a supplier telling whether the search has been cancelled, and
+     *                 may stop early once it has.
+     * @param callback Receives the search result on the main server thread, unless the search
+     *                 was cancelled.
+     * @param <T>      The type of the search result.
+     * @return true if the search was accepted, false if the player already has too many
+     * searches in flight or too many searches are waiting.
+     */
+    <T> boolean submit(UUID playerId, Function<BooleanSupplier, T> search, Consumer<T> callback) {
+        if (inFlight.merge(playerId, 1, Integer::sum) > perPlayerLimit) {
+            releasePlayer(playerId);
+            return false;
+        }
+        if (pending.incrementAndGet() > capacity) {
+            release(playerId);
+            return false;
+        }
+        AtomicBoolean cancelled = cancellations.computeIfAbsent(playerId, id -> new AtomicBoolean());
+        try {
+            pool.execute(() -> {
+                T result;
+                try {
+                    if (cancelled.get()) return;
+                    result = search.apply(cancelled::get);
+                } catch (RuntimeException e) {
+                    plugin.getLogger().log(Level.WARNING, "Asynchronous ore search failed", e);
+                    return;
+                } finally {
+                    release(playerId);
+                }
+                if (cancelled.get()) return;
+                plugin.runOnMainThread(() -> {
+                    if (!cancelled.get()) callback.accept(result);
+                });
+            });
+        } catch (RejectedExecutionException e) {
+            release(playerId);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Cancels every search of the given player. Searches the player submits afterwards are not
+     * affected.
+     */
+    void cancel(UUID playerId) {
+        AtomicBoolean cancelled = cancellations.remove(playerId);
+        if (cancelled != null) {
+            cancelled.set(true);
+        }
+    }
+
+    /**
+     * Returns the number of searches the given player currently has queued or running.
+     */
+    int inFlight(UUID playerId) {
+        return inFlight.getOrDefault(playerId, 0);
+    }
+
+    /**
+     * Cancels every search, stops accepting work and waits up to the given time for running
+     * searches to notice, then interrupts any that are still running.
+     *
+     * @param timeoutMillis Maximum time to wait, in milliseconds.
+     */
+    void shutdown(long timeoutMillis) {
+        for (UUID playerId : cancellations.keySet()) {
+            cancel(playerId);
+        }
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                pool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void release(UUID playerId) {
+        pending.decrementAndGet();
+        releasePlayer(playerId);
+    }
+
+    private void releasePlayer(UUID playerId) {
+        inFlight.computeIfPresent(playerId, (id, count) -> count == 1 ? null : count - 1);
+    }
+
+    /**
+     * Creates named daemon threads so a stuck search can never keep the server from stopping.
+     */
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "OreFinder Search #" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
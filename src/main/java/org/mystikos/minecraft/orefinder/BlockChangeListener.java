@@ -0,0 +1,109 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Listens for events that change blocks or unload chunks and forwards them to the registered
+ * {@link BlockChangeObserver}s. Handlers run at {@link EventPriority#MONITOR} and skip cancelled
+ * events, so observers only hear about changes that actually happen. Every change is reported
+ * with the block's previous and new type: broken and exploded blocks are replaced by air, and
+ * blocks moved by a piston replace whatever was at their destination. The water a waterlogged
+ * block or melting ice leaves behind is not reported, which only observers looking for water
+ * would notice.
+ */
+class BlockChangeListener implements Listener {
+
+    private final List<BlockChangeObserver> observers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Registers an observer to be notified of block changes.
+     */
+    void addObserver(BlockChangeObserver observer) {
+        observers.add(observer);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        Block broken = event.getBlock();
+        notifyReplaced(broken, broken.getType(), Material.AIR);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent event) {
+        Block placed = event.getBlockPlaced();
+        notifyReplaced(placed, event.getBlockReplacedState().getType(), placed.getType());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent event) {
+        notifyReplaced(event.blockList(), Material.AIR);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent event) {
+        notifyReplaced(event.blockList(), Material.AIR);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPistonExtend(BlockPistonExtendEvent event) {
+        notifyMoved(event.getBlocks(), event.getDirection());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPistonRetract(BlockPistonRetractEvent event) {
+        notifyMoved(event.getBlocks(), event.getDirection());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        int chunkX = event.getChunk().getX();
+        int chunkZ = event.getChunk().getZ();
+        for (BlockChangeObserver observer : observers) {
+            observer.chunkUnloaded(event.getWorld(), chunkX, chunkZ);
+        }
+    }
+
+    private void notifyMoved(List<Block> blocks, BlockFace direction) {
+        // The blocks have not moved yet: every vacated position is left as air unless another
+        // moved block lands on it, and every destination takes the type of the block moved there
+        Map<Block, Material> moved = new LinkedHashMap<>();
+        for (Block block : blocks) {
+            moved.putIfAbsent(block, Material.AIR);
+        }
+        for (Block block : blocks) {
+            moved.put(block.getRelative(direction), block.getType());
+        }
+        for (Map.Entry<Block, Material> entry : moved.entrySet()) {
+            notifyReplaced(entry.getKey(), entry.getKey().getType(), entry.getValue());
+        }
+    }
+
+    private void notifyReplaced(List<Block> blocks, Material type) {
+        for (Block block : blocks) {
+            notifyReplaced(block, block.getType(), type);
+        }
+    }
+
+    private void notifyReplaced(Block block, Material previous, Material type) {
+        for (BlockChangeObserver observer : observers) {
+            observer.blockReplaced(block.getWorld(), block.getX(), block.getY(), block.getZ(), previous, type);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+
+/**
+ * Receives notifications from {@link BlockChangeListener} when blocks change or chunks unload,
+ * so that caches built from earlier world state can drop stale entries.
+ */
+interface BlockChangeObserver {
+
+    /**
+     * Called when the block at the given position has changed or is about to change.
+     */
+    void blockChanged(World world, int x, int y, int z);
+
+    /**
+     * Called when the block at the given position has been or is about to be replaced by a block
+     * of the given type. Observers that have no use for the type treat it as any other change.
+     */
+    default void blockReplaced(World world, int x, int y, int z, Material type) {
+        blockChanged(world, x, y, z);
+    }
+
+    /**
+     * Called when a block of type {@code previous} at the given position has been or is about to
+     * be replaced by a block of type {@code type}. Observers that have no use for the previous
+     * type treat it as a replacement by {@code type} alone.
+     */
+    default void blockReplaced(World world, int x, int y, int z, Material previous, Material type) {
+        blockReplaced(world, x, y, z, type);
+    }
+
+    /**
+     * Called when a chunk is unloaded.
+     */
+    void chunkUnloaded(World world, int chunkX, int chunkZ);
+}
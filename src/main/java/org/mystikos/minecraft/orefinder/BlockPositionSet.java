@@ -0,0 +1,377 @@
+package org.mystikos.minecraft.orefinder;
+
+import java.util.Arrays;
+
+/**
+ * A set of block positions, stored per 16x16x16 chunk section without boxing.
+ * <p>
+ * Sections are kept in a {@link LongObjectMap} under their packed coordinates. Within a section,
+ * each position is the short index {@code (y & 15) << 8 | (z & 15) << 4 | (x & 15)}, the same
+ * packing {@link OreIndex.Section} uses. A section holding few positions keeps them as a sorted
+ * {@code short[]}; one holding more than {@value SectionBits#SPARSE_LIMIT} switches to a
+ * 4096-bit bitset, which is smaller from that point on. A few ores per section thus cost a few
+ * bytes each, where a {@code HashSet<Long>} costs around fifty.
+ * </p>
+ * <p>
+ * {@link #nearest} visits the sections in range nearest first and stops as soon as the next
+ * section cannot hold anything closer. Not thread-safe.
+ * </p>
+ */
+final class BlockPositionSet {
+
+    /**
+     * Measures the distance between two blocks from their offset along each axis. Must not be
+     * smaller than the largest of the three offsets.
+     */
+    interface Metric {
+        int distance(int dx, int dy, int dz);
+    }
+
+    /**
+     * The largest offset along any axis.
+     */
+    static final Metric CHEBYSHEV = (dx, dy, dz) -> Math.max(Math.abs(dx), Math.max(Math.abs(dy), Math.abs(dz)));
+
+    private final LongObjectMap<SectionBits> sections = new LongObjectMap<>();
+    private int size;
+
+    /**
+     * Adds a position.
+     *
+     * @return true if it was not in the set yet
+     */
+    boolean add(int x, int y, int z) {
+        long key = sectionKey(x >> 4, y >> 4, z >> 4);
+        SectionBits bits = sections.get(key);
+        if (bits == null) {
+            bits = new SectionBits();
+            sections.put(key, bits);
+        }
+        if (!bits.add(index(x, y, z))) return false;
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes a position.
+     *
+     * @return true if it was in the set
+     */
+    boolean remove(int x, int y, int z) {
+        long key = sectionKey(x >> 4, y >> 4, z >> 4);
+        SectionBits bits = sections.get(key);
+        if (bits == null || !bits.remove(index(x, y, z))) return false;
+        if (bits.size() == 0) sections.remove(key);
+        size--;
+        return true;
+    }
+
+    boolean contains(int x, int y, int z) {
+        SectionBits bits = sections.get(sectionKey(x >> 4, y >> 4, z >> 4));
+        return bits != null && bits.contains(index(x, y, z));
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        sections.clear();
+        size = 0;
+    }
+
+    /**
+     * Removes every position outside the given box, bounds included.
+     */
+    void retainWithin(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        sections.removeIf((key, bits) -> {
+            int baseX = unpackSectionX(key) << 4, baseY = unpackSectionY(key) << 4, baseZ = unpackSectionZ(key) << 4;
+            if (baseX > maxX || baseX + 15 < minX || baseY > maxY || baseY + 15 < minY
+                    || baseZ > maxZ || baseZ + 15 < minZ) {
+                size -= bits.size();
+                return true;
+            }
+            if (baseX >= minX && baseX + 15 <= maxX && baseY >= minY && baseY + 15 <= maxY
+                    && baseZ >= minZ && baseZ + 15 <= maxZ) {
+                return false;
+            }
+            size -= bits.retainWithin(Math.max(minX - baseX, 0), Math.max(minY - baseY, 0), Math.max(minZ - baseZ, 0),
+                    Math.min(maxX - baseX, 15), Math.min(maxY - baseY, 15), Math.min(maxZ - baseZ, 15));
+            return bits.size() == 0;
+        });
+    }
+
+    /**
+     * Returns the Chebyshev distance from the given point to the nearest position at most
+     * {@code radius} away along every axis, or {@link OreLocator#NOT_FOUND} if there is none.
+     */
+    int nearest(int x, int y, int z, int radius) {
+        int best = nearest(x, y, z, radius + 1, CHEBYSHEV);
+        return best > radius ? OreLocator.NOT_FOUND : best;
+    }
+
+    /**
+     * Returns the distance from the given point to the nearest position closer than
+     * {@code limit}, or {@code limit} itself if there is none.
+     *
+     * @param metric How distances are measured, for example a {@link SearchProfile}'s.
+     */
+    int nearest(int x, int y, int z, int limit, Metric metric) {
+        if (size == 0 || limit <= 0) return limit;
+        int reach = limit - 1;
+        int minCX = (x - reach) >> 4, maxCX = (x + reach) >> 4;
+        int minSY = (y - reach) >> 4, maxSY = (y + reach) >> 4;
+        int minCZ = (z - reach) >> 4, maxCZ = (z + reach) >> 4;
+        long cells = (long) (maxCX - minCX + 1) * (maxSY - minSY + 1) * (maxCZ - minCZ + 1);
+
+        Candidates candidates = new Candidates(Math.min(cells, sections.size()));
+        if (cells <= sections.size()) {
+            for (int cx = minCX; cx <= maxCX; cx++) {
+                for (int sy = minSY; sy <= maxSY; sy++) {
+                    for (int cz = minCZ; cz <= maxCZ; cz++) {
+                        SectionBits bits = sections.get(sectionKey(cx, sy, cz));
+                        if (bits != null) candidates.offer(cx, sy, cz, bits, x, y, z, limit, metric);
+                    }
+                }
+            }
+        } else {
+            sections.forEach((key, bits) -> candidates.offer(unpackSectionX(key), unpackSectionY(key),
+                    unpackSectionZ(key), bits, x, y, z, limit, metric));
+        }
+        Arrays.sort(candidates.order, 0, candidates.count);
+
+        int best = limit;
+        for (int i = 0; i < candidates.count; i++) {
+            long entry = candidates.order[i];
+            if ((int) (entry >>> 32) >= best) break;
+            int c = (int) entry;
+            best = candidates.bits[c].nearest(candidates.baseX[c], candidates.baseY[c], candidates.baseZ[c],
+                    x, y, z, best, metric);
+        }
+        return best;
+    }
+
+    /**
+     * Returns the approximate number of bytes the set takes on a 64-bit JVM with compressed
+     * references.
+     */
+    long estimatedBytes() {
+        long[] bytes = {16L + sections.estimatedBytes()};
+        sections.forEach((key, bits) -> bytes[0] += bits.estimatedBytes());
+        return bytes[0];
+    }
+
+    private static int index(int x, int y, int z) {
+        return (y & 15) << 8 | (z & 15) << 4 | (x & 15);
+    }
+
+    /**
+     * Packs section coordinates: chunk X and Z in 22 bits each, section Y in the low 20 bits.
+     */
+    static long sectionKey(int chunkX, int sectionY, int chunkZ) {
+        return ((long) (chunkX & 0x3FFFFF) << 42) | ((long) (chunkZ & 0x3FFFFF) << 20) | (sectionY & 0xFFFFF);
+    }
+
+    private static int unpackSectionX(long key) {
+        return (int) (key >> 42);
+    }
+
+    private static int unpackSectionZ(long key) {
+        return (int) (key << 22 >> 42);
+    }
+
+    private static int unpackSectionY(long key) {
+        return (int) (key << 44 >> 44);
+    }
+
+    /**
+     * The sections in range of a query, with their lower bounds packed above their position in
+     * the arrays so that sorting puts the nearest first.
+     */
+    private static final class Candidates {
+        final long[] order;
+        final SectionBits[] bits;
+        final int[] baseX, baseY, baseZ;
+        int count;
+
+        Candidates(long capacity) {
+            int n = (int) capacity;
+            order = new long[n];
+            bits = new SectionBits[n];
+            baseX = new int[n];
+            baseY = new int[n];
+            baseZ = new int[n];
+        }
+
+        void offer(int cx, int sy, int cz, SectionBits section, int x, int y, int z, int limit, Metric metric) {
+            int lowerBound = metric.distance(OreLocator.axisDistance(x, cx << 4), OreLocator.axisDistance(y, sy << 4),
+                    OreLocator.axisDistance(z, cz << 4));
+            if (lowerBound >= limit) return;
+            order[count] = (long) lowerBound << 32 | count;
+            bits[count] = section;
+            baseX[count] = cx << 4;
+            baseY[count] = sy << 4;
+            baseZ[count] = cz << 4;
+            count++;
+        }
+    }
+
+    /**
+     * The positions within one section, as short indices: a sorted array while there are at most
+     * {@link #SPARSE_LIMIT} of them, and a 4096-bit bitset beyond that.
+     */
+    static final class SectionBits {
+
+        /**
+         * Most positions kept as an array; at this size the array takes as much as the bitset.
+         */
+        static final int SPARSE_LIMIT = 256;
+
+        private short[] sparse = new short[4];
+        private long[] dense;
+        private int count;
+
+        boolean add(int index) {
+            if (dense != null) {
+                long bit = 1L << index;
+                if ((dense[index >> 6] & bit) != 0) return false;
+                dense[index >> 6] |= bit;
+                count++;
+                return true;
+            }
+            int at = Arrays.binarySearch(sparse, 0, count, (short) index);
+            if (at >= 0) return false;
+            at = -at - 1;
+            if (count == SPARSE_LIMIT) {
+                toDense();
+                return add(index);
+            }
+            if (count == sparse.length) sparse = Arrays.copyOf(sparse, Math.min(count * 2, SPARSE_LIMIT));
+            System.arraycopy(sparse, at, sparse, at + 1, count - at);
+            sparse[at] = (short) index;
+            count++;
+            return true;
+        }
+
+        boolean remove(int index) {
+            if (dense != null) {
+                long bit = 1L << index;
+                if ((dense[index >> 6] & bit) == 0) return false;
+                dense[index >> 6] &= ~bit;
+                count--;
+                // Some slack, so a set hovering around the limit does not convert back and forth
+                if (count <= SPARSE_LIMIT / 2) toSparse();
+                return true;
+            }
+            int at = Arrays.binarySearch(sparse, 0, count, (short) index);
+            if (at < 0) return false;
+            System.arraycopy(sparse, at + 1, sparse, at, count - at - 1);
+            count--;
+            return true;
+        }
+
+        boolean contains(int index) {
+            if (dense != null) return (dense[index >> 6] & (1L << index)) != 0;
+            return Arrays.binarySearch(sparse, 0, count, (short) index) >= 0;
+        }
+
+        int size() {
+            return count;
+        }
+
+        /**
+         * Removes the positions outside the given local box, bounds included.
+         *
+         * @return the number of positions removed
+         */
+        int retainWithin(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+            int before = count;
+            if (dense != null) {
+                for (int word = 0; word < dense.length; word++) {
+                    long bits = dense[word];
+                    while (bits != 0) {
+                        int index = word << 6 | Long.numberOfTrailingZeros(bits);
+                        bits &= bits - 1;
+                        if (!inside(index, minX, minY, minZ, maxX, maxY, maxZ)) {
+                            dense[word] &= ~(1L << index);
+                            count--;
+                        }
+                    }
+                }
+                if (count <= SPARSE_LIMIT / 2) toSparse();
+            } else {
+                int kept = 0;
+                for (int i = 0; i < count; i++) {
+                    if (inside(sparse[i], minX, minY, minZ, maxX, maxY, maxZ)) sparse[kept++] = sparse[i];
+                }
+                count = kept;
+            }
+            return before - count;
+        }
+
+        /**
+         * Returns the distance from the given point to the nearest position closer than
+         * {@code best}, or {@code best} if there is none.
+         */
+        int nearest(int baseX, int baseY, int baseZ, int x, int y, int z, int best, Metric metric) {
+            if (dense != null) {
+                // Each word holds four rows of the same layer
+                for (int word = 0; word < dense.length; word++) {
+                    long bits = dense[word];
+                    if (bits == 0) continue;
+                    if (metric.distance(0, baseY + (word >> 2) - y, 0) >= best) continue;
+                    while (bits != 0) {
+                        int index = word << 6 | Long.numberOfTrailingZeros(bits);
+                        bits &= bits - 1;
+                        int d = metric.distance(baseX + (index & 15) - x, baseY + (index >> 8) - y,
+                                baseZ + ((index >> 4) & 15) - z);
+                        if (d < best) best = d;
+                    }
+                }
+            } else {
+                for (int i = 0; i < count; i++) {
+                    int index = sparse[i];
+                    int d = metric.distance(baseX + (index & 15) - x, baseY + (index >> 8) - y,
+                            baseZ + ((index >> 4) & 15) - z);
+                    if (d < best) best = d;
+                }
+            }
+            return best;
+        }
+
+        long estimatedBytes() {
+            return 24L + (dense != null ? 16L + 8L * dense.length : 16L + 2L * sparse.length);
+        }
+
+        private static boolean inside(int index, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+            int lx = index & 15, ly = index >> 8, lz = (index >> 4) & 15;
+            return lx >= minX && lx <= maxX && ly >= minY && ly <= maxY && lz >= minZ && lz <= maxZ;
+        }
+
+        private void toDense() {
+            dense = new long[64];
+            for (int i = 0; i < count; i++) {
+                dense[sparse[i] >> 6] |= 1L << sparse[i];
+            }
+            sparse = null;
+        }
+
+        private void toSparse() {
+            short[] packed = new short[Math.max(4, count)];
+            int n = 0;
+            for (int word = 0; word < dense.length; word++) {
+                long bits = dense[word];
+                while (bits != 0) {
+                    packed[n++] = (short) (word << 6 | Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+            sparse = packed;
+            dense = null;
+        }
+    }
+}
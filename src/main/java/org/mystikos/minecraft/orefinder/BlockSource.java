@@ -0,0 +1,66 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.Material;
+
+import java.util.UUID;
+
+/**
+ * Read-only access to the block types of a single world by block coordinates, so that
+ * {@link OreLocator} can search a live world, captured chunks or a plain in-memory world alike.
+ * <p>
+ * Positions a source does not hold, such as those outside the world's height, in unloaded
+ * chunks or outside a captured area, read as {@code null} and never match a search target.
+ * </p>
+ */
+interface BlockSource {
+
+    /**
+     * Number of blocks in a chunk section, the unit of {@link #readSection}.
+     */
+    int SECTION_VOLUME = 16 * 16 * 16;
+
+    /**
+     * @return the unique ID of the world the blocks belong to
+     */
+    UUID getWorldId();
+
+    /**
+     * @return the lowest block Y coordinate of the world (inclusive)
+     */
+    int getMinHeight();
+
+    /**
+     * @return the highest block Y coordinate of the world (exclusive)
+     */
+    int getMaxHeight();
+
+    /**
+     * Returns the type of the block at the given coordinates.
+     *
+     * @return the block type, or {@code null} if this source does not hold the position
+     */
+    Material getType(int x, int y, int z);
+
+    /**
+     * Copies the block types of a whole chunk section at once. Entry
+     * {@code (y & 15) << 8 | (z & 15) << 4 | (x & 15)} of {@code types} receives the type of the
+     * block at {@code (x, y, z)}, or {@code null} if that block lies outside the world's height.
+     *
+     * @param chunkX   Chunk X coordinate.
+     * @param sectionY Section Y coordinate (block Y >> 4).
+     * @param chunkZ   Chunk Z coordinate.
+     * @param types    Receives the block types; at least {@link #SECTION_VOLUME} long.
+     * @return false, leaving {@code types} untouched, if this source does not hold the section
+     */
+    boolean readSection(int chunkX, int sectionY, int chunkZ, Material[] types);
+
+    /**
+     * Like {@link #readSection(int, int, int, Material[])}, but only needs to copy the blocks
+     * inside a box of section-local coordinates, bounds included; other entries of {@code types}
+     * are left undefined. The box must lie within the world's height.
+     */
+    default boolean readSection(int chunkX, int sectionY, int chunkZ, int minX, int minY, int minZ,
+                                int maxX, int maxY, int maxZ, Material[] types) {
+        return readSection(chunkX, sectionY, chunkZ, types);
+    }
+}
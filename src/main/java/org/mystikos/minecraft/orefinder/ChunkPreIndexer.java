@@ -0,0 +1,250 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records the ores of newly loaded chunks in the {@link OreIndex} before any player searches
+ * there.
+ * <p>
+ * Loaded chunks are queued, and on every tick a few of them are captured as snapshots and
+ * handed to a single low-priority worker thread that indexes them. The number of chunks captured
+ * is limited to a rate per second, and capturing stops altogether while the server runs below
+ * the configured ticks per second, measured over the last {@value #TPS_WINDOW} ticks. Chunks
+ * that unload before their turn are skipped.
+ * </p>
+ * <p>
+ * Every section indexed ahead of time evicts the least recently used one once the index is full,
+ * and that may be a section searches still need. Capturing therefore also stops while the index
+ * is more than {@value #MAX_INDEX_SHARE_PERCENT}% full, leaving the rest of it to searches.
+ * </p>
+ * <p>
+ * {@link #chunkLoaded} and {@link #tick()} must be called on the main server thread.
+ * </p>
+ */
+final class ChunkPreIndexer {
+
+    /**
+     * Number of tick intervals the ticks-per-second estimate is averaged over.
+     */
+    static final int TPS_WINDOW = 40;
+
+    /**
+     * Chunks waiting to be captured before newly loaded ones are dropped.
+     */
+    static final int MAX_QUEUED = 4096;
+
+    /**
+     * Captured chunks waiting for the worker before capturing pauses, bounding the snapshots held
+     * in memory.
+     */
+    private static final int MAX_PENDING = 8;
+
+    /**
+     * Share of the index's capacity, in percent, beyond which no more chunks are captured.
+     */
+    static final int MAX_INDEX_SHARE_PERCENT = 75;
+
+    private static final long NANOS_PER_TICK = 50_000_000L;
+
+    private final OreIndex index;
+    private final double chunksPerSecond;
+    private final double minTps;
+    private final LongSupplier nanoClock;
+    private final Logger logger;
+    private final ThreadPoolExecutor worker;
+    private final LinkedHashSet<ChunkKey> queue = new LinkedHashSet<>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final long[] intervals = new long[TPS_WINDOW];
+    private int intervalCount;
+    private long intervalSum;
+    private long lastTick = Long.MIN_VALUE;
+    private double allowance;
+    private volatile boolean paused;
+    private volatile boolean indexFull;
+
+    private final AtomicLong indexed = new AtomicLong();
+    private long dropped;
+
+    /**
+     * @param index           The index to fill.
+     * @param chunksPerSecond Maximum number of chunks captured per second.
+     * @param minTps          Ticks per second below which capturing pauses; 0 never pauses.
+     * @param logger          Receives errors from the worker thread.
+     */
+    ChunkPreIndexer(OreIndex index, double chunksPerSecond, double minTps, Logger logger) {
+        this(index, chunksPerSecond, minTps, logger, System::nanoTime);
+    }
+
+    /**
+     * @param nanoClock Supplies the time in nanoseconds, for measuring tick lengths.
+     */
+    ChunkPreIndexer(OreIndex index, double chunksPerSecond, double minTps, Logger logger, LongSupplier nanoClock) {
+        if (!(chunksPerSecond > 0)) {
+            throw new IllegalArgumentException("Pre-indexing rate must be positive");
+        }
+        if (!(minTps >= 0 && minTps <= 20)) {
+            throw new IllegalArgumentException("Pre-indexing minimum TPS must be between 0 and 20");
+        }
+        this.index = index;
+        this.chunksPerSecond = chunksPerSecond;
+        this.minTps = minTps;
+        this.logger = logger;
+        this.nanoClock = nanoClock;
+        // No core threads: the worker only exists while there is something to index
+        this.worker = new ThreadPoolExecutor(0, 1, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), task -> {
+            Thread thread = new Thread(task, "OreFinder Pre-indexer");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues a newly loaded chunk for indexing. Chunks beyond {@value #MAX_QUEUED} waiting ones
+     * are dropped.
+     */
+    void chunkLoaded(World world, int chunkX, int chunkZ) {
+        if (queue.size() >= MAX_QUEUED) {
+            dropped++;
+            return;
+        }
+        queue.add(new ChunkKey(world.getUID(), chunkX, chunkZ));
+    }
+
+    /**
+     * Updates the ticks-per-second estimate and, unless the server is too slow, captures as many
+     * queued chunks as the rate and the index's capacity allow and hands them to the worker.
+     */
+    void tick() {
+        long now = nanoClock.getAsLong();
+        long elapsed = lastTick == Long.MIN_VALUE ? NANOS_PER_TICK : now - lastTick;
+        lastTick = now;
+        int slot = intervalCount % TPS_WINDOW;
+        if (intervalCount >= TPS_WINDOW) intervalSum -= intervals[slot];
+        intervals[slot] = elapsed;
+        intervalSum += elapsed;
+        intervalCount++;
+
+        paused = getTps() < minTps;
+        // A capture is never split, so at least one whole chunk can always be saved up
+        allowance = Math.min(allowance + chunksPerSecond * elapsed / 1e9, Math.max(1.0, chunksPerSecond / 20.0));
+        if (paused) return;
+
+        indexFull = false;
+        Iterator<ChunkKey> it = queue.iterator();
+        while (allowance >= 1.0 && pending.get() < MAX_PENDING && it.hasNext()) {
+            ChunkKey chunk = it.next();
+            World world = Bukkit.getWorld(chunk.worldId());
+            if (world == null || !world.isChunkLoaded(chunk.x(), chunk.z())) {
+                it.remove();
+                continue;
+            }
+            // Chunks already captured may still add their sections, so count them in as well
+            int sectionsPerChunk = ((world.getMaxHeight() - 1) >> 4) - (world.getMinHeight() >> 4) + 1;
+            long sections = index.size() + (long) (pending.get() + 1) * sectionsPerChunk;
+            if (sections * 100 > (long) index.getMaxSections() * MAX_INDEX_SHARE_PERCENT) {
+                indexFull = true;
+                break;
+            }
+            it.remove();
+            long stamp = index.stamp();
+            SnapshotRegion region = SnapshotRegion.capture(world, chunk.x(), chunk.z(), chunk.x(), chunk.z());
+            allowance -= 1.0;
+            pending.incrementAndGet();
+            worker.execute(() -> {
+                try {
+                    index.index(region, chunk.x(), chunk.z(), stamp);
+                    indexed.incrementAndGet();
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Pre-indexing chunk " + chunk.x() + ", " + chunk.z() + " failed", e);
+                } finally {
+                    pending.decrementAndGet();
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the average ticks per second over the last {@value #TPS_WINDOW} ticks, at most 20.
+     */
+    double getTps() {
+        int count = Math.min(intervalCount, TPS_WINDOW);
+        if (count == 0 || intervalSum <= 0) return 20.0;
+        return Math.min(20.0, count * 1e9 / intervalSum);
+    }
+
+    /**
+     * @return whether capturing is paused because the server runs too slowly
+     */
+    boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * @return whether capturing stopped on the last tick because the index is nearly full
+     */
+    boolean isIndexFull() {
+        return indexFull;
+    }
+
+    /**
+     * @return the number of chunks waiting to be captured
+     */
+    int queued() {
+        return queue.size();
+    }
+
+    /**
+     * @return the number of chunks indexed so far
+     */
+    long getIndexed() {
+        return indexed.get();
+    }
+
+    /**
+     * @return the number of loaded chunks dropped because the queue was full
+     */
+    long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Drops the queued chunks, and waits up to the given time for the worker to finish the
+     * chunks already captured.
+     *
+     * @param timeoutMillis Maximum time to wait, in milliseconds.
+     */
+    void shutdown(long timeoutMillis) {
+        queue.clear();
+        worker.shutdown();
+        try {
+            if (!worker.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                worker.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            worker.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A queued chunk. The world is looked up again when the chunk is captured, so a queued chunk
+     * does not keep an unloaded world in memory.
+     */
+    private record ChunkKey(UUID worldId, int x, int z) {
+    }
+}
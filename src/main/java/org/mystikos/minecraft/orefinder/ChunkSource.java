@@ -0,0 +1,35 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.ChunkSnapshot;
+
+import java.util.UUID;
+
+/**
+ * Supplies chunk snapshots of a single world to code that builds or queries the ore index.
+ */
+interface ChunkSource {
+
+    /**
+     * @return the unique ID of the world the chunks belong to
+     */
+    UUID getWorldId();
+
+    /**
+     * @return the lowest block Y coordinate of the world (inclusive)
+     */
+    int getMinHeight();
+
+    /**
+     * @return the highest block Y coordinate of the world (exclusive)
+     */
+    int getMaxHeight();
+
+    /**
+     * Returns a snapshot of the given chunk.
+     *
+     * @param chunkX Chunk X coordinate.
+     * @param chunkZ Chunk Z coordinate.
+     * @return the snapshot, or {@code null} if this source cannot provide that chunk
+     */
+    ChunkSnapshot getChunkSnapshot(int chunkX, int chunkZ);
+}
@@ -0,0 +1,193 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.ChatColor;
+import org.bukkit.Material;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable snapshot of everything the interact handler reads from the configuration:
+ * the item mappings and search profiles, the chat messages with their colours already applied,
+ * and the block stealing settings.
+ * <p>
+ * A snapshot is compiled once per load or reload and published as a whole, so event handlers
+ * never perform YAML lookups and never see a half-applied reload.
+ * </p>
+ */
+final class CompiledConfig {
+
+    /**
+     * Message keys for each distance band, from nearest to furthest.
+     */
+    private static final String[] BAND_KEYS = {"oneblock_hot", "very_hot", "hot", "warm", "lukewarm", "cold"};
+
+    private static final ChatColor[] BAND_COLORS = {
+            ChatColor.DARK_RED, ChatColor.RED, ChatColor.RED, ChatColor.GOLD, ChatColor.YELLOW, ChatColor.AQUA
+    };
+
+    private final ItemConf items;
+    private final Map<Material, String> labels;
+    private final SearchEngine engine;
+    private final UnloadedChunkPolicy unloadedChunks;
+    private final GenerationRules generationRules;
+    private final String[] bandMessages;
+    private final String notFoundMessage;
+    private final String inconclusiveMessage;
+    private final String stealMessage;
+    private final boolean blockStealing;
+    private final int stealChance;
+
+    private CompiledConfig(ItemConf items, Map<Material, String> labels, SearchEngine engine,
+                           UnloadedChunkPolicy unloadedChunks, GenerationRules generationRules,
+                           String[] bandMessages, String notFoundMessage,
+                           String inconclusiveMessage, String stealMessage, boolean blockStealing, int stealChance) {
+        this.items = items;
+        this.labels = labels;
+        this.engine = engine;
+        this.unloadedChunks = unloadedChunks;
+        this.generationRules = generationRules;
+        this.bandMessages = bandMessages;
+        this.notFoundMessage = notFoundMessage;
+        this.inconclusiveMessage = inconclusiveMessage;
+        this.stealMessage = stealMessage;
+        this.blockStealing = blockStealing;
+        this.stealChance = stealChance;
+    }
+
+    /**
+     * Reads and validates the plugin's current configuration.
+     *
+     * @param plugin Supplies the configuration.
+     * @return The compiled snapshot.
+     * @throws IllegalArgumentException if the configuration is invalid.
+     */
+    static CompiledConfig compile(OrefinderContext plugin) {
+        FileConfiguration config = plugin.getConfig();
+        SearchEngine engine = SearchEngine.fromConfig(config.getString("search.engine", "snapshot"));
+        UnloadedChunkPolicy unloadedChunks = UnloadedChunkPolicy.fromConfig(
+                config.getString("search.unloaded_chunks.policy", "inconclusive"));
+        GenerationRules generationRules = GenerationRules.fromConfig(
+                config.getConfigurationSection("search.generation"), "search.generation");
+        ItemConf items = new ItemConf(plugin);
+        items.init();
+
+        Map<Material, String> labels = new EnumMap<>(Material.class);
+        for (Material ore : items.getOres()) {
+            labels.put(ore, ChatColor.GRAY + displayName(ore) + ": ");
+        }
+
+        String[] bandMessages = new String[BAND_KEYS.length];
+        for (int i = 0; i < BAND_KEYS.length; i++) {
+            bandMessages[i] = colored(BAND_COLORS[i], config.getString("text." + BAND_KEYS[i]));
+        }
+
+        boolean blockStealing = config.getBoolean("functions.block_stealing");
+        int stealChance = config.getInt("chance.steal_block");
+        if (blockStealing && stealChance < 1) {
+            throw new IllegalArgumentException("'chance.steal_block' must be at least 1 when block stealing is on");
+        }
+
+        return new CompiledConfig(items, Collections.unmodifiableMap(labels), engine, unloadedChunks, generationRules,
+                bandMessages,
+                colored(ChatColor.BLUE, config.getString("text.very_cold")),
+                colored(ChatColor.GRAY, config.getString("text.inconclusive")),
+                config.getString("text.ender_steal"), blockStealing, stealChance);
+    }
+
+    private static String colored(ChatColor color, String message) {
+        return message == null ? null : color + message;
+    }
+
+    /**
+     * Turns a material name such as {@code ANCIENT_DEBRIS} into "Ancient Debris".
+     */
+    private static String displayName(Material material) {
+        String[] words = material.name().toLowerCase(Locale.ROOT).split("_");
+        StringBuilder name = new StringBuilder();
+        for (String word : words) {
+            if (name.length() > 0) name.append(' ');
+            name.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+        }
+        return name.toString();
+    }
+
+    /**
+     * @see ItemConf#getTargets(Material)
+     */
+    Material[] getTargets(Material item) {
+        return items.getTargets(item);
+    }
+
+    /**
+     * @see ItemConf#getProfile(Material)
+     */
+    SearchProfile getProfile(Material item) {
+        return items.getProfile(item);
+    }
+
+    /**
+     * @see ItemConf#getOres()
+     */
+    Set<Material> getOres() {
+        return items.getOres();
+    }
+
+    /**
+     * Returns the prefix labelling an ore's line in a prospector result, such as "Ancient Debris: ".
+     */
+    String getLabel(Material ore) {
+        return labels.getOrDefault(ore, "");
+    }
+
+    SearchEngine getEngine() {
+        return engine;
+    }
+
+    UnloadedChunkPolicy getUnloadedChunks() {
+        return unloadedChunks;
+    }
+
+    /**
+     * @return where each ore can generate, or {@link GenerationRules#NONE} if searches do not
+     * rely on it
+     */
+    GenerationRules getGenerationRules() {
+        return generationRules;
+    }
+
+    /**
+     * Returns the coloured message describing a search result.
+     *
+     * @param profile  The profile the search ran with, which decides the distance bands.
+     * @param distance The reported distance, {@link OreLocator#NOT_FOUND} or {@link OreLocator#INCONCLUSIVE}.
+     * @return The message, or {@code null} if the matching message is not configured.
+     */
+    String getDistanceMessage(SearchProfile profile, int distance) {
+        if (distance == OreLocator.INCONCLUSIVE) return inconclusiveMessage;
+        if (distance == OreLocator.NOT_FOUND) return notFoundMessage;
+        return bandMessages[profile.band(distance)];
+    }
+
+    boolean isBlockStealing() {
+        return blockStealing;
+    }
+
+    /**
+     * @return the "1 in n" chance of an enderman stealing the held item on a search
+     */
+    int getStealChance() {
+        return stealChance;
+    }
+
+    /**
+     * @return the message sent when an item is stolen, or {@code null} if none is configured
+     */
+    String getStealMessage() {
+        return stealMessage;
+    }
+}
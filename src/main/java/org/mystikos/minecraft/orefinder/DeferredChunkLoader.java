@@ -0,0 +1,120 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.World;
+
+import java.util.ArrayDeque;
+
+/**
+ * Loads the unloaded chunks a search needs before the search runs, for the
+ * {@link UnloadedChunkPolicy#LOAD} policy.
+ * <p>
+ * Requests are served in order, a limited number of chunk loads per tick, so a burst of clicks
+ * near the edge of loaded terrain is spread over several ticks instead of stalling one. Chunks
+ * are only loaded if they have been generated before; chunks that were never generated stay
+ * missing. Once every chunk of a request has been tried, its follow-up runs in the same tick.
+ * </p>
+ * <p>
+ * All methods must be called on the main server thread.
+ * </p>
+ */
+final class DeferredChunkLoader {
+
+    /**
+     * Requests waiting for their chunks before new ones are rejected.
+     */
+    static final int MAX_QUEUED = 64;
+
+    private final int chunksPerTick;
+    private final SearchMetrics metrics;
+    private final ArrayDeque<Request> requests = new ArrayDeque<>();
+
+    /**
+     * @param chunksPerTick Maximum number of chunks loaded per tick.
+     * @param metrics       Receives the number of chunks loaded.
+     */
+    DeferredChunkLoader(int chunksPerTick, SearchMetrics metrics) {
+        if (chunksPerTick < 1) {
+            throw new IllegalArgumentException("Chunk loads per tick must be positive");
+        }
+        this.chunksPerTick = chunksPerTick;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Queues chunks to be loaded.
+     *
+     * @param world  The world the chunks belong to.
+     * @param chunks The chunks, packed as by {@link OreLocator#unloadedChunks}.
+     * @param then   Runs once every chunk has been tried, whether or not it could be loaded.
+     * @return true if the request was queued, false if {@value #MAX_QUEUED} requests are waiting
+     * already.
+     */
+    boolean request(World world, long[] chunks, Runnable then) {
+        if (requests.size() >= MAX_QUEUED) return false;
+        requests.add(new Request(world, chunks, then));
+        return true;
+    }
+
+    /**
+     * Loads up to the configured number of queued chunks and runs the follow-ups of the requests
+     * that are complete.
+     */
+    void tick() {
+        int allowance = chunksPerTick;
+        while (!requests.isEmpty()) {
+            Request request = requests.peek();
+            while (request.next < request.chunks.length) {
+                long chunk = request.chunks[request.next];
+                int cx = (int) (chunk >> 32), cz = (int) chunk;
+                if (!request.world.isChunkLoaded(cx, cz)) {
+                    if (allowance == 0) return;
+                    allowance--;
+                    if (request.world.loadChunk(cx, cz, false)) {
+                        metrics.recordChunkLoaded();
+                    }
+                }
+                request.next++;
+            }
+            requests.poll();
+            request.then.run();
+        }
+    }
+
+    /**
+     * @return the number of requests waiting for their chunks
+     */
+    int queued() {
+        return requests.size();
+    }
+
+    /**
+     * Runs the follow-up of every queued request right away, without loading the chunks still
+     * missing, for instance before the loader is replaced.
+     */
+    void drain() {
+        Request request;
+        while ((request = requests.poll()) != null) {
+            request.then.run();
+        }
+    }
+
+    /**
+     * Drops every queued request without running its follow-up.
+     */
+    void clear() {
+        requests.clear();
+    }
+
+    private static final class Request {
+        final World world;
+        final long[] chunks;
+        final Runnable then;
+        int next;
+
+        Request(World world, long[] chunks, Runnable then) {
+            this.world = world;
+            this.chunks = chunks;
+            this.then = then;
+        }
+    }
+}
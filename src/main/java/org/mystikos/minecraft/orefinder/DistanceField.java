@@ -0,0 +1,583 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps, for every block of some chunk columns, the distance to the nearest block of each
+ * configured ore, so that a cube search is answered with a single array read.
+ * <p>
+ * Distances are Chebyshev distances, the cube search's metric, of at most the field's reach;
+ * anything further is stored as out of reach. They are stored as one byte per block and ore, for
+ * the full height of a chunk, and computed from snapshots of the chunks within reach by three
+ * separable min-filter passes, one along each axis. Columns are built off the main thread by the
+ * {@link DistanceFieldBuilder} and kept in a least-recently-used map bounded by memory.
+ * </p>
+ * <p>
+ * Block changes keep the columns current: a placed ore lowers the distances around it in place,
+ * while a column that may have counted a removed ore, or a block changed to an unknown type, is
+ * dropped and built again when it is next needed. A column is also dropped when its chunk
+ * unloads. All methods are thread-safe.
+ * </p>
+ */
+final class DistanceField implements BlockChangeObserver {
+
+    /**
+     * Number of recently changed columns remembered for {@link #build}'s staleness check.
+     */
+    private static final int MAX_RECENT_CHANGES = 4096;
+
+    private final Map<ColumnKey, Column> columns = new LinkedHashMap<>(16, 0.75f, true);
+    private volatile Material[] materials = new Material[0];
+    private volatile int reach;
+    private long maxBytes = 1;
+    private long bytes;
+
+    /**
+     * Counts block changes, so builds from snapshots taken before a change can be recognised.
+     */
+    private long changeCount;
+
+    /**
+     * The change count at which each recently changed column was last touched, counting every
+     * column within reach of the changed block. Columns that fell out of this map are covered by
+     * {@link #forgottenChanges}.
+     */
+    private final Map<ColumnKey, Long> recentChanges;
+    private long forgottenChanges;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong builds = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates an empty field that records nothing until {@link #reset} is called.
+     */
+    DistanceField() {
+        this.recentChanges = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ColumnKey, Long> eldest) {
+                if (size() > MAX_RECENT_CHANGES) {
+                    forgottenChanges = eldest.getValue();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Sets the materials the field records, how far it measures and its memory bound, and drops
+     * every column built so far.
+     *
+     * @param recorded The materials to record.
+     * @param reach    The largest distance recorded, in blocks; at most
+     *                 {@code SearchProfile.MAX_RADIUS - 1}.
+     * @param maxBytes Maximum number of bytes of distances kept before the least recently used
+     *                 column is evicted.
+     */
+    void reset(Set<Material> recorded, int reach, long maxBytes) {
+        if (reach < 1 || reach >= SearchProfile.MAX_RADIUS) {
+            throw new IllegalArgumentException("Distance field reach must be between 1 and "
+                    + (SearchProfile.MAX_RADIUS - 1));
+        }
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Distance field size must be positive");
+        }
+        synchronized (columns) {
+            this.materials = recorded.toArray(new Material[0]);
+            this.reach = reach;
+            this.maxBytes = maxBytes;
+            columns.clear();
+            bytes = 0;
+        }
+    }
+
+    /**
+     * Returns the current change stamp. Callers that capture snapshots for a later
+     * {@link #build} must read the stamp at capture time.
+     */
+    long stamp() {
+        synchronized (columns) {
+            return changeCount;
+        }
+    }
+
+    /**
+     * @return the number of chunks around a column, along each axis, whose blocks its distances
+     * depend on
+     */
+    int chunkRadius() {
+        return (reach + 15) >> 4;
+    }
+
+    /**
+     * @return whether the field records any material, which it only does for the
+     * {@link SearchEngine#FIELD} engine
+     */
+    boolean isEnabled() {
+        return materials.length > 0;
+    }
+
+    /**
+     * Returns whether the field can answer searches with the given profile: cube searches that
+     * look as far up and down as sideways, no further than the field's reach.
+     */
+    boolean handles(SearchProfile profile) {
+        return materials.length > 0 && profile.shape() == SearchProfile.Shape.CUBE
+                && profile.verticalRadius() == profile.reach() && profile.reach() <= reach;
+    }
+
+    /**
+     * Returns the distance from the given point to the nearest block of each target, as a cube
+     * search with the given profile would report it.
+     *
+     * @return the distances, or {@code null} if the field does not hold the point's column, does
+     * not record every target or does not {@link #handles handle} the profile
+     */
+    int[] distances(UUID worldId, int x, int y, int z, Material[] targets, SearchProfile profile) {
+        if (!handles(profile)) return null;
+        Material[] recorded = materials;
+        int[] indices = new int[targets.length];
+        for (int t = 0; t < targets.length; t++) {
+            indices[t] = indexOf(recorded, targets[t]);
+            if (indices[t] < 0) return null;
+        }
+        int[] result = new int[targets.length];
+        synchronized (columns) {
+            Column column = columns.get(new ColumnKey(worldId, x >> 4, z >> 4));
+            if (column == null || recorded != materials || y < column.minHeight || y >= column.maxHeight()) {
+                misses.incrementAndGet();
+                return null;
+            }
+            int cell = column.cell(x, y, z);
+            for (int t = 0; t < targets.length; t++) {
+                int d = column.distances[indices[t]][cell] & 0xFF;
+                result[t] = d <= profile.reach() ? d : OreLocator.NOT_FOUND;
+            }
+        }
+        hits.incrementAndGet();
+        return result;
+    }
+
+    /**
+     * Returns whether a column is built, without counting a hit or miss.
+     */
+    boolean isBuilt(UUID worldId, int chunkX, int chunkZ) {
+        synchronized (columns) {
+            return columns.containsKey(new ColumnKey(worldId, chunkX, chunkZ));
+        }
+    }
+
+    /**
+     * Builds the distances of a chunk column and keeps them, unless a block within reach changed
+     * after the source's snapshots were taken.
+     *
+     * @param source Supplies the blocks of the column and of the {@link #chunkRadius()} chunks
+     *               around it along each axis.
+     * @param filter Lets sections that cannot hold a recorded material be skipped, if the source
+     *               is a {@link ChunkSource}.
+     * @param stamp  The {@link #stamp()} read when the source's snapshots were captured.
+     * @return whether the column was built, which it is not if the source lacks a chunk
+     */
+    boolean build(BlockSource source, int chunkX, int chunkZ, SectionFilter filter, long stamp) {
+        Material[] recorded = materials;
+        int reach = this.reach;
+        if (recorded.length == 0) return false;
+        byte[][] distances = compute(source, chunkX, chunkZ, recorded, reach, filter);
+        if (distances == null) return false;
+        Column column = new Column(chunkX, chunkZ, source.getMinHeight(), distances);
+        ColumnKey key = new ColumnKey(source.getWorldId(), chunkX, chunkZ);
+        synchronized (columns) {
+            // A reset while building means the column was built for stale settings, and a change
+            // after the snapshots were taken means it was built from stale blocks
+            if (recorded != materials || reach != this.reach || changedSince(key, stamp)) return false;
+            cache(key, column);
+        }
+        builds.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Computes the capped Chebyshev distances from every block of a chunk column to the nearest
+     * block of each material.
+     * <p>
+     * The blocks within reach of the column are read once into a grid of material numbers. For
+     * each material, the first pass measures along X to the nearest block in the same row, the
+     * second takes the nearest of those along Z, and the third along Y, each pass keeping only
+     * the part of the grid the next one needs. Distances beyond the reach are stored as
+     * {@code reach + 1}.
+     * </p>
+     *
+     * @return the distances per material, indexed as by {@link Column#cell}, or {@code null} if
+     * the source lacks a chunk within reach
+     */
+    static byte[][] compute(BlockSource source, int chunkX, int chunkZ, Material[] materials, int reach,
+                            SectionFilter filter) {
+        int minHeight = source.getMinHeight();
+        int height = source.getMaxHeight() - minHeight;
+        int width = 16 + 2 * reach;
+        int originX = (chunkX << 4) - reach, originZ = (chunkZ << 4) - reach;
+        byte[] grid = new byte[height * width * width];
+        if (!read(source, originX, originZ, width, materials, filter, grid)) return null;
+
+        int far = reach + 1;
+        byte[][] distances = new byte[materials.length][];
+        byte[] alongX = new byte[height * width * 16];
+        byte[] alongZ = new byte[height * 256];
+        int[] row = new int[width];
+        for (int m = 0; m < materials.length; m++) {
+            byte number = (byte) (m + 1);
+            // Along X: the distance to the nearest block in the same row, for the column's 16 X values
+            for (int yz = 0; yz < height * width; yz++) {
+                int base = yz * width;
+                int last = -far;
+                for (int i = 0; i < width; i++) {
+                    if (grid[base + i] == number) last = i;
+                    row[i] = i - last;
+                }
+                last = width + far;
+                for (int i = width - 1; i >= 0; i--) {
+                    if (grid[base + i] == number) last = i;
+                    row[i] = Math.min(row[i], last - i);
+                }
+                for (int lx = 0; lx < 16; lx++) {
+                    alongX[yz * 16 + lx] = (byte) Math.min(row[reach + lx], far);
+                }
+            }
+            // Along Z, for the column's 16 Z values
+            for (int y = 0; y < height; y++) {
+                for (int lz = 0; lz < 16; lz++) {
+                    for (int lx = 0; lx < 16; lx++) {
+                        int best = far;
+                        for (int d = 0; d < best; d++) {
+                            int near = Math.min(alongX[(y * width + reach + lz - d) * 16 + lx],
+                                    alongX[(y * width + reach + lz + d) * 16 + lx]);
+                            best = Math.min(best, Math.max(d, near));
+                        }
+                        alongZ[(y << 8) | lz << 4 | lx] = (byte) best;
+                    }
+                }
+            }
+            // Along Y, within the world's height
+            byte[] column = new byte[height * 256];
+            for (int y = 0; y < height; y++) {
+                for (int cell = 0; cell < 256; cell++) {
+                    int best = far;
+                    for (int d = 0; d < best; d++) {
+                        int near = far;
+                        if (y - d >= 0) near = alongZ[((y - d) << 8) | cell];
+                        if (y + d < height) near = Math.min(near, alongZ[((y + d) << 8) | cell]);
+                        best = Math.min(best, Math.max(d, near));
+                    }
+                    column[(y << 8) | cell] = (byte) best;
+                }
+            }
+            distances[m] = column;
+        }
+        return distances;
+    }
+
+    /**
+     * Reads the blocks of the given horizontal square into {@code grid}, as the number
+     * {@code i + 1} for a block of {@code materials[i]} and 0 for anything else.
+     *
+     * @return false if the source lacks a chunk
+     */
+    private static boolean read(BlockSource source, int originX, int originZ, int width, Material[] materials,
+                                SectionFilter filter, byte[] grid) {
+        int minHeight = source.getMinHeight();
+        int maxHeight = source.getMaxHeight();
+        ChunkSource chunks = source instanceof ChunkSource chunkSource ? chunkSource : null;
+        Material[] types = new Material[BlockSource.SECTION_VOLUME];
+        for (int cx = originX >> 4; cx <= (originX + width - 1) >> 4; cx++) {
+            for (int cz = originZ >> 4; cz <= (originZ + width - 1) >> 4; cz++) {
+                ChunkSnapshot snapshot = chunks == null ? null : chunks.getChunkSnapshot(cx, cz);
+                if (chunks != null && snapshot == null) return false;
+                for (int sy = minHeight >> 4; sy <= (maxHeight - 1) >> 4; sy++) {
+                    if (snapshot != null && !mayContainAny(filter, chunks.getWorldId(), snapshot, sy, materials)) {
+                        continue;
+                    }
+                    if (!source.readSection(cx, sy, cz, types)) return false;
+                    for (int i = 0; i < types.length; i++) {
+                        Material type = types[i];
+                        if (type == null) continue;
+                        int m = indexOf(materials, type);
+                        if (m < 0) continue;
+                        int gx = (cx << 4) + (i & 15) - originX;
+                        int gz = (cz << 4) + ((i >> 4) & 15) - originZ;
+                        if (gx < 0 || gx >= width || gz < 0 || gz >= width) continue;
+                        int gy = (sy << 4) + (i >> 8) - minHeight;
+                        grid[(gy * width + gz) * width + gx] = (byte) (m + 1);
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean mayContainAny(SectionFilter filter, UUID worldId, ChunkSnapshot snapshot, int sectionY,
+                                         Material[] materials) {
+        for (Material material : materials) {
+            if (filter.mayContain(worldId, snapshot, sectionY, material)) return true;
+        }
+        return false;
+    }
+
+    private static int indexOf(Material[] materials, Material material) {
+        for (int i = 0; i < materials.length; i++) {
+            if (materials[i] == material) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Drops every column within reach of the block, since its new type is unknown.
+     */
+    @Override
+    public void blockChanged(World world, int x, int y, int z) {
+        if (materials.length == 0) return;
+        synchronized (columns) {
+            touch(world.getUID(), x, y, z, null);
+        }
+    }
+
+    /**
+     * Lowers the distances around a placed ore in place, and drops the columns that may have
+     * counted an ore the block replaced.
+     */
+    @Override
+    public void blockReplaced(World world, int x, int y, int z, Material type) {
+        if (materials.length == 0) return;
+        synchronized (columns) {
+            touch(world.getUID(), x, y, z, type);
+        }
+    }
+
+    /**
+     * Ignores the change when neither the previous nor the new type is recorded, since no
+     * distance depends on it; otherwise handles it as {@link #blockReplaced(World, int, int, int,
+     * Material)} does.
+     */
+    @Override
+    public void blockReplaced(World world, int x, int y, int z, Material previous, Material type) {
+        Material[] recorded = materials;
+        if (indexOf(recorded, previous) < 0 && indexOf(recorded, type) < 0) return;
+        blockReplaced(world, x, y, z, type);
+    }
+
+    @Override
+    public void chunkUnloaded(World world, int chunkX, int chunkZ) {
+        if (materials.length == 0) return;
+        synchronized (columns) {
+            Column column = columns.remove(new ColumnKey(world.getUID(), chunkX, chunkZ));
+            if (column != null) {
+                bytes -= column.bytes();
+            }
+        }
+    }
+
+    /**
+     * Records a change of the block at {@code (x, y, z)} for every column within reach, and
+     * updates or drops the built ones. Must be called while holding the lock.
+     *
+     * @param type The block's new type, or {@code null} if it is unknown.
+     */
+    private void touch(UUID worldId, int x, int y, int z, Material type) {
+        long change = ++changeCount;
+        Material[] recorded = materials;
+        int placed = type == null ? -1 : indexOf(recorded, type);
+        // The block's own column, if built, tells exactly whether an ore was replaced; otherwise
+        // each column can only rule out depending on the block by its own distances
+        Column own = columns.get(new ColumnKey(worldId, x >> 4, z >> 4));
+        boolean removed = own != null && own.mayHoldOther(x, y, z, placed, 0);
+        for (int cx = (x - reach) >> 4; cx <= (x + reach) >> 4; cx++) {
+            for (int cz = (z - reach) >> 4; cz <= (z + reach) >> 4; cz++) {
+                ColumnKey key = new ColumnKey(worldId, cx, cz);
+                recentChanges.put(key, change);
+                Column column = columns.get(key);
+                if (column == null) continue;
+                int d = column.distanceTo(x, y, z);
+                if (d > reach) continue;
+                if (type == null || (own != null ? removed : column.mayHoldOther(x, y, z, placed, d))) {
+                    columns.remove(key);
+                    bytes -= column.bytes();
+                    invalidations.incrementAndGet();
+                } else if (placed >= 0) {
+                    column.place(placed, x, y, z, reach);
+                    updates.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Keeps a column, evicting the least recently used ones beyond the memory bound. Must be
+     * called while holding the lock.
+     */
+    private void cache(ColumnKey key, Column column) {
+        Column previous = columns.put(key, column);
+        if (previous != null) bytes -= previous.bytes();
+        bytes += column.bytes();
+        Iterator<Column> eldest = columns.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().bytes();
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns whether the column may have changed after the given stamp. Must be called while
+     * holding the lock.
+     */
+    private boolean changedSince(ColumnKey key, long stamp) {
+        if (stamp == changeCount) return false;
+        if (stamp < forgottenChanges) return true;
+        Long changed = recentChanges.get(key);
+        return changed != null && changed > stamp;
+    }
+
+    /**
+     * @return the number of columns currently built
+     */
+    int size() {
+        synchronized (columns) {
+            return columns.size();
+        }
+    }
+
+    /**
+     * @return the bytes of distances held by the built columns
+     */
+    long getBytes() {
+        synchronized (columns) {
+            return bytes;
+        }
+    }
+
+    long getMaxBytes() {
+        synchronized (columns) {
+            return maxBytes;
+        }
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    long getBuilds() {
+        return builds.get();
+    }
+
+    /**
+     * @return the number of built columns updated in place after an ore was placed
+     */
+    long getUpdates() {
+        return updates.get();
+    }
+
+    long getInvalidations() {
+        return invalidations.get();
+    }
+
+    long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Identifies a chunk column within a world.
+     */
+    private record ColumnKey(UUID worldId, int chunkX, int chunkZ) {
+    }
+
+    /**
+     * The distances of one chunk column, per recorded material. Guarded by the field's lock.
+     */
+    private static final class Column {
+        final int baseX;
+        final int baseZ;
+        final int minHeight;
+        final byte[][] distances;
+
+        Column(int chunkX, int chunkZ, int minHeight, byte[][] distances) {
+            this.baseX = chunkX << 4;
+            this.baseZ = chunkZ << 4;
+            this.minHeight = minHeight;
+            this.distances = distances;
+        }
+
+        int maxHeight() {
+            return minHeight + distances[0].length / 256;
+        }
+
+        long bytes() {
+            return (long) distances.length * distances[0].length;
+        }
+
+        /**
+         * Returns the index of a block's distance, {@code (y - minHeight) << 8 | (z & 15) << 4 | (x & 15)}.
+         */
+        int cell(int x, int y, int z) {
+            return (y - minHeight) << 8 | (z & 15) << 4 | (x & 15);
+        }
+
+        /**
+         * Returns the Chebyshev distance from the given position to the column's nearest block.
+         */
+        int distanceTo(int x, int y, int z) {
+            int dx = Math.max(0, Math.max(baseX - x, x - baseX - 15));
+            int dy = Math.max(0, Math.max(minHeight - y, y - maxHeight() + 1));
+            int dz = Math.max(0, Math.max(baseZ - z, z - baseZ - 15));
+            return Math.max(dx, Math.max(dy, dz));
+        }
+
+        /**
+         * Returns whether a block of some recorded material other than {@code placed} may sit at
+         * the given position, {@code d} blocks from the column. If one did, the column's block
+         * nearest to the position would be at most {@code d} blocks from that material, so a
+         * larger distance rules it out; inside the column, where {@code d} is 0, the answer is
+         * exact.
+         */
+        boolean mayHoldOther(int x, int y, int z, int placed, int d) {
+            int cell = cell(Math.max(baseX, Math.min(baseX + 15, x)),
+                    Math.max(minHeight, Math.min(maxHeight() - 1, y)), Math.max(baseZ, Math.min(baseZ + 15, z)));
+            for (int m = 0; m < distances.length; m++) {
+                if (m != placed && (distances[m][cell] & 0xFF) <= d) return true;
+            }
+            return false;
+        }
+
+        /**
+         * Lowers the distances to {@code material} around a newly placed block of it.
+         */
+        void place(int material, int x, int y, int z, int reach) {
+            byte[] column = distances[material];
+            int maxY = Math.min(maxHeight() - 1, y + reach);
+            for (int by = Math.max(minHeight, y - reach); by <= maxY; by++) {
+                for (int bz = Math.max(baseZ, z - reach); bz <= Math.min(baseZ + 15, z + reach); bz++) {
+                    for (int bx = Math.max(baseX, x - reach); bx <= Math.min(baseX + 15, x + reach); bx++) {
+                        int d = Math.max(Math.abs(bx - x), Math.max(Math.abs(by - y), Math.abs(bz - z)));
+                        int cell = cell(bx, by, bz);
+                        if (d < (column[cell] & 0xFF)) column[cell] = (byte) d;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Builds the {@link DistanceField} columns that searches asked for but found missing.
+ * <p>
+ * Requested columns are queued, and on every tick a few of them have the chunks within reach
+ * captured as snapshots, which a single low-priority worker thread turns into distances. A column
+ * is only built while every chunk within its reach is loaded, since a missing chunk would make its
+ * distances wrong; columns that cannot be built yet are dropped and requested again by the next
+ * search there.
+ * </p>
+ * <p>
+ * {@link #request} and {@link #tick()} must be called on the main server thread.
+ * </p>
+ */
+final class DistanceFieldBuilder {
+
+    /**
+     * Columns waiting to be captured before new requests are dropped.
+     */
+    static final int MAX_QUEUED = 256;
+
+    /**
+     * Captured columns waiting for the worker before capturing pauses, bounding the snapshots held
+     * in memory.
+     */
+    private static final int MAX_PENDING = 2;
+
+    private final DistanceField field;
+    private final SectionFilter filter;
+    private final int columnsPerTick;
+    private final Logger logger;
+    private final ThreadPoolExecutor worker;
+    private final LinkedHashSet<ColumnKey> queue = new LinkedHashSet<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private long dropped;
+
+    /**
+     * @param field          The field to fill.
+     * @param filter         Lets the worker skip sections that cannot hold a recorded ore.
+     * @param columnsPerTick Maximum number of columns captured per tick.
+     * @param logger         Receives errors from the worker thread.
+     */
+    DistanceFieldBuilder(DistanceField field, SectionFilter filter, int columnsPerTick, Logger logger) {
+        if (columnsPerTick < 1) {
+            throw new IllegalArgumentException("Distance field builds per tick must be positive");
+        }
+        this.field = field;
+        this.filter = filter;
+        this.columnsPerTick = columnsPerTick;
+        this.logger = logger;
+        // No core threads: the worker only exists while there is something to build
+        this.worker = new ThreadPoolExecutor(0, 1, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), task -> {
+            Thread thread = new Thread(task, "OreFinder Distance field");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues a column to be built. Columns beyond {@value #MAX_QUEUED} waiting ones are dropped.
+     */
+    void request(World world, int chunkX, int chunkZ) {
+        if (queue.size() >= MAX_QUEUED) {
+            dropped++;
+            return;
+        }
+        queue.add(new ColumnKey(world.getUID(), chunkX, chunkZ));
+    }
+
+    /**
+     * Captures the chunks of as many queued columns as allowed per tick and hands them to the
+     * worker.
+     */
+    void tick() {
+        int allowance = columnsPerTick;
+        int radius = field.chunkRadius();
+        Iterator<ColumnKey> it = queue.iterator();
+        while (allowance > 0 && pending.get() < MAX_PENDING && it.hasNext()) {
+            ColumnKey column = it.next();
+            it.remove();
+            World world = Bukkit.getWorld(column.worldId());
+            if (world == null || field.isBuilt(column.worldId(), column.x(), column.z())
+                    || !allLoaded(world, column.x(), column.z(), radius)) {
+                continue;
+            }
+            long stamp = field.stamp();
+            SnapshotRegion region = SnapshotRegion.capture(world, column.x() - radius, column.z() - radius,
+                    column.x() + radius, column.z() + radius);
+            allowance--;
+            pending.incrementAndGet();
+            worker.execute(() -> {
+                try {
+                    field.build(region, column.x(), column.z(), filter, stamp);
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Building the distance field of chunk " + column.x() + ", "
+                            + column.z() + " failed", e);
+                } finally {
+                    pending.decrementAndGet();
+                }
+            });
+        }
+    }
+
+    private static boolean allLoaded(World world, int chunkX, int chunkZ, int radius) {
+        for (int cx = chunkX - radius; cx <= chunkX + radius; cx++) {
+            for (int cz = chunkZ - radius; cz <= chunkZ + radius; cz++) {
+                if (!world.isChunkLoaded(cx, cz)) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of columns waiting to be captured
+     */
+    int queued() {
+        return queue.size();
+    }
+
+    /**
+     * @return the number of requests dropped because the queue was full
+     */
+    long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Drops the queued columns, and waits up to the given time for the worker to finish the
+     * columns already captured.
+     *
+     * @param timeoutMillis Maximum time to wait, in milliseconds.
+     */
+    void shutdown(long timeoutMillis) {
+        queue.clear();
+        worker.shutdown();
+        try {
+            if (!worker.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                worker.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            worker.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A queued column. The world is looked up again when the column is captured, so a queued
+     * column does not keep an unloaded world in memory.
+     */
+    private record ColumnKey(UUID worldId, int x, int z) {
+    }
+}
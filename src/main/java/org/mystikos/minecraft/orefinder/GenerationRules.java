@@ -0,0 +1,165 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Where each ore can generate: a range of heights and the kinds of world it occurs in.
+ * <p>
+ * Searches use the rules to skip a target outright when its band is out of reach, or it does
+ * not occur in the searched world at all, and, as a {@link SectionFilter}, to skip the sections
+ * outside a target's band. Built-in rules follow vanilla generation and can be replaced per
+ * material under {@code search.generation.rules}; worlds with custom generation can turn the
+ * rules off with {@code search.generation.enabled}. Ores that players placed outside their band
+ * are not found while the rules are on.
+ * </p>
+ */
+final class GenerationRules implements SectionFilter {
+
+    /**
+     * Rules that never prune anything.
+     */
+    static final GenerationRules NONE = new GenerationRules(Map.of());
+
+    /**
+     * Where a single material generates.
+     *
+     * @param minY         Lowest block Y coordinate it generates at (inclusive).
+     * @param maxY         Highest block Y coordinate it generates at (inclusive).
+     * @param environments The kinds of world it generates in.
+     */
+    record Rule(int minY, int maxY, Set<World.Environment> environments) {
+    }
+
+    private static final Map<Material, Rule> VANILLA = new EnumMap<>(Material.class);
+
+    static {
+        Set<World.Environment> overworld = EnumSet.of(World.Environment.NORMAL);
+        Set<World.Environment> nether = EnumSet.of(World.Environment.NETHER);
+        vanilla(overworld, -64, 16, Material.DIAMOND_ORE, Material.DEEPSLATE_DIAMOND_ORE,
+                Material.REDSTONE_ORE, Material.DEEPSLATE_REDSTONE_ORE);
+        vanilla(overworld, -64, 64, Material.LAPIS_ORE, Material.DEEPSLATE_LAPIS_ORE);
+        vanilla(overworld, -16, 112, Material.COPPER_ORE, Material.DEEPSLATE_COPPER_ORE);
+        vanilla(overworld, -16, Integer.MAX_VALUE, Material.EMERALD_ORE, Material.DEEPSLATE_EMERALD_ORE);
+        vanilla(overworld, Integer.MIN_VALUE, Integer.MAX_VALUE, Material.COAL_ORE, Material.DEEPSLATE_COAL_ORE,
+                Material.IRON_ORE, Material.DEEPSLATE_IRON_ORE, Material.GOLD_ORE, Material.DEEPSLATE_GOLD_ORE);
+        vanilla(nether, 8, 119, Material.ANCIENT_DEBRIS);
+        vanilla(nether, 10, 117, Material.NETHER_GOLD_ORE, Material.NETHER_QUARTZ_ORE);
+    }
+
+    private static void vanilla(Set<World.Environment> environments, int minY, int maxY, Material... materials) {
+        for (Material material : materials) {
+            VANILLA.put(material, new Rule(minY, maxY, environments));
+        }
+    }
+
+    private final Map<Material, Rule> rules;
+
+    private GenerationRules(Map<Material, Rule> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Reads the rules from the {@code search.generation} section, on top of the built-in ones.
+     * A material listed under {@code rules} replaces its built-in rule as a whole; its unset
+     * {@code min_y}, {@code max_y} and {@code environments} do not restrict anything.
+     *
+     * @param section The section to read; may be {@code null} to use the built-in rules.
+     * @param path    The section's path, used in error messages.
+     * @return The rules, or {@link #NONE} if they are disabled.
+     * @throws IllegalArgumentException if a rule is invalid.
+     */
+    static GenerationRules fromConfig(ConfigurationSection section, String path) {
+        if (section != null && !section.getBoolean("enabled", true)) return NONE;
+        Map<Material, Rule> rules = new EnumMap<>(VANILLA);
+        ConfigurationSection overrides = section == null ? null : section.getConfigurationSection("rules");
+        if (overrides != null) {
+            for (String name : overrides.getKeys(false)) {
+                String rulePath = path + ".rules." + name;
+                Material material = Material.matchMaterial(name);
+                if (material == null) {
+                    throw new IllegalArgumentException("Unknown material '" + name + "' in '" + path + ".rules'");
+                }
+                ConfigurationSection rule = overrides.getConfigurationSection(name);
+                if (rule == null) {
+                    throw new IllegalArgumentException("'" + rulePath + "' must be a section");
+                }
+                rules.put(material, readRule(rule, rulePath));
+            }
+        }
+        return new GenerationRules(Collections.unmodifiableMap(rules));
+    }
+
+    private static Rule readRule(ConfigurationSection rule, String path) {
+        int minY = rule.contains("min_y") ? rule.getInt("min_y") : Integer.MIN_VALUE;
+        int maxY = rule.contains("max_y") ? rule.getInt("max_y") : Integer.MAX_VALUE;
+        if (minY > maxY) {
+            throw new IllegalArgumentException("'" + path + ".min_y' cannot be above '" + path + ".max_y'");
+        }
+        Set<World.Environment> environments = EnumSet.allOf(World.Environment.class);
+        if (rule.contains("environments")) {
+            environments = EnumSet.noneOf(World.Environment.class);
+            List<String> names = rule.getStringList("environments");
+            for (String name : names) {
+                try {
+                    environments.add(World.Environment.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Unknown environment '" + name + "' in '" + path + ".environments'");
+                }
+            }
+        }
+        return new Rule(minY, maxY, environments);
+    }
+
+    /**
+     * Returns the rule for a material, or {@code null} if it may occur anywhere.
+     */
+    Rule getRule(Material material) {
+        return rules.get(material);
+    }
+
+    /**
+     * Returns a mask of the targets that can be within a search's reach, bit {@code i} standing
+     * for {@code targets[i]}.
+     *
+     * @param targets     The block types searched for; at most 64.
+     * @param environment The kind of world searched.
+     * @param y           Block Y coordinate of the origin.
+     * @param profile     The reach and shape of the search.
+     */
+    long reachable(Material[] targets, World.Environment environment, int y, SearchProfile profile) {
+        long mask = 0L;
+        for (int t = 0; t < targets.length; t++) {
+            Rule rule = rules.get(targets[t]);
+            if (rule == null) {
+                mask |= 1L << t;
+                continue;
+            }
+            if (!rule.environments().contains(environment)) continue;
+            int dy = y < rule.minY() ? rule.minY() - y : y > rule.maxY() ? y - rule.maxY() : 0;
+            // The vertical radius never exceeds the reach, whatever the shape
+            if (dy <= profile.verticalRadius()) mask |= 1L << t;
+        }
+        return mask;
+    }
+
+    /**
+     * Skips the sections that lie entirely outside the target's band.
+     */
+    @Override
+    public boolean mayContain(UUID worldId, ChunkSnapshot snapshot, int sectionY, Material target) {
+        Rule rule = rules.get(target);
+        return rule == null || (sectionY << 4) + 15 >= rule.minY() && sectionY << 4 <= rule.maxY();
+    }
+}
@@ -1,11 +1,20 @@
 package org.mystikos.minecraft.orefinder;
 
+import org.bukkit.Material;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 
 /**
  * The ItemConf class handles the configuration for items in the OreFinder plugin.
- * It initializes the configuration and provides methods to retrieve ore IDs based on items in hand.
+ * It initializes the configuration and provides methods to retrieve the ore searched for
+ * when a player holds a given item.
  */
 class ItemConf {
 
@@ -15,19 +24,29 @@ class ItemConf {
     private final OrefinderContext plugin;
 
     /**
-     * Array of item IDs that the player can hold in hand.
+     * Maps each item a player can hold to the ore the plugin will look for. Replaced as a whole
+     * on every {@link #init()}, so readers never see a partially loaded configuration.
+     */
+    private volatile Map<Material, Material> oreByItem = Collections.emptyMap();
+
+    /**
+     * Maps each held item to every ore searched for when it is used. Regular items map to their
+     * single ore, prospector items to all configured ores.
      */
-    private String[] inHand;
+    private volatile Map<Material, Material[]> targetsByItem = Collections.emptyMap();
 
     /**
-     * Array of ore IDs that the plugin will look for.
+     * Maps held items with their own search settings to their profile. Items not listed use
+     * {@link #defaultProfile}.
      */
-    private String[] lookFor;
+    private volatile Map<Material, SearchProfile> profileByItem = Collections.emptyMap();
+
+    private volatile SearchProfile defaultProfile = SearchProfile.DEFAULT;
 
     /**
-     * The size of the configuration lists.
+     * Every ore the plugin looks for.
      */
-    private int size;
+    private volatile Set<Material> ores = Collections.emptySet();
 
     /**
      * Constructor for the ItemConf class.
@@ -40,7 +59,9 @@ class ItemConf {
 
     /**
      * Initializes the configuration by loading the item and ore lists from the plugin configuration.
-     * Throws an IllegalArgumentException if the configuration lists are empty.
+     * Names are resolved to {@link Material}s once here, so lookups during events compare enum
+     * constants only. Throws an IllegalArgumentException if the configuration lists are empty or
+     * name an unknown material.
      */
     void init() {
         List<String> inHandList = plugin.getConfig().getStringList("indicate.inhand");
@@ -53,27 +74,95 @@ class ItemConf {
         }
 
         // Use the smaller size of the two lists to avoid IndexOutOfBoundsException
-        size = Math.min(inHandList.size(), lookForList.size());
-        inHand = new String[size];
-        lookFor = new String[size];
+        int size = Math.min(inHandList.size(), lookForList.size());
+        Map<Material, Material> mapping = new EnumMap<>(Material.class);
         for (int i = 0; i < size; i++) {
-            inHand[i] = inHandList.get(i);
-            lookFor[i] = lookForList.get(i);
+            Material item = resolve(inHandList.get(i), "indicate.inhand");
+            Material ore = resolve(lookForList.get(i), "indicate.lookfor");
+            if (!ore.isBlock()) {
+                throw new IllegalArgumentException("'" + lookForList.get(i) + "' in 'indicate.lookfor' is not a block");
+            }
+            // The first mapping for an item wins, as it always has
+            mapping.putIfAbsent(item, ore);
+        }
+
+        Set<Material> allOres = EnumSet.copyOf(mapping.values());
+        Material[] allTargets = allOres.toArray(new Material[0]);
+        Map<Material, Material[]> targets = new EnumMap<>(Material.class);
+        mapping.forEach((item, ore) -> targets.put(item, new Material[]{ore}));
+        for (String name : plugin.getConfig().getStringList("indicate.prospector")) {
+            Material item = resolve(name, "indicate.prospector");
+            if (mapping.containsKey(item)) {
+                throw new IllegalArgumentException("'" + name + "' cannot be in both 'indicate.inhand' and 'indicate.prospector'");
+            }
+            targets.put(item, allTargets);
+        }
+
+        SearchProfile defaults = SearchProfile.fromConfig(plugin.getConfig().getConfigurationSection("search"),
+                "search", SearchProfile.DEFAULT);
+        Map<Material, SearchProfile> profiles = new EnumMap<>(Material.class);
+        ConfigurationSection settings = plugin.getConfig().getConfigurationSection("indicate.settings");
+        if (settings != null) {
+            for (String name : settings.getKeys(false)) {
+                String path = "indicate.settings." + name;
+                Material item = resolve(name, path);
+                if (!targets.containsKey(item)) {
+                    throw new IllegalArgumentException("'" + path + "' is not an item in 'indicate.inhand' or 'indicate.prospector'");
+                }
+                profiles.put(item, SearchProfile.fromConfig(settings.getConfigurationSection(name), path, defaults));
+            }
         }
+
+        oreByItem = Collections.unmodifiableMap(mapping);
+        targetsByItem = Collections.unmodifiableMap(targets);
+        profileByItem = Collections.unmodifiableMap(profiles);
+        defaultProfile = defaults;
+        ores = Collections.unmodifiableSet(allOres);
     }
 
     /**
-     * Retrieves the ore ID corresponding to the given item ID.
+     * Retrieves the ore corresponding to the given held item.
      *
-     * @param tid The item ID to look up.
-     * @return The corresponding ore ID, or an empty string if not found.
+     * @param item The item type to look up.
+     * @return The corresponding ore, or {@code null} if the item is not configured.
      */
-    String getOreId(String tid) {
-        for (int i = 0; i < size; i++) {
-            if (inHand[i].equalsIgnoreCase(tid)) {
-                return lookFor[i];
-            }
+    Material getOre(Material item) {
+        return oreByItem.get(item);
+    }
+
+    /**
+     * Retrieves every ore searched for when the given item is used.
+     *
+     * @param item The item type to look up.
+     * @return The ores to search for, or {@code null} if the item is not configured. The array
+     * is shared and must not be modified.
+     */
+    Material[] getTargets(Material item) {
+        return targetsByItem.get(item);
+    }
+
+    /**
+     * Retrieves the search settings used when the given item is used.
+     *
+     * @param item The item type to look up.
+     * @return The item's own profile if it has one, the default profile otherwise.
+     */
+    SearchProfile getProfile(Material item) {
+        return profileByItem.getOrDefault(item, defaultProfile);
+    }
+
+    /**
+     * @return every ore that some held item maps to
+     */
+    Set<Material> getOres() {
+        return ores;
+    }
+
+    private static Material resolve(String name, String path) {
+        Material material = Material.matchMaterial(name);
+        if (material == null) {
+            throw new IllegalArgumentException("Unknown material '" + name + "' in '" + path + "'");
         }
-        return "";
+        return material;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,220 @@
+package org.mystikos.minecraft.orefinder;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from primitive {@code long} keys to objects, for keys such as packed block or
+ * section coordinates.
+ * <p>
+ * Keys and values live in two parallel arrays with open addressing and linear probing, so an
+ * entry costs sixteen to thirty-two bytes instead of the boxed {@link Long} and node a
+ * {@link java.util.HashMap} allocates for it. Removal shifts the following entries back instead
+ * of leaving tombstones. {@code null} values are not allowed. Not thread-safe.
+ * </p>
+ *
+ * @param <V> The type of the values.
+ */
+final class LongObjectMap<V> {
+
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+
+    LongObjectMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expected Number of entries the map should hold without growing.
+     */
+    LongObjectMap(int expected) {
+        allocate(capacityFor(expected));
+    }
+
+    /**
+     * Receives the entries of a map.
+     */
+    interface EntryConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    /**
+     * Decides which entries {@link #removeIf} removes.
+     */
+    interface EntryPredicate<V> {
+        boolean test(long key, V value);
+    }
+
+    /**
+     * Returns the value of the key, or {@code null} if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            Object value = values[slot];
+            if (value == null) return null;
+            if (keys[slot] == key) return (V) value;
+        }
+    }
+
+    boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Maps the key to the value.
+     *
+     * @return the previous value of the key, or {@code null} if there was none
+     */
+    @SuppressWarnings("unchecked")
+    V put(long key, V value) {
+        if (value == null) {
+            throw new NullPointerException("LongObjectMap does not allow null values");
+        }
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            Object previous = values[slot];
+            if (previous == null) {
+                keys[slot] = key;
+                values[slot] = value;
+                if (++size > (mask + 1) * 3 / 4) {
+                    rehash(values.length * 2);
+                }
+                return null;
+            }
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return (V) previous;
+            }
+        }
+    }
+
+    /**
+     * Removes the key.
+     *
+     * @return the value the key had, or {@code null} if there was none
+     */
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            Object value = values[slot];
+            if (value == null) return null;
+            if (keys[slot] == key) {
+                removeAt(slot);
+                return (V) value;
+            }
+        }
+    }
+
+    /**
+     * Removes every entry the predicate accepts.
+     *
+     * @return the number of entries removed
+     */
+    @SuppressWarnings("unchecked")
+    int removeIf(EntryPredicate<? super V> predicate) {
+        int removed = 0;
+        // Removing shifts entries between slots, which could skip or revisit them during the
+        // walk, so the keys are collected first
+        long[] doomed = new long[Math.min(size, 16)];
+        for (int slot = 0; slot < values.length; slot++) {
+            Object value = values[slot];
+            if (value != null && predicate.test(keys[slot], (V) value)) {
+                if (removed == doomed.length) doomed = Arrays.copyOf(doomed, removed * 2);
+                doomed[removed++] = keys[slot];
+            }
+        }
+        for (int i = 0; i < removed; i++) {
+            remove(doomed[i]);
+        }
+        return removed;
+    }
+
+    /**
+     * Calls the consumer with every entry, in no particular order. The map must not be changed
+     * meanwhile.
+     */
+    @SuppressWarnings("unchecked")
+    void forEach(EntryConsumer<? super V> consumer) {
+        for (int slot = 0; slot < values.length; slot++) {
+            Object value = values[slot];
+            if (value != null) consumer.accept(keys[slot], (V) value);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Returns the approximate number of bytes the map itself takes on a 64-bit JVM with
+     * compressed references, not counting the values.
+     */
+    long estimatedBytes() {
+        return 32L + 16L + 8L * keys.length + 16L + 4L * values.length;
+    }
+
+    private int slot(long key) {
+        // Fibonacci hashing spreads packed coordinates, whose low bits are often alike
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    /**
+     * Empties a slot and moves later entries of the same probe run back, so that lookups never
+     * stop early at the hole.
+     */
+    private void removeAt(int slot) {
+        size--;
+        int hole = slot;
+        for (int next = (hole + 1) & mask; values[next] != null; next = (next + 1) & mask) {
+            int home = slot(keys[next]);
+            // The entry may fill the hole if its home slot is not between the hole and itself
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+        }
+        values[hole] = null;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] == null) continue;
+            int slot = slot(oldKeys[i]);
+            while (values[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int capacityFor(int expected) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3 / 4 < expected) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -0,0 +1,142 @@
+package org.mystikos.minecraft.orefinder;
+
+/**
+ * Which cells of one 16x16x16 chunk section hold a given block type, at four resolutions: cells
+ * of 2, 4, 8 and 16 blocks per axis.
+ * <p>
+ * A box query tests the coarsest level first. An occupied cell that lies entirely inside the box
+ * proves a match, and a box that touches no occupied cell proves there is none; only otherwise
+ * does the query move one level finer. The finest level fits in eight words and the others in
+ * one each, so a query costs a handful of word tests. Cells of the finest level that straddle
+ * the box's edge cannot be settled here, which {@link #test} reports as {@link Result#EDGE} for
+ * the caller to check against the exact positions. Instances are immutable.
+ * </p>
+ */
+final class OccupancyPyramid {
+
+    /**
+     * The outcome of a box query.
+     */
+    enum Result {
+        /**
+         * No block of the type lies inside the box.
+         */
+        NONE,
+
+        /**
+         * Some block of the type lies inside the box.
+         */
+        SOME,
+
+        /**
+         * Only cells straddling the box's edge are occupied, so the exact positions decide.
+         */
+        EDGE
+    }
+
+    /**
+     * The 2-block cells: one word per layer of cells, bit {@code cz << 3 | cx}.
+     */
+    private final long[] cells2 = new long[8];
+
+    /**
+     * The 4-block cells, bit {@code cy << 4 | cz << 2 | cx}.
+     */
+    private final long cells4;
+
+    /**
+     * The 8-block cells, bit {@code cy << 2 | cz << 1 | cx}. Non-zero exactly when the whole
+     * section, the single 16-block cell, is occupied.
+     */
+    private final int cells8;
+
+    /**
+     * @param positions Positions within the section, packed as {@code y << 8 | z << 4 | x}.
+     */
+    OccupancyPyramid(int[] positions) {
+        long cells4 = 0L;
+        int cells8 = 0;
+        for (int packed : positions) {
+            int x = packed & 15, y = (packed >> 8) & 15, z = (packed >> 4) & 15;
+            cells2[y >> 1] |= 1L << ((z >> 1) << 3 | x >> 1);
+            cells4 |= 1L << ((y >> 2) << 4 | (z >> 2) << 2 | x >> 2);
+            cells8 |= 1 << ((y >> 3) << 2 | (z >> 3) << 1 | x >> 3);
+        }
+        this.cells4 = cells4;
+        this.cells8 = cells8;
+    }
+
+    /**
+     * @return whether the section holds any block of the type
+     */
+    boolean isEmpty() {
+        return cells8 == 0;
+    }
+
+    /**
+     * Tests whether a block of the type lies inside a box of section-local coordinates, bounds
+     * included. Each bound must be between 0 and 15, and no minimum above its maximum.
+     */
+    Result test(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        if (cells8 == 0) return Result.NONE;
+        if ((minX | minY | minZ) == 0 && (maxX & maxY & maxZ) == 15) return Result.SOME;
+        if ((cells8 & mask(1, innerStart(minX, 3), innerStart(minY, 3), innerStart(minZ, 3),
+                innerEnd(maxX, 3), innerEnd(maxY, 3), innerEnd(maxZ, 3))) != 0) {
+            return Result.SOME;
+        }
+        if ((cells8 & mask(1, minX >> 3, minY >> 3, minZ >> 3, maxX >> 3, maxY >> 3, maxZ >> 3)) == 0) {
+            return Result.NONE;
+        }
+        if ((cells4 & mask(2, innerStart(minX, 2), innerStart(minY, 2), innerStart(minZ, 2),
+                innerEnd(maxX, 2), innerEnd(maxY, 2), innerEnd(maxZ, 2))) != 0) {
+            return Result.SOME;
+        }
+        if ((cells4 & mask(2, minX >> 2, minY >> 2, minZ >> 2, maxX >> 2, maxY >> 2, maxZ >> 2)) == 0) {
+            return Result.NONE;
+        }
+        // Per layer of 2-block cells, the cells fully inside the box and those it only touches
+        long inside = mask(3, innerStart(minX, 1), 0, innerStart(minZ, 1), innerEnd(maxX, 1), 0, innerEnd(maxZ, 1));
+        long touched = mask(3, minX >> 1, 0, minZ >> 1, maxX >> 1, 0, maxZ >> 1);
+        int innerMinY = innerStart(minY, 1), innerMaxY = innerEnd(maxY, 1);
+        boolean edge = false;
+        for (int cy = minY >> 1; cy <= maxY >> 1; cy++) {
+            long layer = cells2[cy];
+            if ((layer & touched) == 0) continue;
+            if (cy >= innerMinY && cy <= innerMaxY && (layer & inside) != 0) return Result.SOME;
+            edge = true;
+        }
+        return edge ? Result.EDGE : Result.NONE;
+    }
+
+    /**
+     * The first cell, at {@code 1 << shift} blocks per cell, that starts at or after {@code min}.
+     */
+    private static int innerStart(int min, int shift) {
+        return (min + (1 << shift) - 1) >> shift;
+    }
+
+    /**
+     * The last cell, at {@code 1 << shift} blocks per cell, that ends at or before {@code max}.
+     */
+    private static int innerEnd(int max, int shift) {
+        return ((max + 1) >> shift) - 1;
+    }
+
+    /**
+     * Returns the bits of the cells in the given range of a level with {@code 1 << bits} cells per
+     * axis; an empty range gives no bits.
+     */
+    private static long mask(int bits, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        if (minX > maxX || minY > maxY || minZ > maxZ) return 0L;
+        long row = (1L << (maxX + 1)) - (1L << minX);
+        long plane = 0L;
+        for (int z = minZ; z <= maxZ; z++) {
+            plane |= row << (z << bits);
+        }
+        long mask = 0L;
+        for (int y = minY; y <= maxY; y++) {
+            mask |= plane << (y << (2 * bits));
+        }
+        return mask;
+    }
+}
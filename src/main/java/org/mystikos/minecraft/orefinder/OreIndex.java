@@ -0,0 +1,732 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches where the configured ore materials sit inside each 16x16x16 chunk section.
+ * <p>
+ * Sections are scanned lazily the first time a search needs them and kept in a bounded
+ * least-recently-used map. Entries are dropped when a block inside the section changes or the
+ * chunk unloads, so the next search rescans them from fresh snapshots, unless the new block type
+ * is known, in which case the cached section is updated in place. All methods are thread-safe.
+ * </p>
+ * <p>
+ * The positions of every cached section are also kept in a {@link BlockPositionSet} per world and
+ * material, so {@link #nearest} answers how far the nearest cached ore is without visiting the
+ * sections one by one.
+ * </p>
+ */
+final class OreIndex implements BlockChangeObserver, SectionFilter {
+
+    private static final int[] NO_POSITIONS = new int[0];
+
+    /**
+     * Number of recently changed sections remembered for {@link #getOrScan}'s staleness check.
+     */
+    private static final int MAX_RECENT_CHANGES = 4096;
+
+    private final Map<SectionKey, Section> sections;
+    private volatile int maxSections = 1;
+    private volatile Set<Material> materials = Collections.emptySet();
+
+    /**
+     * Counts block changes, so scans of snapshots taken before a change can be recognised.
+     */
+    private long changeCount;
+
+    /**
+     * The change count at which each recently changed section was last touched. Sections that
+     * fell out of this map are covered by {@link #forgottenChanges}.
+     */
+    private final Map<SectionKey, Long> recentChanges;
+    private long forgottenChanges;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+
+    /**
+     * The positions of all cached sections, per world. The map is guarded by the lock, and each
+     * grid by its own monitor as well, which is taken while holding the lock.
+     */
+    private final Map<UUID, Grid> grids = new HashMap<>();
+
+    /**
+     * Counts resets and removals of sections holding positions, so {@link #nearest} can tell
+     * whether the grid still covers the sections a caller saw. Guarded by the lock.
+     */
+    private long removalCount;
+    private long lastReset;
+
+    /**
+     * Keeps scanned sections on disk across restarts, or {@code null} if they are not persisted.
+     */
+    private volatile OreIndexStore store;
+
+    /**
+     * Creates an empty index that records nothing until {@link #reset(Set, int)} is called.
+     */
+    OreIndex() {
+        this.sections = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<SectionKey, Section> eldest) {
+                if (size() > OreIndex.this.maxSections) {
+                    evictions.incrementAndGet();
+                    removePositions(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.recentChanges = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<SectionKey, Long> eldest) {
+                if (size() > MAX_RECENT_CHANGES) {
+                    forgottenChanges = eldest.getValue();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the current change stamp. Callers that capture snapshots for a later
+     * {@link #getOrScan} must read the stamp at capture time.
+     */
+    long stamp() {
+        synchronized (sections) {
+            return changeCount;
+        }
+    }
+
+    /**
+     * Sets the materials recorded by the index and its size bound, and drops everything
+     * indexed so far.
+     *
+     * @param indexed     The materials to record.
+     * @param maxSections Maximum number of sections kept before the least recently used is evicted.
+     */
+    void reset(Set<Material> indexed, int maxSections) {
+        if (maxSections < 1) {
+            throw new IllegalArgumentException("Ore index size must be positive");
+        }
+        synchronized (sections) {
+            this.maxSections = maxSections;
+            materials = indexed.isEmpty() ? Collections.emptySet() : Collections.unmodifiableSet(EnumSet.copyOf(indexed));
+            sections.clear();
+            lastReset = ++removalCount;
+            // Queries still holding a dropped grid must see that it no longer covers anything
+            for (Grid grid : grids.values()) {
+                synchronized (grid) {
+                    grid.lastRemoval = lastReset;
+                }
+            }
+            grids.clear();
+        }
+    }
+
+    /**
+     * Sets where scanned sections are persisted, or {@code null} to keep them in memory only.
+     * The store must record the same materials as the index.
+     */
+    void setStore(OreIndexStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Returns the indexed contents of a section, scanning it from the source if it is neither
+     * cached nor persisted.
+     *
+     * @param source   Supplies the chunk snapshot on a cache miss.
+     * @param chunkX   Chunk X coordinate.
+     * @param sectionY Section Y coordinate (block Y >> 4).
+     * @param chunkZ   Chunk Z coordinate.
+     * @param stamp    The {@link #stamp()} read when the source's snapshots were captured. A scan
+     *                 is only cached if the section has not changed since then.
+     * @return the section, or {@code null} if it is not cached and the source cannot supply its chunk
+     */
+    Section getOrScan(ChunkSource source, int chunkX, int sectionY, int chunkZ, long stamp) {
+        SectionKey key = new SectionKey(source.getWorldId(), chunkX, sectionY, chunkZ);
+        Section section;
+        synchronized (sections) {
+            section = sections.get(key);
+        }
+        if (section != null) {
+            hits.incrementAndGet();
+            return section;
+        }
+        misses.incrementAndGet();
+        return load(key, source, stamp);
+    }
+
+    /**
+     * Indexes every section of a chunk that is not cached yet, ahead of any search needing it.
+     * Does not count as hits or misses.
+     *
+     * @param source Supplies the chunk snapshot.
+     * @param chunkX Chunk X coordinate.
+     * @param chunkZ Chunk Z coordinate.
+     * @param stamp  The {@link #stamp()} read when the source's snapshot was captured.
+     * @return the number of sections added
+     */
+    int index(ChunkSource source, int chunkX, int chunkZ, long stamp) {
+        if (materials.isEmpty()) return 0;
+        int added = 0;
+        int minSection = source.getMinHeight() >> 4;
+        int maxSection = (source.getMaxHeight() - 1) >> 4;
+        for (int sy = minSection; sy <= maxSection; sy++) {
+            SectionKey key = new SectionKey(source.getWorldId(), chunkX, sy, chunkZ);
+            synchronized (sections) {
+                if (sections.containsKey(key)) continue;
+            }
+            if (load(key, source, stamp) == null) break;
+            added++;
+        }
+        return added;
+    }
+
+    /**
+     * Reads an uncached section from the store, or else scans it from the source, and caches it
+     * unless it may be stale.
+     */
+    private Section load(SectionKey key, ChunkSource source, long stamp) {
+        Set<Material> indexed = materials;
+        OreIndexStore store = this.store;
+        Section section = store == null ? null
+                : store.load(key.worldId(), key.chunkX(), key.sectionY(), key.chunkZ());
+        if (section != null) {
+            loads.incrementAndGet();
+            synchronized (sections) {
+                // The store drops sections on every block change, so a loaded one is current
+                // unless the change came in while loading
+                if (indexed == materials && !changedSince(key, stamp)) {
+                    cache(key, section);
+                }
+            }
+            return section;
+        }
+        ChunkSnapshot snapshot = source.getChunkSnapshot(key.chunkX(), key.chunkZ());
+        if (snapshot == null) return null;
+        section = Section.scan(snapshot, key.sectionY(), source.getMinHeight(), source.getMaxHeight(), indexed);
+        synchronized (sections) {
+            // A reset while scanning means the section was built for stale materials, and a
+            // change after the snapshot was taken means it was built from stale blocks
+            if (indexed == materials && !changedSince(key, stamp)) {
+                cache(key, section);
+                if (store != null) {
+                    store.save(key.worldId(), key.chunkX(), key.sectionY(), key.chunkZ(), section);
+                }
+            }
+        }
+        return section;
+    }
+
+    /**
+     * Returns the removal stamp of a world, to be passed to {@link #nearest} later.
+     */
+    long removals(UUID worldId) {
+        synchronized (sections) {
+            Grid grid = grids.get(worldId);
+            return grid == null ? lastReset : Math.max(lastReset, grid.lastRemoval);
+        }
+    }
+
+    /**
+     * Lowers each entry of {@code best} to the distance, in the profile's metric, from the given
+     * point to the nearest cached block of its target within the profile's vertical radius, if that
+     * is closer than both the entry and {@code limit}.
+     * <p>
+     * The answer covers every section cached at any time since {@code removals} was read from
+     * {@link #removals(UUID)}, as long as none of them was dropped meanwhile. If one was, nothing is
+     * changed and the caller has to measure the sections it holds itself. The query only holds
+     * the world's grid, not the index's lock.
+     * </p>
+     *
+     * @return whether {@code best} has been brought up to date
+     */
+    boolean nearest(UUID worldId, Material[] targets, int x, int y, int z, SearchProfile profile,
+                    int limit, int[] best, long removals) {
+        int vertical = profile.verticalRadius();
+        BlockPositionSet.Metric metric = (dx, dy, dz) ->
+                Math.abs(dy) > vertical ? Integer.MAX_VALUE : profile.distance(dx, dy, dz);
+        Grid grid;
+        long reset;
+        synchronized (sections) {
+            grid = grids.get(worldId);
+            reset = lastReset;
+        }
+        if (grid == null) return reset == removals;
+        synchronized (grid) {
+            if (Math.max(reset, grid.lastRemoval) != removals) return false;
+            for (int t = 0; t < targets.length; t++) {
+                BlockPositionSet positions = grid.positions.get(targets[t]);
+                if (positions == null) continue;
+                int bound = Math.min(best[t], limit);
+                int d = positions.nearest(x, y, z, bound, metric);
+                if (d < bound) best[t] = d;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Returns whether a section is cached, without counting a hit or miss.
+     */
+    boolean isCached(UUID worldId, int chunkX, int sectionY, int chunkZ) {
+        synchronized (sections) {
+            return sections.containsKey(new SectionKey(worldId, chunkX, sectionY, chunkZ));
+        }
+    }
+
+    /**
+     * Returns whether every section of a chunk from {@code minSectionY} to {@code maxSectionY},
+     * bounds included, is cached, without counting hits or misses.
+     */
+    boolean isCached(UUID worldId, int chunkX, int chunkZ, int minSectionY, int maxSectionY) {
+        synchronized (sections) {
+            for (int sy = minSectionY; sy <= maxSectionY; sy++) {
+                if (!sections.containsKey(new SectionKey(worldId, chunkX, sy, chunkZ))) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Skips sections the index already knows hold no {@code target}. Sections that are not cached
+     * are let through without being scanned, and lookups here do not count as hits or misses.
+     */
+    @Override
+    public boolean mayContain(UUID worldId, ChunkSnapshot snapshot, int sectionY, Material target) {
+        if (!materials.contains(target)) return true;
+        Section section;
+        synchronized (sections) {
+            section = sections.get(new SectionKey(worldId, snapshot.getX(), sectionY, snapshot.getZ()));
+        }
+        return section == null || section.positions(target).length > 0;
+    }
+
+    @Override
+    public void blockChanged(World world, int x, int y, int z) {
+        SectionKey key = new SectionKey(world.getUID(), x >> 4, y >> 4, z >> 4);
+        synchronized (sections) {
+            invalidate(key);
+        }
+        OreIndexStore store = this.store;
+        if (store != null) {
+            store.remove(key.worldId(), key.chunkX(), key.sectionY(), key.chunkZ());
+        }
+    }
+
+    /**
+     * Updates a cached section in place instead of dropping it, so the next search needs no
+     * rescan.
+     */
+    @Override
+    public void blockReplaced(World world, int x, int y, int z, Material type) {
+        SectionKey key = new SectionKey(world.getUID(), x >> 4, y >> 4, z >> 4);
+        Section section;
+        Section updated = null;
+        synchronized (sections) {
+            recentChanges.put(key, ++changeCount);
+            section = sections.get(key);
+            if (section != null) {
+                updated = section.replace(x, y, z, type, materials);
+                if (updated != section) {
+                    cache(key, updated);
+                    updates.incrementAndGet();
+                }
+            }
+        }
+        OreIndexStore store = this.store;
+        if (store != null) {
+            if (updated == null) {
+                store.remove(key.worldId(), key.chunkX(), key.sectionY(), key.chunkZ());
+            } else if (updated != section) {
+                store.save(key.worldId(), key.chunkX(), key.sectionY(), key.chunkZ(), updated);
+            }
+        }
+    }
+
+    @Override
+    public void chunkUnloaded(World world, int chunkX, int chunkZ) {
+        UUID worldId = world.getUID();
+        int minSection = world.getMinHeight() >> 4;
+        int maxSection = (world.getMaxHeight() - 1) >> 4;
+        synchronized (sections) {
+            for (int sy = minSection; sy <= maxSection; sy++) {
+                invalidate(new SectionKey(worldId, chunkX, sy, chunkZ));
+            }
+        }
+    }
+
+    /**
+     * Drops a section and records the change. Must be called while holding the lock.
+     */
+    private void invalidate(SectionKey key) {
+        recentChanges.put(key, ++changeCount);
+        Section section = sections.remove(key);
+        if (section != null) {
+            invalidations.incrementAndGet();
+            removePositions(key, section);
+        }
+    }
+
+    /**
+     * Caches a section and adds its positions to the grid, replacing any earlier version. Must be
+     * called while holding the lock.
+     */
+    private void cache(SectionKey key, Section section) {
+        Section previous = sections.put(key, section);
+        if (section.positions.isEmpty() && (previous == null || previous.positions.isEmpty())) return;
+        Grid grid = grids.computeIfAbsent(key.worldId(), id -> new Grid());
+        synchronized (grid) {
+            if (previous != null) {
+                // The replacement carries on where the previous version left off, so this is no removal
+                updatePositions(grid, key, previous, false);
+            }
+            updatePositions(grid, key, section, true);
+        }
+    }
+
+    /**
+     * Takes the positions of a dropped section out of the grid. Must be called while holding the
+     * lock.
+     */
+    private void removePositions(SectionKey key, Section section) {
+        if (section.positions.isEmpty()) return;
+        Grid grid = grids.get(key.worldId());
+        synchronized (grid) {
+            updatePositions(grid, key, section, false);
+            grid.lastRemoval = ++removalCount;
+        }
+    }
+
+    /**
+     * Adds the positions of a section to its world's grid or removes them. Must be called while
+     * holding both the lock and the grid's.
+     */
+    private static void updatePositions(Grid grid, SectionKey key, Section section, boolean add) {
+        int baseX = key.chunkX() << 4, baseY = key.sectionY() << 4, baseZ = key.chunkZ() << 4;
+        for (Map.Entry<Material, int[]> entry : section.positions.entrySet()) {
+            BlockPositionSet set = grid.positions.computeIfAbsent(entry.getKey(), m -> new BlockPositionSet());
+            for (int packed : entry.getValue()) {
+                int bx = baseX + (packed & 15), by = baseY + (packed >> 8), bz = baseZ + ((packed >> 4) & 15);
+                if (add) {
+                    set.add(bx, by, bz);
+                } else {
+                    set.remove(bx, by, bz);
+                }
+            }
+            if (set.isEmpty()) grid.positions.remove(entry.getKey());
+        }
+    }
+
+    /**
+     * Returns whether the section may have changed after the given stamp. Must be called while
+     * holding the lock.
+     */
+    private boolean changedSince(SectionKey key, long stamp) {
+        if (stamp == changeCount) return false;
+        if (stamp < forgottenChanges) return true;
+        Long changed = recentChanges.get(key);
+        return changed != null && changed > stamp;
+    }
+
+    /**
+     * @return the number of sections kept before the least recently used is evicted
+     */
+    int getMaxSections() {
+        return maxSections;
+    }
+
+    /**
+     * @return the number of sections currently cached
+     */
+    int size() {
+        synchronized (sections) {
+            return sections.size();
+        }
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    long getEvictions() {
+        return evictions.get();
+    }
+
+    long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * @return the number of sections loaded from the store instead of being scanned
+     */
+    long getLoads() {
+        return loads.get();
+    }
+
+    /**
+     * @return the number of cached sections updated in place after a block change
+     */
+    long getUpdates() {
+        return updates.get();
+    }
+
+    /**
+     * The positions of the cached sections of one world, per material. Guarded by its own monitor,
+     * so {@link #nearest} can query it without holding the index's lock.
+     */
+    private static final class Grid {
+        final Map<Material, BlockPositionSet> positions = new EnumMap<>(Material.class);
+        long lastRemoval;
+    }
+
+    /**
+     * Identifies a chunk section within a world.
+     */
+    private record SectionKey(UUID worldId, int chunkX, int sectionY, int chunkZ) {
+    }
+
+    /**
+     * The indexed ore positions of one chunk section. Positions are packed as
+     * {@code (y & 15) << 8 | (z & 15) << 4 | (x & 15)}, and summarised per material by an
+     * {@link OccupancyPyramid} for box queries. Instances are immutable.
+     */
+    static final class Section {
+
+        private static final Section EMPTY = new Section(0, 0, 0, Collections.emptyMap());
+
+        private final int baseX;
+        private final int baseY;
+        private final int baseZ;
+        private final Map<Material, int[]> positions;
+        private final Map<Material, OccupancyPyramid> occupancy;
+
+        private Section(int baseX, int baseY, int baseZ, Map<Material, int[]> positions) {
+            this.baseX = baseX;
+            this.baseY = baseY;
+            this.baseZ = baseZ;
+            this.positions = positions;
+            if (positions.isEmpty()) {
+                this.occupancy = Collections.emptyMap();
+            } else {
+                this.occupancy = new EnumMap<>(Material.class);
+                positions.forEach((material, packed) -> occupancy.put(material, new OccupancyPyramid(packed)));
+            }
+        }
+
+        /**
+         * Records the positions of the given materials within one section of a chunk snapshot.
+         */
+        static Section scan(ChunkSnapshot snapshot, int sectionY, int minHeight, int maxHeight, Set<Material> materials) {
+            int baseY = sectionY << 4;
+            if (materials.isEmpty() || baseY + 16 <= minHeight || baseY >= maxHeight) {
+                return EMPTY;
+            }
+            int[] found = new int[16];
+            Material[] foundTypes = new Material[16];
+            int count = 0;
+            for (int ly = 0; ly < 16; ly++) {
+                int y = baseY + ly;
+                if (y < minHeight || y >= maxHeight) continue;
+                for (int lz = 0; lz < 16; lz++) {
+                    for (int lx = 0; lx < 16; lx++) {
+                        Material type = snapshot.getBlockType(lx, y, lz);
+                        if (materials.contains(type)) {
+                            if (count == found.length) {
+                                found = Arrays.copyOf(found, count * 2);
+                                foundTypes = Arrays.copyOf(foundTypes, count * 2);
+                            }
+                            found[count] = ly << 8 | lz << 4 | lx;
+                            foundTypes[count] = type;
+                            count++;
+                        }
+                    }
+                }
+            }
+            if (count == 0) return EMPTY;
+
+            Map<Material, int[]> positions = new EnumMap<>(Material.class);
+            for (int i = 0; i < count; i++) {
+                Material type = foundTypes[i];
+                if (positions.containsKey(type)) continue;
+                int matches = 0;
+                for (int j = i; j < count; j++) {
+                    if (foundTypes[j] == type) matches++;
+                }
+                int[] packed = new int[matches];
+                for (int j = i, n = 0; j < count; j++) {
+                    if (foundTypes[j] == type) packed[n++] = found[j];
+                }
+                positions.put(type, packed);
+            }
+            return new Section(snapshot.getX() << 4, baseY, snapshot.getZ() << 4, positions);
+        }
+
+        /**
+         * Returns the number of bytes {@link #write} needs for this section.
+         */
+        int serializedSize() {
+            int size = Short.BYTES;
+            for (int[] packed : positions.values()) {
+                size += 2 * Short.BYTES + packed.length * Short.BYTES;
+            }
+            return size;
+        }
+
+        /**
+         * Writes the recorded positions, naming each material by its index in {@code table}.
+         */
+        void write(ByteBuffer out, Map<Material, Integer> table) {
+            out.putShort((short) positions.size());
+            for (Map.Entry<Material, int[]> entry : positions.entrySet()) {
+                out.putShort(table.get(entry.getKey()).shortValue());
+                out.putShort((short) entry.getValue().length);
+                for (int packed : entry.getValue()) {
+                    out.putShort((short) packed);
+                }
+            }
+        }
+
+        /**
+         * Reads a section written by {@link #write}.
+         *
+         * @param in    The buffer positioned at the section.
+         * @param table The materials the written indices refer to.
+         * @throws IllegalArgumentException if the data is malformed.
+         */
+        static Section read(ByteBuffer in, int chunkX, int sectionY, int chunkZ, Material[] table) {
+            int materials = in.getShort();
+            if (materials == 0) return EMPTY;
+            Map<Material, int[]> positions = new EnumMap<>(Material.class);
+            for (int m = 0; m < materials; m++) {
+                int index = in.getShort();
+                int count = in.getShort();
+                if (index < 0 || index >= table.length || count < 0 || count > 16 * 16 * 16) {
+                    throw new IllegalArgumentException("Malformed section " + chunkX + "," + sectionY + "," + chunkZ);
+                }
+                int[] packed = new int[count];
+                for (int i = 0; i < count; i++) {
+                    packed[i] = in.getShort() & 0xFFF;
+                }
+                positions.put(table[index], packed);
+            }
+            return new Section(chunkX << 4, sectionY << 4, chunkZ << 4, positions);
+        }
+
+        /**
+         * @return the packed positions of {@code material} in this section, never {@code null}
+         */
+        int[] positions(Material material) {
+            return positions.getOrDefault(material, NO_POSITIONS);
+        }
+
+        /**
+         * Returns whether the section holds a block of {@code material} inside the given box of
+         * world coordinates, bounds included. The occupancy pyramid settles most boxes; positions
+         * are only compared when occupied cells straddle the box's edge.
+         */
+        boolean holds(Material material, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+            OccupancyPyramid pyramid = occupancy.get(material);
+            if (pyramid == null) return false;
+            int lowX = Math.max(minX - baseX, 0), highX = Math.min(maxX - baseX, 15);
+            int lowY = Math.max(minY - baseY, 0), highY = Math.min(maxY - baseY, 15);
+            int lowZ = Math.max(minZ - baseZ, 0), highZ = Math.min(maxZ - baseZ, 15);
+            if (lowX > highX || lowY > highY || lowZ > highZ) return false;
+            OccupancyPyramid.Result result = pyramid.test(lowX, lowY, lowZ, highX, highY, highZ);
+            if (result != OccupancyPyramid.Result.EDGE) return result == OccupancyPyramid.Result.SOME;
+            for (int packed : positions(material)) {
+                int lx = packed & 15, ly = packed >> 8, lz = (packed >> 4) & 15;
+                if (lx >= lowX && lx <= highX && ly >= lowY && ly <= highY && lz >= lowZ && lz <= highZ) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns a copy of this section in which the block at the given world position is of
+         * {@code type}, or this section itself if no recorded position changes.
+         *
+         * @param materials The materials the index records.
+         */
+        Section replace(int x, int y, int z, Material type, Set<Material> materials) {
+            int target = (y & 15) << 8 | (z & 15) << 4 | (x & 15);
+            boolean changed = false;
+            Map<Material, int[]> replaced = new EnumMap<>(Material.class);
+            for (Map.Entry<Material, int[]> entry : positions.entrySet()) {
+                int[] packed = entry.getValue();
+                int at = indexOf(packed, target);
+                if (at >= 0 && entry.getKey() != type) {
+                    changed = true;
+                    if (packed.length == 1) continue;
+                    int[] rest = new int[packed.length - 1];
+                    System.arraycopy(packed, 0, rest, 0, at);
+                    System.arraycopy(packed, at + 1, rest, at, rest.length - at);
+                    packed = rest;
+                }
+                replaced.put(entry.getKey(), packed);
+            }
+            if (materials.contains(type)) {
+                int[] packed = replaced.getOrDefault(type, NO_POSITIONS);
+                if (indexOf(packed, target) < 0) {
+                    changed = true;
+                    packed = Arrays.copyOf(packed, packed.length + 1);
+                    packed[packed.length - 1] = target;
+                    replaced.put(type, packed);
+                }
+            }
+            if (!changed) return this;
+            if (replaced.isEmpty()) return EMPTY;
+            return new Section(x & ~15, y & ~15, z & ~15, replaced);
+        }
+
+        private static int indexOf(int[] packed, int target) {
+            for (int i = 0; i < packed.length; i++) {
+                if (packed[i] == target) return i;
+            }
+            return -1;
+        }
+
+        /**
+         * Returns the distance, in the profile's metric, from the given point to the nearest indexed
+         * block of {@code material} in this section that lies within the profile's vertical radius,
+         * or {@link Integer#MAX_VALUE} if there is none.
+         */
+        int nearest(Material material, int x, int y, int z, SearchProfile profile) {
+            int best = Integer.MAX_VALUE;
+            int verticalRadius = profile.verticalRadius();
+            for (int packed : positions(material)) {
+                int dy = baseY + (packed >> 8) - y;
+                if (Math.abs(dy) > verticalRadius) continue;
+                int d = profile.distance(baseX + (packed & 15) - x, dy, baseZ + ((packed >> 4) & 15) - z);
+                if (d < best) best = d;
+            }
+            return best;
+        }
+    }
+}
@@ -0,0 +1,561 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.World;
+import org.bukkit.persistence.PersistentDataType;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the sections scanned by {@link OreIndex} on disk, so that the index does not start cold
+ * after a restart.
+ * <p>
+ * Sections are stored per world region of 32x32 chunks, in
+ * {@code <directory>/<world UUID>/r.<x>.<z>.idx}. A region file is read the first time one of its
+ * sections is needed, kept in memory while in use, and rewritten whole when {@link #flush()} finds
+ * it changed. Saving or removing a section never touches the disk: changes to regions that are not
+ * in memory are queued until the region is next read, which {@code flush()} does for every region
+ * with queued changes. Neither does loading on the main server thread: a region that is not in
+ * memory counts as holding nothing and is read by the next {@code flush()}. The store's lock is
+ * never held while reading or writing files, so {@code flush()} can run on a background thread
+ * without stalling the main thread. Every file starts with a header holding a magic number, the
+ * format version and a CRC-32 of the rest; files that fail these checks or record other materials
+ * are discarded.
+ * </p>
+ * <p>
+ * Edits made while the store is not open are not seen. When the store is closed cleanly, a random
+ * token is written both to a {@code world.dat} in the world's directory and to the world's own
+ * persistent data, which the server saves with the world; opening the store clears the file's
+ * token again. When a world is {@linkplain #open(World) opened} and the two tokens differ, the
+ * server stopped without closing the store or the world was replaced, for instance from a backup,
+ * and the world's files are thrown away. Unlike the world's time, the token cannot be matched by
+ * accident. All methods are thread-safe.
+ * </p>
+ */
+final class OreIndexStore {
+
+    private static final int MAGIC = 0x4F464958; // "OFIX"
+    private static final int VERSION = 1;
+    private static final String WORLD_FILE = "world.dat";
+
+    /**
+     * Where the token of the last clean close is kept in the world's persistent data.
+     */
+    private static final NamespacedKey TOKEN_KEY = NamespacedKey.fromString("orefinder:index_token");
+
+    /**
+     * Regions kept in memory before the least recently used is written out and dropped.
+     */
+    private static final int MAX_LOADED_REGIONS = 64;
+
+    private final Path directory;
+    private final Logger logger;
+    private final Set<Material> materials;
+    private final Material[] table;
+    private final Map<Material, Integer> tableIndex = new HashMap<>();
+
+    /**
+     * Worlds whose stored data was checked by {@link #open(World)}; other worlds are not persisted.
+     */
+    private final Map<UUID, World> openWorlds = new HashMap<>();
+
+    /**
+     * The regions in memory, least recently used first.
+     */
+    private final Map<RegionKey, Region> regions = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Changes to regions that are not in memory, applied when they are next read.
+     */
+    private final Map<RegionKey, LongObjectMap<Change>> pending = new HashMap<>();
+
+    /**
+     * Regions the main server thread needed but did not read, read on the next {@link #flush()}.
+     */
+    private final Set<RegionKey> prefetch = new HashSet<>();
+
+    /**
+     * Counts regions dropped from memory, so a read that raced with one can be retried.
+     */
+    private long dropped;
+
+    /**
+     * Held by the writer for the whole of {@link #flush()}, so writes of a region never overlap.
+     * The store's own lock is never held during file I/O.
+     */
+    private final Object writeLock = new Object();
+
+    /**
+     * @param directory The directory holding one subdirectory per world.
+     * @param materials The materials recorded by the index.
+     * @param logger    Receives warnings about unreadable or unwritable files.
+     */
+    OreIndexStore(File directory, Set<Material> materials, Logger logger) {
+        this.directory = directory.toPath();
+        this.logger = logger;
+        this.materials = materials.isEmpty() ? EnumSet.noneOf(Material.class) : EnumSet.copyOf(materials);
+        this.table = this.materials.toArray(new Material[0]);
+        for (int i = 0; i < table.length; i++) {
+            tableIndex.put(table[i], i);
+        }
+    }
+
+    /**
+     * @return whether this store records exactly the given materials, so an index recording them
+     *         can keep using it
+     */
+    boolean records(Set<Material> materials) {
+        return this.materials.equals(materials);
+    }
+
+    /**
+     * Starts persisting a world, discarding its stored sections if the world may have changed
+     * since they were written. Must be called on the main server thread before the world has
+     * ticked with the plugin enabled.
+     */
+    void open(World world) {
+        UUID worldId = world.getUID();
+        synchronized (this) {
+            if (openWorlds.containsKey(worldId)) return;
+        }
+        Path worldDir = directory.resolve(worldId.toString());
+        Path marker = worldDir.resolve(WORLD_FILE);
+        try {
+            UUID token = readToken(marker);
+            if (token == null || !token.toString().equals(
+                    world.getPersistentDataContainer().get(TOKEN_KEY, PersistentDataType.STRING))) {
+                deleteRegions(worldDir);
+            }
+            // Until the next clean close the stored data may miss changes
+            Files.createDirectories(worldDir);
+            writeToken(marker, null);
+            synchronized (this) {
+                openWorlds.put(worldId, world);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not open the ore index of world " + world.getName(), e);
+        }
+    }
+
+    /**
+     * Returns the stored section, or {@code null} if it is not stored, its world is not open or
+     * the calling thread was interrupted while reading. Reads the region file if the region is
+     * not in memory, without holding the lock, unless called on the main server thread: there the
+     * section counts as not stored, and the region is read on the next {@link #flush()}.
+     */
+    OreIndex.Section load(UUID worldId, int chunkX, int sectionY, int chunkZ) {
+        RegionKey key = new RegionKey(worldId, chunkX >> 5, chunkZ >> 5);
+        Region region;
+        if (Bukkit.isPrimaryThread()) {
+            synchronized (this) {
+                if (!openWorlds.containsKey(worldId)) return null;
+                region = regions.get(key);
+                if (region == null) {
+                    prefetch.add(key);
+                    return null;
+                }
+                return region.sections.get(sectionKey(chunkX, sectionY, chunkZ));
+            }
+        }
+        region = region(key);
+        if (region == null) return null;
+        synchronized (this) {
+            return region.sections.get(sectionKey(chunkX, sectionY, chunkZ));
+        }
+    }
+
+    /**
+     * Records a freshly scanned section, to be written on the next {@link #flush()}. Never reads
+     * or writes files.
+     */
+    synchronized void save(UUID worldId, int chunkX, int sectionY, int chunkZ, OreIndex.Section section) {
+        change(worldId, chunkX, sectionY, chunkZ, new Change(section));
+    }
+
+    /**
+     * Forgets a section whose blocks changed. Never reads or writes files.
+     */
+    synchronized void remove(UUID worldId, int chunkX, int sectionY, int chunkZ) {
+        change(worldId, chunkX, sectionY, chunkZ, Change.REMOVED);
+    }
+
+    /**
+     * Applies a change to the region in memory, or queues it if the region is not. Must be called
+     * while holding the lock.
+     */
+    private void change(UUID worldId, int chunkX, int sectionY, int chunkZ, Change change) {
+        if (!openWorlds.containsKey(worldId)) return;
+        RegionKey key = new RegionKey(worldId, chunkX >> 5, chunkZ >> 5);
+        long sectionKey = sectionKey(chunkX, sectionY, chunkZ);
+        Region region = regions.get(key);
+        if (region == null) {
+            pending.computeIfAbsent(key, k -> new LongObjectMap<>()).put(sectionKey, change);
+        } else if (change.apply(region.sections, sectionKey)) {
+            region.dirty = true;
+        }
+    }
+
+    /**
+     * Writes every region changed since it was last written, first reading the regions that
+     * have queued changes or that the main server thread needed, and drops the least recently
+     * used regions beyond {@link #MAX_LOADED_REGIONS}. Meant to run off the main server thread.
+     */
+    void flush() {
+        synchronized (writeLock) {
+            List<RegionKey> queued;
+            synchronized (this) {
+                queued = new ArrayList<>(pending.keySet());
+                queued.addAll(prefetch);
+                prefetch.clear();
+            }
+            for (RegionKey key : queued) {
+                region(key);
+            }
+            Map<RegionKey, LongObjectMap<OreIndex.Section>> changed = new HashMap<>();
+            synchronized (this) {
+                for (Map.Entry<RegionKey, Region> entry : regions.entrySet()) {
+                    Region region = entry.getValue();
+                    if (!region.dirty) continue;
+                    // Written from a copy, so changes can keep coming in meanwhile
+                    LongObjectMap<OreIndex.Section> copy = new LongObjectMap<>(region.sections.size());
+                    region.sections.forEach(copy::put);
+                    changed.put(entry.getKey(), copy);
+                    region.dirty = false;
+                    region.writing = true;
+                }
+            }
+            Set<RegionKey> failed = new HashSet<>();
+            changed.forEach((key, sections) -> {
+                if (!write(key, sections)) failed.add(key);
+            });
+            synchronized (this) {
+                for (RegionKey key : changed.keySet()) {
+                    Region region = regions.get(key);
+                    if (region == null) continue;
+                    region.writing = false;
+                    if (failed.contains(key)) region.dirty = true;
+                }
+                trim();
+            }
+        }
+    }
+
+    /**
+     * Stops persisting every open world without writing anything, for a store replaced while the
+     * server runs. Its worlds stay marked as not closed cleanly, so the next store to open them
+     * discards their files. Unlike {@link #close()}, never waits for a flush to finish.
+     */
+    void discard() {
+        synchronized (this) {
+            openWorlds.clear();
+            regions.clear();
+            pending.clear();
+            prefetch.clear();
+        }
+    }
+
+    /**
+     * Writes every changed region and marks each open world as cleanly closed with a fresh token.
+     * Must be called on the main server thread. Holds the writer's lock throughout, so a flush
+     * running in the background cannot start writing in between.
+     */
+    void close() {
+        synchronized (writeLock) {
+            synchronized (this) {
+                prefetch.clear();
+            }
+            flush();
+            List<World> closed;
+            synchronized (this) {
+                closed = new ArrayList<>(openWorlds.values());
+                openWorlds.clear();
+                regions.clear();
+                pending.clear();
+                prefetch.clear();
+            }
+            for (World world : closed) {
+                try {
+                    UUID token = UUID.randomUUID();
+                    world.getPersistentDataContainer().set(TOKEN_KEY, PersistentDataType.STRING, token.toString());
+                    writeToken(directory.resolve(world.getUID().toString()).resolve(WORLD_FILE), token);
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Could not close the ore index of world " + world.getName(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the region in memory, reading it from disk without holding the lock if needed, or
+     * {@code null} if its world is not open or the calling thread was interrupted while reading.
+     */
+    private Region region(RegionKey key) {
+        while (true) {
+            long droppedBefore;
+            synchronized (this) {
+                if (!openWorlds.containsKey(key.worldId())) return null;
+                Region region = regions.get(key);
+                if (region != null) return region;
+                droppedBefore = dropped;
+            }
+            Region read = read(key);
+            if (read == null) return null;
+            synchronized (this) {
+                if (!openWorlds.containsKey(key.worldId())) return null;
+                Region region = regions.get(key);
+                if (region != null) return region;
+                // A region dropped while reading may have been written after the read began
+                if (dropped != droppedBefore) continue;
+                LongObjectMap<Change> changes = pending.remove(key);
+                if (changes != null) {
+                    changes.forEach((sectionKey, change) -> read.dirty |= change.apply(read.sections, sectionKey));
+                }
+                regions.put(key, read);
+                trim();
+                return read;
+            }
+        }
+    }
+
+    /**
+     * Drops the least recently used regions beyond {@link #MAX_LOADED_REGIONS} that have been
+     * written. Must be called while holding the lock.
+     */
+    private void trim() {
+        Iterator<Region> iterator = regions.values().iterator();
+        int excess = regions.size() - MAX_LOADED_REGIONS;
+        while (excess > 0 && iterator.hasNext()) {
+            Region region = iterator.next();
+            if (region.dirty || region.writing) continue;
+            iterator.remove();
+            dropped++;
+            excess--;
+        }
+    }
+
+    private Path file(RegionKey key) {
+        return directory.resolve(key.worldId().toString()).resolve("r." + key.regionX() + "." + key.regionZ() + ".idx");
+    }
+
+    /**
+     * Reads a region file, or returns an empty region if there is none or it cannot be used.
+     * Returns {@code null} if the calling thread is interrupted, as a cancelled search is, so the
+     * file is neither discarded nor replaced by an empty region.
+     */
+    private Region read(RegionKey key) {
+        Region region = new Region();
+        Path file = file(key);
+        if (!Files.exists(file)) return region;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer in = ByteBuffer.allocate((int) channel.size());
+            while (in.hasRemaining() && channel.read(in) >= 0) {
+                // Keep reading until the buffer is full
+            }
+            in.flip();
+            if (in.remaining() < 16 || in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw new IllegalArgumentException("unknown format");
+            }
+            long checksum = in.getLong();
+            CRC32 crc = new CRC32();
+            crc.update(in.duplicate());
+            if (crc.getValue() != checksum) {
+                throw new IllegalArgumentException("checksum mismatch");
+            }
+            Material[] stored = new Material[in.getShort()];
+            Set<Material> storedSet = EnumSet.noneOf(Material.class);
+            for (int i = 0; i < stored.length; i++) {
+                byte[] name = new byte[in.getShort()];
+                in.get(name);
+                stored[i] = Material.valueOf(new String(name, StandardCharsets.UTF_8));
+                storedSet.add(stored[i]);
+            }
+            if (!materials.equals(storedSet)) {
+                // Sections written for other materials would miss newly configured ones
+                Files.deleteIfExists(file);
+                return region;
+            }
+            int count = in.getInt();
+            for (int i = 0; i < count; i++) {
+                int chunkX = (key.regionX() << 5) + in.get();
+                int sectionY = in.getShort();
+                int chunkZ = (key.regionZ() << 5) + in.get();
+                region.sections.put(sectionKey(chunkX, sectionY, chunkZ),
+                        OreIndex.Section.read(in, chunkX, sectionY, chunkZ, stored));
+            }
+        } catch (ClosedByInterruptException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Discarding unreadable ore index file " + file + ": " + e.getMessage());
+            region.sections.clear();
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+                // Overwritten on the next flush anyway
+            }
+        }
+        return region;
+    }
+
+    /**
+     * Writes a region to a temporary file and moves it over the old one, so a crash mid-write
+     * never leaves a torn file behind.
+     *
+     * @return whether the region was written
+     */
+    private boolean write(RegionKey key, LongObjectMap<OreIndex.Section> sections) {
+        Path file = file(key);
+        try {
+            if (sections.isEmpty()) {
+                Files.deleteIfExists(file);
+                return true;
+            }
+            byte[][] names = new byte[table.length][];
+            int size = 16 + Short.BYTES + Integer.BYTES;
+            for (int i = 0; i < table.length; i++) {
+                names[i] = table[i].name().getBytes(StandardCharsets.UTF_8);
+                size += Short.BYTES + names[i].length;
+            }
+            int[] sectionBytes = {0};
+            sections.forEach((sectionKey, section) -> sectionBytes[0] += 2 + Short.BYTES + section.serializedSize());
+            size += sectionBytes[0];
+            ByteBuffer out = ByteBuffer.allocate(size);
+            out.putInt(MAGIC).putInt(VERSION).putLong(0L);
+            out.putShort((short) table.length);
+            for (byte[] name : names) {
+                out.putShort((short) name.length).put(name);
+            }
+            out.putInt(sections.size());
+            sections.forEach((sectionKey, section) -> {
+                out.put((byte) ((sectionKey >> 40) & 31));
+                out.putShort((short) (int) sectionKey);
+                out.put((byte) ((sectionKey >> 20) & 31));
+                section.write(out, tableIndex);
+            });
+            CRC32 crc = new CRC32();
+            crc.update(out.array(), 16, size - 16);
+            out.putLong(8, crc.getValue());
+
+            Files.createDirectories(file.getParent());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temp, out.array());
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not write ore index file " + file, e);
+            try {
+                // The old file may still hold sections that have changed since
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+                // Nothing else to fall back on
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Returns the token of the last clean close, or {@code null} if there is none.
+     */
+    private static UUID readToken(Path marker) throws IOException {
+        if (!Files.exists(marker)) return null;
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(marker));
+        if (in.remaining() < 9 || in.getInt() != MAGIC || in.getInt() != VERSION || in.get() == 0) return null;
+        return in.remaining() < 16 ? null : new UUID(in.getLong(), in.getLong());
+    }
+
+    /**
+     * Writes the token of a clean close, or clears it if {@code token} is {@code null}.
+     */
+    private static void writeToken(Path marker, UUID token) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(token == null ? 9 : 25).putInt(MAGIC).putInt(VERSION);
+        if (token == null) {
+            out.put((byte) 0);
+        } else {
+            out.put((byte) 1).putLong(token.getMostSignificantBits()).putLong(token.getLeastSignificantBits());
+        }
+        Files.write(marker, out.array());
+    }
+
+    private static void deleteRegions(Path worldDir) throws IOException {
+        if (!Files.isDirectory(worldDir)) return;
+        try (Stream<Path> files = Files.list(worldDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().endsWith(".idx")) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Packs a section's coordinates: chunk X and Z in 20 bits each, section Y in the low 20 bits.
+     */
+    private static long sectionKey(int chunkX, int sectionY, int chunkZ) {
+        return ((long) (chunkX & 0xFFFFF) << 40) | ((long) (chunkZ & 0xFFFFF) << 20) | (sectionY & 0xFFFFF);
+    }
+
+    private record RegionKey(UUID worldId, int regionX, int regionZ) {
+    }
+
+    /**
+     * The stored sections of one region, keyed by {@link #sectionKey}. Guarded by the store's lock.
+     */
+    private static final class Region {
+        final LongObjectMap<OreIndex.Section> sections = new LongObjectMap<>();
+        boolean dirty;
+
+        /**
+         * Set while a copy of the region is being written, so it is not dropped before the file
+         * is current.
+         */
+        boolean writing;
+    }
+
+    /**
+     * A queued change to a section: its new contents, or {@code null} if it was removed.
+     */
+    private record Change(OreIndex.Section section) {
+
+        static final Change REMOVED = new Change(null);
+
+        /**
+         * @return whether the region's sections changed
+         */
+        boolean apply(LongObjectMap<OreIndex.Section> sections, long sectionKey) {
+            if (section != null) {
+                sections.put(sectionKey, section);
+                return true;
+            }
+            return sections.remove(sectionKey) != null;
+        }
+    }
+}
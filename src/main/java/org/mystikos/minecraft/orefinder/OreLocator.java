@@ -1,60 +1,822 @@
 package org.mystikos.minecraft.orefinder;
 
+import org.bukkit.ChunkSnapshot;
 import org.bukkit.Location;
+import org.bukkit.Material;
 import org.bukkit.World;
 
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.function.Function;
+
 /**
- * Searches the world for the nearest block of a given type using an expanding cubic shell.
+ * Searches the world for the nearest blocks of one or more given types.
+ * <p>
+ * The live-world search walks expanding cubic shells. Searches over captured chunks instead visit
+ * the chunk sections covering the search volume, nearest first, after asking the configured
+ * {@link SectionFilter} which sections can be skipped outright. Any other {@link BlockSource},
+ * such as an in-memory world, is searched section by section through its bulk reads. Every
+ * search handles several target types in a single traversal and stops once all of them have
+ * been found.
+ * </p>
+ * <p>
+ * The reach, shape and cost of a search are set by its {@link SearchProfile}. A search that
+ * would examine more blocks than the profile allows stops early and reports
+ * {@link #INCONCLUSIVE} for every target it could not settle.
+ * </p>
  */
 class OreLocator {
 
     /**
-     * Returns the Chebyshev distance to the nearest block matching {@code blockId},
+     * Default radius: matches are only reported for distances strictly below this value.
+     */
+    static final int SEARCH_RADIUS = 20;
+
+    /**
+     * Reported for a target that is not within the search radius.
+     */
+    static final int NOT_FOUND = -1;
+
+    /**
+     * Reported for a target the search ran out of budget before settling.
+     */
+    static final int INCONCLUSIVE = -2;
+
+    private final SectionFilter sectionFilter;
+    private final SearchMetrics metrics;
+
+    /**
+     * Creates a locator that scans every section.
+     */
+    OreLocator() {
+        this(SectionFilter.NONE);
+    }
+
+    /**
+     * @param sectionFilter Decides which sections of captured chunks can be skipped.
+     */
+    OreLocator(SectionFilter sectionFilter) {
+        this(sectionFilter, new SearchMetrics());
+    }
+
+    /**
+     * @param sectionFilter Decides which sections of captured chunks can be skipped.
+     * @param metrics       Receives the work done by every search.
+     */
+    OreLocator(SectionFilter sectionFilter, SearchMetrics metrics) {
+        this.sectionFilter = sectionFilter;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the Chebyshev distance to the nearest block of type {@code target},
      * or -1 if none is found within the 20-block search radius.
      *
+     * @param loc    The origin of the search.
+     * @param target The block type to search for.
+     */
+    int getBlockTypeDistance(Location loc, Material target) {
+        return getBlockTypeDistances(loc, new Material[]{target}, SearchProfile.DEFAULT)[0];
+    }
+
+    /**
+     * Returns the distance to the nearest block of each of the given types, walking the live
+     * world once for all of them.
+     *
      * @param loc     The origin of the search.
-     * @param blockId The block type name to search for (case-insensitive).
+     * @param targets The block types to search for.
+     * @param profile The reach, shape and budget of the search.
+     * @return Distances in the same order as {@code targets}, {@link #NOT_FOUND} for types not
+     * found and {@link #INCONCLUSIVE} for types the budget did not settle.
+     */
+    int[] getBlockTypeDistances(Location loc, Material[] targets, SearchProfile profile) {
+        return getBlockTypeDistances(loc, targets, profile, null);
+    }
+
+    /**
+     * Like {@link #getBlockTypeDistances(Location, Material[], SearchProfile)}, but only looks for
+     * each target closer than its entry in {@code limits}.
+     *
+     * @param limits Per target, a distance the nearest match is known to be closer than, or
+     *               {@code null} to search the whole radius. Targets not found within their
+     *               limit after all are searched for again without it.
      */
-    int getBlockTypeDistance(Location loc, String blockId) {
+    int[] getBlockTypeDistances(Location loc, Material[] targets, SearchProfile profile, int[] limits) {
+        checkTargets(targets);
         World world = loc.getWorld();
-        if (world == null) return -1;
+        if (world == null) {
+            int[] best = new int[targets.length];
+            Arrays.fill(best, NOT_FOUND);
+            return best;
+        }
+
+        int[] best = initialBest(targets, profile, limits);
+        long inconclusive = walkShells(loc.getBlockX(), loc.getBlockY(), loc.getBlockZ(), targets, best, profile, metrics,
+                new WorldBlockSource(world));
+        return retryMissed(finish(best, inconclusive, profile), targets, profile, limits,
+                missed -> getBlockTypeDistances(loc, missed, profile, null));
+    }
+
+    /**
+     * Returns the distance to the nearest block of each of the given types in any block source.
+     * The sections overlapping the search volume are visited nearest first, and only their part
+     * inside the search volume is read and examined, once for all targets the section might
+     * contain and that could still be found closer. For sources that supply chunk snapshots, such
+     * as a {@link SnapshotRegion}, the configured {@link SectionFilter} decides which targets a
+     * section might contain. Sections the source does not hold are skipped.
+     *
+     * @param source  The blocks to search.
+     * @param x       Block X coordinate of the origin.
+     * @param y       Block Y coordinate of the origin.
+     * @param z       Block Z coordinate of the origin.
+     * @param targets The block types to search for; at most 64.
+     * @param profile The reach, shape and budget of the search.
+     * @return Distances in the same order as {@code targets}, {@link #NOT_FOUND} for types not
+     * found and {@link #INCONCLUSIVE} for types the budget did not settle.
+     */
+    int[] getBlockTypeDistances(BlockSource source, int x, int y, int z, Material[] targets, SearchProfile profile) {
+        return getBlockTypeDistances(source, x, y, z, targets, profile, null);
+    }
+
+    /**
+     * Like {@link #getBlockTypeDistances(BlockSource, int, int, int, Material[], SearchProfile)},
+     * but only looks for each target closer than its entry in {@code limits}.
+     *
+     * @param limits Per target, a distance the nearest match is known to be closer than, or
+     *               {@code null} to search the whole radius. Targets not found within their
+     *               limit after all are searched for again without it.
+     */
+    int[] getBlockTypeDistances(BlockSource source, int x, int y, int z, Material[] targets, SearchProfile profile,
+                                int[] limits) {
+        checkTargets(targets);
+        int reach = profile.reach();
+        int[] best = initialBest(targets, profile, limits);
+        long inconclusive = 0L;
+        long blocks = 0L;
+        int scanned = 0;
+        int minY = Math.max(y - profile.verticalRadius(), source.getMinHeight());
+        int maxY = Math.min(y + profile.verticalRadius(), source.getMaxHeight() - 1);
+        if (minY <= maxY) {
+            SectionOrder nearby = SectionOrder.around(x, y, z, minY, maxY, profile);
+            long[] masks = sectionMasks(source, nearby, targets);
+            Material[] types = new Material[BlockSource.SECTION_VOLUME];
+            long budget = budget(profile);
+            for (int i = 0; i < nearby.count(); i++) {
+                int lowerBound = nearby.lowerBound(i);
+                // Sections are sorted by how close they can possibly be; once every target is at
+                // or below this bound, none of the remaining sections can do better
+                if (lowerBound >= max(best)) break;
+                int n = nearby.section(i);
+                // Only targets that could still be found closer are worth scanning for
+                long mask = masks[n] & unsettled(best, lowerBound);
+                if (mask == 0L) continue;
+                int chunkX = nearby.chunkXs()[n], sectionY = nearby.sectionYs()[n], chunkZ = nearby.chunkZs()[n];
+                int fromX = Math.max(chunkX << 4, x - reach), toX = Math.min((chunkX << 4) + 15, x + reach);
+                int fromY = Math.max(sectionY << 4, minY), toY = Math.min((sectionY << 4) + 15, maxY);
+                int fromZ = Math.max(chunkZ << 4, z - reach), toZ = Math.min((chunkZ << 4) + 15, z + reach);
+                int cost = (toX - fromX + 1) * (toY - fromY + 1) * (toZ - fromZ + 1);
+                if (cost > budget) {
+                    // Targets that no remaining section may contain are settled already
+                    long remaining = 0L;
+                    for (int j = i; j < nearby.count(); j++) {
+                        remaining |= masks[nearby.section(j)];
+                    }
+                    inconclusive = unsettled(best, lowerBound) & remaining;
+                    break;
+                }
+                if (!source.readSection(chunkX, sectionY, chunkZ, fromX & 15, fromY & 15, fromZ & 15,
+                        toX & 15, toY & 15, toZ & 15, types)) {
+                    continue;
+                }
+                budget -= cost;
+                blocks += cost;
+                scanned++;
+                scanSection(types, fromX, fromY, fromZ, toX, toY, toZ, x, y, z, targets, mask, best, profile);
+            }
+        }
+        metrics.recordWork(blocks, 0, scanned);
+        return retryMissed(finish(best, inconclusive, profile), targets, profile, limits,
+                missed -> getBlockTypeDistances(source, x, y, z, missed, profile, null));
+    }
+
+    /**
+     * Returns the Chebyshev distance to the nearest block of type {@code target} in a block
+     * source, such as chunks captured around the origin. The source must cover
+     * {@link #SEARCH_RADIUS} - 1 blocks horizontally around the origin; for an unchanged world the
+     * result is the same as {@link #getBlockTypeDistance(Location, Material)}.
+     *
+     * @param source The blocks around the origin.
+     * @param x      Block X coordinate of the origin.
+     * @param y      Block Y coordinate of the origin.
+     * @param z      Block Z coordinate of the origin.
+     * @param target The block type to search for.
+     * @return Distance to the nearest matching block, or -1 if not found.
+     */
+    int getBlockTypeDistance(BlockSource source, int x, int y, int z, Material target) {
+        return getBlockTypeDistances(source, x, y, z, new Material[]{target}, SearchProfile.DEFAULT)[0];
+    }
+
+    /**
+     * Returns, per section of {@code sections}, a mask of the targets it might contain: for a
+     * source that supplies chunk snapshots, those the section filter lets through, or none if the
+     * source does not hold the chunk; for any other source, all of them.
+     */
+    private long[] sectionMasks(BlockSource source, SectionOrder sections, Material[] targets) {
+        long[] masks = new long[sections.count()];
+        if (!(source instanceof ChunkSource chunks)) {
+            Arrays.fill(masks, targets.length == Long.SIZE ? -1L : (1L << targets.length) - 1);
+            return masks;
+        }
+        UUID worldId = source.getWorldId();
+        for (int n = 0; n < masks.length; n++) {
+            ChunkSnapshot snapshot = chunks.getChunkSnapshot(sections.chunkXs()[n], sections.chunkZs()[n]);
+            if (snapshot == null) continue;
+            for (int t = 0; t < targets.length; t++) {
+                if (sectionFilter.mayContain(worldId, snapshot, sections.sectionYs()[n], targets[t])) {
+                    masks[n] |= 1L << t;
+                }
+            }
+        }
+        return masks;
+    }
+
+    /**
+     * Returns the Chebyshev distance to the nearest block of type {@code target} using the ore
+     * index. See {@link #getBlockTypeDistances(OreIndex, ChunkSource, long, int, int, int, Material[], SearchProfile)}.
+     */
+    int getBlockTypeDistance(OreIndex index, ChunkSource source, long stamp, int x, int y, int z, Material target) {
+        return getBlockTypeDistances(index, source, stamp, x, y, z, new Material[]{target}, SearchProfile.DEFAULT)[0];
+    }
+
+    /**
+     * Returns the distance to the nearest block of each of the given types using the ore index.
+     * The sections overlapping the search volume are visited nearest first; sections that are not
+     * cached yet are scanned from {@code source} and added to the index, and only those scans
+     * count against the profile's budget. Cached sections are not measured one by one: the index's
+     * per-world position grid is queried for them before each scan and once at the end.
+     *
+     * @param index   The ore index to query; must record every target.
+     * @param source  Supplies chunk snapshots for sections missing from the index.
+     * @param stamp   The index {@link OreIndex#stamp() stamp} read when {@code source} was captured.
+     * @param x       Block X coordinate of the origin.
+     * @param y       Block Y coordinate of the origin.
+     * @param z       Block Z coordinate of the origin.
+     * @param targets The block types to search for; at most 64.
+     * @param profile The reach, shape and budget of the search.
+     * @return Distances in the same order as {@code targets}, {@link #NOT_FOUND} for types not
+     * found and {@link #INCONCLUSIVE} for types the budget did not settle.
+     */
+    int[] getBlockTypeDistances(OreIndex index, ChunkSource source, long stamp, int x, int y, int z,
+                                Material[] targets, SearchProfile profile) {
+        return getBlockTypeDistances(index, source, stamp, x, y, z, targets, profile, null);
+    }
+
+    /**
+     * Like {@link #getBlockTypeDistances(OreIndex, ChunkSource, long, int, int, int, Material[], SearchProfile)},
+     * but only looks for each target closer than its entry in {@code limits}.
+     *
+     * @param limits Per target, a distance the nearest match is known to be closer than, or
+     *               {@code null} to search the whole radius. Targets not found within their
+     *               limit after all are searched for again without it.
+     */
+    int[] getBlockTypeDistances(OreIndex index, ChunkSource source, long stamp, int x, int y, int z,
+                                Material[] targets, SearchProfile profile, int[] limits) {
+        checkTargets(targets);
+        int[] best = initialBest(targets, profile, limits);
+        long inconclusive = 0L;
+        long blocks = 0L;
+        int visited = 0;
+        int minY = Math.max(y - profile.verticalRadius(), source.getMinHeight());
+        int maxY = Math.min(y + profile.verticalRadius(), source.getMaxHeight() - 1);
+        if (minY <= maxY) {
+            SectionOrder nearby = SectionOrder.around(x, y, z, minY, maxY, profile);
+            int[] chunkXs = nearby.chunkXs(), sectionYs = nearby.sectionYs(), chunkZs = nearby.chunkZs();
+            int count = nearby.count();
+
+            UUID worldId = source.getWorldId();
+            long removals = index.removals(worldId);
+            // Cached sections passed over while the grid answers for them, in case it stops doing so
+            OreIndex.Section[] held = new OreIndex.Section[count];
+            int heldCount = 0;
+            boolean grid = true;
+            int queried = -1;
+            long budget = budget(profile);
+            for (int i = 0; i < count; i++) {
+                int lowerBound = nearby.lowerBound(i);
+                if (lowerBound >= max(best)) break;
+                int n = nearby.section(i);
+                boolean cached = index.isCached(worldId, chunkXs[n], sectionYs[n], chunkZs[n]);
+                if (!cached) {
+                    // Settle what the cached sections nearer than this one hold before paying for a scan
+                    if (grid && lowerBound > queried) {
+                        grid = queryGrid(index, worldId, targets, x, y, z, profile, lowerBound, best, removals,
+                                held, heldCount);
+                        queried = lowerBound;
+                        if (lowerBound >= max(best)) break;
+                    }
+                    if (BlockSource.SECTION_VOLUME > budget) {
+                        inconclusive = unsettled(best, lowerBound);
+                        break;
+                    }
+                    budget -= BlockSource.SECTION_VOLUME;
+                    blocks += BlockSource.SECTION_VOLUME;
+                }
+                visited++;
+                OreIndex.Section section = index.getOrScan(source, chunkXs[n], sectionYs[n], chunkZs[n], stamp);
+                if (section == null) continue;
+                if (cached && grid) {
+                    held[heldCount++] = section;
+                } else {
+                    measure(section, targets, x, y, z, profile, lowerBound, best);
+                }
+            }
+            if (grid) {
+                queryGrid(index, worldId, targets, x, y, z, profile, Integer.MAX_VALUE, best, removals, held, heldCount);
+            }
+        }
+        metrics.recordWork(blocks, 0, visited);
+        return retryMissed(finish(best, inconclusive, profile), targets, profile, limits,
+                missed -> getBlockTypeDistances(index, source, stamp, x, y, z, missed, profile, null));
+    }
+
+    /**
+     * Queries the index's grid for the cached sections, falling back to measuring the held ones if
+     * the grid no longer covers them.
+     *
+     * @return whether the grid can still be used
+     */
+    private static boolean queryGrid(OreIndex index, UUID worldId, Material[] targets, int x, int y, int z,
+                                     SearchProfile profile, int limit, int[] best, long removals,
+                                     OreIndex.Section[] held, int heldCount) {
+        if (index.nearest(worldId, targets, x, y, z, profile, limit, best, removals)) return true;
+        for (int i = 0; i < heldCount; i++) {
+            measure(held[i], targets, x, y, z, profile, 0, best);
+        }
+        return false;
+    }
+
+    /**
+     * Lowers the entries in {@code best} that are above {@code lowerBound} to the distance to the
+     * nearest indexed block of their target in the section.
+     */
+    private static void measure(OreIndex.Section section, Material[] targets, int x, int y, int z,
+                                SearchProfile profile, int lowerBound, int[] best) {
+        for (int t = 0; t < targets.length; t++) {
+            if (best[t] > lowerBound) {
+                best[t] = Math.min(best[t], section.nearest(targets[t], x, y, z, profile));
+            }
+        }
+    }
+
+    /**
+     * Returns which distance message band the nearest block of each of the given types falls in,
+     * using the ore index. No exact distance is measured: the cube of each band, nearest first, is
+     * tested against the {@link OccupancyPyramid occupancy pyramids} of the sections it reaches,
+     * and a target is settled by the first band whose cube holds a match. A target that no cube
+     * holds is settled by the last one, which spans the whole reach. Sections are fetched only as
+     * the growing cubes reach them, scanning those that are not cached yet, and only those scans
+     * count against the profile's budget. As with exact searches, the cached sections are tested
+     * all at once through the index's grid, one query per band, for as long as the grid covers
+     * them. Spheres are searched exactly, as their bands are not cubes.
+     * <p>
+     * A target's limit only ends its search early: once the cubes have grown past it without a
+     * match, the limit is known to be outdated, and the target is searched for again without it.
+     * </p>
+     *
+     * @param index   The ore index to query; must record every target.
+     * @param source  Supplies chunk snapshots for sections missing from the index.
+     * @param stamp   The index {@link OreIndex#stamp() stamp} read when {@code source} was captured.
+     * @param x       Block X coordinate of the origin.
+     * @param y       Block Y coordinate of the origin.
+     * @param z       Block Z coordinate of the origin.
+     * @param targets The block types to search for; at most 64.
+     * @param profile The reach, shape, budget and bands of the search.
+     * @param limits  Per target, a distance the nearest match is known to be closer than, or
+     *                {@code null} to search the whole radius. Targets not found within their
+     *                limit after all are searched for again without it.
+     * @return Per target, the furthest distance of its band, which gets the same message as the
+     * exact distance; {@link #NOT_FOUND} for types not found and {@link #INCONCLUSIVE} for types
+     * the budget did not settle.
+     */
+    int[] getBlockTypeBands(OreIndex index, ChunkSource source, long stamp, int x, int y, int z,
+                            Material[] targets, SearchProfile profile, int[] limits) {
+        if (profile.shape() != SearchProfile.Shape.CUBE) {
+            return getBlockTypeDistances(index, source, stamp, x, y, z, targets, profile, limits);
+        }
+        checkTargets(targets);
+        int[] bands = new int[targets.length];
+        Arrays.fill(bands, NOT_FOUND);
+        long unsettled = targets.length == Long.SIZE ? -1L : (1L << targets.length) - 1;
+        // Targets whose limit the cubes have grown past without a match
+        long missed = 0L;
+        boolean exhausted = false;
+        long blocks = 0L;
+        int visited = 0;
+        int minY = Math.max(y - profile.verticalRadius(), source.getMinHeight());
+        int maxY = Math.min(y + profile.verticalRadius(), source.getMaxHeight() - 1);
+        if (minY <= maxY) {
+            SectionOrder nearby = SectionOrder.around(x, y, z, minY, maxY, profile);
+            OreIndex.Section[] fetched = new OreIndex.Section[nearby.count()];
+            // Which fetched sections were scanned, and so are left out of the grid's answers
+            boolean[] scanned = new boolean[nearby.count()];
+            UUID worldId = source.getWorldId();
+            long removals = index.removals(worldId);
+            boolean grid = true;
+            int[] nearest = new int[targets.length];
+            long budget = budget(profile);
+            int next = 0;
+            int radius = -1;
+            for (int band = 0; radius < profile.reach() && (unsettled & ~missed) != 0 && !exhausted; band++) {
+                radius = profile.bandEnd(band) - 1;
+                while (next < nearby.count() && nearby.lowerBound(next) <= radius) {
+                    int n = nearby.section(next);
+                    int cx = nearby.chunkXs()[n], sy = nearby.sectionYs()[n], cz = nearby.chunkZs()[n];
+                    boolean cached = index.isCached(worldId, cx, sy, cz);
+                    if (!cached) {
+                        if (BlockSource.SECTION_VOLUME > budget) {
+                            exhausted = true;
+                            break;
+                        }
+                        budget -= BlockSource.SECTION_VOLUME;
+                        blocks += BlockSource.SECTION_VOLUME;
+                    }
+                    visited++;
+                    scanned[next] = !cached;
+                    fetched[next++] = index.getOrScan(source, cx, sy, cz, stamp);
+                }
+                if (exhausted) break;
+                if (grid) {
+                    // Settled targets get a bound of 0, which the grid does not search at all
+                    for (int t = 0; t < targets.length; t++) {
+                        nearest[t] = ((unsettled & ~missed) & (1L << t)) != 0 ? radius + 1 : 0;
+                    }
+                    grid = index.nearest(worldId, targets, x, y, z, profile, radius + 1, nearest, removals);
+                }
+                int boxMinY = Math.max(y - radius, minY), boxMaxY = Math.min(y + radius, maxY);
+                for (int t = 0; t < targets.length; t++) {
+                    if (((unsettled & ~missed) & (1L << t)) == 0) continue;
+                    boolean found = grid && nearest[t] <= radius;
+                    for (int i = 0; i < next && !found; i++) {
+                        found = fetched[i] != null && (scanned[i] || !grid) && fetched[i].holds(targets[t],
+                                x - radius, boxMinY, z - radius, x + radius, boxMaxY, z + radius);
+                    }
+                    if (found) {
+                        bands[t] = radius;
+                        unsettled &= ~(1L << t);
+                    } else if (limits != null && limits[t] <= radius + 1 && limits[t] < profile.radius()) {
+                        // A limit of the radius itself says nothing
+                        missed |= 1L << t;
+                    }
+                }
+            }
+        }
+        if (exhausted) {
+            for (int t = 0; t < targets.length; t++) {
+                if ((unsettled & (1L << t)) != 0) bands[t] = INCONCLUSIVE;
+            }
+            missed = 0L;
+        }
+        metrics.recordWork(blocks, 0, visited);
+        return retry(bands, targets, missed,
+                retried -> getBlockTypeBands(index, source, stamp, x, y, z, retried, profile, null));
+    }
+
+    /**
+     * The sections overlapping a search volume, sorted nearest first: each entry of {@code order}
+     * holds a section's lower bound above its position in the coordinate arrays.
+     */
+    private record SectionOrder(int[] chunkXs, int[] sectionYs, int[] chunkZs, long[] order, int count) {
 
-        double x = loc.getX(), y = loc.getY(), z = loc.getZ();
-        for (int d = 0; d < 20; d++) {
-            // Top and bottom faces of the cube shell at distance d
-            for (int dx = -d; dx <= d; dx++) {
-                for (int dz = -d; dz <= d; dz++) {
-                    if (isMatchingBlock(world, x + dx, y + d, z + dz, blockId) ||
-                        isMatchingBlock(world, x + dx, y - d, z + dz, blockId)) {
-                        return d;
+        /**
+         * Collects the sections within the profile's reach of the origin, between the given
+         * heights.
+         */
+        static SectionOrder around(int x, int y, int z, int minY, int maxY, SearchProfile profile) {
+            int reach = profile.reach();
+            int minChunkX = (x - reach) >> 4, maxChunkX = (x + reach) >> 4;
+            int minChunkZ = (z - reach) >> 4, maxChunkZ = (z + reach) >> 4;
+            int minSection = minY >> 4, maxSection = maxY >> 4;
+            int capacity = (maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1) * (maxSection - minSection + 1);
+            int[] chunkXs = new int[capacity], sectionYs = new int[capacity], chunkZs = new int[capacity];
+            long[] order = new long[capacity];
+            int count = 0;
+            for (int cx = minChunkX; cx <= maxChunkX; cx++) {
+                for (int cz = minChunkZ; cz <= maxChunkZ; cz++) {
+                    for (int sy = minSection; sy <= maxSection; sy++) {
+                        int lowerBound = profile.distance(axisDistance(x, cx << 4),
+                                axisDistance(y, sy << 4), axisDistance(z, cz << 4));
+                        if (lowerBound > reach) continue;
+                        chunkXs[count] = cx;
+                        sectionYs[count] = sy;
+                        chunkZs[count] = cz;
+                        order[count] = (long) lowerBound << 32 | count;
+                        count++;
                     }
                 }
             }
-            // Front and back faces (excluding top/bottom edges already checked)
-            for (int dx = -d; dx <= d; dx++) {
-                for (int dy = -d + 1; dy <= d - 1; dy++) {
-                    if (isMatchingBlock(world, x + dx, y + dy, z + d, blockId) ||
-                        isMatchingBlock(world, x + dx, y + dy, z - d, blockId)) {
-                        return d;
+            Arrays.sort(order, 0, count);
+            return new SectionOrder(chunkXs, sectionYs, chunkZs, order, count);
+        }
+
+        /**
+         * @return the lower bound of the {@code i}-th nearest section
+         */
+        int lowerBound(int i) {
+            return (int) (order[i] >>> 32);
+        }
+
+        /**
+         * @return the position in the coordinate arrays of the {@code i}-th nearest section
+         */
+        int section(int i) {
+            return (int) order[i];
+        }
+    }
+
+    /**
+     * Scans the blocks of a section copied by {@link BlockSource#readSection} that lie inside the
+     * given box of world coordinates for the targets selected by {@code mask}, lowering their
+     * entries in {@code best} for every closer match found.
+     */
+    private static void scanSection(Material[] types, int fromX, int fromY, int fromZ, int toX, int toY, int toZ,
+                                    int x, int y, int z, Material[] targets, long mask, int[] best,
+                                    SearchProfile profile) {
+        // Blocks at or beyond this distance cannot improve any selected target
+        int limit = maskedMax(best, mask);
+        for (int by = fromY; by <= toY; by++) {
+            int dy = by - y;
+            if (profile.distance(0, dy, 0) >= limit) continue;
+            for (int bz = fromZ; bz <= toZ; bz++) {
+                int dz = bz - z;
+                if (profile.distance(0, dy, dz) >= limit) continue;
+                int row = (by & 15) << 8 | (bz & 15) << 4;
+                for (int bx = fromX; bx <= toX; bx++) {
+                    int d = profile.distance(bx - x, dy, dz);
+                    if (d >= limit) continue;
+                    Material type = types[row | (bx & 15)];
+                    for (int t = 0; t < targets.length; t++) {
+                        if (type == targets[t] && d < best[t] && (mask & (1L << t)) != 0) {
+                            best[t] = d;
+                            limit = maskedMax(best, mask);
+                        }
                     }
                 }
             }
-            // Left and right faces (excluding top/bottom/front/back edges already checked)
-            for (int dz = -d + 1; dz <= d - 1; dz++) {
-                for (int dy = -d + 1; dy <= d - 1; dy++) {
-                    if (isMatchingBlock(world, x + d, y + dy, z + dz, blockId) ||
-                        isMatchingBlock(world, x - d, y + dy, z + dz, blockId)) {
-                        return d;
+        }
+    }
+
+    /**
+     * Returns the chunks within the profile's reach of the origin that are not loaded, packed as
+     * chunk X in the high half and chunk Z in the low half. Searches read these chunks as holding
+     * nothing. Must be called on the main server thread.
+     */
+    static long[] unloadedChunks(World world, int x, int z, SearchProfile profile) {
+        int reach = profile.reach();
+        int minChunkX = (x - reach) >> 4, maxChunkX = (x + reach) >> 4;
+        int minChunkZ = (z - reach) >> 4, maxChunkZ = (z + reach) >> 4;
+        long[] chunks = new long[(maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1)];
+        int count = 0;
+        for (int cx = minChunkX; cx <= maxChunkX; cx++) {
+            for (int cz = minChunkZ; cz <= maxChunkZ; cz++) {
+                if (profile.distance(axisDistance(x, cx << 4), 0, axisDistance(z, cz << 4)) > reach) continue;
+                if (!world.isChunkLoaded(cx, cz)) {
+                    chunks[count++] = (long) cx << 32 | cz & 0xFFFFFFFFL;
+                }
+            }
+        }
+        return Arrays.copyOf(chunks, count);
+    }
+
+    /**
+     * Marks the targets of a search result as {@link #INCONCLUSIVE} if one of the given unloaded
+     * chunks, which the search read as holding nothing, could hold a closer match.
+     *
+     * @param distances The search result; updated in place.
+     * @param chunks    Unloaded chunks, packed as by {@link #unloadedChunks(World, int, int, SearchProfile)}.
+     * @param x         Block X coordinate of the origin.
+     * @param z         Block Z coordinate of the origin.
+     * @param profile   The profile the search ran with.
+     * @return {@code distances}
+     */
+    static int[] markUnloaded(int[] distances, long[] chunks, int x, int z, SearchProfile profile) {
+        int bound = Integer.MAX_VALUE;
+        for (long chunk : chunks) {
+            int cx = (int) (chunk >> 32), cz = (int) chunk;
+            bound = Math.min(bound, profile.distance(axisDistance(x, cx << 4), 0, axisDistance(z, cz << 4)));
+        }
+        for (int t = 0; t < distances.length; t++) {
+            int limit = distances[t] == NOT_FOUND ? profile.radius() : distances[t];
+            if (distances[t] != INCONCLUSIVE && bound < limit) {
+                distances[t] = INCONCLUSIVE;
+            }
+        }
+        return distances;
+    }
+
+    static void checkTargets(Material[] targets) {
+        if (targets.length > Long.SIZE) {
+            throw new IllegalArgumentException("At most " + Long.SIZE + " targets can be searched for at once");
+        }
+    }
+
+    /**
+     * Returns the starting working distances: the radius, or the caller's tighter limits. A
+     * target is only ever recorded closer than its starting value, so a limit the nearest match
+     * is known to beat does not change the result.
+     */
+    private static int[] initialBest(Material[] targets, SearchProfile profile, int[] limits) {
+        int[] best = new int[targets.length];
+        Arrays.fill(best, profile.radius());
+        if (limits != null) {
+            for (int t = 0; t < best.length; t++) {
+                best[t] = Math.min(best[t], limits[t]);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Searches again, without their limits, for the targets a limited search found nothing closer
+     * than their limit for. Limits come from earlier results nearby, which a block change since
+     * may have outdated, so such a target may still be further away or not there at all. A target
+     * left at its limit is told apart from a real match because matches are only ever recorded
+     * closer than the starting value.
+     *
+     * @param search Searches for the given targets without limits.
+     */
+    private static int[] retryMissed(int[] distances, Material[] targets, SearchProfile profile, int[] limits,
+                                     Function<Material[], int[]> search) {
+        if (limits == null) return distances;
+        long missed = 0L;
+        for (int t = 0; t < distances.length; t++) {
+            if (limits[t] < profile.radius() && distances[t] == limits[t]) missed |= 1L << t;
+        }
+        return retry(distances, targets, missed, search);
+    }
+
+    /**
+     * Replaces the entries of the targets in {@code missed} with the result of searching for
+     * them again.
+     *
+     * @param search Searches for the given targets without limits.
+     */
+    private static int[] retry(int[] distances, Material[] targets, long missed, Function<Material[], int[]> search) {
+        if (missed == 0L) return distances;
+        Material[] retried = new Material[Long.bitCount(missed)];
+        for (int t = 0, n = 0; t < targets.length; t++) {
+            if ((missed & (1L << t)) != 0) retried[n++] = targets[t];
+        }
+        int[] found = search.apply(retried);
+        for (int t = 0, n = 0; t < targets.length; t++) {
+            if ((missed & (1L << t)) != 0) distances[t] = found[n++];
+        }
+        return distances;
+    }
+
+    private static long budget(SearchProfile profile) {
+        return profile.maxBlocks() == 0 ? Long.MAX_VALUE : profile.maxBlocks();
+    }
+
+    /**
+     * Returns a mask of the targets that could still be found closer than their current best,
+     * given that nothing unexamined is nearer than {@code lowerBound}.
+     */
+    private static long unsettled(int[] best, int lowerBound) {
+        long mask = 0L;
+        for (int t = 0; t < best.length; t++) {
+            if (best[t] > lowerBound) mask |= 1L << t;
+        }
+        return mask;
+    }
+
+    /**
+     * Turns the working distances into results: targets in {@code inconclusive} become
+     * {@link #INCONCLUSIVE} and targets beyond the reach become {@link #NOT_FOUND}.
+     */
+    private static int[] finish(int[] best, long inconclusive, SearchProfile profile) {
+        for (int t = 0; t < best.length; t++) {
+            if ((inconclusive & (1L << t)) != 0) {
+                best[t] = INCONCLUSIVE;
+            } else if (best[t] > profile.reach()) {
+                best[t] = NOT_FOUND;
+            }
+        }
+        return best;
+    }
+
+    private static int maskedMax(int[] values, long mask) {
+        int max = 0;
+        for (int i = 0; i < values.length; i++) {
+            if ((mask & (1L << i)) != 0 && values[i] > max) max = values[i];
+        }
+        return max;
+    }
+
+    private static int max(int[] values) {
+        int max = 0;
+        for (int value : values) {
+            if (value > max) max = value;
+        }
+        return max;
+    }
+
+    /**
+     * Distance along one axis from {@code origin} to the 16-block span starting at {@code base}.
+     */
+    static int axisDistance(int origin, int base) {
+        if (origin < base) return base - origin;
+        if (origin > base + 15) return origin - base - 15;
+        return 0;
+    }
+
+    /**
+     * Walks cubic shells of growing Chebyshev distance around the origin, lowering the entries in
+     * {@code best} for every closer match. Every block in a shell is at least the shell's distance
+     * away in either metric, so the walk stops once no target can be improved any more.
+     *
+     * @return a mask of the targets left unsettled because the budget ran out
+     */
+    private static long walkShells(int x, int y, int z, Material[] targets, int[] best,
+                                   SearchProfile profile, SearchMetrics metrics, BlockSource source) {
+        int vertical = profile.verticalRadius();
+        long budget = budget(profile);
+        long blocks = 0L;
+        int shells = 0;
+        try {
+            for (int d = 0; d <= profile.reach(); d++) {
+                if (max(best) <= d) return 0L;
+                long cost = boxVolume(d, vertical) - boxVolume(d - 1, vertical);
+                if (cost > budget) return unsettled(best, d);
+                budget -= cost;
+                blocks += cost;
+                shells++;
+
+                // Top and bottom faces of the cube shell at distance d
+                if (d <= vertical) {
+                    for (int dx = -d; dx <= d; dx++) {
+                        for (int dz = -d; dz <= d; dz++) {
+                            if (record(source.getType(x + dx, y + d, z + dz), targets, best, profile, dx, d, dz)
+                                    | record(source.getType(x + dx, y - d, z + dz), targets, best, profile, dx, -d, dz)) {
+                                if (max(best) <= d) return 0L;
+                            }
+                        }
+                    }
+                }
+                // Front and back faces (excluding top/bottom edges already checked)
+                int height = Math.min(d - 1, vertical);
+                for (int dx = -d; dx <= d; dx++) {
+                    for (int dy = -height; dy <= height; dy++) {
+                        if (record(source.getType(x + dx, y + dy, z + d), targets, best, profile, dx, dy, d)
+                                | record(source.getType(x + dx, y + dy, z - d), targets, best, profile, dx, dy, -d)) {
+                            if (max(best) <= d) return 0L;
+                        }
+                    }
+                }
+                // Left and right faces (excluding top/bottom/front/back edges already checked)
+                for (int dz = -d + 1; dz <= d - 1; dz++) {
+                    for (int dy = -height; dy <= height; dy++) {
+                        if (record(source.getType(x + d, y + dy, z + dz), targets, best, profile, d, dy, dz)
+                                | record(source.getType(x - d, y + dy, z + dz), targets, best, profile, -d, dy, dz)) {
+                            if (max(best) <= d) return 0L;
+                        }
                     }
                 }
             }
+            return 0L;
+        } finally {
+            metrics.recordWork(blocks, shells, 0);
         }
-        return -1;
     }
 
-    private boolean isMatchingBlock(World world, double x, double y, double z, String blockId) {
-        int iy = (int) y;
-        if (iy < world.getMinHeight() || iy >= world.getMaxHeight()) return false;
-        return world.getBlockAt((int) x, iy, (int) z).getType().toString().equalsIgnoreCase(blockId);
+    /**
+     * Number of blocks in the cube of Chebyshev radius {@code d} clipped to {@code vertical} blocks
+     * above and below the origin.
+     */
+    private static long boxVolume(int d, int vertical) {
+        if (d < 0) return 0L;
+        long side = 2L * d + 1;
+        return side * side * (2L * Math.min(d, vertical) + 1);
+    }
+
+    /**
+     * Lowers {@code best} for every target matching {@code type} that is further away than the
+     * block at the given offset.
+     *
+     * @return whether any target was lowered
+     */
+    private static boolean record(Material type, Material[] targets, int[] best, SearchProfile profile,
+                                  int dx, int dy, int dz) {
+        if (type == null) return false;
+        boolean found = false;
+        for (int t = 0; t < targets.length; t++) {
+            if (type == targets[t]) {
+                int d = profile.distance(dx, dy, dz);
+                if (d < best[t]) {
+                    best[t] = d;
+                    found = true;
+                }
+            }
+        }
+        return found;
     }
 }
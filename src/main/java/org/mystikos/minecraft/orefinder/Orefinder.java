@@ -5,6 +5,7 @@ import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.plugin.PluginManager;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
 
 /**
  * The Orefinder class extends JavaPlugin and represents the main class for the OreFinder plugin.
@@ -16,6 +17,28 @@ public class Orefinder extends JavaPlugin implements OrefinderContext {
      */
     private final PlayerInteractionListener pInteract = new PlayerInteractionListener(this);
 
+    /**
+     * How often stale cooldown records are dropped, in ticks.
+     */
+    private static final long COOLDOWN_SWEEP_TICKS = 60L * 20L;
+
+    /**
+     * How often newly scanned ore index sections are written to disk, in ticks.
+     */
+    private static final long INDEX_FLUSH_TICKS = 60L * 20L;
+
+    /**
+     * Samples the search metrics every tick, and logs them periodically if configured.
+     */
+    private BukkitTask metricsSampler;
+    private BukkitTask batchRunner;
+    private BukkitTask preIndexRunner;
+    private BukkitTask chunkLoadRunner;
+    private BukkitTask fieldBuildRunner;
+    private BukkitTask metricsLogger;
+    private BukkitTask cooldownSweeper;
+    private BukkitTask indexFlusher;
+
     /**
      * Called when the plugin is enabled. This method initializes the plugin configuration,
      * registers event listeners, and performs any necessary setup.
@@ -29,6 +52,7 @@ public class Orefinder extends JavaPlugin implements OrefinderContext {
         // Register event listeners
         PluginManager pm = getServer().getPluginManager();
         pm.registerEvents(this.pInteract, this);
+        pm.registerEvents(this.pInteract.getBlockChangeListener(), this);
 
         // Register the /orefinder command
         if (getCommand("orefinder") != null) {
@@ -37,15 +61,17 @@ public class Orefinder extends JavaPlugin implements OrefinderContext {
 
         // Initialize player interaction handler
         this.pInteract.init();
+        this.pInteract.openIndexWorlds(getServer().getWorlds());
+        scheduleTasks();
 
         // Log plugin enabled message
         getLogger().info("OreFinder enabled.");
     }
 
     /**
-     * Handles the {@code /orefinder} command. Currently supports the {@code reload}
-     * subcommand, which reloads {@code config.yml} from disk and rebuilds the
-     * item/ore mappings without requiring a server restart.
+     * Handles the {@code /orefinder} command. Supports the {@code reload} subcommand, which
+     * reloads {@code config.yml} from disk and rebuilds the item/ore mappings without requiring
+     * a server restart, and the {@code stats} subcommand, which shows the search metrics.
      */
     @Override
     public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
@@ -60,21 +86,161 @@ public class Orefinder extends JavaPlugin implements OrefinderContext {
             try {
                 reloadConfig();
                 this.pInteract.init();
+                this.pInteract.openIndexWorlds(getServer().getWorlds());
+                scheduleTasks();
                 sender.sendMessage(ChatColor.GREEN + "OreFinder configuration reloaded.");
             } catch (IllegalArgumentException e) {
                 sender.sendMessage(ChatColor.RED + "OreFinder reload failed: " + e.getMessage());
             }
             return true;
         }
-        sender.sendMessage(ChatColor.YELLOW + "Usage: /orefinder reload");
+        if (args.length == 1 && args[0].equalsIgnoreCase("stats")) {
+            if (!sender.hasPermission("orefinder.stats")) {
+                sender.sendMessage(ChatColor.RED + "You do not have permission to view OreFinder stats.");
+                return true;
+            }
+            sendStats(sender);
+            return true;
+        }
+        sender.sendMessage(ChatColor.YELLOW + "Usage: /orefinder <reload|stats>");
         return true;
     }
 
+    private void sendStats(CommandSender sender) {
+        SearchMetrics metrics = this.pInteract.getSearchMetrics();
+        OreIndex index = this.pInteract.getOreIndex();
+        long searches = metrics.getSearches();
+        sender.sendMessage(ChatColor.GOLD + "OreFinder search stats");
+        sender.sendMessage(ChatColor.GRAY + "Searches: " + ChatColor.WHITE + searches + " (" + metrics.getFound()
+                + " found, " + metrics.getMissed() + " missed, " + metrics.getInconclusive() + " inconclusive)");
+        sender.sendMessage(ChatColor.GRAY + "Latency: " + ChatColor.WHITE + "mean " + metrics.getMeanMicros()
+                + " µs, p50 <= " + metrics.getPercentileMicros(50) + " µs, p99 <= " + metrics.getPercentileMicros(99)
+                + " µs, max " + metrics.getMaxMicros() + " µs");
+        sender.sendMessage(ChatColor.GRAY + "Work: " + ChatColor.WHITE + metrics.getBlocksExamined() + " blocks ("
+                + (searches == 0 ? 0 : metrics.getBlocksExamined() / searches) + " per search), "
+                + metrics.getShellsWalked() + " shells, " + metrics.getSectionsScanned() + " sections");
+        sender.sendMessage(ChatColor.GRAY + "Rate: " + ChatColor.WHITE
+                + String.format("%.2f", metrics.getSearchesPerTick()) + " per tick, max "
+                + metrics.getMaxSearchesPerTick() + " in one tick");
+        sender.sendMessage(ChatColor.GRAY + "Rejected: " + ChatColor.WHITE + metrics.getCooldownRejections()
+                + " on cooldown, " + metrics.getQueueRejections() + " by the search queue");
+        sender.sendMessage(ChatColor.GRAY + "Unloaded chunks: " + ChatColor.WHITE + metrics.getChunkLoadsAvoided()
+                + " loads avoided, " + metrics.getChunksLoaded() + " loaded for deferred searches");
+        sender.sendMessage(ChatColor.GRAY + "Generation rules: " + ChatColor.WHITE + metrics.getPrunedTargets()
+                + " targets skipped");
+        ResultCache cache = this.pInteract.getResultCache();
+        sender.sendMessage(ChatColor.GRAY + "Result cache: " + ChatColor.WHITE + cache.size() + " results, "
+                + cache.getAnswered() + " clicks answered, " + cache.getNarrowed() + " searches narrowed");
+        SearchSessions sessions = this.pInteract.getSearchSessions();
+        sender.sendMessage(ChatColor.GRAY + "Sessions: " + ChatColor.WHITE + sessions.size() + " active, "
+                + sessions.getPositions() + " positions, " + sessions.getStarted() + " started, "
+                + sessions.getResumed() + " resumed");
+        sender.sendMessage(ChatColor.GRAY + "Ore index: " + ChatColor.WHITE + index.size() + " sections, "
+                + index.getHits() + " hits, " + index.getMisses() + " misses, " + index.getLoads() + " loaded from disk, "
+                + index.getUpdates() + " updated in place");
+        DistanceField field = this.pInteract.getDistanceField();
+        if (field.isEnabled()) {
+            sender.sendMessage(ChatColor.GRAY + "Distance field: " + ChatColor.WHITE + field.size() + " columns, "
+                    + (field.getBytes() >> 10) + " of " + (field.getMaxBytes() >> 10) + " KiB, " + field.getHits()
+                    + " hits, " + field.getMisses() + " misses, " + field.getBuilds() + " built, " + field.getUpdates()
+                    + " updated in place, " + field.getInvalidations() + " dropped, " + field.getEvictions() + " evicted");
+        }
+        ChunkPreIndexer preIndexer = this.pInteract.getPreIndexer();
+        if (preIndexer != null) {
+            String status = "";
+            if (preIndexer.isPaused()) {
+                status = " (paused)";
+            } else if (preIndexer.isIndexFull()) {
+                status = " (index full)";
+            }
+            sender.sendMessage(ChatColor.GRAY + "Pre-indexer: " + ChatColor.WHITE + preIndexer.getIndexed()
+                    + " chunks indexed, " + preIndexer.queued() + " queued, " + preIndexer.getDropped() + " dropped, "
+                    + String.format("%.1f", preIndexer.getTps()) + " TPS" + status);
+        }
+    }
+
+    /**
+     * Starts the per-tick metrics sampler, the batched search runner, the pre-indexer, the chunk
+     * loader, the distance field builder, the cooldown sweeper and the ore index flusher once, and
+     * (re)starts the periodic metrics log line with the configured interval.
+     */
+    private void scheduleTasks() {
+        if (cooldownSweeper == null) {
+            PlayerCooldownManager cooldowns = this.pInteract.getCooldowns();
+            cooldownSweeper = getServer().getScheduler().runTaskTimerAsynchronously(this, cooldowns::sweep,
+                    COOLDOWN_SWEEP_TICKS, COOLDOWN_SWEEP_TICKS);
+        }
+        if (metricsSampler == null) {
+            SearchMetrics metrics = this.pInteract.getSearchMetrics();
+            metricsSampler = getServer().getScheduler().runTaskTimer(this, metrics::tick, 1L, 1L);
+        }
+        if (preIndexRunner == null) {
+            preIndexRunner = getServer().getScheduler().runTaskTimer(this, this.pInteract::runPreIndexer, 1L, 1L);
+        }
+        if (chunkLoadRunner == null) {
+            chunkLoadRunner = getServer().getScheduler().runTaskTimer(this, this.pInteract::runChunkLoader, 1L, 1L);
+        }
+        if (fieldBuildRunner == null) {
+            fieldBuildRunner = getServer().getScheduler().runTaskTimer(this, this.pInteract::runFieldBuilder, 1L, 1L);
+        }
+        if (indexFlusher == null) {
+            indexFlusher = getServer().getScheduler().runTaskTimerAsynchronously(this, this.pInteract::flushIndexStore,
+                    INDEX_FLUSH_TICKS, INDEX_FLUSH_TICKS);
+        }
+        if (batchRunner == null) {
+            batchRunner = getServer().getScheduler().runTaskTimer(this, this.pInteract::runBatchedSearches, 1L, 1L);
+        }
+        if (metricsLogger != null) {
+            metricsLogger.cancel();
+            metricsLogger = null;
+        }
+        long interval = getConfig().getLong("search.metrics.log_interval", 300L) * 20L;
+        if (interval > 0) {
+            SearchMetrics metrics = this.pInteract.getSearchMetrics();
+            metricsLogger = getServer().getScheduler().runTaskTimer(this, () -> {
+                if (metrics.getSearches() > 0) {
+                    getLogger().info("Searches: " + metrics.summary());
+                }
+            }, interval, interval);
+        }
+    }
+
+    /**
+     * Runs the task on the next server tick, unless the plugin is already disabled.
+     */
+    @Override
+    public void runOnMainThread(Runnable task) {
+        if (isEnabled()) {
+            getServer().getScheduler().runTask(this, task);
+        }
+    }
+
     /**
      * Called when the plugin is disabled. This method performs any necessary cleanup.
      */
     @Override
     public void onDisable() {
+        // Stop background searches; the scheduler cancels the periodic tasks by itself
+        this.pInteract.shutdown();
+        metricsSampler = null;
+        batchRunner = null;
+        preIndexRunner = null;
+        chunkLoadRunner = null;
+        fieldBuildRunner = null;
+        metricsLogger = null;
+        cooldownSweeper = null;
+        indexFlusher = null;
+
+        SearchMetrics metrics = this.pInteract.getSearchMetrics();
+        if (metrics.getSearches() > 0) {
+            getLogger().info("Searches: " + metrics.summary());
+        }
+        OreIndex index = this.pInteract.getOreIndex();
+        if (index.getHits() + index.getMisses() > 0) {
+            getLogger().info("Ore index: " + index.getHits() + " hits, " + index.getMisses() + " misses, "
+                    + index.getLoads() + " loaded from disk, " + index.getEvictions() + " evictions.");
+        }
+
         // Log plugin disabled message
         getLogger().info("OreFinder disabled.");
     }
@@ -1,5 +1,6 @@
 package org.mystikos.minecraft.orefinder;
 
+import java.io.File;
 import java.util.logging.Logger;
 
 import org.bukkit.configuration.file.FileConfiguration;
@@ -34,4 +35,26 @@ interface OrefinderContext {
      * @return the {@link Logger} instance for this plugin
      */
     Logger getLogger();
+
+    /**
+     * Retrieves the plugin's data folder.
+     * <p>
+     * Files the plugin keeps between restarts, such as the persisted ore index, are stored
+     * in this folder.
+     * </p>
+     *
+     * @return the folder holding the plugin's files
+     */
+    File getDataFolder();
+
+    /**
+     * Schedules a task to run on the main server thread.
+     * <p>
+     * Work started on other threads must use this to touch players, worlds or any other
+     * Bukkit state.
+     * </p>
+     *
+     * @param task the task to run
+     */
+    void runOnMainThread(Runnable task);
 }
@@ -0,0 +1,94 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.block.data.BlockData;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.WeakHashMap;
+
+/**
+ * Skips sections using the block palettes captured in chunk snapshots.
+ * <p>
+ * A section made only of air is skipped through {@link ChunkSnapshot#isSectionEmpty(int)}, and a
+ * chunk whose palettes do not mention the target at all is skipped through
+ * {@link ChunkSnapshot#contains(BlockData)}. The palette check compares exact block states, so it
+ * is only used for targets that have a single state, such as ores. It covers the whole chunk, so
+ * its answer is kept per snapshot and target rather than asked again for every section. If the
+ * platform does not implement these checks the filter stops asking and lets every section through.
+ * </p>
+ */
+final class PaletteSectionFilter implements SectionFilter {
+
+    /**
+     * Block data for every target with exactly one block state.
+     */
+    private final Map<Material, SingleState> singleState = new EnumMap<>(Material.class);
+
+    /**
+     * Per snapshot, the targets whose palette check has been made and, of those, the ones found,
+     * as masks of {@link SingleState#bit()}. Weak keys let the entries go with the snapshots.
+     * Guarded by itself.
+     */
+    private final Map<ChunkSnapshot, long[]> checked = new WeakHashMap<>();
+    private volatile boolean supported = true;
+
+    /**
+     * @param targets The block types that will be searched for.
+     */
+    PaletteSectionFilter(Set<Material> targets) {
+        for (Material target : targets) {
+            BlockData data = target.createBlockData();
+            // Block states with properties are written as "minecraft:name[property=value,...]"
+            if (data.getAsString().indexOf('[') < 0) {
+                // Targets beyond the 64th are checked every time
+                int index = singleState.size();
+                singleState.put(target, new SingleState(data, index < Long.SIZE ? 1L << index : 0L));
+            }
+        }
+    }
+
+    @Override
+    public boolean mayContain(UUID worldId, ChunkSnapshot snapshot, int sectionY, Material target) {
+        if (!supported) return true;
+        try {
+            if (snapshot.isSectionEmpty(sectionY)) return false;
+            SingleState state = singleState.get(target);
+            return state == null || contains(snapshot, state);
+        } catch (UnsupportedOperationException e) {
+            supported = false;
+            return true;
+        }
+    }
+
+    /**
+     * Returns whether the chunk's palettes mention the target, checking them only the first time
+     * the target is asked about for this snapshot.
+     */
+    private boolean contains(ChunkSnapshot snapshot, SingleState state) {
+        long bit = state.bit();
+        if (bit == 0L) return snapshot.contains(state.data());
+        long[] masks;
+        synchronized (checked) {
+            masks = checked.computeIfAbsent(snapshot, s -> new long[2]);
+            if ((masks[0] & bit) != 0) return (masks[1] & bit) != 0;
+        }
+        // Two threads may both check a new target; they find the same answer
+        boolean found = snapshot.contains(state.data());
+        synchronized (checked) {
+            masks[0] |= bit;
+            if (found) masks[1] |= bit;
+        }
+        return found;
+    }
+
+    /**
+     * A single-state target's block data, and the bit standing for it in the masks of
+     * {@link #checked}, or 0 if it has none.
+     */
+    private record SingleState(BlockData data, long bit) {
+    }
+}
@@ -0,0 +1,290 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Searches captured chunks for large search radii by scanning chunk sections on a
+ * {@link ForkJoinPool}.
+ * <p>
+ * The sections covering the search volume are sorted nearest first, as in
+ * {@link OreLocator#getBlockTypeDistances(BlockSource, int, int, int, Material[], SearchProfile)},
+ * and split into tasks. All tasks share the best distance found so far for each target and skip
+ * sections, and blocks, that cannot beat it. Since a section is only skipped when it cannot hold
+ * a closer match, the result is the same as the sequential search's.
+ * </p>
+ * <p>
+ * The sequential search may stop early once its block budget is spent, at a point that depends
+ * on the order it scans in. To keep the results identical, a profile is only searched in
+ * parallel if its whole search box fits the budget; see {@link #handles(SearchProfile)}.
+ * </p>
+ */
+final class ParallelOreLocator {
+
+    /**
+     * Sections scanned by one task without splitting further.
+     */
+    private static final int SECTIONS_PER_TASK = 4;
+
+    private final ForkJoinPool pool;
+    private final SectionFilter sectionFilter;
+    private final SearchMetrics metrics;
+    private final int minRadius;
+
+    /**
+     * @param threads       Number of worker threads.
+     * @param minRadius     Smallest search radius worth splitting across threads.
+     * @param sectionFilter Decides which sections can be skipped.
+     * @param metrics       Receives the work done by every search.
+     */
+    ParallelOreLocator(int threads, int minRadius, SectionFilter sectionFilter, SearchMetrics metrics) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Parallel search threads must be positive");
+        }
+        this.sectionFilter = sectionFilter;
+        this.metrics = metrics;
+        this.minRadius = minRadius;
+        AtomicInteger counter = new AtomicInteger();
+        this.pool = new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("OreFinder Parallel Search #" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Returns whether searches with the given profile are large enough to run in parallel, and
+     * certain to give the same result as the sequential search: the whole search box must fit
+     * the profile's block budget.
+     */
+    boolean handles(SearchProfile profile) {
+        if (profile.radius() < minRadius) return false;
+        long side = 2L * profile.reach() + 1;
+        long volume = side * side * (2L * profile.verticalRadius() + 1);
+        return profile.maxBlocks() == 0 || volume <= profile.maxBlocks();
+    }
+
+    /**
+     * Returns the distance to the nearest block of each of the given types, reading block types
+     * from previously captured chunk snapshots. Blocks the calling thread until the search is
+     * done. The region must cover the profile's {@link SearchProfile#reach() reach}
+     * horizontally around the origin.
+     *
+     * @param region    The captured chunks around the origin.
+     * @param x         Block X coordinate of the origin.
+     * @param y         Block Y coordinate of the origin.
+     * @param z         Block Z coordinate of the origin.
+     * @param targets   The block types to search for; at most 64.
+     * @param profile   The reach and shape of the search.
+     * @param cancelled Checked between sections; once it returns true the search is abandoned.
+     * @return Distances in the same order as {@code targets}, {@link OreLocator#NOT_FOUND} for
+     * types not found, or {@code null} if the search was cancelled.
+     */
+    int[] getBlockTypeDistances(SnapshotRegion region, int x, int y, int z, Material[] targets,
+                                SearchProfile profile, BooleanSupplier cancelled) {
+        OreLocator.checkTargets(targets);
+        int reach = profile.reach();
+        AtomicIntegerArray best = new AtomicIntegerArray(targets.length);
+        for (int t = 0; t < targets.length; t++) {
+            best.set(t, profile.radius());
+        }
+        int minY = Math.max(y - profile.verticalRadius(), region.getMinHeight());
+        int maxY = Math.min(y + profile.verticalRadius(), region.getMaxHeight() - 1);
+        LongAdder blocks = new LongAdder();
+        LongAdder scanned = new LongAdder();
+        if (minY <= maxY) {
+            int minChunkX = (x - reach) >> 4, maxChunkX = (x + reach) >> 4;
+            int minChunkZ = (z - reach) >> 4, maxChunkZ = (z + reach) >> 4;
+            int minSection = minY >> 4, maxSection = maxY >> 4;
+            int capacity = (maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1) * (maxSection - minSection + 1);
+            ChunkSnapshot[] snapshots = new ChunkSnapshot[capacity];
+            int[] sectionYs = new int[capacity];
+            long[] masks = new long[capacity];
+            long[] order = new long[capacity];
+            int count = 0;
+            for (int cx = minChunkX; cx <= maxChunkX; cx++) {
+                for (int cz = minChunkZ; cz <= maxChunkZ; cz++) {
+                    ChunkSnapshot snapshot = region.getChunkSnapshot(cx, cz);
+                    if (snapshot == null) continue;
+                    for (int sy = minSection; sy <= maxSection; sy++) {
+                        int lowerBound = profile.distance(OreLocator.axisDistance(x, cx << 4),
+                                OreLocator.axisDistance(y, sy << 4), OreLocator.axisDistance(z, cz << 4));
+                        if (lowerBound > reach) continue;
+                        long mask = 0L;
+                        for (int i = 0; i < targets.length; i++) {
+                            if (sectionFilter.mayContain(region.getWorldId(), snapshot, sy, targets[i])) {
+                                mask |= 1L << i;
+                            }
+                        }
+                        if (mask == 0L) continue;
+                        snapshots[count] = snapshot;
+                        sectionYs[count] = sy;
+                        masks[count] = mask;
+                        order[count] = (long) lowerBound << 32 | count;
+                        count++;
+                    }
+                }
+            }
+            Arrays.sort(order, 0, count);
+
+            Search search = new Search(snapshots, sectionYs, masks, order, x, y, z, minY, maxY,
+                    targets, profile, best, cancelled, blocks, scanned);
+            pool.invoke(search.new Task(0, count));
+        }
+        metrics.recordWork(blocks.sum(), 0, scanned.intValue());
+        if (cancelled.getAsBoolean()) return null;
+
+        int[] distances = new int[targets.length];
+        for (int t = 0; t < distances.length; t++) {
+            int distance = best.get(t);
+            distances[t] = distance > reach ? OreLocator.NOT_FOUND : distance;
+        }
+        return distances;
+    }
+
+    /**
+     * Stops the worker threads, waiting up to the given time for running searches to finish.
+     *
+     * @param timeoutMillis Maximum time to wait, in milliseconds.
+     */
+    void shutdown(long timeoutMillis) {
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                pool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The sorted sections of one search and the state its tasks share.
+     */
+    private static final class Search {
+        final ChunkSnapshot[] snapshots;
+        final int[] sectionYs;
+        final long[] masks;
+        final long[] order;
+        final int x, y, z, minY, maxY;
+        final Material[] targets;
+        final SearchProfile profile;
+        final AtomicIntegerArray best;
+        final BooleanSupplier cancelled;
+        final LongAdder blocks;
+        final LongAdder scanned;
+
+        Search(ChunkSnapshot[] snapshots, int[] sectionYs, long[] masks, long[] order, int x, int y, int z,
+               int minY, int maxY, Material[] targets, SearchProfile profile, AtomicIntegerArray best,
+               BooleanSupplier cancelled, LongAdder blocks, LongAdder scanned) {
+            this.snapshots = snapshots;
+            this.sectionYs = sectionYs;
+            this.masks = masks;
+            this.order = order;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.minY = minY;
+            this.maxY = maxY;
+            this.targets = targets;
+            this.profile = profile;
+            this.best = best;
+            this.cancelled = cancelled;
+            this.blocks = blocks;
+            this.scanned = scanned;
+        }
+
+        /**
+         * Scans the sections at positions {@code from} (inclusive) to {@code to} (exclusive) of
+         * the sorted order, splitting in halves until few enough are left.
+         */
+        final class Task extends RecursiveAction {
+            private final int from;
+            private final int to;
+
+            Task(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from > SECTIONS_PER_TASK) {
+                    int middle = (from + to) >>> 1;
+                    // The nearer half runs first on this thread, so its matches prune the other half
+                    invokeAll(new Task(from, middle), new Task(middle, to));
+                    return;
+                }
+                for (int i = from; i < to; i++) {
+                    if (cancelled.getAsBoolean()) return;
+                    int lowerBound = (int) (order[i] >>> 32);
+                    int index = (int) order[i];
+                    long mask = masks[index];
+                    for (int t = 0; t < targets.length; t++) {
+                        if (best.get(t) <= lowerBound) mask &= ~(1L << t);
+                    }
+                    if (mask != 0L) {
+                        scanSection(snapshots[index], sectionYs[index], mask);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Scans the part of a section inside the search volume for the targets selected by
+         * {@code mask}, lowering their shared best distances for every closer match found.
+         */
+        void scanSection(ChunkSnapshot snapshot, int sectionY, long mask) {
+            int baseX = snapshot.getX() << 4;
+            int baseZ = snapshot.getZ() << 4;
+            int reach = profile.reach();
+            int fromX = Math.max(baseX, x - reach), toX = Math.min(baseX + 15, x + reach);
+            int fromZ = Math.max(baseZ, z - reach), toZ = Math.min(baseZ + 15, z + reach);
+            int fromY = Math.max(sectionY << 4, minY), toY = Math.min((sectionY << 4) + 15, maxY);
+            blocks.add((long) (toX - fromX + 1) * (toY - fromY + 1) * (toZ - fromZ + 1));
+            scanned.increment();
+            // Blocks at or beyond this distance cannot improve any selected target; other tasks
+            // may lower the shared values meanwhile, which only makes this bound loose
+            int limit = maskedMax(mask);
+            for (int by = fromY; by <= toY; by++) {
+                int dy = by - y;
+                if (profile.distance(0, dy, 0) >= limit) continue;
+                for (int bz = fromZ; bz <= toZ; bz++) {
+                    int dz = bz - z;
+                    if (profile.distance(0, dy, dz) >= limit) continue;
+                    for (int bx = fromX; bx <= toX; bx++) {
+                        int d = profile.distance(bx - x, dy, dz);
+                        if (d >= limit) continue;
+                        Material type = snapshot.getBlockType(bx & 15, by, bz & 15);
+                        for (int t = 0; t < targets.length; t++) {
+                            if (type == targets[t] && (mask & (1L << t)) != 0 && d < best.get(t)) {
+                                best.accumulateAndGet(t, d, Math::min);
+                                limit = maskedMax(mask);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        private int maskedMax(long mask) {
+            int max = 0;
+            for (int t = 0; t < targets.length; t++) {
+                if ((mask & (1L << t)) != 0) max = Math.max(max, best.get(t));
+            }
+            return max;
+        }
+    }
+}
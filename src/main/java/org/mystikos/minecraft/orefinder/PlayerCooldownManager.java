@@ -1,31 +1,92 @@
 package org.mystikos.minecraft.orefinder;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 /**
  * Tracks per-player cooldowns for the Orefinder detector.
- * A player may use the detector at most once per second.
+ * A player may use the detector once per cooldown period, one second by default.
+ * <p>
+ * All methods are thread-safe and lock-free. Each player's last use is a primitive timestamp in
+ * its own {@link AtomicLong}, claimed with a compare-and-set, so of two simultaneous clicks only
+ * one passes. Entries are only allocated on a player's first use.
+ * </p>
  */
 class PlayerCooldownManager {
 
-    private final Map<UUID, Long> lastUsed = new HashMap<>();
+    /**
+     * Marks an entry that {@link #sweep()} is removing; a click that sees it starts afresh.
+     */
+    private static final long EXPIRED = Long.MIN_VALUE;
+
+    private final Map<UUID, AtomicLong> lastUsed = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+    private volatile long cooldownMillis;
+
+    /**
+     * Creates a manager with a one-second cooldown on the system clock.
+     */
+    PlayerCooldownManager() {
+        this(1000L, System::currentTimeMillis);
+    }
+
+    /**
+     * @param cooldownMillis Minimum time between two uses by the same player.
+     * @param clock          Supplies the current time in milliseconds.
+     */
+    PlayerCooldownManager(long cooldownMillis, LongSupplier clock) {
+        setCooldownMillis(cooldownMillis);
+        this.clock = clock;
+    }
+
+    /**
+     * Changes the cooldown. Applies to the next use of every player.
+     *
+     * @param cooldownMillis Minimum time between two uses by the same player; 0 disables the cooldown.
+     */
+    void setCooldownMillis(long cooldownMillis) {
+        if (cooldownMillis < 0) {
+            throw new IllegalArgumentException("Cooldown cannot be negative");
+        }
+        this.cooldownMillis = cooldownMillis;
+    }
 
     /**
-     * Returns true and records the current timestamp if the player's cooldown has elapsed,
-     * false if the player used the detector within the current second.
+     * Returns true and records the current time if the player's cooldown has elapsed,
+     * false if the player used the detector within the cooldown period.
      *
      * @param playerId The player's unique ID.
      */
     boolean canUse(UUID playerId) {
-        long now = System.currentTimeMillis() / 1000L;
-        Long last = lastUsed.get(playerId);
-        if (last == null || now > last) {
-            lastUsed.put(playerId, now);
-            return true;
+        long now = clock.getAsLong();
+        while (true) {
+            AtomicLong last = lastUsed.get(playerId);
+            if (last == null) {
+                last = lastUsed.putIfAbsent(playerId, new AtomicLong(now));
+                if (last == null) return true;
+            }
+            long previous = last.get();
+            if (previous == EXPIRED) {
+                // The sweeper is dropping this entry; help it along and start a new one
+                lastUsed.remove(playerId, last);
+                continue;
+            }
+            return now - previous >= cooldownMillis && last.compareAndSet(previous, now);
         }
-        return false;
+    }
+
+    /**
+     * Gives back a use that {@link #canUse(UUID)} granted but that came to nothing, such as a
+     * search that could not be queued, so the player may try again right away. Any earlier use
+     * is past its cooldown by then, so forgetting it changes nothing else.
+     *
+     * @param playerId The player's unique ID.
+     */
+    void refund(UUID playerId) {
+        lastUsed.remove(playerId);
     }
 
     /**
@@ -36,4 +97,33 @@ class PlayerCooldownManager {
     void removePlayer(UUID playerId) {
         lastUsed.remove(playerId);
     }
+
+    /**
+     * Drops the records of players whose cooldown has elapsed. Forgetting them changes nothing
+     * for their next use, so this only frees memory, including for players whose quit event was
+     * missed. Safe to run on any thread while players are clicking.
+     *
+     * @return the number of records dropped
+     */
+    int sweep() {
+        long now = clock.getAsLong();
+        long cooldown = cooldownMillis;
+        int removed = 0;
+        for (Map.Entry<UUID, AtomicLong> entry : lastUsed.entrySet()) {
+            AtomicLong last = entry.getValue();
+            long previous = last.get();
+            if (previous != EXPIRED && now - previous >= cooldown && last.compareAndSet(previous, EXPIRED)) {
+                lastUsed.remove(entry.getKey(), last);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @return the number of players currently tracked
+     */
+    int size() {
+        return lastUsed.size();
+    }
 }
@@ -1,8 +1,9 @@
 package org.mystikos.minecraft.orefinder;
 
-import org.bukkit.ChatColor;
 import org.bukkit.GameMode;
 import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
@@ -10,10 +11,17 @@ import org.bukkit.event.Listener;
 import org.bukkit.event.block.Action;
 import org.bukkit.event.player.PlayerInteractEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.WorldLoadEvent;
 import org.bukkit.inventory.ItemStack;
 
-import java.util.Objects;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.LongStream;
 
 /**
  * Listener class for handling player interactions and events related to the Orefinder plugin.
@@ -21,84 +29,611 @@ import java.util.Random;
 class PlayerInteractionListener implements Listener {
 
     private final OrefinderContext plugin;
-    private final ItemConf ic;
-    private final OreLocator oreLocator = new OreLocator();
+
+    /**
+     * The configuration and search components read by event handlers, replaced as a whole on
+     * every {@link #init()}.
+     */
+    private volatile Setup setup = Setup.NONE;
     private final PlayerCooldownManager cooldowns = new PlayerCooldownManager();
+    private final OreIndex oreIndex = new OreIndex();
+    private final DistanceField distanceField = new DistanceField();
+    private final ResultCache resultCache = new ResultCache();
+    private final SearchMetrics metrics = new SearchMetrics();
+    private final SearchSessions sessions = new SearchSessions(metrics);
+    private final BlockChangeListener blockChanges = new BlockChangeListener();
     private final Random random = new Random();
 
+    /**
+     * Everything event handlers read that {@link #init()} replaces. A click reads it once, so it
+     * never mixes the settings of two reloads.
+     *
+     * @param config        The compiled configuration, or {@code null} before the first init.
+     * @param oreLocator    Runs searches with the configured section filter.
+     * @param cacheResults  Whether search results are kept in the result cache.
+     * @param useSessions   Whether searches resume the player's search session.
+     * @param batcher       Serves searches batched per tick, or {@code null} if batching is disabled.
+     * @param chunkLoader   Loads the chunks deferred searches wait for, or {@code null}.
+     * @param asyncSearches The worker pool for asynchronous searches, or {@code null}.
+     * @param parallel      Splits large searches over several threads, or {@code null}.
+     * @param indexStore    Persists the ore index, or {@code null}.
+     * @param preIndexer    Indexes loaded chunks in the background, or {@code null}.
+     * @param fieldBuilder  Builds the distance field columns searches found missing, or {@code null}.
+     */
+    private record Setup(CompiledConfig config, OreLocator oreLocator, boolean cacheResults, boolean useSessions,
+                         SearchBatcher batcher, DeferredChunkLoader chunkLoader, AsyncSearchExecutor asyncSearches,
+                         ParallelOreLocator parallel, OreIndexStore indexStore, ChunkPreIndexer preIndexer,
+                         DistanceFieldBuilder fieldBuilder) {
+
+        static final Setup NONE = new Setup(null, new OreLocator(), false, false, null, null, null, null,
+                null, null, null);
+
+        /**
+         * @return this setup without its worker pools and index store, for once they are shut down
+         */
+        Setup withoutWorkers() {
+            return new Setup(config, oreLocator, cacheResults, useSessions, batcher, chunkLoader, null, null,
+                    null, null, null);
+        }
+
+        /**
+         * Stops the worker pools, the pre-indexer and the distance field builder of this setup, if
+         * they are running, waiting up to the given time for each.
+         *
+         * @param timeoutMillis Maximum time to wait per pool, in milliseconds; 0 interrupts the
+         *                      work still running instead of waiting for it.
+         */
+        void stopWorkers(long timeoutMillis) {
+            if (asyncSearches != null) {
+                asyncSearches.shutdown(timeoutMillis);
+            }
+            if (parallel != null) {
+                parallel.shutdown(timeoutMillis);
+            }
+            if (preIndexer != null) {
+                preIndexer.shutdown(timeoutMillis);
+            }
+            if (fieldBuilder != null) {
+                fieldBuilder.shutdown(timeoutMillis);
+            }
+        }
+    }
+
     public PlayerInteractionListener(OrefinderContext plugin) {
         this.plugin = plugin;
-        this.ic = new ItemConf(this.plugin);
+        this.blockChanges.addObserver(oreIndex);
+        this.blockChanges.addObserver(distanceField);
+        this.blockChanges.addObserver(resultCache);
+        this.blockChanges.addObserver(sessions);
+    }
+
+    /**
+     * Returns the listener that keeps cached ore data in step with block changes. It must be
+     * registered alongside this listener.
+     */
+    BlockChangeListener getBlockChangeListener() {
+        return blockChanges;
+    }
+
+    /**
+     * @return the ore index used by the {@link SearchEngine#INDEX} engine
+     */
+    OreIndex getOreIndex() {
+        return oreIndex;
+    }
+
+    /**
+     * @return the distance field used by the {@link SearchEngine#FIELD} engine
+     */
+    DistanceField getDistanceField() {
+        return distanceField;
+    }
+
+    /**
+     * @return the cache of recent search results
+     */
+    ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * @return the per-player search sessions
+     */
+    SearchSessions getSearchSessions() {
+        return sessions;
+    }
+
+    /**
+     * @return the background indexer of loaded chunks, or {@code null} if pre-indexing is disabled
+     */
+    ChunkPreIndexer getPreIndexer() {
+        return setup.preIndexer();
+    }
+
+    /**
+     * @return the per-player cooldowns, which must be {@link PlayerCooldownManager#sweep() swept} periodically
+     */
+    PlayerCooldownManager getCooldowns() {
+        return cooldowns;
+    }
+
+    /**
+     * @return the counters describing every search run by this listener
+     */
+    SearchMetrics getSearchMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Serves the searches queued during this tick, if batching is enabled. Must be called on
+     * the main server thread every tick.
+     */
+    void runBatchedSearches() {
+        SearchBatcher batcher = setup.batcher();
+        if (batcher != null) {
+            batcher.tick();
+        }
+    }
+
+    /**
+     * Loads the chunks that deferred searches wait for, if unloaded chunks are loaded at all.
+     * Must be called on the main server thread every tick.
+     */
+    void runChunkLoader() {
+        DeferredChunkLoader chunkLoader = setup.chunkLoader();
+        if (chunkLoader != null) {
+            chunkLoader.tick();
+        }
+    }
+
+    /**
+     * Hands queued chunks to the pre-indexer, if pre-indexing is enabled. Must be called on the
+     * main server thread every tick.
+     */
+    void runPreIndexer() {
+        ChunkPreIndexer preIndexer = setup.preIndexer();
+        if (preIndexer != null) {
+            preIndexer.tick();
+        }
+    }
+
+    /**
+     * Builds the distance field columns that searches found missing, if the field is in use. Must
+     * be called on the main server thread every tick.
+     */
+    void runFieldBuilder() {
+        DistanceFieldBuilder fieldBuilder = setup.fieldBuilder();
+        if (fieldBuilder != null) {
+            fieldBuilder.tick();
+        }
     }
 
     /**
      * Delegates to {@link OreLocator} to find the Chebyshev distance to the nearest matching block.
      *
-     * @param loc     The location to search from.
-     * @param blockId The block type to search for.
+     * @param loc    The location to search from.
+     * @param target The block type to search for.
      * @return Distance to the nearest matching block, or -1 if not found.
      */
-    public int getBlockTypeDistance(Location loc, String blockId) {
-        return oreLocator.getBlockTypeDistance(loc, blockId);
+    public int getBlockTypeDistance(Location loc, Material target) {
+        return setup.oreLocator().getBlockTypeDistance(loc, target);
     }
 
     @EventHandler(priority = EventPriority.NORMAL)
     public void onPlayerQuitEvent(PlayerQuitEvent event) {
         cooldowns.removePlayer(event.getPlayer().getUniqueId());
+        sessions.remove(event.getPlayer().getUniqueId());
+        AsyncSearchExecutor asyncSearches = setup.asyncSearches();
+        if (asyncSearches != null) {
+            // Searches still running in parallel stop early, and none of them reports back
+            asyncSearches.cancel(event.getPlayer().getUniqueId());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldLoad(WorldLoadEvent event) {
+        OreIndexStore indexStore = setup.indexStore();
+        if (indexStore != null) {
+            indexStore.open(event.getWorld());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        ChunkPreIndexer preIndexer = setup.preIndexer();
+        if (preIndexer != null) {
+            preIndexer.chunkLoaded(event.getWorld(), event.getChunk().getX(), event.getChunk().getZ());
+        }
     }
 
     @EventHandler(priority = EventPriority.LOW)
     public void onPlayerInteract(PlayerInteractEvent event) {
         Player player = event.getPlayer();
-        if (player.hasPermission("orefinder.use")) {
+        Setup setup = this.setup;
+        CompiledConfig config = setup.config();
+        if (config != null && player.hasPermission("orefinder.use")) {
             ItemStack holding = player.getInventory().getItemInMainHand();
-            String oreId = ic.getOreId(holding.getType().toString());
-            if (event.getAction() == Action.LEFT_CLICK_BLOCK && !oreId.isEmpty() && cooldowns.canUse(player.getUniqueId())) {
-                if (event.getClickedBlock() != null) {
-                    int distance = oreLocator.getBlockTypeDistance(event.getClickedBlock().getLocation(), oreId);
-                    sendDistanceMessage(player, distance);
-                    if (plugin.getConfig().getBoolean("functions.block_stealing")) {
-                        handleBlockStealing(player, holding);
+            Material[] targets = config.getTargets(holding.getType());
+            if (event.getAction() == Action.LEFT_CLICK_BLOCK && targets != null) {
+                if (!cooldowns.canUse(player.getUniqueId())) {
+                    metrics.recordCooldownRejection();
+                } else if (event.getClickedBlock() != null) {
+                    Location loc = event.getClickedBlock().getLocation();
+                    SearchProfile profile = config.getProfile(holding.getType());
+                    startSearch(setup, player, loc, targets, profile, false);
+                    if (config.isBlockStealing()) {
+                        handleBlockStealing(config, player, holding);
                     }
                 }
             }
         }
     }
 
-    private void sendDistanceMessage(Player player, int distance) {
-        String message;
-        if (distance == -1) {
-            message = plugin.getConfig().getString("text.very_cold");
-            sendMessage(player, message, ChatColor.BLUE);
-        } else if (distance < 2) {
-            message = plugin.getConfig().getString("text.oneblock_hot");
-            sendMessage(player, message, ChatColor.DARK_RED);
-        } else if (distance < 4) {
-            message = plugin.getConfig().getString("text.very_hot");
-            sendMessage(player, message, ChatColor.RED);
-        } else if (distance < 6) {
-            message = plugin.getConfig().getString("text.hot");
-            sendMessage(player, message, ChatColor.RED);
-        } else if (distance < 8) {
-            message = plugin.getConfig().getString("text.warm");
-            sendMessage(player, message, ChatColor.GOLD);
-        } else if (distance < 15) {
-            message = plugin.getConfig().getString("text.lukewarm");
-            sendMessage(player, message, ChatColor.YELLOW);
-        } else if (distance < 20) {
-            message = plugin.getConfig().getString("text.cold");
-            sendMessage(player, message, ChatColor.AQUA);
+    /**
+     * Answers a click from the result cache if earlier searches nearby settle it, and otherwise
+     * searches, batched, on the worker pool or right away, depending on the configuration. A
+     * search run right away resumes the player's search session if sessions are enabled.
+     * <p>
+     * Searches never load chunks. Unloaded chunks within reach are handled by the configured
+     * {@link UnloadedChunkPolicy}; with {@link UnloadedChunkPolicy#LOAD}, the search is put off
+     * until the chunk loader has loaded them and then started again as {@code deferred}. Results
+     * that miss chunks are neither cached nor kept in a session.
+     * </p>
+     * <p>
+     * Targets that cannot generate within reach according to the {@link GenerationRules} are
+     * not searched for at all; if none is left, the click is answered right away.
+     * </p>
+     * <p>
+     * With the {@link SearchEngine#FIELD} engine, a click in a column the distance field holds is
+     * answered from it once any unloaded chunks have been dealt with, under the same policy and
+     * caching as a search; otherwise the column is queued to be built and the click is searched
+     * like with the snapshot engine.
+     * </p>
+     */
+    private void startSearch(Setup setup, Player player, Location loc, Material[] targets,
+                             SearchProfile profile, boolean deferred) {
+        CompiledConfig config = setup.config();
+        World world = loc.getWorld();
+        int[] limits = null;
+        if (world != null && setup.cacheResults()) {
+            ResultCache.Bounds bounds = resultCache.lookup(world.getUID(), loc.getBlockX(), loc.getBlockY(),
+                    loc.getBlockZ(), targets, profile);
+            int[] answer = bounds.answer();
+            if (answer != null) {
+                resultCache.recordAnswered();
+                sendDistanceMessages(config, player, targets, profile, answer);
+                return;
+            }
+            limits = bounds.limits();
+            if (limits != null) {
+                resultCache.recordNarrowed();
+            }
+        }
+
+        long all = targets.length < Long.SIZE ? (1L << targets.length) - 1 : -1L;
+        long reachable = world == null || targets.length > Long.SIZE ? all
+                : config.getGenerationRules().reachable(targets, world.getEnvironment(), loc.getBlockY(), profile);
+        if (reachable != all && !deferred) {
+            metrics.recordPrunedTargets(targets.length - Long.bitCount(reachable));
+        }
+        if (reachable == 0) {
+            int[] distances = new int[targets.length];
+            Arrays.fill(distances, OreLocator.NOT_FOUND);
+            remember(setup, resultCache.stamp(), loc, targets, profile, distances);
+            sendDistanceMessages(config, player, targets, profile, distances);
+            return;
+        }
+        Material[] searched = reachable == all ? targets : select(targets, reachable);
+        if (limits != null && reachable != all) {
+            limits = select(limits, reachable);
+        }
+
+        long[] unloaded = world == null ? new long[0]
+                : OreLocator.unloadedChunks(world, loc.getBlockX(), loc.getBlockZ(), profile);
+        if (unloaded.length > 0) {
+            DeferredChunkLoader chunkLoader = setup.chunkLoader();
+            // The search runs with the setup current once its chunks are loaded, which may have
+            // been replaced by a reload meanwhile
+            if (!deferred && chunkLoader != null && chunkLoader.request(world, unloaded, () -> {
+                if (player.isOnline()) {
+                    startSearch(this.setup, player, loc, targets, profile, true);
+                }
+            })) {
+                return;
+            }
+            metrics.recordChunkLoadsAvoided(unloaded.length);
+        }
+        UnloadedChunkPolicy policy = config.getUnloadedChunks();
+
+        if (config.getEngine() == SearchEngine.FIELD && world != null && distanceField.handles(profile)) {
+            long stamp = resultCache.stamp();
+            long start = System.nanoTime();
+            int[] found = distanceField.distances(world.getUID(), loc.getBlockX(), loc.getBlockY(), loc.getBlockZ(),
+                    searched, profile);
+            if (found != null) {
+                int[] distances = expand(applyPolicy(policy, found, unloaded, loc, profile), reachable,
+                        targets.length);
+                metrics.recordSearch(System.nanoTime() - start, distances);
+                if (unloaded.length == 0) {
+                    remember(setup, stamp, loc, targets, profile, distances);
+                }
+                sendDistanceMessages(config, player, targets, profile, distances);
+                return;
+            }
+            DistanceFieldBuilder fieldBuilder = setup.fieldBuilder();
+            if (fieldBuilder != null) {
+                fieldBuilder.request(world, loc.getBlockX() >> 4, loc.getBlockZ() >> 4);
+            }
+        }
+
+        SearchBatcher batcher = setup.batcher();
+        if (batcher != null && world != null) {
+            long stamp = resultCache.stamp();
+            boolean accepted = batcher.submit(world, loc.getBlockX(), loc.getBlockY(), loc.getBlockZ(), searched,
+                    profile, (found, unloadedLater) -> {
+                        // Chunks may have unloaded between the click and the tick that captured them
+                        long[] missed = unloadedLater.length == 0 ? unloaded : LongStream.concat(
+                                LongStream.of(unloaded), LongStream.of(unloadedLater)).toArray();
+                        int[] distances = expand(applyPolicy(policy, found, missed, loc, profile), reachable,
+                                targets.length);
+                        if (missed.length == 0) {
+                            remember(setup, stamp, loc, targets, profile, distances);
+                        }
+                        if (player.isOnline()) {
+                            sendDistanceMessages(config, player, targets, profile, distances);
+                        }
+                    });
+            if (!accepted) {
+                metrics.recordQueueRejection();
+                cooldowns.refund(player.getUniqueId());
+            }
+        } else if (setup.asyncSearches() != null) {
+            searchAsync(setup, player, loc, targets, searched, reachable, profile, limits, unloaded, false);
+        } else {
+            long stamp = resultCache.stamp();
+            long start = System.nanoTime();
+            // Sessions stand in for engines that read snapshots, not for the ore index or the live world
+            boolean session = setup.useSessions() && world != null && unloaded.length == 0
+                    && (config.getEngine() == SearchEngine.SNAPSHOT || config.getEngine() == SearchEngine.FIELD);
+            int[] distances = session
+                    ? sessions.search(player.getUniqueId(), world, loc.getBlockX(), loc.getBlockY(), loc.getBlockZ(),
+                    searched, profile, limits)
+                    : null;
+            if (distances == null) {
+                // No session, or one that would have overrun the profile's budget or read an unloaded chunk
+                session = false;
+                distances = applyPolicy(policy, search(setup, loc, searched, profile, limits), unloaded, loc, profile);
+            }
+            distances = expand(distances, reachable, targets.length);
+            metrics.recordSearch(System.nanoTime() - start, distances);
+            if (unloaded.length == 0 && (session || !settlesBands(config.getEngine(), profile))) {
+                remember(setup, stamp, loc, targets, profile, distances);
+            }
+            sendDistanceMessages(config, player, targets, profile, distances);
         }
     }
 
-    private void sendMessage(Player player, String message, ChatColor color) {
+    /**
+     * Applies the unloaded chunk policy to a search that read the given unloaded chunks as
+     * holding nothing: unless they count as holding no ore, targets they could hold closer are
+     * reported as inconclusive.
+     */
+    private static int[] applyPolicy(UnloadedChunkPolicy policy, int[] distances, long[] unloaded, Location loc,
+                                     SearchProfile profile) {
+        if (unloaded.length == 0 || policy == UnloadedChunkPolicy.NO_ORE) {
+            return distances;
+        }
+        return OreLocator.markUnloaded(distances.clone(), unloaded, loc.getBlockX(), loc.getBlockZ(), profile);
+    }
+
+    /**
+     * Returns the elements of {@code values} whose bit is set in {@code mask}.
+     */
+    private static Material[] select(Material[] values, long mask) {
+        Material[] selected = new Material[Long.bitCount(mask)];
+        for (int i = 0, j = 0; i < values.length; i++) {
+            if ((mask & 1L << i) != 0) selected[j++] = values[i];
+        }
+        return selected;
+    }
+
+    private static int[] select(int[] values, long mask) {
+        int[] selected = new int[Long.bitCount(mask)];
+        for (int i = 0, j = 0; i < values.length; i++) {
+            if ((mask & 1L << i) != 0) selected[j++] = values[i];
+        }
+        return selected;
+    }
+
+    /**
+     * Spreads the distances found for the targets selected by {@code mask} back over all
+     * {@code length} targets; the others are reported as not found.
+     */
+    private static int[] expand(int[] distances, long mask, int length) {
+        if (distances.length == length) return distances;
+        int[] expanded = new int[length];
+        for (int i = 0, j = 0; i < length; i++) {
+            expanded[i] = (mask & 1L << i) != 0 ? distances[j++] : OreLocator.NOT_FOUND;
+        }
+        return expanded;
+    }
+
+    /**
+     * Runs the search for all targets with the configured {@link SearchEngine}.
+     */
+    private int[] search(Setup setup, Location loc, Material[] targets, SearchProfile profile, int[] limits) {
+        World world = loc.getWorld();
+        SearchEngine engine = setup.config().getEngine();
+        OreLocator oreLocator = setup.oreLocator();
+        if (world == null || engine == SearchEngine.WORLD) {
+            return oreLocator.getBlockTypeDistances(loc, targets, profile, limits);
+        }
+        int x = loc.getBlockX(), y = loc.getBlockY(), z = loc.getBlockZ();
+        if (engine == SearchEngine.INDEX) {
+            return oreLocator.getBlockTypeBands(oreIndex, new WorldChunkSource(world), oreIndex.stamp(),
+                    x, y, z, targets, profile, limits);
+        }
+        SnapshotRegion region = SnapshotRegion.capture(world, x, z, profile.reach());
+        ParallelOreLocator parallel = setup.parallel();
+        if (parallel != null && parallel.handles(profile)) {
+            return parallel.getBlockTypeDistances(region, x, y, z, targets, profile, () -> false);
+        }
+        return oreLocator.getBlockTypeDistances(region, x, y, z, targets, profile, limits);
+    }
+
+    /**
+     * Returns whether searches with the given engine and profile only settle the distance message
+     * band of each target, see {@link OreLocator#getBlockTypeBands}. Their results cannot bound
+     * the distances seen from nearby clicks, so they are not kept in the result cache.
+     */
+    private static boolean settlesBands(SearchEngine engine, SearchProfile profile) {
+        return engine == SearchEngine.INDEX && profile.shape() == SearchProfile.Shape.CUBE;
+    }
+
+    /**
+     * Keeps a search result for later clicks nearby, if result caching is enabled.
+     */
+    private void remember(Setup setup, long stamp, Location loc, Material[] targets, SearchProfile profile,
+                          int[] distances) {
+        World world = loc.getWorld();
+        if (world != null && setup.cacheResults()) {
+            resultCache.store(stamp, world.getUID(), loc.getBlockX(), loc.getBlockY(), loc.getBlockZ(),
+                    targets, profile, distances);
+        }
+    }
+
+    /**
+     * Captures the chunks around the origin on the main thread and runs the search on the
+     * worker pool. The result messages are sent back on the main thread once they are ready.
+     * <p>
+     * With the {@link SearchEngine#INDEX} engine, chunks whose sections the index already holds
+     * are not captured unless {@code captureAll} is set. Should the index drop one of those
+     * sections before the worker reads it, the search starts over with every chunk captured.
+     * </p>
+     *
+     * @param searched   The targets actually searched for, selected from {@code targets} by
+     *                   {@code reachable}.
+     * @param unloaded   The unloaded chunks within reach, which the capture leaves out.
+     * @param captureAll Whether to capture indexed chunks as well.
+     */
+    private void searchAsync(Setup setup, Player player, Location loc, Material[] targets,
+                             Material[] searched, long reachable, SearchProfile profile, int[] limits,
+                             long[] unloaded, boolean captureAll) {
+        CompiledConfig config = setup.config();
+        World world = loc.getWorld();
+        if (world == null) return;
+        int x = loc.getBlockX(), y = loc.getBlockY(), z = loc.getBlockZ();
+        long captureStart = System.nanoTime();
+        long stamp = oreIndex.stamp();
+        long cacheStamp = resultCache.stamp();
+        boolean indexed = config.getEngine() == SearchEngine.INDEX;
+        UUID worldId = world.getUID();
+        int minSectionY = Math.max(y - profile.verticalRadius(), world.getMinHeight()) >> 4;
+        int maxSectionY = Math.min(y + profile.verticalRadius(), world.getMaxHeight() - 1) >> 4;
+        long[] skipped = indexed && !captureAll
+                ? indexedChunks(world, x, z, profile, minSectionY, maxSectionY)
+                : new long[0];
+        SnapshotRegion region = SnapshotRegion.capture(world, x, z, profile.reach(), skipped);
+        long captureNanos = System.nanoTime() - captureStart;
+        OreLocator locator = setup.oreLocator();
+        ParallelOreLocator parallel = indexed ? null : setup.parallel();
+        UnloadedChunkPolicy policy = config.getUnloadedChunks();
+        boolean accepted = setup.asyncSearches().submit(player.getUniqueId(),
+                cancelled -> {
+                    long start = System.nanoTime();
+                    int[] distances;
+                    if (parallel != null && parallel.handles(profile)) {
+                        distances = parallel.getBlockTypeDistances(region, x, y, z, searched, profile, cancelled);
+                        if (distances == null) return null;
+                    } else if (indexed) {
+                        distances = locator.getBlockTypeBands(oreIndex, region, stamp, x, y, z, searched, profile, limits);
+                        // A section dropped since the capture was read as holding nothing
+                        if (!isIndexed(worldId, skipped, minSectionY, maxSectionY)) return null;
+                    } else {
+                        distances = locator.getBlockTypeDistances(region, x, y, z, searched, profile, limits);
+                    }
+                    distances = expand(applyPolicy(policy, distances, unloaded, loc, profile), reachable, targets.length);
+                    // The capture on the main thread is part of the search's cost
+                    metrics.recordSearch(captureNanos + System.nanoTime() - start, distances);
+                    return distances;
+                },
+                distances -> {
+                    if (distances == null) {
+                        if (player.isOnline()) {
+                            searchAsync(setup, player, loc, targets, searched, reachable, profile, limits,
+                                    unloaded, true);
+                        }
+                        return;
+                    }
+                    if (unloaded.length == 0 && !settlesBands(config.getEngine(), profile)) {
+                        remember(setup, cacheStamp, loc, targets, profile, distances);
+                    }
+                    if (player.isOnline()) {
+                        sendDistanceMessages(config, player, targets, profile, distances);
+                    }
+                });
+        if (!accepted) {
+            metrics.recordQueueRejection();
+            cooldowns.refund(player.getUniqueId());
+        }
+    }
+
+    /**
+     * Returns the loaded chunks within the profile's reach whose sections from
+     * {@code minSectionY} to {@code maxSectionY} are all in the ore index, packed as by
+     * {@link OreLocator#unloadedChunks(World, int, int, SearchProfile)}. Must be called on the
+     * main server thread.
+     */
+    private long[] indexedChunks(World world, int x, int z, SearchProfile profile, int minSectionY, int maxSectionY) {
+        int reach = profile.reach();
+        int minChunkX = (x - reach) >> 4, maxChunkX = (x + reach) >> 4;
+        int minChunkZ = (z - reach) >> 4, maxChunkZ = (z + reach) >> 4;
+        long[] chunks = new long[(maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1)];
+        int count = 0;
+        for (int cx = minChunkX; cx <= maxChunkX; cx++) {
+            for (int cz = minChunkZ; cz <= maxChunkZ; cz++) {
+                if (world.isChunkLoaded(cx, cz) && oreIndex.isCached(world.getUID(), cx, cz, minSectionY, maxSectionY)) {
+                    chunks[count++] = (long) cx << 32 | cz & 0xFFFFFFFFL;
+                }
+            }
+        }
+        return Arrays.copyOf(chunks, count);
+    }
+
+    /**
+     * Returns whether the ore index still holds the sections from {@code minSectionY} to
+     * {@code maxSectionY} of every given chunk.
+     */
+    private boolean isIndexed(UUID worldId, long[] chunks, int minSectionY, int maxSectionY) {
+        for (long chunk : chunks) {
+            if (!oreIndex.isCached(worldId, (int) (chunk >> 32), (int) chunk, minSectionY, maxSectionY)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Sends the result of a search. A single target gets the plain distance message, while a
+     * prospector search gets one line per ore, labelled with the ore's name.
+     */
+    private void sendDistanceMessages(CompiledConfig config, Player player, Material[] targets,
+                                      SearchProfile profile, int[] distances) {
+        if (targets.length == 1) {
+            sendMessage(player, "", config.getDistanceMessage(profile, distances[0]));
+            return;
+        }
+        for (int i = 0; i < targets.length; i++) {
+            sendMessage(player, config.getLabel(targets[i]), config.getDistanceMessage(profile, distances[i]));
+        }
+    }
+
+    private void sendMessage(Player player, String prefix, String message) {
         if (message != null) {
-            player.sendMessage(color + message);
+            player.sendMessage(prefix + message);
         }
     }
 
-    private void handleBlockStealing(Player player, ItemStack holding) {
-        if (random.nextInt(plugin.getConfig().getInt("chance.steal_block")) == 0) {
+    private void handleBlockStealing(CompiledConfig config, Player player, ItemStack holding) {
+        if (random.nextInt(config.getStealChance()) == 0) {
             player.damage(1);
             if (player.getGameMode() == GameMode.SURVIVAL) {
                 int amount = holding.getAmount();
@@ -109,14 +644,190 @@ class PlayerInteractionListener implements Listener {
                     player.getInventory().setItemInMainHand(null);
                 }
             }
-            player.sendMessage(Objects.requireNonNull(plugin.getConfig().getString("text.ender_steal")));
+            sendMessage(player, "", config.getStealMessage());
         }
     }
 
     /**
-     * Initializes item configuration from the plugin config. Must be called during plugin enable.
+     * Compiles the plugin config and publishes it to the event handlers. Must be called during
+     * plugin enable. If the config is invalid, the previous one stays in effect.
      */
     public void init() {
-        ic.init();
+        CompiledConfig compiled = CompiledConfig.compile(plugin);
+        int indexSize = plugin.getConfig().getInt("search.index.max_sections", 4096);
+        if (indexSize < 1) {
+            throw new IllegalArgumentException("'search.index.max_sections' must be positive");
+        }
+        long cooldownMillis = plugin.getConfig().getLong("search.cooldown_ms", 1000L);
+        if (cooldownMillis < 0) {
+            throw new IllegalArgumentException("'search.cooldown_ms' cannot be negative");
+        }
+        boolean cacheEnabled = plugin.getConfig().getBoolean("search.cache.enabled", true);
+        int cacheEntries = plugin.getConfig().getInt("search.cache.max_entries", 1024);
+        long cacheTtlMillis = plugin.getConfig().getLong("search.cache.ttl_ms", 5000L);
+        if (cacheEntries < 0) {
+            throw new IllegalArgumentException("'search.cache.max_entries' cannot be negative");
+        }
+        if (cacheTtlMillis < 0) {
+            throw new IllegalArgumentException("'search.cache.ttl_ms' cannot be negative");
+        }
+        SectionFilter sectionFilter = plugin.getConfig().getBoolean("search.section_filter", true)
+                ? new PaletteSectionFilter(compiled.getOres()).and(oreIndex)
+                : SectionFilter.NONE;
+        if (compiled.getGenerationRules() != GenerationRules.NONE) {
+            sectionFilter = sectionFilter.and(compiled.getGenerationRules());
+        }
+        int maxShift = plugin.getConfig().getInt("search.session.max_shift", 4);
+        long sessionTtlMillis = plugin.getConfig().getLong("search.session.ttl_ms", 30000L);
+        long maxPositions = plugin.getConfig().getLong("search.session.max_positions", 65536L);
+        if (maxShift < 0 || sessionTtlMillis < 0 || maxPositions < 0) {
+            throw new IllegalArgumentException("'search.session' limits cannot be negative");
+        }
+        double preIndexRate = plugin.getConfig().getDouble("search.preindex.chunks_per_second", 20.0);
+        double preIndexMinTps = plugin.getConfig().getDouble("search.preindex.min_tps", 18.0);
+        if (!(preIndexRate > 0)) {
+            throw new IllegalArgumentException("'search.preindex.chunks_per_second' must be positive");
+        }
+        if (!(preIndexMinTps >= 0 && preIndexMinTps <= 20)) {
+            throw new IllegalArgumentException("'search.preindex.min_tps' must be between 0 and 20");
+        }
+        int fieldRadius = plugin.getConfig().getInt("search.field.radius",
+                plugin.getConfig().getInt("search.radius", OreLocator.SEARCH_RADIUS));
+        long fieldMemoryMb = plugin.getConfig().getLong("search.field.max_memory_mb", 32L);
+        int fieldBuildsPerTick = plugin.getConfig().getInt("search.field.builds_per_tick", 1);
+        if (fieldRadius < 2 || fieldRadius > SearchProfile.MAX_RADIUS) {
+            throw new IllegalArgumentException("'search.field.radius' must be between 2 and " + SearchProfile.MAX_RADIUS);
+        }
+        if (fieldMemoryMb < 1) {
+            throw new IllegalArgumentException("'search.field.max_memory_mb' must be positive");
+        }
+        if (fieldBuildsPerTick < 1) {
+            throw new IllegalArgumentException("'search.field.builds_per_tick' must be positive");
+        }
+        int chunkLoadsPerTick = plugin.getConfig().getInt("search.unloaded_chunks.loads_per_tick", 2);
+        if (chunkLoadsPerTick < 1) {
+            throw new IllegalArgumentException("'search.unloaded_chunks.loads_per_tick' must be positive");
+        }
+        boolean batched = plugin.getConfig().getBoolean("search.batch.enabled", false);
+        SearchBatcher batcher = batched
+                ? new SearchBatcher(sectionFilter, metrics, plugin.getConfig().getDouble("search.batch.budget_ms", 2.0))
+                : null;
+        DeferredChunkLoader chunkLoader = compiled.getUnloadedChunks() == UnloadedChunkPolicy.LOAD
+                ? new DeferredChunkLoader(chunkLoadsPerTick, metrics)
+                : null;
+        // Build the replacement worker pools before publishing the config, so no click sees the
+        // new config together with pools that are about to be shut down
+        AsyncSearchExecutor async = null;
+        boolean asyncEnabled = plugin.getConfig().getBoolean("search.async.enabled", false);
+        if (asyncEnabled && batched) {
+            plugin.getLogger().warning("'search.batch' and 'search.async' are both enabled; searches are batched "
+                    + "and the async pool is not started");
+        } else if (asyncEnabled) {
+            async = new AsyncSearchExecutor(plugin,
+                    plugin.getConfig().getInt("search.async.threads", 0),
+                    plugin.getConfig().getInt("search.async.queue_size", 64),
+                    plugin.getConfig().getInt("search.async.per_player", 1));
+        }
+        ParallelOreLocator parallel = null;
+        if (plugin.getConfig().getBoolean("search.parallel.enabled", false)) {
+            int threads = plugin.getConfig().getInt("search.parallel.threads", 0);
+            try {
+                parallel = new ParallelOreLocator(
+                        threads > 0 ? threads : Runtime.getRuntime().availableProcessors(),
+                        plugin.getConfig().getInt("search.parallel.min_radius", 48), sectionFilter, metrics);
+            } catch (IllegalArgumentException e) {
+                if (async != null) {
+                    async.shutdown(0L);
+                }
+                throw e;
+            }
+        }
+        ChunkPreIndexer preIndexer = null;
+        if (compiled.getEngine() == SearchEngine.INDEX && plugin.getConfig().getBoolean("search.preindex.enabled", false)) {
+            preIndexer = new ChunkPreIndexer(oreIndex, preIndexRate, preIndexMinTps, plugin.getLogger());
+        }
+        DistanceFieldBuilder fieldBuilder = null;
+        if (compiled.getEngine() == SearchEngine.FIELD) {
+            fieldBuilder = new DistanceFieldBuilder(distanceField, sectionFilter, fieldBuildsPerTick,
+                    plugin.getLogger());
+        }
+
+        // Everything is valid, so the shared state changes together with the published setup
+        Setup previous = setup;
+        OreIndexStore indexStore = null;
+        if (compiled.getEngine() == SearchEngine.INDEX && plugin.getConfig().getBoolean("search.index.persist", true)) {
+            // A store for the same ores stays open, so the reload neither writes nor reads files
+            OreIndexStore kept = previous.indexStore();
+            indexStore = kept != null && kept.records(compiled.getOres())
+                    ? kept
+                    : new OreIndexStore(new File(plugin.getDataFolder(), "index"), compiled.getOres(),
+                            plugin.getLogger());
+        }
+        if (previous.batcher() != null) {
+            // Searches still queued in the replaced batcher have used their cooldown, so answer them
+            previous.batcher().finish();
+        }
+        cooldowns.setCooldownMillis(cooldownMillis);
+        resultCache.reset(cacheEnabled ? cacheEntries : 0, cacheTtlMillis);
+        oreIndex.reset(compiled.getEngine() == SearchEngine.INDEX ? compiled.getOres() : Set.of(), indexSize);
+        oreIndex.setStore(indexStore);
+        distanceField.reset(compiled.getEngine() == SearchEngine.FIELD ? compiled.getOres() : Set.of(),
+                fieldRadius - 1, fieldMemoryMb << 20);
+        sessions.reset(sectionFilter, maxShift, sessionTtlMillis, maxPositions);
+        setup = new Setup(compiled, new OreLocator(sectionFilter, metrics), cacheEnabled,
+                plugin.getConfig().getBoolean("search.session.enabled", false), batcher, chunkLoader, async, parallel,
+                indexStore, preIndexer, fieldBuilder);
+        // Work still running on the replaced workers stops early and does not report back, and the
+        // main thread does not wait for it
+        previous.stopWorkers(0L);
+        if (previous.indexStore() != null && previous.indexStore() != indexStore) {
+            // Its files are discarded when the directory is opened again, so they are not written
+            previous.indexStore().discard();
+        }
+        if (previous.chunkLoader() != null) {
+            // Searches still waiting for chunks have used their cooldown too, so answer them with
+            // the new setup; chunks not loaded yet are handled by its unloaded chunk policy
+            previous.chunkLoader().drain();
+        }
+    }
+
+    /**
+     * Starts persisting the ore index of the given worlds, if it is persisted at all. Must be
+     * called on the main server thread after {@link #init()}; worlds loaded later are opened
+     * as they load.
+     */
+    void openIndexWorlds(Collection<? extends World> worlds) {
+        OreIndexStore indexStore = setup.indexStore();
+        if (indexStore != null) {
+            for (World world : worlds) {
+                indexStore.open(world);
+            }
+        }
+    }
+
+    /**
+     * Writes the persisted ore index sections scanned since the last flush. Safe to call from
+     * any thread.
+     */
+    void flushIndexStore() {
+        OreIndexStore store = setup.indexStore();
+        if (store != null) {
+            store.flush();
+        }
+    }
+
+    /**
+     * Stops the asynchronous and parallel search pools, the pre-indexer and the distance field
+     * builder, if they are running, and closes the persisted ore index. Must be called during
+     * plugin disable.
+     */
+    public void shutdown() {
+        Setup previous = setup;
+        setup = previous.withoutWorkers();
+        previous.stopWorkers(2000L);
+        if (previous.indexStore() != null) {
+            oreIndex.setStore(null);
+            previous.indexStore().close();
+        }
     }
 }
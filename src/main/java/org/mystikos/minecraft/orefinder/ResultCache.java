@@ -0,0 +1,408 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers recent search results so that clicks close to an earlier search can be answered
+ * without searching again.
+ * <p>
+ * The distance to the nearest ore changes by at most the distance the origin moved: if the
+ * nearest ore was {@code d} blocks from origin A, it is between {@code d - s} and {@code d + s}
+ * blocks from an origin B that is {@code s} blocks from A. A click whose bounds fall inside one
+ * distance message band for every target is answered straight from the cache. Otherwise the
+ * upper bounds are handed to the search, which then never has to look further than them.
+ * </p>
+ * <p>
+ * Results are kept per world, 4-block cell of the origin, target and profile, in a bounded
+ * least-recently-used map, and expire after a fixed time. A block change drops every result
+ * whose search volume contains it; results are also grouped by 32-block bucket of their origin,
+ * so only the buckets within reach of the change are looked at. All methods must be called on
+ * the main server thread.
+ * </p>
+ */
+final class ResultCache implements BlockChangeObserver {
+
+    /**
+     * Origins are grouped into cells of {@code 1 << CELL_BITS} blocks per axis.
+     */
+    private static final int CELL_BITS = 2;
+
+    /**
+     * Cells are grouped into buckets of {@code 1 << BUCKET_BITS} cells per axis for
+     * {@link #blockChanged}.
+     */
+    private static final int BUCKET_BITS = 3;
+
+    /**
+     * Number of recent block changes remembered to check results that finish after them.
+     */
+    private static final int RECENT_CHANGES = 256;
+
+    private final Map<Key, Entry> entries;
+
+    /**
+     * The keys of {@link #entries}, per bucket of their origin.
+     */
+    private final Map<Bucket, Map<Key, Entry>> buckets = new HashMap<>();
+
+    /**
+     * The largest reach of any result kept since the last {@link #clear()}.
+     */
+    private int maxReach;
+
+    private final LongSupplier clock;
+    private int maxEntries;
+    private long ttlMillis;
+
+    /**
+     * Counts block changes; the last {@link #RECENT_CHANGES} of them are kept in a ring.
+     */
+    private long changeCount;
+    private final UUID[] changedWorlds = new UUID[RECENT_CHANGES];
+    private final int[] changedPositions = new int[RECENT_CHANGES * 3];
+
+    private long answered;
+    private long narrowed;
+
+    /**
+     * Creates an empty cache on the system clock that keeps nothing until {@link #reset(int, long)} is called.
+     */
+    ResultCache() {
+        this(System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock Supplies the current time in milliseconds.
+     */
+    ResultCache(LongSupplier clock) {
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > ResultCache.this.maxEntries) {
+                    unbucket(eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Drops every result and changes the cache's limits.
+     *
+     * @param maxEntries Most results kept at once; 0 keeps none.
+     * @param ttlMillis  How long a result may be used, in milliseconds.
+     */
+    void reset(int maxEntries, long ttlMillis) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("Result cache size cannot be negative");
+        }
+        if (ttlMillis < 0) {
+            throw new IllegalArgumentException("Result cache lifetime cannot be negative");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        clear();
+    }
+
+    /**
+     * Returns a stamp to pass to {@link #store} for a search that starts reading blocks now.
+     */
+    long stamp() {
+        return changeCount;
+    }
+
+    /**
+     * Bounds the distances a search from the given origin would report, using the results of
+     * earlier searches nearby with the same profile.
+     *
+     * @param worldId The world searched.
+     * @param x       Block X coordinate of the origin.
+     * @param y       Block Y coordinate of the origin.
+     * @param z       Block Z coordinate of the origin.
+     * @param targets The block types searched for.
+     * @param profile The profile of the search.
+     * @return The bounds; never {@code null}.
+     */
+    Bounds lookup(UUID worldId, int x, int y, int z, Material[] targets, SearchProfile profile) {
+        long now = clock.getAsLong();
+        int[] lower = new int[targets.length];
+        int[] upper = new int[targets.length];
+        // Without a known result, a target is between 0 and "not found"
+        Arrays.fill(upper, profile.radius());
+        if (entries.isEmpty()) return new Bounds(lower, upper, profile);
+        int cellX = x >> CELL_BITS, cellY = y >> CELL_BITS, cellZ = z >> CELL_BITS;
+        for (int t = 0; t < targets.length; t++) {
+            for (int cx = cellX - 1; cx <= cellX + 1; cx++) {
+                for (int cy = cellY - 1; cy <= cellY + 1; cy++) {
+                    for (int cz = cellZ - 1; cz <= cellZ + 1; cz++) {
+                        Key key = new Key(worldId, cx, cy, cz, targets[t], profile);
+                        Entry entry = entries.get(key);
+                        if (entry == null) continue;
+                        if (now - entry.storedAt >= ttlMillis) {
+                            entries.remove(key);
+                            unbucket(key);
+                            continue;
+                        }
+                        int shift = shift(profile, x - entry.x, y - entry.y, z - entry.z);
+                        if (shift < 0) continue;
+                        lower[t] = Math.max(lower[t], entry.distance - shift);
+                        // Nothing is known beyond the radius, so a miss only bounds from below
+                        if (entry.distance < profile.radius()) {
+                            upper[t] = Math.min(upper[t], entry.distance + shift);
+                        }
+                    }
+                }
+            }
+        }
+        return new Bounds(lower, upper, profile);
+    }
+
+    /**
+     * Remembers the result of a search. Inconclusive distances are not kept, and neither are
+     * results that a block change since {@code stamp} may have made stale.
+     *
+     * @param stamp     The {@link #stamp()} read before the search read any blocks.
+     * @param worldId   The world searched.
+     * @param x         Block X coordinate of the origin.
+     * @param y         Block Y coordinate of the origin.
+     * @param z         Block Z coordinate of the origin.
+     * @param targets   The block types searched for.
+     * @param profile   The profile of the search.
+     * @param distances The distances found, in the same order as {@code targets}.
+     */
+    void store(long stamp, UUID worldId, int x, int y, int z, Material[] targets, SearchProfile profile,
+               int[] distances) {
+        if (maxEntries == 0 || changedSince(stamp, worldId, x, y, z, profile.reach())) return;
+        long now = clock.getAsLong();
+        for (int t = 0; t < targets.length; t++) {
+            if (distances[t] == OreLocator.INCONCLUSIVE) continue;
+            int distance = distances[t] == OreLocator.NOT_FOUND ? profile.radius() : distances[t];
+            Key key = new Key(worldId, x >> CELL_BITS, y >> CELL_BITS, z >> CELL_BITS, targets[t], profile);
+            Entry entry = new Entry(x, y, z, profile, distance, now);
+            buckets.computeIfAbsent(bucket(key), b -> new HashMap<>()).put(key, entry);
+            maxReach = Math.max(maxReach, profile.reach());
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * Counts a click answered from the cache.
+     */
+    void recordAnswered() {
+        answered++;
+    }
+
+    /**
+     * Counts a search narrowed by cached bounds.
+     */
+    void recordNarrowed() {
+        narrowed++;
+    }
+
+    /**
+     * @return the number of clicks answered without searching
+     */
+    long getAnswered() {
+        return answered;
+    }
+
+    /**
+     * @return the number of searches that were given a tighter limit than the radius
+     */
+    long getNarrowed() {
+        return narrowed;
+    }
+
+    /**
+     * @return the number of results currently kept
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Drops every result.
+     */
+    void clear() {
+        entries.clear();
+        buckets.clear();
+        maxReach = 0;
+    }
+
+    @Override
+    public void blockChanged(World world, int x, int y, int z) {
+        UUID worldId = world.getUID();
+        int slot = (int) (changeCount++ % RECENT_CHANGES);
+        changedWorlds[slot] = worldId;
+        changedPositions[slot * 3] = x;
+        changedPositions[slot * 3 + 1] = y;
+        changedPositions[slot * 3 + 2] = z;
+        if (entries.isEmpty()) return;
+        int shift = CELL_BITS + BUCKET_BITS;
+        int minX = (x - maxReach) >> shift, maxX = (x + maxReach) >> shift;
+        int minY = (y - maxReach) >> shift, maxY = (y + maxReach) >> shift;
+        int minZ = (z - maxReach) >> shift, maxZ = (z + maxReach) >> shift;
+        long range = (long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+        if (range > buckets.size()) {
+            // Fewer buckets are in use than lie within reach, so visit those instead
+            for (Iterator<Map.Entry<Bucket, Map<Key, Entry>>> it = buckets.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Bucket, Map<Key, Entry>> bucket = it.next();
+                Bucket b = bucket.getKey();
+                if (b.worldId.equals(worldId) && b.x >= minX && b.x <= maxX && b.y >= minY && b.y <= maxY
+                        && b.z >= minZ && b.z <= maxZ && dropChanged(bucket.getValue(), x, y, z)) {
+                    it.remove();
+                }
+            }
+            return;
+        }
+        for (int bx = minX; bx <= maxX; bx++) {
+            for (int by = minY; by <= maxY; by++) {
+                for (int bz = minZ; bz <= maxZ; bz++) {
+                    Bucket b = new Bucket(worldId, bx, by, bz);
+                    Map<Key, Entry> bucket = buckets.get(b);
+                    if (bucket != null && dropChanged(bucket, x, y, z)) {
+                        buckets.remove(b);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the results of a bucket whose search volume contains the given block.
+     *
+     * @return whether the bucket is left empty
+     */
+    private boolean dropChanged(Map<Key, Entry> bucket, int x, int y, int z) {
+        for (Iterator<Map.Entry<Key, Entry>> it = bucket.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Key, Entry> mapEntry = it.next();
+            Entry entry = mapEntry.getValue();
+            int reach = entry.profile.reach();
+            if (Math.abs(x - entry.x) <= reach && Math.abs(y - entry.y) <= reach && Math.abs(z - entry.z) <= reach) {
+                entries.remove(mapEntry.getKey());
+                it.remove();
+            }
+        }
+        return bucket.isEmpty();
+    }
+
+    /**
+     * Takes a key that is no longer in {@link #entries} out of its bucket.
+     */
+    private void unbucket(Key key) {
+        Bucket b = bucket(key);
+        Map<Key, Entry> bucket = buckets.get(b);
+        if (bucket != null && bucket.remove(key) != null && bucket.isEmpty()) {
+            buckets.remove(b);
+        }
+    }
+
+    private static Bucket bucket(Key key) {
+        return new Bucket(key.worldId, key.cellX >> BUCKET_BITS, key.cellY >> BUCKET_BITS, key.cellZ >> BUCKET_BITS);
+    }
+
+    @Override
+    public void chunkUnloaded(World world, int chunkX, int chunkZ) {
+        // Results describe blocks, which do not change by being unloaded
+    }
+
+    /**
+     * Returns whether a block within {@code reach} of the origin may have changed since the stamp.
+     */
+    private boolean changedSince(long stamp, UUID worldId, int x, int y, int z, int reach) {
+        if (changeCount - stamp > RECENT_CHANGES) return true;
+        for (long change = stamp; change < changeCount; change++) {
+            int slot = (int) (change % RECENT_CHANGES);
+            if (changedWorlds[slot].equals(worldId)
+                    && Math.abs(changedPositions[slot * 3] - x) <= reach
+                    && Math.abs(changedPositions[slot * 3 + 1] - y) <= reach
+                    && Math.abs(changedPositions[slot * 3 + 2] - z) <= reach) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns how far the distance to any block can differ between two origins that are the
+     * given offset apart, in the profile's metric, or -1 if the two searches cover differently
+     * clipped volumes and cannot be compared.
+     */
+    private static int shift(SearchProfile profile, int dx, int dy, int dz) {
+        // A vertical clamp moves with the origin, so only origins at the same height see the same blocks
+        if (dy != 0 && profile.verticalRadius() < profile.reach()) return -1;
+        if (profile.shape() == SearchProfile.Shape.SPHERE) {
+            // Distances are rounded down, so the offset has to be rounded up
+            return (int) Math.ceil(Math.sqrt((double) dx * dx + (double) dy * dy + (double) dz * dz));
+        }
+        return profile.distance(dx, dy, dz);
+    }
+
+    /**
+     * The range of distances a search could report for each target, both ends included. An
+     * upper bound equal to the radius means the target may not be found at all.
+     */
+    static final class Bounds {
+        private final int[] lower;
+        private final int[] upper;
+        private final SearchProfile profile;
+
+        private Bounds(int[] lower, int[] upper, SearchProfile profile) {
+            this.lower = lower;
+            this.upper = upper;
+            this.profile = profile;
+        }
+
+        /**
+         * Returns distances that produce the same messages as a real search would, or
+         * {@code null} if the bounds of some target span more than one message.
+         */
+        int[] answer() {
+            int[] distances = new int[upper.length];
+            for (int t = 0; t < upper.length; t++) {
+                if (lower[t] >= profile.radius()) {
+                    distances[t] = OreLocator.NOT_FOUND;
+                } else if (upper[t] < profile.radius() && profile.band(Math.max(lower[t], 0)) == profile.band(upper[t])) {
+                    distances[t] = upper[t];
+                } else {
+                    return null;
+                }
+            }
+            return distances;
+        }
+
+        /**
+         * Returns, per target, a distance the search never needs to reach: the upper bound plus
+         * one, or the radius where nothing is known. Returns {@code null} if no target is bounded.
+         */
+        int[] limits() {
+            boolean bounded = false;
+            int[] limits = new int[upper.length];
+            for (int t = 0; t < upper.length; t++) {
+                limits[t] = Math.min(upper[t] + 1, profile.radius());
+                bounded |= limits[t] < profile.radius();
+            }
+            return bounded ? limits : null;
+        }
+    }
+
+    private record Key(UUID worldId, int cellX, int cellY, int cellZ, Material target, SearchProfile profile) {
+    }
+
+    private record Bucket(UUID worldId, int x, int y, int z) {
+    }
+
+    private record Entry(int x, int y, int z, SearchProfile profile, int distance, long storedAt) {
+    }
+}
@@ -0,0 +1,431 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Collects the searches requested during a tick and serves searches whose cubes overlap from a
+ * single capture and traversal of the chunks they share.
+ * <p>
+ * On every tick, pending searches are grouped by world and overlapping chunk rectangle. Each
+ * of a group's chunks is captured once, and every section in the group's box is scanned once for
+ * the union of the group's targets. Each search then only measures the distances to the ore
+ * positions found, nearest sections first, and within its profile's block budget like any other
+ * search. Chunks are scanned until the tick's time budget is spent; a group that is not done by
+ * then carries on in the next tick, so its chunks may be captured in different ticks. A chunk
+ * unloaded by the time it is captured reads as holding nothing, and is reported to the searches
+ * within reach of it. The other searches wait in arrival order, at most {@link #MAX_PENDING} of
+ * them. At least one chunk is scanned per tick so the queue always drains.
+ * </p>
+ * <p>
+ * All methods must be called on the main server thread.
+ * </p>
+ */
+final class SearchBatcher {
+
+    /**
+     * Widest chunk rectangle, per axis, that one group may cover, so a chain of overlapping
+     * searches cannot grow into one huge capture.
+     */
+    static final int MAX_GROUP_CHUNKS = 16;
+
+    /**
+     * Most searches waiting to be served; {@link #submit} refuses more.
+     */
+    static final int MAX_PENDING = 256;
+
+    private final SectionFilter sectionFilter;
+    private final SearchMetrics metrics;
+    private final ArrayDeque<Request> pending = new ArrayDeque<>();
+
+    /**
+     * The group whose chunks are being scanned, or {@code null} if none is.
+     */
+    private Group current;
+    private volatile long budgetNanos;
+
+    /**
+     * Receives the result of a batched search.
+     */
+    interface Callback {
+
+        /**
+         * @param distances The distances, in the same order as the search's targets.
+         * @param unloaded  The chunks within the search's reach that were not loaded when they
+         *                  were captured, and so were read as holding nothing, packed as by
+         *                  {@link OreLocator#unloadedChunks}.
+         */
+        void accept(int[] distances, long[] unloaded);
+    }
+
+    /**
+     * @param sectionFilter Decides which sections can be skipped without scanning.
+     * @param metrics       Receives the cost and outcome of every search.
+     * @param budgetMillis  Time per tick to spend on searches.
+     */
+    SearchBatcher(SectionFilter sectionFilter, SearchMetrics metrics, double budgetMillis) {
+        this.sectionFilter = sectionFilter;
+        this.metrics = metrics;
+        setBudgetMillis(budgetMillis);
+    }
+
+    /**
+     * Changes the time spent per tick on searches.
+     */
+    void setBudgetMillis(double budgetMillis) {
+        if (!(budgetMillis > 0)) {
+            throw new IllegalArgumentException("Search time budget must be positive");
+        }
+        this.budgetNanos = (long) (budgetMillis * 1_000_000L);
+    }
+
+    /**
+     * Queues a search to be served on the next {@link #tick()}, unless {@link #MAX_PENDING}
+     * searches are waiting already.
+     *
+     * @param world    The world to search.
+     * @param x        Block X coordinate of the origin.
+     * @param y        Block Y coordinate of the origin.
+     * @param z        Block Z coordinate of the origin.
+     * @param targets  The block types to search for.
+     * @param profile  The reach and shape of the search.
+     * @param callback Receives the distances and the chunks that could not be read.
+     * @return false, without queueing it, if the queue is full
+     */
+    boolean submit(World world, int x, int y, int z, Material[] targets, SearchProfile profile,
+                   Callback callback) {
+        if (pending() >= MAX_PENDING) return false;
+        pending.add(new Request(world, x, y, z, targets, profile, callback));
+        return true;
+    }
+
+    /**
+     * @return the number of searches waiting to be served
+     */
+    int pending() {
+        return pending.size() + (current == null ? 0 : current.requests.size());
+    }
+
+    /**
+     * Drops every waiting search without answering it.
+     */
+    void clear() {
+        pending.clear();
+        current = null;
+    }
+
+    /**
+     * Serves waiting searches until the time budget is spent.
+     *
+     * @return the number of searches answered
+     */
+    int tick() {
+        return serve(System.nanoTime() + budgetNanos, false);
+    }
+
+    /**
+     * Serves every waiting search right away, whatever the time budget, for instance before the
+     * batcher is replaced.
+     *
+     * @return the number of searches answered
+     */
+    int finish() {
+        return serve(0L, true);
+    }
+
+    /**
+     * Scans one chunk after another, answering each group once all of its chunks are scanned,
+     * until the deadline passes or nothing is left.
+     */
+    private int serve(long deadline, boolean unbounded) {
+        int served = 0;
+        boolean first = true;
+        while (current != null || !pending.isEmpty()) {
+            if (!first && !unbounded && System.nanoTime() - deadline >= 0) break;
+            first = false;
+            if (current == null) {
+                current = nextGroup();
+            }
+            if (current.next < current.chunkCount()) {
+                scanNextChunk(current);
+            } else {
+                served += answer(current);
+                current = null;
+            }
+        }
+        return served;
+    }
+
+    /**
+     * Takes the oldest waiting search and every waiting search in the same world whose chunks
+     * overlap the group's, growing the group until no more join.
+     */
+    private Group nextGroup() {
+        Group group = new Group(pending.poll());
+        boolean grown = true;
+        while (grown) {
+            grown = false;
+            for (Iterator<Request> it = pending.iterator(); it.hasNext(); ) {
+                Request request = it.next();
+                if (group.tryAdd(request)) {
+                    it.remove();
+                    grown = true;
+                }
+            }
+        }
+        return group;
+    }
+
+    /**
+     * Captures the group's next chunk and scans its sections in the group's height range for the
+     * group's targets.
+     */
+    private void scanNextChunk(Group group) {
+        long start = System.nanoTime();
+        int width = group.maxChunkZ - group.minChunkZ + 1;
+        int cx = group.minChunkX + group.next / width;
+        int cz = group.minChunkZ + group.next % width;
+        group.next++;
+        SnapshotRegion region = SnapshotRegion.capture(group.world, cx, cz, cx, cz);
+        ChunkSnapshot snapshot = region.getChunkSnapshot(cx, cz);
+        int minY = Math.max(group.minY, region.getMinHeight());
+        int maxY = Math.min(group.maxY, region.getMaxHeight() - 1);
+        if (snapshot == null) {
+            group.unloaded(cx, cz);
+        } else if (minY <= maxY) {
+            for (int sy = minY >> 4; sy <= maxY >> 4; sy++) {
+                if (!mayContainAny(region, snapshot, sy, group.materials)) continue;
+                group.sections.add(new Scanned(cx, sy, cz, OreIndex.Section.scan(snapshot, sy,
+                        region.getMinHeight(), region.getMaxHeight(), group.materials)));
+                group.blocks += BlockSource.SECTION_VOLUME;
+            }
+        }
+        group.nanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Answers every search of a fully scanned group.
+     *
+     * @return the number of searches answered
+     */
+    private int answer(Group group) {
+        metrics.recordWork(group.blocks, 0, group.sections.size());
+        long perSearch = group.nanos / group.requests.size();
+        for (Request request : group.requests) {
+            long searchStart = System.nanoTime();
+            int[] distances = request.measure(group.sections);
+            metrics.recordSearch(perSearch + System.nanoTime() - searchStart, distances);
+            request.callback.accept(distances, request.inReach(group.unloaded, group.unloadedCount));
+        }
+        return group.requests.size();
+    }
+
+    private boolean mayContainAny(SnapshotRegion region, ChunkSnapshot snapshot, int sectionY, Set<Material> materials) {
+        for (Material material : materials) {
+            if (sectionFilter.mayContain(region.getWorldId(), snapshot, sectionY, material)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * One queued search.
+     */
+    private static final class Request {
+        final World world;
+        final int x, y, z;
+        final Material[] targets;
+        final SearchProfile profile;
+        final Callback callback;
+
+        Request(World world, int x, int y, int z, Material[] targets, SearchProfile profile, Callback callback) {
+            this.world = world;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.targets = targets;
+            this.profile = profile;
+            this.callback = callback;
+        }
+
+        int minChunkX() {
+            return (x - profile.reach()) >> 4;
+        }
+
+        int maxChunkX() {
+            return (x + profile.reach()) >> 4;
+        }
+
+        int minChunkZ() {
+            return (z - profile.reach()) >> 4;
+        }
+
+        int maxChunkZ() {
+            return (z + profile.reach()) >> 4;
+        }
+
+        /**
+         * Returns the first {@code count} of the given chunks that lie within the search's reach.
+         */
+        long[] inReach(long[] chunks, int count) {
+            long[] within = new long[count];
+            int found = 0;
+            for (int i = 0; i < count; i++) {
+                int cx = (int) (chunks[i] >> 32), cz = (int) chunks[i];
+                if (profile.distance(OreLocator.axisDistance(x, cx << 4), 0,
+                        OreLocator.axisDistance(z, cz << 4)) <= profile.reach()) {
+                    within[found++] = chunks[i];
+                }
+            }
+            return found == count ? within : Arrays.copyOf(within, found);
+        }
+
+        /**
+         * Measures the distance to the nearest recorded position of each target, visiting the
+         * sections nearest first. Each section visited counts as a full section against the
+         * profile's block budget; targets the budget does not settle are reported as
+         * {@link OreLocator#INCONCLUSIVE}.
+         */
+        int[] measure(List<Scanned> sections) {
+            int reach = profile.reach();
+            long[] order = new long[sections.size()];
+            int count = 0;
+            for (int i = 0; i < order.length; i++) {
+                Scanned scanned = sections.get(i);
+                int dy = OreLocator.axisDistance(y, scanned.sectionY << 4);
+                if (dy > profile.verticalRadius()) continue;
+                int lowerBound = profile.distance(OreLocator.axisDistance(x, scanned.chunkX << 4), dy,
+                        OreLocator.axisDistance(z, scanned.chunkZ << 4));
+                if (lowerBound <= reach) order[count++] = (long) lowerBound << 32 | i;
+            }
+            Arrays.sort(order, 0, count);
+
+            int[] best = new int[targets.length];
+            Arrays.fill(best, profile.radius());
+            long budget = profile.maxBlocks() == 0 ? Long.MAX_VALUE : profile.maxBlocks();
+            for (int i = 0; i < count; i++) {
+                int lowerBound = (int) (order[i] >>> 32);
+                if (lowerBound >= max(best)) break;
+                if (BlockSource.SECTION_VOLUME > budget) {
+                    for (int t = 0; t < best.length; t++) {
+                        if (best[t] > lowerBound) best[t] = OreLocator.INCONCLUSIVE;
+                    }
+                    break;
+                }
+                budget -= BlockSource.SECTION_VOLUME;
+                OreIndex.Section section = sections.get((int) order[i]).section;
+                for (int t = 0; t < targets.length; t++) {
+                    if (best[t] > lowerBound) {
+                        best[t] = Math.min(best[t], section.nearest(targets[t], x, y, z, profile));
+                    }
+                }
+            }
+            for (int t = 0; t < best.length; t++) {
+                if (best[t] > reach) best[t] = OreLocator.NOT_FOUND;
+            }
+            return best;
+        }
+    }
+
+    private static int max(int[] values) {
+        int max = 0;
+        for (int value : values) {
+            if (value > max) max = value;
+        }
+        return max;
+    }
+
+    /**
+     * A scanned section of a group's chunks.
+     */
+    private record Scanned(int chunkX, int sectionY, int chunkZ, OreIndex.Section section) {
+    }
+
+    /**
+     * Searches sharing one capture, with the chunk rectangle and height range covering them all.
+     */
+    private static final class Group {
+        final World world;
+        final List<Request> requests = new ArrayList<>();
+        final Set<Material> materials = EnumSet.noneOf(Material.class);
+        int minChunkX, minChunkZ, maxChunkX, maxChunkZ;
+        int minY, maxY;
+
+        /**
+         * The sections scanned so far, how many blocks they hold and how long scanning took.
+         */
+        final List<Scanned> sections = new ArrayList<>();
+        long blocks;
+        long nanos;
+
+        /**
+         * The chunks found unloaded when captured, packed as by {@link OreLocator#unloadedChunks}.
+         */
+        long[] unloaded = new long[0];
+        int unloadedCount;
+
+        /**
+         * The position, in X-major order, of the next chunk of the rectangle to scan.
+         */
+        int next;
+
+        Group(Request first) {
+            this.world = first.world;
+            minChunkX = first.minChunkX();
+            minChunkZ = first.minChunkZ();
+            maxChunkX = first.maxChunkX();
+            maxChunkZ = first.maxChunkZ();
+            minY = first.y - first.profile.verticalRadius();
+            maxY = first.y + first.profile.verticalRadius();
+            add(first);
+        }
+
+        /**
+         * Adds the search if it is in the same world, its chunks overlap the group's, and the
+         * grown rectangle stays within {@link #MAX_GROUP_CHUNKS}.
+         */
+        boolean tryAdd(Request request) {
+            if (!request.world.getUID().equals(world.getUID())) return false;
+            if (request.minChunkX() > maxChunkX || request.maxChunkX() < minChunkX
+                    || request.minChunkZ() > maxChunkZ || request.maxChunkZ() < minChunkZ) {
+                return false;
+            }
+            int newMinX = Math.min(minChunkX, request.minChunkX()), newMaxX = Math.max(maxChunkX, request.maxChunkX());
+            int newMinZ = Math.min(minChunkZ, request.minChunkZ()), newMaxZ = Math.max(maxChunkZ, request.maxChunkZ());
+            if (newMaxX - newMinX + 1 > MAX_GROUP_CHUNKS || newMaxZ - newMinZ + 1 > MAX_GROUP_CHUNKS) return false;
+            minChunkX = newMinX;
+            maxChunkX = newMaxX;
+            minChunkZ = newMinZ;
+            maxChunkZ = newMaxZ;
+            minY = Math.min(minY, request.y - request.profile.verticalRadius());
+            maxY = Math.max(maxY, request.y + request.profile.verticalRadius());
+            add(request);
+            return true;
+        }
+
+        private void add(Request request) {
+            requests.add(request);
+            Collections.addAll(materials, request.targets);
+        }
+
+        void unloaded(int chunkX, int chunkZ) {
+            if (unloadedCount == unloaded.length) {
+                unloaded = Arrays.copyOf(unloaded, Math.max(4, unloadedCount * 2));
+            }
+            unloaded[unloadedCount++] = (long) chunkX << 32 | chunkZ & 0xFFFFFFFFL;
+        }
+
+        int chunkCount() {
+            return (maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package org.mystikos.minecraft.orefinder;
+
+import java.util.Locale;
+
+/**
+ * The strategies {@link OreLocator} can use to read blocks during a search,
+ * selected with the {@code search.engine} configuration option.
+ */
+enum SearchEngine {
+
+    /**
+     * Reads every block through the live world.
+     */
+    WORLD,
+
+    /**
+     * Captures the chunks around the origin once and reads block types from the copies.
+     */
+    SNAPSHOT,
+
+    /**
+     * Answers from a cache of the ore positions in each chunk section, scanning sections
+     * from snapshots only the first time they are needed. Cube searches only settle the distance
+     * message band of each target.
+     */
+    INDEX,
+
+    /**
+     * Answers cube searches from the distance to the nearest ore stored for every block of the
+     * chunk columns searched before, built in the background. Other searches, and searches in
+     * columns not built yet, read snapshots instead.
+     */
+    FIELD;
+
+    /**
+     * Parses a configured engine name (case-insensitive).
+     *
+     * @param name The configured value.
+     * @return The matching engine.
+     * @throws IllegalArgumentException if the name is not a known engine.
+     */
+    static SearchEngine fromConfig(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown search engine '" + name + "' in 'search.engine'");
+        }
+    }
+}
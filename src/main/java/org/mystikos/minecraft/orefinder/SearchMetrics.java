@@ -0,0 +1,232 @@
+package org.mystikos.minecraft.orefinder;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts what ore searches cost and how they end. Recording is lock-free and allocation-free,
+ * so the metrics can stay on in production; any thread may record.
+ * <p>
+ * Latencies go into a histogram of power-of-two microsecond buckets, which is enough to tell a
+ * 50 µs search from a 5 ms one without keeping individual samples.
+ * </p>
+ */
+final class SearchMetrics {
+
+    /**
+     * Bucket {@code i > 0} counts latencies of {@code [2^(i-1), 2^i)} microseconds; bucket 0
+     * counts sub-microsecond searches and the last bucket everything beyond.
+     */
+    private static final int BUCKETS = 32;
+
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder found = new LongAdder();
+    private final LongAdder missed = new LongAdder();
+    private final LongAdder inconclusive = new LongAdder();
+    private final LongAdder cooldownRejections = new LongAdder();
+    private final LongAdder queueRejections = new LongAdder();
+    private final LongAdder chunkLoadsAvoided = new LongAdder();
+    private final LongAdder chunksLoaded = new LongAdder();
+    private final LongAdder prunedTargets = new LongAdder();
+    private final LongAdder blocksExamined = new LongAdder();
+    private final LongAdder shellsWalked = new LongAdder();
+    private final LongAdder sectionsScanned = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+    private final AtomicLongArray latencyBuckets = new AtomicLongArray(BUCKETS);
+
+    // Per-tick sampling, only touched by tick() and the getters on the main thread
+    private long ticks;
+    private long searchesAtLastTick;
+    private long maxSearchesPerTick;
+
+    /**
+     * Records a finished search.
+     *
+     * @param nanos     How long the search took.
+     * @param distances The distances it reported, one per target.
+     */
+    void recordSearch(long nanos, int[] distances) {
+        searches.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        latencyBuckets.incrementAndGet(bucket(nanos / 1000L));
+
+        boolean anyInconclusive = false;
+        for (int distance : distances) {
+            if (distance >= 0) {
+                found.increment();
+                return;
+            }
+            if (distance == OreLocator.INCONCLUSIVE) anyInconclusive = true;
+        }
+        (anyInconclusive ? inconclusive : missed).increment();
+    }
+
+    /**
+     * Records the work done by one search.
+     *
+     * @param blocks   Blocks read or scanned.
+     * @param shells   Cubic shells walked by the live-world search.
+     * @param sections Chunk sections scanned or looked up by the section-based searches.
+     */
+    void recordWork(long blocks, int shells, int sections) {
+        blocksExamined.add(blocks);
+        if (shells > 0) shellsWalked.add(shells);
+        if (sections > 0) sectionsScanned.add(sections);
+    }
+
+    /**
+     * Records a click refused because the player's cooldown had not elapsed.
+     */
+    void recordCooldownRejection() {
+        cooldownRejections.increment();
+    }
+
+    /**
+     * Records a search refused because the asynchronous or batched search queue was full.
+     */
+    void recordQueueRejection() {
+        queueRejections.increment();
+    }
+
+    /**
+     * Records unloaded chunks within a search's reach that it left unloaded.
+     */
+    void recordChunkLoadsAvoided(int chunks) {
+        chunkLoadsAvoided.add(chunks);
+    }
+
+    /**
+     * Records targets left out of a search because they cannot generate within its reach.
+     */
+    void recordPrunedTargets(int targets) {
+        prunedTargets.add(targets);
+    }
+
+    /**
+     * Records a chunk loaded ahead of a deferred search, outside of the search itself.
+     */
+    void recordChunkLoaded() {
+        chunksLoaded.increment();
+    }
+
+    /**
+     * Samples the number of searches since the previous call. Must be called once per server
+     * tick on the main thread.
+     */
+    void tick() {
+        long now = searches.sum();
+        long delta = now - searchesAtLastTick;
+        searchesAtLastTick = now;
+        ticks++;
+        if (delta > maxSearchesPerTick) maxSearchesPerTick = delta;
+    }
+
+    long getSearches() {
+        return searches.sum();
+    }
+
+    long getFound() {
+        return found.sum();
+    }
+
+    long getMissed() {
+        return missed.sum();
+    }
+
+    long getInconclusive() {
+        return inconclusive.sum();
+    }
+
+    long getCooldownRejections() {
+        return cooldownRejections.sum();
+    }
+
+    long getQueueRejections() {
+        return queueRejections.sum();
+    }
+
+    long getChunkLoadsAvoided() {
+        return chunkLoadsAvoided.sum();
+    }
+
+    long getChunksLoaded() {
+        return chunksLoaded.sum();
+    }
+
+    long getPrunedTargets() {
+        return prunedTargets.sum();
+    }
+
+    long getBlocksExamined() {
+        return blocksExamined.sum();
+    }
+
+    long getShellsWalked() {
+        return shellsWalked.sum();
+    }
+
+    long getSectionsScanned() {
+        return sectionsScanned.sum();
+    }
+
+    /**
+     * @return the mean search latency in microseconds, or 0 if nothing was recorded
+     */
+    long getMeanMicros() {
+        long count = searches.sum();
+        return count == 0 ? 0L : totalNanos.sum() / count / 1000L;
+    }
+
+    long getMaxMicros() {
+        return maxNanos.get() / 1000L;
+    }
+
+    /**
+     * Returns an upper bound on the given latency percentile, in microseconds, accurate to
+     * within a factor of two.
+     *
+     * @param percentile A value between 0 and 100.
+     */
+    long getPercentileMicros(double percentile) {
+        long total = 0L;
+        for (int i = 0; i < BUCKETS; i++) total += latencyBuckets.get(i);
+        if (total == 0L) return 0L;
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += latencyBuckets.get(i);
+            if (seen >= Math.max(rank, 1L)) return 1L << i;
+        }
+        return 1L << (BUCKETS - 1);
+    }
+
+    /**
+     * @return the average number of searches per sampled tick
+     */
+    double getSearchesPerTick() {
+        return ticks == 0 ? 0.0 : (double) searchesAtLastTick / ticks;
+    }
+
+    long getMaxSearchesPerTick() {
+        return maxSearchesPerTick;
+    }
+
+    /**
+     * Returns a one-line summary suitable for the server log.
+     */
+    String summary() {
+        long count = getSearches();
+        return count + " searches (" + getFound() + " found, " + getMissed() + " missed, " + getInconclusive()
+                + " inconclusive), latency mean " + getMeanMicros() + " µs, p99 <= " + getPercentileMicros(99)
+                + " µs, max " + getMaxMicros() + " µs, " + (count == 0 ? 0 : getBlocksExamined() / count)
+                + " blocks/search, " + getCooldownRejections() + " cooldown rejections, "
+                + getChunkLoadsAvoided() + " chunk loads avoided";
+    }
+
+    private static int bucket(long micros) {
+        return Math.min(BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(micros));
+    }
+}
@@ -0,0 +1,184 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The immutable settings of one kind of search: how far it reaches, the shape of the searched
+ * volume, how much work it may do, and where the boundaries between the distance messages lie.
+ * <p>
+ * Profiles are read from the {@code search} section of the configuration and may be overridden
+ * per held item under {@code indicate.settings}.
+ * </p>
+ */
+final class SearchProfile {
+
+    /**
+     * Largest radius that may be configured.
+     */
+    static final int MAX_RADIUS = 128;
+
+    /**
+     * The shape of the searched volume, which also decides how distances are measured.
+     */
+    enum Shape {
+        /**
+         * A cube measured with the Chebyshev distance: the largest offset along any axis.
+         */
+        CUBE,
+
+        /**
+         * A ball measured with the Euclidean distance, rounded down to whole blocks.
+         */
+        SPHERE
+    }
+
+    /**
+     * The profile that matches the plugin's historic hardcoded behaviour.
+     */
+    static final SearchProfile DEFAULT = new SearchProfile(OreLocator.SEARCH_RADIUS, Shape.CUBE,
+            OreLocator.SEARCH_RADIUS - 1, 500_000, new int[]{2, 4, 6, 8, 15});
+
+    private final int radius;
+    private final Shape shape;
+    private final int verticalRadius;
+    private final int maxBlocks;
+    private final int[] bands;
+
+    private SearchProfile(int radius, Shape shape, int verticalRadius, int maxBlocks, int[] bands) {
+        this.radius = radius;
+        this.shape = shape;
+        this.verticalRadius = verticalRadius;
+        this.maxBlocks = maxBlocks;
+        this.bands = bands;
+    }
+
+    /**
+     * Reads a profile from a configuration section, taking unset values from {@code defaults}.
+     *
+     * @param section  The section to read; may be {@code null} to use the defaults unchanged.
+     * @param path     The section's path, used in error messages.
+     * @param defaults The profile supplying values the section does not set.
+     * @return The profile.
+     * @throws IllegalArgumentException if a value is out of range.
+     */
+    static SearchProfile fromConfig(ConfigurationSection section, String path, SearchProfile defaults) {
+        if (section == null) return defaults;
+
+        int radius = section.getInt("radius", defaults.radius);
+        if (radius < 1 || radius > MAX_RADIUS) {
+            throw new IllegalArgumentException("'" + path + ".radius' must be between 1 and " + MAX_RADIUS);
+        }
+
+        Shape shape = defaults.shape;
+        String shapeName = section.getString("shape");
+        if (shapeName != null) {
+            try {
+                shape = Shape.valueOf(shapeName.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown shape '" + shapeName + "' in '" + path + ".shape'");
+            }
+        }
+
+        // An unclamped default keeps following the radius, so raising only the radius still searches a full cube
+        int verticalRadius;
+        if (section.contains("vertical_radius")) {
+            verticalRadius = section.getInt("vertical_radius");
+        } else {
+            verticalRadius = defaults.verticalRadius == defaults.reach() ? radius - 1 : defaults.verticalRadius;
+        }
+        if (verticalRadius < 0) {
+            throw new IllegalArgumentException("'" + path + ".vertical_radius' cannot be negative");
+        }
+        verticalRadius = Math.min(verticalRadius, radius - 1);
+
+        int maxBlocks = section.getInt("max_blocks", defaults.maxBlocks);
+        if (maxBlocks < 0) {
+            throw new IllegalArgumentException("'" + path + ".max_blocks' cannot be negative");
+        }
+
+        int[] bands = defaults.bands;
+        if (section.isList("bands")) {
+            List<Integer> configured = section.getIntegerList("bands");
+            if (configured.size() != defaults.bands.length) {
+                throw new IllegalArgumentException("'" + path + ".bands' must list " + defaults.bands.length + " distances");
+            }
+            bands = new int[configured.size()];
+            for (int i = 0; i < bands.length; i++) {
+                bands[i] = configured.get(i);
+                if (bands[i] < 1 || (i > 0 && bands[i] <= bands[i - 1])) {
+                    throw new IllegalArgumentException("'" + path + ".bands' must be positive and strictly increasing");
+                }
+            }
+            if (bands[bands.length - 1] > radius) {
+                throw new IllegalArgumentException("'" + path + ".bands' cannot reach beyond the radius of " + radius);
+            }
+        }
+        return new SearchProfile(radius, shape, verticalRadius, maxBlocks, bands);
+    }
+
+    /**
+     * @return matches are only reported for distances strictly below this value
+     */
+    int radius() {
+        return radius;
+    }
+
+    /**
+     * @return the furthest distance at which a match can be reported
+     */
+    int reach() {
+        return radius - 1;
+    }
+
+    Shape shape() {
+        return shape;
+    }
+
+    /**
+     * @return the largest vertical offset from the origin that is searched
+     */
+    int verticalRadius() {
+        return verticalRadius;
+    }
+
+    /**
+     * @return the most blocks a single search may examine, or 0 for no limit
+     */
+    int maxBlocks() {
+        return maxBlocks;
+    }
+
+    /**
+     * Returns which distance message applies: 0 for "one block away" up to {@code bands.length}
+     * for "cold". Only meaningful for distances that were found.
+     */
+    int band(int distance) {
+        for (int i = 0; i < bands.length; i++) {
+            if (distance < bands[i]) return i;
+        }
+        return bands.length;
+    }
+
+    /**
+     * Returns the distance at which a band ends: the first distance of the next band, or the
+     * radius for the last one and for bands reaching beyond it.
+     *
+     * @param band A band as returned by {@link #band(int)}.
+     */
+    int bandEnd(int band) {
+        return band < bands.length ? Math.min(bands[band], radius) : radius;
+    }
+
+    /**
+     * Measures an offset from the search origin in this profile's distance metric.
+     */
+    int distance(int dx, int dy, int dz) {
+        if (shape == Shape.SPHERE) {
+            return (int) Math.sqrt((double) dx * dx + (double) dy * dy + (double) dz * dz);
+        }
+        return Math.max(Math.abs(dx), Math.max(Math.abs(dy), Math.abs(dz)));
+    }
+}
@@ -0,0 +1,490 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps, per player, every target block found in the volume their last search covered, so that
+ * a search from a nearby origin only has to read the blocks that came into range.
+ * <p>
+ * A player's first search reads the whole search box around the origin from chunk snapshots and
+ * remembers the positions of all target blocks in it. When the same player searches again for
+ * the same targets with the same profile, no more than a few blocks away, positions that left the
+ * new box are dropped and only the slabs of the new box that were not covered before are read.
+ * The distances are then measured from the remembered positions. Sections that the
+ * {@link SectionFilter} rules out are skipped.
+ * </p>
+ * <p>
+ * A search given limits from the {@link ResultCache} only covers the box within those limits,
+ * and widens it to the whole search box only if a target is not found within its limit after
+ * all. The blocks a search reads count against the profile's budget; since the box is not read
+ * nearest first, a search that would overrun the budget reads nothing and gives up instead, for
+ * the caller to search without the session.
+ * </p>
+ * <p>
+ * A session ends when the player changes world, item or profile, moves too far, stays idle too
+ * long or quits, when a block inside its box changes, and when the positions kept by all sessions
+ * together would exceed the configured cap. All methods must be called on the main server thread.
+ * </p>
+ */
+final class SearchSessions implements BlockChangeObserver {
+
+    private final Map<UUID, Session> sessions = new HashMap<>();
+    private final SearchMetrics metrics;
+    private final LongSupplier clock;
+
+    private SectionFilter sectionFilter = SectionFilter.NONE;
+    private int maxShift;
+    private long ttlMillis;
+    private long maxPositions;
+    private long totalPositions;
+
+    private long started;
+    private long resumed;
+
+    /**
+     * Creates a manager on the system clock that keeps no sessions until {@link #reset} is called.
+     *
+     * @param metrics Receives the work done by every search.
+     */
+    SearchSessions(SearchMetrics metrics) {
+        this(metrics, System::currentTimeMillis);
+    }
+
+    /**
+     * @param metrics Receives the work done by every search.
+     * @param clock   Supplies the current time in milliseconds.
+     */
+    SearchSessions(SearchMetrics metrics, LongSupplier clock) {
+        this.metrics = metrics;
+        this.clock = clock;
+    }
+
+    /**
+     * Ends every session and changes the limits for new ones.
+     *
+     * @param sectionFilter Decides which sections can be skipped without reading them.
+     * @param maxShift      Furthest a player may move, along any axis, for a session to resume.
+     * @param ttlMillis     How long an idle session is kept, in milliseconds.
+     * @param maxPositions  Most block positions kept by all sessions together.
+     */
+    void reset(SectionFilter sectionFilter, int maxShift, long ttlMillis, long maxPositions) {
+        if (maxShift < 0) {
+            throw new IllegalArgumentException("Session shift cannot be negative");
+        }
+        if (ttlMillis < 0 || maxPositions < 0) {
+            throw new IllegalArgumentException("Session limits cannot be negative");
+        }
+        this.sectionFilter = sectionFilter;
+        this.maxShift = maxShift;
+        this.ttlMillis = ttlMillis;
+        this.maxPositions = maxPositions;
+        clear();
+    }
+
+    /**
+     * Returns the distance to the nearest block of each target around the given origin,
+     * resuming the player's session if it is close enough and starting a new one otherwise.
+     *
+     * @param playerId The player searching.
+     * @param world    The world to search.
+     * @param x        Block X coordinate of the origin.
+     * @param y        Block Y coordinate of the origin.
+     * @param z        Block Z coordinate of the origin.
+     * @param targets  The block types to search for; at most 64.
+     * @param profile  The reach, shape and budget of the search.
+     * @param limits   Per target, a distance the nearest match is known to be closer than, or
+     *                 {@code null}; see
+     *                 {@link OreLocator#getBlockTypeDistances(BlockSource, int, int, int, Material[], SearchProfile, int[])}.
+     * @return Distances in the same order as {@code targets}, {@link OreLocator#NOT_FOUND} for
+     * types not found, or {@code null} if the search would read more blocks than the profile's
+     * budget allows or reach into an unloaded chunk, in which case the player's session has ended.
+     */
+    int[] search(UUID playerId, World world, int x, int y, int z, Material[] targets, SearchProfile profile,
+                 int[] limits) {
+        long now = clock.getAsLong();
+        Box whole = Box.around(x, y, z, profile, world.getMinHeight(), world.getMaxHeight());
+        Box next = whole == null ? null : whole.within(x, y, z, profile, limits);
+        Session session = sessions.get(playerId);
+        if (session != null && !session.canResume(world.getUID(), x, y, z, targets, profile, now)) {
+            remove(playerId);
+            session = null;
+        }
+
+        boolean start = session == null;
+        if (start) {
+            dropExpired(now);
+            session = new Session(world.getUID(), targets, profile);
+        }
+        long before = session.size();
+        long[] work = new long[2];
+        long budget = profile.maxBlocks() == 0 ? Long.MAX_VALUE : profile.maxBlocks();
+        session.prune(next);
+        boolean done = session.cover(world, next, sectionFilter, budget, work);
+        int[] distances = done ? session.nearest(x, y, z, profile) : null;
+        if (done && next != whole && missedLimit(distances, limits, profile)) {
+            // A limit was out of date, so the rest of the search box has to be read as well
+            done = session.cover(world, whole, sectionFilter, budget - work[0], work);
+            distances = done ? session.nearest(x, y, z, profile) : null;
+        }
+        metrics.recordWork(work[0], 0, (int) work[1]);
+        if (!done) {
+            if (!start) {
+                // The positions counted for the session are those it held before pruning
+                sessions.remove(playerId);
+                totalPositions -= before;
+            }
+            return null;
+        }
+        if (start) {
+            sessions.put(playerId, session);
+            started++;
+        } else {
+            resumed++;
+        }
+        session.x = x;
+        session.y = y;
+        session.z = z;
+        session.lastUsed = now;
+        totalPositions += session.size() - before;
+
+        if (totalPositions > maxPositions) {
+            // Too much state kept; the answer is still good, but the session is not worth resuming
+            remove(playerId);
+        }
+        return distances;
+    }
+
+    /**
+     * Returns whether a target with a limit below the profile's radius was not found within it.
+     */
+    private static boolean missedLimit(int[] distances, int[] limits, SearchProfile profile) {
+        if (limits == null) return false;
+        for (int t = 0; t < distances.length; t++) {
+            if (limits[t] < profile.radius() && (distances[t] == OreLocator.NOT_FOUND || distances[t] >= limits[t])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Ends a player's session, if any (call on disconnect to free memory).
+     */
+    void remove(UUID playerId) {
+        Session session = sessions.remove(playerId);
+        if (session != null) {
+            totalPositions -= session.size();
+        }
+    }
+
+    /**
+     * Ends every session.
+     */
+    void clear() {
+        sessions.clear();
+        totalPositions = 0L;
+    }
+
+    /**
+     * @return the number of sessions kept
+     */
+    int size() {
+        return sessions.size();
+    }
+
+    /**
+     * @return the number of block positions kept by all sessions together
+     */
+    long getPositions() {
+        return totalPositions;
+    }
+
+    /**
+     * @return the number of searches that read their whole box
+     */
+    long getStarted() {
+        return started;
+    }
+
+    /**
+     * @return the number of searches that only read the blocks newly in range
+     */
+    long getResumed() {
+        return resumed;
+    }
+
+    @Override
+    public void blockChanged(World world, int x, int y, int z) {
+        if (sessions.isEmpty()) return;
+        UUID worldId = world.getUID();
+        for (Iterator<Session> it = sessions.values().iterator(); it.hasNext(); ) {
+            Session session = it.next();
+            if (session.worldId.equals(worldId) && session.box != null && session.box.contains(x, y, z)) {
+                totalPositions -= session.size();
+                it.remove();
+            }
+        }
+    }
+
+    @Override
+    public void chunkUnloaded(World world, int chunkX, int chunkZ) {
+        // Sessions remember blocks, which do not change by being unloaded
+    }
+
+    private void dropExpired(long now) {
+        for (Iterator<Session> it = sessions.values().iterator(); it.hasNext(); ) {
+            Session session = it.next();
+            if (now - session.lastUsed >= ttlMillis) {
+                totalPositions -= session.size();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * One player's explored box and the target blocks found in it.
+     */
+    private final class Session {
+        final UUID worldId;
+        final Material[] targets;
+        final SearchProfile profile;
+        /**
+         * Positions of each target inside {@link #box}.
+         */
+        final BlockPositionSet[] positions;
+        Box box;
+        int x, y, z;
+        long lastUsed;
+
+        Session(UUID worldId, Material[] targets, SearchProfile profile) {
+            this.worldId = worldId;
+            this.targets = targets.clone();
+            this.profile = profile;
+            this.positions = new BlockPositionSet[targets.length];
+            for (int t = 0; t < targets.length; t++) {
+                positions[t] = new BlockPositionSet();
+            }
+        }
+
+        boolean canResume(UUID worldId, int x, int y, int z, Material[] targets, SearchProfile profile, long now) {
+            return this.worldId.equals(worldId) && this.profile == profile && Arrays.equals(this.targets, targets)
+                    && now - lastUsed < ttlMillis
+                    && Math.abs(x - this.x) <= maxShift && Math.abs(y - this.y) <= maxShift
+                    && Math.abs(z - this.z) <= maxShift;
+        }
+
+        long size() {
+            long size = 0L;
+            for (BlockPositionSet set : positions) {
+                size += set.size();
+            }
+            return size;
+        }
+
+        /**
+         * Drops the positions outside the new box.
+         */
+        void prune(Box next) {
+            for (BlockPositionSet set : positions) {
+                if (next == null) {
+                    set.clear();
+                } else {
+                    set.retainWithin(next.minX, next.minY, next.minZ, next.maxX, next.maxY, next.maxZ);
+                }
+            }
+        }
+
+        /**
+         * Reads the parts of the given box not covered yet from fresh snapshots, records the
+         * targets found in them and makes it the covered box. Nothing is read if that would take
+         * more than {@code budget} blocks, or if a chunk under the missing parts is not loaded:
+         * the box would count it as read, and later moves would never read it once it loads.
+         *
+         * @param next The box to cover, or {@code null} if the search covers nothing.
+         * @param work Receives the blocks read and sections scanned.
+         * @return false if the budget does not allow reading the missing parts or a chunk under
+         * them is not loaded
+         */
+        boolean cover(World world, Box next, SectionFilter filter, long budget, long[] work) {
+            if (next == null) {
+                box = null;
+                return true;
+            }
+            List<Box> parts = box == null ? List.of(next) : next.minus(box);
+            List<Slice> slices = new ArrayList<>();
+            long blocks = 0L;
+            for (Box part : parts) {
+                long planned = plan(world, part, filter, slices);
+                if (planned < 0) return false;
+                blocks += planned;
+                if (blocks > budget) return false;
+            }
+            for (Slice slice : slices) {
+                read(slice);
+            }
+            work[0] += blocks;
+            work[1] += slices.size();
+            box = next;
+            return true;
+        }
+
+        /**
+         * Captures the chunks under the given box and adds the parts of its sections the filter
+         * does not rule out to {@code slices}.
+         *
+         * @return the number of blocks in the slices added, or -1 if one of the chunks is not loaded
+         */
+        private long plan(World world, Box part, SectionFilter filter, List<Slice> slices) {
+            SnapshotRegion region = SnapshotRegion.capture(world, part.minX >> 4, part.minZ >> 4,
+                    part.maxX >> 4, part.maxZ >> 4);
+            long blocks = 0L;
+            for (int cx = part.minX >> 4; cx <= part.maxX >> 4; cx++) {
+                for (int cz = part.minZ >> 4; cz <= part.maxZ >> 4; cz++) {
+                    ChunkSnapshot snapshot = region.getChunkSnapshot(cx, cz);
+                    if (snapshot == null) return -1L;
+                    for (int sy = part.minY >> 4; sy <= part.maxY >> 4; sy++) {
+                        long mask = 0L;
+                        for (int t = 0; t < targets.length; t++) {
+                            if (filter.mayContain(worldId, snapshot, sy, targets[t])) mask |= 1L << t;
+                        }
+                        if (mask == 0L) continue;
+                        Slice slice = new Slice(snapshot, mask,
+                                Math.max(part.minX, cx << 4), Math.max(part.minY, sy << 4), Math.max(part.minZ, cz << 4),
+                                Math.min(part.maxX, (cx << 4) + 15), Math.min(part.maxY, (sy << 4) + 15),
+                                Math.min(part.maxZ, (cz << 4) + 15));
+                        slices.add(slice);
+                        blocks += (long) (slice.maxX - slice.minX + 1) * (slice.maxY - slice.minY + 1)
+                                * (slice.maxZ - slice.minZ + 1);
+                    }
+                }
+            }
+            return blocks;
+        }
+
+        /**
+         * Records the targets found in a slice.
+         */
+        private void read(Slice slice) {
+            ChunkSnapshot snapshot = slice.snapshot;
+            for (int by = slice.minY; by <= slice.maxY; by++) {
+                for (int bz = slice.minZ; bz <= slice.maxZ; bz++) {
+                    for (int bx = slice.minX; bx <= slice.maxX; bx++) {
+                        Material type = snapshot.getBlockType(bx & 15, by, bz & 15);
+                        for (int t = 0; t < targets.length; t++) {
+                            if (type == targets[t] && (slice.mask & (1L << t)) != 0) {
+                                positions[t].add(bx, by, bz);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Measures the distance from the origin to the nearest recorded position of each target.
+         */
+        int[] nearest(int x, int y, int z, SearchProfile profile) {
+            int[] best = new int[targets.length];
+            for (int t = 0; t < targets.length; t++) {
+                int closest = positions[t].nearest(x, y, z, profile.radius(), profile::distance);
+                best[t] = closest > profile.reach() ? OreLocator.NOT_FOUND : closest;
+            }
+            return best;
+        }
+    }
+
+    /**
+     * The part of one chunk section a search reads, bounds included, and the targets it may hold.
+     */
+    private record Slice(ChunkSnapshot snapshot, long mask, int minX, int minY, int minZ,
+                         int maxX, int maxY, int maxZ) {
+    }
+
+    /**
+     * An axis-aligned box of block positions, bounds included.
+     */
+    record Box(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+
+        /**
+         * Returns the box a search with the given profile covers around an origin, clipped to
+         * the world's height range, or {@code null} if nothing of it is inside the world.
+         */
+        static Box around(int x, int y, int z, SearchProfile profile, int minHeight, int maxHeight) {
+            int reach = profile.reach();
+            int minY = Math.max(y - profile.verticalRadius(), minHeight);
+            int maxY = Math.min(y + profile.verticalRadius(), maxHeight - 1);
+            if (minY > maxY) return null;
+            return new Box(x - reach, minY, z - reach, x + reach, maxY, z + reach);
+        }
+
+        /**
+         * Returns the part of this search box around the given origin that can hold a match
+         * closer than every limit, or this box itself if some target has no limit below the
+         * profile's radius. Every metric is at least the Chebyshev distance, so the part is a
+         * smaller cube.
+         */
+        Box within(int x, int y, int z, SearchProfile profile, int[] limits) {
+            if (limits == null || limits.length == 0) return this;
+            int reach = 0;
+            for (int limit : limits) {
+                if (limit >= profile.radius()) return this;
+                reach = Math.max(reach, limit - 1);
+            }
+            int fromY = Math.max(y - reach, minY), toY = Math.min(y + reach, maxY);
+            return fromY > toY ? this : new Box(x - reach, fromY, z - reach, x + reach, toY, z + reach);
+        }
+
+        boolean contains(int x, int y, int z) {
+            return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+        }
+
+        /**
+         * Splits the part of this box outside {@code other} into at most six disjoint boxes.
+         */
+        List<Box> minus(Box other) {
+            List<Box> parts = new ArrayList<>(6);
+            if (other.minX > maxX || other.maxX < minX || other.minY > maxY || other.maxY < minY
+                    || other.minZ > maxZ || other.maxZ < minZ) {
+                parts.add(this);
+                return parts;
+            }
+            // Slabs along X span the whole box, then Y and Z slabs fill in the remaining columns
+            int fromX = minX, toX = maxX;
+            if (minX < other.minX) {
+                parts.add(new Box(minX, minY, minZ, other.minX - 1, maxY, maxZ));
+                fromX = other.minX;
+            }
+            if (maxX > other.maxX) {
+                parts.add(new Box(other.maxX + 1, minY, minZ, maxX, maxY, maxZ));
+                toX = other.maxX;
+            }
+            int fromY = minY, toY = maxY;
+            if (minY < other.minY) {
+                parts.add(new Box(fromX, minY, minZ, toX, other.minY - 1, maxZ));
+                fromY = other.minY;
+            }
+            if (maxY > other.maxY) {
+                parts.add(new Box(fromX, other.maxY + 1, minZ, toX, maxY, maxZ));
+                toY = other.maxY;
+            }
+            if (minZ < other.minZ) {
+                parts.add(new Box(fromX, fromY, minZ, toX, toY, other.minZ - 1));
+            }
+            if (maxZ > other.maxZ) {
+                parts.add(new Box(fromX, fromY, other.maxZ + 1, toX, toY, maxZ));
+            }
+            return parts;
+        }
+    }
+}
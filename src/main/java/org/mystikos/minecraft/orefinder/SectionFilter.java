@@ -0,0 +1,39 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+
+import java.util.UUID;
+
+/**
+ * A cheap pre-check that lets {@link OreLocator} skip whole 16x16x16 chunk sections that cannot
+ * contain the block being searched for. Implementations may only answer {@code false} when they
+ * are certain; answering {@code true} just means the section is scanned block by block.
+ */
+@FunctionalInterface
+interface SectionFilter {
+
+    /**
+     * A filter that never skips a section.
+     */
+    SectionFilter NONE = (worldId, snapshot, sectionY, target) -> true;
+
+    /**
+     * Returns whether the given section might contain a block of type {@code target}.
+     *
+     * @param worldId  The world the snapshot was captured from.
+     * @param snapshot The captured chunk.
+     * @param sectionY Section Y coordinate (block Y >> 4).
+     * @param target   The block type being searched for.
+     * @return false only if the section certainly contains no such block
+     */
+    boolean mayContain(UUID worldId, ChunkSnapshot snapshot, int sectionY, Material target);
+
+    /**
+     * Returns a filter that skips a section if either this filter or {@code other} would.
+     */
+    default SectionFilter and(SectionFilter other) {
+        return (worldId, snapshot, sectionY, target) ->
+                mayContain(worldId, snapshot, sectionY, target) && other.mayContain(worldId, snapshot, sectionY, target);
+    }
+}
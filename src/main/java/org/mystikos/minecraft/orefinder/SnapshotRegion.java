@@ -0,0 +1,180 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * An immutable copy of the chunks surrounding a search origin.
+ * <p>
+ * The chunks covering the search cube are captured once as {@link ChunkSnapshot}s, after which
+ * block types are read straight from the copies. This avoids the world's chunk lookup and the
+ * {@link org.bukkit.block.Block} wrapper that {@link World#getBlockAt(int, int, int)} creates for
+ * every position, and the captured data can safely be read from any thread. Chunks that are not
+ * loaded are left out rather than loaded, so they read as absent.
+ * </p>
+ */
+final class SnapshotRegion implements ChunkSource, BlockSource {
+
+    private final UUID worldId;
+    private final int minChunkX;
+    private final int minChunkZ;
+    private final int chunksX;
+    private final int chunksZ;
+    private final int minHeight;
+    private final int maxHeight;
+    private final ChunkSnapshot[] snapshots;
+
+    private SnapshotRegion(UUID worldId, int minChunkX, int minChunkZ, int chunksX, int chunksZ,
+                           int minHeight, int maxHeight, ChunkSnapshot[] snapshots) {
+        this.worldId = worldId;
+        this.minChunkX = minChunkX;
+        this.minChunkZ = minChunkZ;
+        this.chunksX = chunksX;
+        this.chunksZ = chunksZ;
+        this.minHeight = minHeight;
+        this.maxHeight = maxHeight;
+        this.snapshots = snapshots;
+    }
+
+    /**
+     * Captures snapshots of every loaded chunk that intersects the horizontal square of the given
+     * radius around {@code (x, z)}. Must be called on the main server thread.
+     *
+     * @param world  The world to capture from.
+     * @param x      Block X coordinate of the centre.
+     * @param z      Block Z coordinate of the centre.
+     * @param radius Horizontal distance from the centre, in blocks, that must be covered.
+     * @return The captured region.
+     */
+    static SnapshotRegion capture(World world, int x, int z, int radius) {
+        return capture(world, (x - radius) >> 4, (z - radius) >> 4, (x + radius) >> 4, (z + radius) >> 4);
+    }
+
+    /**
+     * Captures snapshots of every loaded chunk in the given rectangle of chunk coordinates, bounds
+     * included. Must be called on the main server thread.
+     *
+     * @param world     The world to capture from.
+     * @param minChunkX Smallest chunk X coordinate.
+     * @param minChunkZ Smallest chunk Z coordinate.
+     * @param maxChunkX Largest chunk X coordinate.
+     * @param maxChunkZ Largest chunk Z coordinate.
+     * @return The captured region.
+     */
+    static SnapshotRegion capture(World world, int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ) {
+        return capture(world, minChunkX, minChunkZ, maxChunkX, maxChunkZ, new long[0]);
+    }
+
+    /**
+     * Like {@link #capture(World, int, int, int)}, but leaves out the given chunks as well, such
+     * as chunks whose sections a search can take from the ore index instead.
+     *
+     * @param skipped Chunks not to capture, packed as by
+     *                {@link OreLocator#unloadedChunks(World, int, int, SearchProfile)}.
+     */
+    static SnapshotRegion capture(World world, int x, int z, int radius, long[] skipped) {
+        return capture(world, (x - radius) >> 4, (z - radius) >> 4, (x + radius) >> 4, (z + radius) >> 4, skipped);
+    }
+
+    private static SnapshotRegion capture(World world, int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ,
+                                          long[] skipped) {
+        long[] sorted = skipped.clone();
+        Arrays.sort(sorted);
+        int chunksX = maxChunkX - minChunkX + 1;
+        int chunksZ = maxChunkZ - minChunkZ + 1;
+        ChunkSnapshot[] snapshots = new ChunkSnapshot[chunksX * chunksZ];
+        for (int cx = 0; cx < chunksX; cx++) {
+            for (int cz = 0; cz < chunksZ; cz++) {
+                if (!world.isChunkLoaded(minChunkX + cx, minChunkZ + cz)) continue;
+                long chunk = (long) (minChunkX + cx) << 32 | (minChunkZ + cz) & 0xFFFFFFFFL;
+                if (sorted.length > 0 && Arrays.binarySearch(sorted, chunk) >= 0) continue;
+                // Heightmap and biome data are not needed to read block types
+                snapshots[cx * chunksZ + cz] = world.getChunkAt(minChunkX + cx, minChunkZ + cz)
+                        .getChunkSnapshot(false, false, false);
+            }
+        }
+        return new SnapshotRegion(world.getUID(), minChunkX, minChunkZ, chunksX, chunksZ,
+                world.getMinHeight(), world.getMaxHeight(), snapshots);
+    }
+
+    @Override
+    public UUID getWorldId() {
+        return worldId;
+    }
+
+    @Override
+    public int getMinHeight() {
+        return minHeight;
+    }
+
+    @Override
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    /**
+     * Returns the captured snapshot of the given chunk, or {@code null} if it lies outside
+     * the region or was not loaded.
+     */
+    @Override
+    public ChunkSnapshot getChunkSnapshot(int chunkX, int chunkZ) {
+        int cx = chunkX - minChunkX;
+        int cz = chunkZ - minChunkZ;
+        if (cx < 0 || cx >= chunksX || cz < 0 || cz >= chunksZ) return null;
+        return snapshots[cx * chunksZ + cz];
+    }
+
+    /**
+     * Returns the block type at the given world coordinates, or {@code null} if the position
+     * lies outside the captured chunks or the world's height range.
+     */
+    @Override
+    public Material getType(int x, int y, int z) {
+        if (y < minHeight || y >= maxHeight) return null;
+        int cx = (x >> 4) - minChunkX;
+        int cz = (z >> 4) - minChunkZ;
+        if (cx < 0 || cx >= chunksX || cz < 0 || cz >= chunksZ) return null;
+        ChunkSnapshot snapshot = snapshots[cx * chunksZ + cz];
+        return snapshot == null ? null : snapshot.getBlockType(x & 15, y, z & 15);
+    }
+
+    @Override
+    public boolean readSection(int chunkX, int sectionY, int chunkZ, Material[] types) {
+        ChunkSnapshot snapshot = getChunkSnapshot(chunkX, chunkZ);
+        if (snapshot == null) return false;
+        int baseY = sectionY << 4;
+        for (int ly = 0; ly < 16; ly++) {
+            int y = baseY + ly;
+            if (y < minHeight || y >= maxHeight) {
+                Arrays.fill(types, ly << 8, (ly + 1) << 8, null);
+                continue;
+            }
+            for (int lz = 0; lz < 16; lz++) {
+                for (int lx = 0; lx < 16; lx++) {
+                    types[ly << 8 | lz << 4 | lx] = snapshot.getBlockType(lx, y, lz);
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean readSection(int chunkX, int sectionY, int chunkZ, int minX, int minY, int minZ,
+                               int maxX, int maxY, int maxZ, Material[] types) {
+        ChunkSnapshot snapshot = getChunkSnapshot(chunkX, chunkZ);
+        if (snapshot == null) return false;
+        int baseY = sectionY << 4;
+        for (int ly = minY; ly <= maxY; ly++) {
+            for (int lz = minZ; lz <= maxZ; lz++) {
+                for (int lx = minX; lx <= maxX; lx++) {
+                    types[ly << 8 | lz << 4 | lx] = snapshot.getBlockType(lx, baseY + ly, lz);
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,44 @@
+package org.mystikos.minecraft.orefinder;
+
+import java.util.Locale;
+
+/**
+ * What a search does about chunks within its reach that are not loaded, selected with the
+ * {@code search.unloaded_chunks.policy} configuration option. Searches never load chunks
+ * themselves, since a synchronous load, let alone generation, can stall the server tick.
+ */
+enum UnloadedChunkPolicy {
+
+    /**
+     * Treats unloaded chunks as holding no ore.
+     */
+    NO_ORE,
+
+    /**
+     * Reports a target as inconclusive if an unloaded chunk could hold it closer than the
+     * distance found.
+     */
+    INCONCLUSIVE,
+
+    /**
+     * Loads the missing chunks, a few per tick and without generating any, and searches once
+     * they are loaded. Targets that chunks which could not be loaded might hold closer are
+     * reported as inconclusive.
+     */
+    LOAD;
+
+    /**
+     * Parses a configured policy name (case-insensitive).
+     *
+     * @param name The configured value.
+     * @return The matching policy.
+     * @throws IllegalArgumentException if the name is not a known policy.
+     */
+    static UnloadedChunkPolicy fromConfig(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown policy '" + name + "' in 'search.unloaded_chunks.policy'");
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * A {@link BlockSource} reading straight from the live world. Blocks of chunks that are not
+ * loaded are not supplied, since reading them would load or even generate the chunk. Must only
+ * be used on the main server thread.
+ */
+final class WorldBlockSource implements BlockSource {
+
+    private final World world;
+    private final int minHeight;
+    private final int maxHeight;
+
+    WorldBlockSource(World world) {
+        this.world = world;
+        this.minHeight = world.getMinHeight();
+        this.maxHeight = world.getMaxHeight();
+    }
+
+    @Override
+    public UUID getWorldId() {
+        return world.getUID();
+    }
+
+    @Override
+    public int getMinHeight() {
+        return minHeight;
+    }
+
+    @Override
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    @Override
+    public Material getType(int x, int y, int z) {
+        if (y < minHeight || y >= maxHeight || !world.isChunkLoaded(x >> 4, z >> 4)) return null;
+        return world.getBlockAt(x, y, z).getType();
+    }
+
+    @Override
+    public boolean readSection(int chunkX, int sectionY, int chunkZ, Material[] types) {
+        if (!world.isChunkLoaded(chunkX, chunkZ)) return false;
+        int baseX = chunkX << 4, baseY = sectionY << 4, baseZ = chunkZ << 4;
+        for (int ly = 0; ly < 16; ly++) {
+            int y = baseY + ly;
+            if (y < minHeight || y >= maxHeight) {
+                Arrays.fill(types, ly << 8, (ly + 1) << 8, null);
+                continue;
+            }
+            for (int lz = 0; lz < 16; lz++) {
+                for (int lx = 0; lx < 16; lx++) {
+                    types[ly << 8 | lz << 4 | lx] = world.getBlockAt(baseX + lx, y, baseZ + lz).getType();
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean readSection(int chunkX, int sectionY, int chunkZ, int minX, int minY, int minZ,
+                               int maxX, int maxY, int maxZ, Material[] types) {
+        if (!world.isChunkLoaded(chunkX, chunkZ)) return false;
+        int baseX = chunkX << 4, baseY = sectionY << 4, baseZ = chunkZ << 4;
+        for (int ly = minY; ly <= maxY; ly++) {
+            for (int lz = minZ; lz <= maxZ; lz++) {
+                for (int lx = minX; lx <= maxX; lx++) {
+                    types[ly << 8 | lz << 4 | lx] = world.getBlockAt(baseX + lx, baseY + ly, baseZ + lz).getType();
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,48 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+
+import java.util.UUID;
+
+/**
+ * A {@link ChunkSource} that captures snapshots from the live world on demand. Each chunk is
+ * captured at most once per instance, so an instance should only live for a single search.
+ * Chunks that are not loaded are not supplied. Must only be used on the main server thread.
+ */
+final class WorldChunkSource implements ChunkSource {
+
+    private final World world;
+    private final LongObjectMap<ChunkSnapshot> captured = new LongObjectMap<>();
+
+    WorldChunkSource(World world) {
+        this.world = world;
+    }
+
+    @Override
+    public UUID getWorldId() {
+        return world.getUID();
+    }
+
+    @Override
+    public int getMinHeight() {
+        return world.getMinHeight();
+    }
+
+    @Override
+    public int getMaxHeight() {
+        return world.getMaxHeight();
+    }
+
+    @Override
+    public ChunkSnapshot getChunkSnapshot(int chunkX, int chunkZ) {
+        long key = ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+        ChunkSnapshot snapshot = captured.get(key);
+        if (snapshot == null) {
+            if (!world.isChunkLoaded(chunkX, chunkZ)) return null;
+            snapshot = world.getChunkAt(chunkX, chunkZ).getChunkSnapshot(false, false, false);
+            captured.put(key, snapshot);
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,102 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.Material;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link ArrayBlockSource}, the in-memory {@link BlockSource}, and for searching it
+ * with {@link OreLocator}. None of them needs a mock server.
+ */
+public class ArrayBlockSourceTest {
+
+    private static final Material[] ORES = {Material.DIAMOND_ORE, Material.EMERALD_ORE};
+
+    private final ArrayBlockSource source = new ArrayBlockSource(-2, -2, 1, 1, -64, 64, Material.STONE);
+
+    @Test
+    public void readsWhatWasSet() {
+        source.setType(-17, -64, 31, Material.DIAMOND_ORE);
+        assertEquals(Material.DIAMOND_ORE, source.getType(-17, -64, 31));
+        assertEquals(Material.STONE, source.getType(-16, -64, 31));
+        assertNull(source.getType(0, 64, 0), "Above the world");
+        assertNull(source.getType(32, 0, 0), "Outside the chunks held");
+        assertThrows(IllegalArgumentException.class, () -> source.setType(0, -65, 0, Material.DIAMOND_ORE));
+    }
+
+    @Test
+    public void readSectionMatchesSingleReads() {
+        ArrayBlockSource low = new ArrayBlockSource(-1, 0, -1, 0, 0, 56, Material.STONE);
+        Random random = new Random(4);
+        for (int i = 0; i < 200; i++) {
+            low.setType(random.nextInt(16) - 16, random.nextInt(8) + 48, random.nextInt(16), ORES[i % 2]);
+        }
+        Material[] types = new Material[BlockSource.SECTION_VOLUME];
+        assertTrue(low.readSection(-1, 3, 0, types));
+        for (int i = 0; i < types.length; i++) {
+            int x = -16 + (i & 15), y = 48 + (i >> 8), z = (i >> 4) & 15;
+            assertEquals(low.getType(x, y, z), types[i], "Block " + x + ", " + y + ", " + z);
+        }
+        assertNull(types[15 << 8], "Section rows above the world read as null");
+        assertFalse(low.readSection(0, 3, 0, types));
+    }
+
+    @Test
+    public void paletteHoldsAtMost256Types() {
+        Material[] others = Arrays.stream(Material.values()).filter(m -> m != Material.STONE)
+                .limit(256).toArray(Material[]::new);
+        for (int i = 0; i < 255; i++) {
+            source.setType((i & 31) - 32, i >> 5, 0, others[i]);
+        }
+        source.setType(0, 0, 0, others[0]);
+        assertEquals(others[254], source.getType((254 & 31) - 32, 254 >> 5, 0));
+        assertThrows(IllegalArgumentException.class, () -> source.setType(0, 0, 0, others[255]));
+    }
+
+    @Test
+    public void searchMatchesBruteForce() {
+        Random random = new Random(5);
+        for (int i = 0; i < 60; i++) {
+            source.setType(random.nextInt(64) - 32, random.nextInt(128) - 64, random.nextInt(64) - 32, ORES[i % 2]);
+        }
+        OreLocator locator = new OreLocator();
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("shape", "sphere");
+        SearchProfile[] profiles = {SearchProfile.DEFAULT, SearchProfile.fromConfig(config, "search", SearchProfile.DEFAULT)};
+        for (int query = 0; query < 100; query++) {
+            int x = random.nextInt(40) - 20, y = random.nextInt(120) - 60, z = random.nextInt(40) - 20;
+            SearchProfile profile = profiles[query % 2];
+            assertArrayEquals(bruteForce(x, y, z, profile), locator.getBlockTypeDistances(source, x, y, z, ORES, profile),
+                    "Search around " + x + ", " + y + ", " + z);
+        }
+    }
+
+    private int[] bruteForce(int x, int y, int z, SearchProfile profile) {
+        int reach = profile.reach();
+        int[] best = {OreLocator.NOT_FOUND, OreLocator.NOT_FOUND};
+        for (int dx = -reach; dx <= reach; dx++) {
+            for (int dy = -profile.verticalRadius(); dy <= profile.verticalRadius(); dy++) {
+                for (int dz = -reach; dz <= reach; dz++) {
+                    Material type = source.getType(x + dx, y + dy, z + dz);
+                    int d = profile.distance(dx, dy, dz);
+                    for (int t = 0; t < ORES.length; t++) {
+                        if (type == ORES[t] && d <= reach && (best[t] == OreLocator.NOT_FOUND || d < best[t])) {
+                            best[t] = d;
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,132 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link AsyncSearchExecutor}. Searches are plain suppliers, so these
+ * tests run without a mock server.
+ */
+public class AsyncSearchExecutorTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private AsyncSearchExecutor executor;
+
+    @BeforeEach
+    public void setUp() {
+        executor = new AsyncSearchExecutor(new TestContext(new YamlConfiguration(), "AsyncSearchExecutorTest"), 1, 1, 1);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        executor.shutdown(1000L);
+    }
+
+    private int blockUntilReleased() {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return 7;
+    }
+
+    @Test
+    public void deliversResultToCallback() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicInteger result = new AtomicInteger();
+        assertTrue(executor.submit(UUID.randomUUID(), () -> 5, distance -> {
+            result.set(distance);
+            done.countDown();
+        }));
+        assertTrue(done.await(5, TimeUnit.SECONDS), "The callback should run once the search completes");
+        assertEquals(5, result.get());
+    }
+
+    @Test
+    public void rejectsSearchesBeyondPerPlayerLimit() {
+        UUID playerId = UUID.randomUUID();
+        assertTrue(executor.submit(playerId, this::blockUntilReleased, distance -> { }));
+        assertFalse(executor.submit(playerId, () -> 1, distance -> { }),
+                "A second search for the same player should be rejected while the first is in flight");
+        assertEquals(1, executor.inFlight(playerId));
+    }
+
+    @Test
+    public void rejectsSearchesWhenQueueIsFull() {
+        // One search occupies the only worker, the next fills the one-slot queue
+        assertTrue(executor.submit(UUID.randomUUID(), this::blockUntilReleased, distance -> { }));
+        assertTrue(executor.submit(UUID.randomUUID(), this::blockUntilReleased, distance -> { }));
+        UUID rejected = UUID.randomUUID();
+        assertFalse(executor.submit(rejected, () -> 1, distance -> { }),
+                "Searches beyond the queue capacity should be rejected");
+        assertEquals(0, executor.inFlight(rejected), "A rejected search must not count as in flight");
+    }
+
+    @Test
+    public void releasesPlayerSlotWhenSearchCompletes() throws InterruptedException {
+        UUID playerId = UUID.randomUUID();
+        CountDownLatch done = new CountDownLatch(1);
+        assertTrue(executor.submit(playerId, () -> 3, distance -> done.countDown()));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, executor.inFlight(playerId));
+        assertTrue(executor.submit(playerId, () -> 3, distance -> { }),
+                "A player should be able to search again once the previous search finished");
+    }
+
+    @Test
+    public void virtualThreadsDeliverResults() throws InterruptedException {
+        AsyncSearchExecutor virtual = new AsyncSearchExecutor(
+                new TestContext(new YamlConfiguration(), "AsyncSearchExecutorTest"), 0, 4, 1);
+        try {
+            CountDownLatch done = new CountDownLatch(1);
+            AtomicBoolean onVirtualThread = new AtomicBoolean();
+            assertTrue(virtual.submit(UUID.randomUUID(), () -> Thread.currentThread().isVirtual(), isVirtual -> {
+                onVirtualThread.set(isVirtual);
+                done.countDown();
+            }));
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertTrue(onVirtualThread.get(), "With zero threads each search should get a virtual thread");
+        } finally {
+            virtual.shutdown(1000L);
+        }
+    }
+
+    @Test
+    public void cancelledSearchesStopAndReportNothing() throws InterruptedException {
+        UUID playerId = UUID.randomUUID();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch stopped = new CountDownLatch(1);
+        AtomicBoolean delivered = new AtomicBoolean();
+        assertTrue(executor.submit(playerId, cancelled -> {
+            started.countDown();
+            while (!cancelled.getAsBoolean()) {
+                Thread.onSpinWait();
+            }
+            stopped.countDown();
+            return 1;
+        }, distance -> delivered.set(true)));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        executor.cancel(playerId);
+        assertTrue(stopped.await(5, TimeUnit.SECONDS), "A running search should see it was cancelled");
+
+        // The cancelled search no longer holds the player's slot once it stopped
+        CountDownLatch done = new CountDownLatch(1);
+        while (!executor.submit(playerId, () -> 2, distance -> done.countDown())) {
+            Thread.onSpinWait();
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS), "Searches submitted after the cancel still report back");
+        assertFalse(delivered.get(), "A cancelled search must not report back");
+    }
+}
@@ -0,0 +1,116 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link BlockPositionSet}, the per-section set of block positions.
+ */
+public class BlockPositionSetTest {
+
+    /**
+     * Conservative cost of one entry in a {@code HashSet<Long>}: a boxed {@link Long} (16 bytes)
+     * and a {@code HashMap.Node} (32 bytes), leaving out the table.
+     */
+    private static final int BOXED_BYTES_PER_ENTRY = 48;
+
+    @Test
+    public void addRemoveAndContains() {
+        BlockPositionSet set = new BlockPositionSet();
+        assertTrue(set.add(3, -60, 7));
+        assertFalse(set.add(3, -60, 7), "A position is only added once");
+        assertTrue(set.add(-30_000_000, 319, 29_999_999));
+        assertTrue(set.contains(3, -60, 7));
+        assertTrue(set.contains(-30_000_000, 319, 29_999_999));
+        assertFalse(set.contains(3, -59, 7));
+        assertEquals(2, set.size());
+        assertTrue(set.remove(3, -60, 7));
+        assertFalse(set.remove(3, -60, 7));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    public void denseSectionKeepsEveryPosition() {
+        BlockPositionSet set = new BlockPositionSet();
+        for (int i = 0; i < 4096; i++) {
+            set.add(i & 15, i >> 8, (i >> 4) & 15);
+        }
+        assertEquals(4096, set.size());
+        for (int i = 0; i < 4096; i += 2) {
+            assertTrue(set.remove(i & 15, i >> 8, (i >> 4) & 15));
+        }
+        for (int i = 0; i < 4096; i++) {
+            assertEquals(i % 2 == 1, set.contains(i & 15, i >> 8, (i >> 4) & 15));
+        }
+    }
+
+    @Test
+    public void nearestMatchesBruteForce() {
+        Random random = new Random(2);
+        BlockPositionSet set = new BlockPositionSet();
+        Set<List<Integer>> positions = new HashSet<>();
+        for (int i = 0; i < 500; i++) {
+            int x = random.nextInt(120) - 60, y = random.nextInt(120) - 60, z = random.nextInt(120) - 60;
+            set.add(x, y, z);
+            positions.add(List.of(x, y, z));
+        }
+        for (int query = 0; query < 200; query++) {
+            int x = random.nextInt(160) - 80, y = random.nextInt(160) - 80, z = random.nextInt(160) - 80;
+            int radius = random.nextInt(30);
+            int expected = OreLocator.NOT_FOUND;
+            for (List<Integer> p : positions) {
+                int d = Math.max(Math.abs(p.get(0) - x), Math.max(Math.abs(p.get(1) - y), Math.abs(p.get(2) - z)));
+                if (d <= radius && (expected == OreLocator.NOT_FOUND || d < expected)) expected = d;
+            }
+            assertEquals(expected, set.nearest(x, y, z, radius), "Nearest around " + x + ", " + y + ", " + z);
+        }
+    }
+
+    @Test
+    public void nearestUsesTheGivenMetric() {
+        BlockPositionSet set = new BlockPositionSet();
+        set.add(3, 0, 3);
+        set.add(0, 4, 0);
+        assertEquals(3, set.nearest(0, 0, 0, 20, BlockPositionSet.CHEBYSHEV));
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("shape", "sphere");
+        SearchProfile sphere = SearchProfile.fromConfig(config, "search", SearchProfile.DEFAULT);
+        assertEquals(4, set.nearest(0, 0, 0, 20, sphere::distance), "Straight-line distance to (3, 0, 3) is above 4");
+        assertEquals(2, set.nearest(0, 0, 0, 2, BlockPositionSet.CHEBYSHEV), "Nothing closer than the limit");
+    }
+
+    @Test
+    public void retainWithinDropsPositionsOutsideTheBox() {
+        BlockPositionSet set = new BlockPositionSet();
+        for (int x = -40; x < 40; x += 3) {
+            set.add(x, 10, 5);
+        }
+        set.retainWithin(-5, 0, 0, 20, 20, 20);
+        for (int x = -40; x < 40; x += 3) {
+            assertEquals(x >= -5 && x <= 20, set.contains(x, 10, 5), "Position at x = " + x);
+        }
+        assertEquals(9, set.size());
+    }
+
+    @Test
+    public void sparseOresTakeFarLessMemoryThanBoxedLongs() {
+        // About a dozen ores per section, spread over 32x32 chunks
+        Random random = new Random(3);
+        BlockPositionSet set = new BlockPositionSet();
+        while (set.size() < 100_000) {
+            set.add(random.nextInt(512), random.nextInt(128) - 64, random.nextInt(512));
+        }
+        long boxed = (long) set.size() * BOXED_BYTES_PER_ENTRY;
+        assertTrue(set.estimatedBytes() * 4 < boxed,
+                "Expected under a quarter of " + boxed + " bytes, got " + set.estimatedBytes());
+    }
+}
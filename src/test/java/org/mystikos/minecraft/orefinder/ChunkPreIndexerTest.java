@@ -0,0 +1,149 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.Material;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.ServerMock;
+import org.mockbukkit.mockbukkit.world.WorldMock;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link ChunkPreIndexer}, which indexes loaded chunks in the background.
+ */
+public class ChunkPreIndexerTest {
+
+    private static final long TICK_NANOS = 50_000_000L;
+    private static final Logger LOGGER = Logger.getLogger("ChunkPreIndexerTest");
+
+    private WorldMock world;
+    private OreIndex index;
+    private final AtomicLong now = new AtomicLong();
+
+    @BeforeEach
+    public void setUp() {
+        ServerMock server = MockBukkit.mock();
+        world = new WorldMock(Material.STONE, 100, 50);
+        server.addWorld(world);
+        index = new OreIndex();
+        index.reset(Set.of(Material.DIAMOND_ORE), 4096);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    private ChunkPreIndexer preIndexer(double chunksPerSecond, double minTps) {
+        return new ChunkPreIndexer(index, chunksPerSecond, minTps, LOGGER, now::get);
+    }
+
+    private void tick(ChunkPreIndexer preIndexer, long nanos) {
+        now.addAndGet(nanos);
+        preIndexer.tick();
+    }
+
+    @Test
+    public void loadedChunkIsIndexed() {
+        world.getBlockAt(3, 20, 5).setType(Material.DIAMOND_ORE);
+        world.loadChunk(0, 0);
+        ChunkPreIndexer preIndexer = preIndexer(20, 18);
+        preIndexer.chunkLoaded(world, 0, 0);
+        tick(preIndexer, TICK_NANOS);
+        preIndexer.shutdown(5000L);
+
+        assertEquals(1, preIndexer.getIndexed());
+        assertTrue(index.isCached(world.getUID(), 0, 20 >> 4, 0));
+        assertEquals(0, index.getMisses(), "Pre-indexing must not count as search misses");
+    }
+
+    @Test
+    public void capturesAreLimitedToTheRate() {
+        ChunkPreIndexer preIndexer = preIndexer(20, 0);
+        for (int x = 0; x < 5; x++) {
+            world.loadChunk(x, 0);
+            preIndexer.chunkLoaded(world, x, 0);
+        }
+        tick(preIndexer, TICK_NANOS);
+        assertEquals(4, preIndexer.queued(), "20 chunks per second allows one per tick");
+        tick(preIndexer, TICK_NANOS);
+        assertEquals(3, preIndexer.queued());
+        preIndexer.shutdown(5000L);
+    }
+
+    @Test
+    public void slowServerPausesCapturing() {
+        ChunkPreIndexer preIndexer = preIndexer(20, 18);
+        tick(preIndexer, TICK_NANOS);
+        world.loadChunk(0, 0);
+        preIndexer.chunkLoaded(world, 0, 0);
+        for (int i = 0; i < ChunkPreIndexer.TPS_WINDOW; i++) {
+            tick(preIndexer, 2 * TICK_NANOS);
+        }
+        assertTrue(preIndexer.isPaused());
+        assertEquals(1, preIndexer.queued(), "Nothing is captured at 10 TPS");
+
+        for (int i = 0; i < ChunkPreIndexer.TPS_WINDOW; i++) {
+            tick(preIndexer, TICK_NANOS);
+        }
+        assertFalse(preIndexer.isPaused());
+        assertEquals(0, preIndexer.queued());
+        preIndexer.shutdown(5000L);
+    }
+
+    @Test
+    public void unloadedChunkIsSkipped() {
+        ChunkPreIndexer preIndexer = preIndexer(20, 0);
+        preIndexer.chunkLoaded(world, 40, 40);
+        tick(preIndexer, TICK_NANOS);
+        preIndexer.shutdown(5000L);
+        assertEquals(0, preIndexer.queued());
+        assertEquals(0, preIndexer.getIndexed());
+    }
+
+    @Test
+    public void fullQueueDropsChunks() {
+        ChunkPreIndexer preIndexer = preIndexer(20, 0);
+        for (int i = 0; i <= ChunkPreIndexer.MAX_QUEUED; i++) {
+            preIndexer.chunkLoaded(world, i, 0);
+        }
+        assertEquals(ChunkPreIndexer.MAX_QUEUED, preIndexer.queued());
+        assertEquals(1, preIndexer.getDropped());
+        preIndexer.shutdown(5000L);
+    }
+
+    @Test
+    public void nearlyFullIndexStopsCapturing() {
+        int sectionsPerChunk = ((world.getMaxHeight() - 1) >> 4) - (world.getMinHeight() >> 4) + 1;
+        // Three quarters of the capacity holds two chunks but not three
+        index.reset(Set.of(Material.DIAMOND_ORE), 3 * sectionsPerChunk);
+        ChunkPreIndexer preIndexer = preIndexer(20, 0);
+        for (int x = 0; x < 3; x++) {
+            world.loadChunk(x, 0);
+            preIndexer.chunkLoaded(world, x, 0);
+        }
+        for (int i = 0; i < 3; i++) {
+            tick(preIndexer, TICK_NANOS);
+        }
+        assertTrue(preIndexer.isIndexFull());
+        assertEquals(1, preIndexer.queued(), "The third chunk waits for room in the index");
+        preIndexer.shutdown(5000L);
+        assertEquals(2 * sectionsPerChunk, index.size());
+        assertEquals(0, index.getEvictions(), "Pre-indexing must not evict sections");
+    }
+
+    @Test
+    public void invalidSettingsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> preIndexer(0, 18));
+        assertThrows(IllegalArgumentException.class, () -> preIndexer(20, 25));
+    }
+}
@@ -0,0 +1,123 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.ChatColor;
+import org.bukkit.Material;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockbukkit.mockbukkit.MockBukkit;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link CompiledConfig}.
+ */
+public class CompiledConfigTest {
+
+    @BeforeEach
+    public void setUp() {
+        MockBukkit.mock();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    private static YamlConfiguration baseConfig() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("text.oneblock_hot", "One block away!");
+        config.set("text.very_hot", "Very hot!");
+        config.set("text.hot", "Hot!");
+        config.set("text.warm", "Warm!");
+        config.set("text.lukewarm", "Lukewarm.");
+        config.set("text.cold", "Cold.");
+        config.set("text.very_cold", "Ice cold!");
+        config.set("text.ender_steal", "An enderman stole your block!");
+        config.set("chance.steal_block", 48);
+        config.set("indicate.inhand", List.of("diamond", "ancient_debris"));
+        config.set("indicate.lookfor", List.of("diamond_ore", "ancient_debris"));
+        return config;
+    }
+
+    private static CompiledConfig compile(YamlConfiguration config) {
+        return CompiledConfig.compile(new TestContext(config, "CompiledConfigTest"));
+    }
+
+    @Test
+    public void messagesArePreColoredPerBand() {
+        CompiledConfig config = compile(baseConfig());
+        SearchProfile profile = SearchProfile.DEFAULT;
+        assertEquals(ChatColor.DARK_RED + "One block away!", config.getDistanceMessage(profile, 1));
+        assertEquals(ChatColor.RED + "Very hot!", config.getDistanceMessage(profile, 3));
+        assertEquals(ChatColor.RED + "Hot!", config.getDistanceMessage(profile, 5));
+        assertEquals(ChatColor.GOLD + "Warm!", config.getDistanceMessage(profile, 7));
+        assertEquals(ChatColor.YELLOW + "Lukewarm.", config.getDistanceMessage(profile, 14));
+        assertEquals(ChatColor.AQUA + "Cold.", config.getDistanceMessage(profile, 19));
+        assertEquals(ChatColor.BLUE + "Ice cold!", config.getDistanceMessage(profile, OreLocator.NOT_FOUND));
+    }
+
+    @Test
+    public void missingMessageIsNull() {
+        CompiledConfig config = compile(baseConfig());
+        assertNull(config.getDistanceMessage(SearchProfile.DEFAULT, OreLocator.INCONCLUSIVE),
+                "An unconfigured message should not be sent at all");
+    }
+
+    @Test
+    public void compilesMappingsAndLabels() {
+        CompiledConfig config = compile(baseConfig());
+        assertArrayEquals(new Material[]{Material.DIAMOND_ORE}, config.getTargets(Material.DIAMOND));
+        assertEquals(ChatColor.GRAY + "Ancient Debris: ", config.getLabel(Material.ANCIENT_DEBRIS));
+        assertEquals(SearchEngine.SNAPSHOT, config.getEngine());
+        assertEquals(UnloadedChunkPolicy.INCONCLUSIVE, config.getUnloadedChunks());
+        assertEquals(16, config.getGenerationRules().getRule(Material.DIAMOND_ORE).maxY());
+    }
+
+    @Test
+    public void laterConfigChangesDoNotLeakIntoACompiledSnapshot() {
+        YamlConfiguration yaml = baseConfig();
+        CompiledConfig config = compile(yaml);
+        yaml.set("text.cold", "Changed.");
+        yaml.set("indicate.inhand", List.of("emerald"));
+        assertEquals(ChatColor.AQUA + "Cold.", config.getDistanceMessage(SearchProfile.DEFAULT, 19));
+        assertNotNull(config.getTargets(Material.DIAMOND));
+    }
+
+    @Test
+    public void rejectsZeroStealChanceWhenStealingIsOn() {
+        YamlConfiguration yaml = baseConfig();
+        yaml.set("functions.block_stealing", true);
+        yaml.set("chance.steal_block", 0);
+        assertThrows(IllegalArgumentException.class, () -> compile(yaml));
+    }
+
+    @Test
+    public void rejectsUnknownEngine() {
+        YamlConfiguration yaml = baseConfig();
+        yaml.set("search.engine", "quantum");
+        assertThrows(IllegalArgumentException.class, () -> compile(yaml));
+    }
+
+    @Test
+    public void parsesUnloadedChunkPolicy() {
+        YamlConfiguration yaml = baseConfig();
+        yaml.set("search.unloaded_chunks.policy", "No_Ore");
+        assertEquals(UnloadedChunkPolicy.NO_ORE, compile(yaml).getUnloadedChunks());
+        yaml.set("search.unloaded_chunks.policy", "generate");
+        assertThrows(IllegalArgumentException.class, () -> compile(yaml));
+    }
+
+    @Test
+    public void generationRulesCanBeTurnedOff() {
+        YamlConfiguration yaml = baseConfig();
+        yaml.set("search.generation.enabled", false);
+        assertSame(GenerationRules.NONE, compile(yaml).getGenerationRules());
+        yaml.set("search.generation.enabled", true);
+        yaml.set("search.generation.rules.diamond_ore.environments", List.of("overworld"));
+        assertThrows(IllegalArgumentException.class, () -> compile(yaml));
+    }
+}
@@ -0,0 +1,100 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.Material;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.world.WorldMock;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link DeferredChunkLoader}, which loads the chunks of deferred searches a few
+ * per tick.
+ */
+public class DeferredChunkLoaderTest {
+
+    private WorldMock world;
+    private final SearchMetrics metrics = new SearchMetrics();
+
+    @BeforeEach
+    public void setUp() {
+        MockBukkit.mock();
+        world = new WorldMock(Material.STONE, 100, 50);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    private static long chunk(int x, int z) {
+        return (long) x << 32 | z & 0xFFFFFFFFL;
+    }
+
+    @Test
+    public void loadsAFewChunksPerTickThenRunsTheSearch() {
+        DeferredChunkLoader loader = new DeferredChunkLoader(2, metrics);
+        AtomicInteger runs = new AtomicInteger();
+        assertTrue(loader.request(world, new long[]{chunk(0, 0), chunk(1, -1), chunk(-2, 3)}, runs::incrementAndGet));
+        loader.tick();
+        assertEquals(0, runs.get(), "Three chunks take two ticks");
+        assertTrue(world.isChunkLoaded(0, 0));
+        assertTrue(world.isChunkLoaded(1, -1));
+        assertFalse(world.isChunkLoaded(-2, 3));
+        loader.tick();
+        assertEquals(1, runs.get());
+        assertTrue(world.isChunkLoaded(-2, 3));
+        assertEquals(0, loader.queued());
+        assertEquals(3, metrics.getChunksLoaded());
+    }
+
+    @Test
+    public void loadedChunksCostNothing() {
+        world.loadChunk(0, 0);
+        DeferredChunkLoader loader = new DeferredChunkLoader(1, metrics);
+        AtomicInteger runs = new AtomicInteger();
+        loader.request(world, new long[]{chunk(0, 0)}, runs::incrementAndGet);
+        loader.request(world, new long[]{chunk(5, 5)}, runs::incrementAndGet);
+        loader.tick();
+        assertEquals(2, runs.get(), "Only one chunk needed loading");
+        assertEquals(1, metrics.getChunksLoaded());
+    }
+
+    @Test
+    public void rejectsRequestsBeyondTheQueueLimit() {
+        DeferredChunkLoader loader = new DeferredChunkLoader(1, metrics);
+        for (int i = 0; i < DeferredChunkLoader.MAX_QUEUED; i++) {
+            assertTrue(loader.request(world, new long[]{chunk(i, 0)}, () -> {
+            }));
+        }
+        assertFalse(loader.request(world, new long[]{chunk(-1, 0)}, () -> {
+        }));
+        loader.clear();
+        assertEquals(0, loader.queued());
+    }
+
+    @Test
+    public void drainRunsEverySearchWithoutLoading() {
+        DeferredChunkLoader loader = new DeferredChunkLoader(1, metrics);
+        AtomicInteger runs = new AtomicInteger();
+        loader.request(world, new long[]{chunk(0, 0), chunk(1, 0)}, runs::incrementAndGet);
+        loader.request(world, new long[]{chunk(5, 5)}, runs::incrementAndGet);
+        loader.drain();
+        assertEquals(2, runs.get());
+        assertEquals(0, loader.queued());
+        assertFalse(world.isChunkLoaded(1, 0));
+        assertEquals(0, metrics.getChunksLoaded());
+    }
+
+    @Test
+    public void rejectsNonPositiveRate() {
+        assertThrows(IllegalArgumentException.class, () -> new DeferredChunkLoader(0, metrics));
+    }
+}
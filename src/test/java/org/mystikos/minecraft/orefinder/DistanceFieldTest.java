@@ -0,0 +1,182 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.Material;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.world.WorldMock;
+
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link DistanceField}, which answers cube searches from precomputed distances.
+ */
+public class DistanceFieldTest {
+
+    private static final Material[] ORES = {Material.DIAMOND_ORE, Material.EMERALD_ORE};
+
+    private WorldMock world;
+    private final DistanceField field = new DistanceField();
+    private final OreLocator locator = new OreLocator();
+
+    @BeforeEach
+    public void setUp() {
+        MockBukkit.mock();
+        world = TestWorlds.stone();
+        field.reset(Set.of(ORES), SearchProfile.DEFAULT.reach(), 1L << 20);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    private static SearchProfile profile(String shape, int radius) {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("shape", shape);
+        config.set("radius", radius);
+        return SearchProfile.fromConfig(config, "search", SearchProfile.DEFAULT);
+    }
+
+    private void buildColumn(int chunkX, int chunkZ) {
+        int radius = field.chunkRadius();
+        SnapshotRegion region = SnapshotRegion.capture(world, chunkX - radius, chunkZ - radius,
+                chunkX + radius, chunkZ + radius);
+        assertTrue(field.build(region, chunkX, chunkZ, SectionFilter.NONE, field.stamp()));
+    }
+
+    private int[] search(int x, int y, int z) {
+        SnapshotRegion region = SnapshotRegion.capture(world, x, z, SearchProfile.DEFAULT.reach());
+        return locator.getBlockTypeDistances(region, x, y, z, ORES, SearchProfile.DEFAULT);
+    }
+
+    @Test
+    public void distancesMatchTheCubeSearch() {
+        ArrayBlockSource source = new ArrayBlockSource(-3, -3, 3, 3, 0, 64, Material.STONE);
+        Random random = new Random(6);
+        for (int i = 0; i < 40; i++) {
+            source.setType(random.nextInt(80) - 32, random.nextInt(64), random.nextInt(80) - 32, ORES[i % 2]);
+        }
+        assertTrue(field.build(source, 0, 0, SectionFilter.NONE, field.stamp()));
+        for (int query = 0; query < 200; query++) {
+            int x = random.nextInt(16), y = random.nextInt(64), z = random.nextInt(16);
+            assertArrayEquals(locator.getBlockTypeDistances(source, x, y, z, ORES, SearchProfile.DEFAULT),
+                    field.distances(source.getWorldId(), x, y, z, ORES, SearchProfile.DEFAULT),
+                    "Distances from " + x + ", " + y + ", " + z);
+        }
+        assertEquals(200, field.getHits());
+    }
+
+    @Test
+    public void answersOnlyFullCubesWithinReach() {
+        assertTrue(field.handles(SearchProfile.DEFAULT));
+        assertTrue(field.handles(profile("cube", 8)));
+        assertFalse(field.handles(profile("sphere", 20)));
+        assertFalse(field.handles(profile("cube", 32)), "Beyond the field's reach");
+        YamlConfiguration flat = new YamlConfiguration();
+        flat.set("vertical_radius", 4);
+        assertFalse(field.handles(SearchProfile.fromConfig(flat, "search", SearchProfile.DEFAULT)));
+        assertNull(field.distances(world.getUID(), 0, 20, 0, new Material[]{Material.GOLD_ORE}, SearchProfile.DEFAULT),
+                "Unrecorded ore");
+    }
+
+    @Test
+    public void missingChunksLeaveTheColumnUnbuilt() {
+        ArrayBlockSource source = new ArrayBlockSource(-1, -1, 1, 1, 0, 64, Material.STONE);
+        assertFalse(field.build(source, 0, 0, SectionFilter.NONE, field.stamp()));
+        assertFalse(field.isBuilt(source.getWorldId(), 0, 0));
+        assertNull(field.distances(source.getWorldId(), 0, 20, 0, ORES, SearchProfile.DEFAULT));
+        assertEquals(1, field.getMisses());
+    }
+
+    @Test
+    public void placedOreIsAddedInPlace() {
+        world.getBlockAt(30, 20, 4).setType(Material.DIAMOND_ORE);
+        buildColumn(0, 0);
+        assertArrayEquals(new int[]{OreLocator.NOT_FOUND, OreLocator.NOT_FOUND},
+                field.distances(world.getUID(), 5, 20, 5, ORES, SearchProfile.DEFAULT));
+        assertArrayEquals(new int[]{15, OreLocator.NOT_FOUND},
+                field.distances(world.getUID(), 15, 20, 5, ORES, SearchProfile.DEFAULT));
+
+        world.getBlockAt(9, 24, 2).setType(Material.EMERALD_ORE);
+        field.blockReplaced(world, 9, 24, 2, Material.EMERALD_ORE);
+        assertTrue(field.isBuilt(world.getUID(), 0, 0));
+        assertEquals(1, field.getUpdates());
+        assertArrayEquals(search(5, 20, 5), field.distances(world.getUID(), 5, 20, 5, ORES, SearchProfile.DEFAULT));
+        assertArrayEquals(new int[]{OreLocator.NOT_FOUND, 4},
+                field.distances(world.getUID(), 5, 20, 5, ORES, SearchProfile.DEFAULT));
+    }
+
+    @Test
+    public void brokenOreDropsTheColumnsThatCountedIt() {
+        world.getBlockAt(3, 20, 3).setType(Material.DIAMOND_ORE);
+        buildColumn(0, 0);
+        buildColumn(1, 0);
+        buildColumn(5, 5);
+        world.getBlockAt(3, 20, 3).setType(Material.AIR);
+        field.blockReplaced(world, 3, 20, 3, Material.AIR);
+        assertFalse(field.isBuilt(world.getUID(), 0, 0));
+        assertFalse(field.isBuilt(world.getUID(), 1, 0));
+        assertTrue(field.isBuilt(world.getUID(), 5, 5), "Out of reach of the broken ore");
+        assertEquals(2, field.getInvalidations());
+    }
+
+    @Test
+    public void breakingOtherBlocksKeepsTheColumn() {
+        world.getBlockAt(3, 20, 3).setType(Material.DIAMOND_ORE);
+        buildColumn(0, 0);
+        world.getBlockAt(4, 20, 3).setType(Material.AIR);
+        field.blockReplaced(world, 4, 20, 3, Material.AIR);
+        assertTrue(field.isBuilt(world.getUID(), 0, 0));
+        assertArrayEquals(search(8, 20, 8), field.distances(world.getUID(), 8, 20, 8, ORES, SearchProfile.DEFAULT));
+    }
+
+    @Test
+    public void changesBetweenUnrecordedTypesAreIgnored() {
+        world.getBlockAt(3, 20, 3).setType(Material.DIAMOND_ORE);
+        buildColumn(0, 0);
+        long stamp = field.stamp();
+        int radius = field.chunkRadius();
+        SnapshotRegion region = SnapshotRegion.capture(world, 1 - radius, -radius, 1 + radius, radius);
+        world.getBlockAt(3, 21, 3).setType(Material.WATER);
+        field.blockReplaced(world, 3, 21, 3, Material.STONE, Material.WATER);
+        assertTrue(field.isBuilt(world.getUID(), 0, 0));
+        assertEquals(0, field.getInvalidations());
+        assertTrue(field.build(region, 1, 0, SectionFilter.NONE, stamp), "The change cannot affect the build");
+
+        field.blockReplaced(world, 3, 20, 3, Material.DIAMOND_ORE, Material.WATER);
+        assertFalse(field.isBuilt(world.getUID(), 0, 0));
+    }
+
+    @Test
+    public void changesDuringABuildDiscardIt() {
+        long stamp = field.stamp();
+        int radius = field.chunkRadius();
+        SnapshotRegion near = SnapshotRegion.capture(world, -radius, -radius, radius, radius);
+        SnapshotRegion far = SnapshotRegion.capture(world, 6 - radius, 6 - radius, 6 + radius, 6 + radius);
+        field.blockChanged(world, 10, 20, 10);
+        assertFalse(field.build(near, 0, 0, SectionFilter.NONE, stamp));
+        assertTrue(field.build(far, 6, 6, SectionFilter.NONE, stamp), "Out of reach of the change");
+    }
+
+    @Test
+    public void memoryIsBounded() {
+        long columnBytes = (long) ORES.length * 256 * (world.getMaxHeight() - world.getMinHeight());
+        field.reset(Set.of(ORES), SearchProfile.DEFAULT.reach(), 2 * columnBytes);
+        buildColumn(0, 0);
+        buildColumn(1, 0);
+        buildColumn(2, 0);
+        assertEquals(2, field.size());
+        assertEquals(2 * columnBytes, field.getBytes());
+        assertEquals(1, field.getEvictions());
+        assertFalse(field.isBuilt(world.getUID(), 0, 0), "The least recently used column is evicted");
+        field.chunkUnloaded(world, 1, 0);
+        assertEquals(1, field.size());
+        assertEquals(columnBytes, field.getBytes());
+    }
+}
@@ -0,0 +1,100 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link GenerationRules}, which skip targets and sections where an ore cannot
+ * generate. None of them needs a mock server.
+ */
+public class GenerationRulesTest {
+
+    private static final Material[] TARGETS = {Material.DIAMOND_ORE, Material.ANCIENT_DEBRIS, Material.STONE};
+
+    private static GenerationRules rules(YamlConfiguration yaml) {
+        return GenerationRules.fromConfig(yaml.getConfigurationSection("search.generation"), "search.generation");
+    }
+
+    @Test
+    public void vanillaRulesApplyWithoutConfig() {
+        GenerationRules rules = rules(new YamlConfiguration());
+        assertEquals(new GenerationRules.Rule(-64, 16, Set.of(World.Environment.NORMAL)),
+                rules.getRule(Material.DIAMOND_ORE));
+        assertEquals(Set.of(World.Environment.NETHER), rules.getRule(Material.ANCIENT_DEBRIS).environments());
+        assertNull(rules.getRule(Material.STONE), "Blocks without a rule may occur anywhere");
+    }
+
+    @Test
+    public void skipsTargetsOutOfReach() {
+        GenerationRules rules = rules(new YamlConfiguration());
+        SearchProfile profile = SearchProfile.DEFAULT;
+        assertEquals(0b101, rules.reachable(TARGETS, World.Environment.NORMAL, 35, profile),
+                "Diamond band within the vertical radius, no debris in the overworld");
+        assertEquals(0b100, rules.reachable(TARGETS, World.Environment.NORMAL, 36, profile));
+        assertEquals(0b110, rules.reachable(TARGETS, World.Environment.NETHER, 100, profile),
+                "Diamond in the nether is never searched for");
+        assertEquals(0b100, rules.reachable(TARGETS, World.Environment.NETHER, 150, profile));
+        assertEquals(0b101, rules.reachable(TARGETS, World.Environment.NORMAL, -80, profile));
+    }
+
+    @Test
+    public void clipsSectionsToTheBand() {
+        GenerationRules rules = rules(new YamlConfiguration());
+        assertTrue(rules.mayContain(null, null, -4, Material.DIAMOND_ORE));
+        assertTrue(rules.mayContain(null, null, 1, Material.DIAMOND_ORE), "Section 16..31 holds y=16");
+        assertFalse(rules.mayContain(null, null, 2, Material.DIAMOND_ORE));
+        assertFalse(rules.mayContain(null, null, -5, Material.DIAMOND_ORE));
+        assertTrue(rules.mayContain(null, null, 10, Material.STONE));
+    }
+
+    @Test
+    public void configReplacesSingleRules() {
+        YamlConfiguration yaml = new YamlConfiguration();
+        yaml.set("search.generation.rules.diamond_ore.max_y", 120);
+        yaml.set("search.generation.rules.stone.environments", List.of("the_end"));
+        GenerationRules rules = rules(yaml);
+        assertEquals(new GenerationRules.Rule(Integer.MIN_VALUE, 120, Set.of(World.Environment.values())),
+                rules.getRule(Material.DIAMOND_ORE), "Unset limits do not restrict anything");
+        assertEquals(0b101, rules.reachable(TARGETS, World.Environment.THE_END, 100, SearchProfile.DEFAULT));
+        assertEquals(Set.of(World.Environment.NETHER), rules.getRule(Material.ANCIENT_DEBRIS).environments(),
+                "Other rules stay built in");
+    }
+
+    @Test
+    public void canBeTurnedOff() {
+        YamlConfiguration yaml = new YamlConfiguration();
+        yaml.set("search.generation.enabled", false);
+        GenerationRules rules = rules(yaml);
+        assertSame(GenerationRules.NONE, rules);
+        assertEquals(0b111, rules.reachable(TARGETS, World.Environment.NETHER, 100, SearchProfile.DEFAULT));
+    }
+
+    @Test
+    public void rejectsInvalidRules() {
+        YamlConfiguration unknownMaterial = new YamlConfiguration();
+        unknownMaterial.set("search.generation.rules.mithril_ore.max_y", 10);
+        assertThrows(IllegalArgumentException.class, () -> rules(unknownMaterial));
+        YamlConfiguration inverted = new YamlConfiguration();
+        inverted.set("search.generation.rules.diamond_ore.min_y", 20);
+        inverted.set("search.generation.rules.diamond_ore.max_y", 10);
+        assertThrows(IllegalArgumentException.class, () -> rules(inverted));
+        YamlConfiguration unknownEnvironment = new YamlConfiguration();
+        unknownEnvironment.set("search.generation.rules.diamond_ore.environments", List.of("aether"));
+        assertThrows(IllegalArgumentException.class, () -> rules(unknownEnvironment));
+        YamlConfiguration notASection = new YamlConfiguration();
+        notASection.set("search.generation.rules.diamond_ore", 10);
+        assertThrows(IllegalArgumentException.class, () -> rules(notASection));
+    }
+}
@@ -1,5 +1,6 @@
 package org.mystikos.minecraft.orefinder;
 
+import org.bukkit.Material;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -7,7 +8,7 @@ import org.junit.jupiter.api.Test;
 import org.mockbukkit.mockbukkit.MockBukkit;
 
 import java.util.List;
-import java.util.logging.Logger;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -27,22 +28,11 @@ public class ItemConfTest {
         YamlConfiguration config = new YamlConfiguration();
         config.set("indicate.inhand", inhand);
         config.set("indicate.lookfor", lookfor);
-        Logger logger = Logger.getLogger("ItemConfTest");
-        return new OrefinderContext() {
-            @Override
-            public YamlConfiguration getConfig() {
-                return config;
-            }
-
-            @Override
-            public Logger getLogger() {
-                return logger;
-            }
-        };
+        return new TestContext(config, "ItemConfTest");
     }
 
     @Test
-    public void testGetOreIdReturnsCorrectOre() {
+    public void testGetOreReturnsCorrectOre() {
         OrefinderContext ctx = createContext(
                 List.of("diamond", "emerald", "ancient_debris"),
                 List.of("diamond_ore", "emerald_ore", "ancient_debris")
@@ -50,13 +40,13 @@ public class ItemConfTest {
         ItemConf ic = new ItemConf(ctx);
         ic.init();
 
-        assertEquals("diamond_ore", ic.getOreId("diamond"));
-        assertEquals("emerald_ore", ic.getOreId("emerald"));
-        assertEquals("ancient_debris", ic.getOreId("ancient_debris"));
+        assertEquals(Material.DIAMOND_ORE, ic.getOre(Material.DIAMOND));
+        assertEquals(Material.EMERALD_ORE, ic.getOre(Material.EMERALD));
+        assertEquals(Material.ANCIENT_DEBRIS, ic.getOre(Material.ANCIENT_DEBRIS));
     }
 
     @Test
-    public void testGetOreIdReturnsEmptyForUnknownItem() {
+    public void testGetOreReturnsNullForUnknownItem() {
         OrefinderContext ctx = createContext(
                 List.of("diamond"),
                 List.of("diamond_ore")
@@ -64,22 +54,51 @@ public class ItemConfTest {
         ItemConf ic = new ItemConf(ctx);
         ic.init();
 
-        assertEquals("", ic.getOreId("iron_ingot"));
-        assertEquals("", ic.getOreId(""));
+        assertNull(ic.getOre(Material.IRON_INGOT));
+        assertNull(ic.getOre(Material.AIR));
     }
 
     @Test
-    public void testGetOreIdIsCaseInsensitive() {
+    public void testConfiguredNamesAreCaseInsensitive() {
         OrefinderContext ctx = createContext(
-                List.of("diamond"),
-                List.of("diamond_ore")
+                List.of("DIAMOND", "Emerald", "aNcIeNt_DeBrIs"),
+                List.of("DiAmOnD_OrE", "EMERALD_ORE", "ancient_debris")
         );
         ItemConf ic = new ItemConf(ctx);
         ic.init();
 
-        assertEquals("diamond_ore", ic.getOreId("DIAMOND"));
-        assertEquals("diamond_ore", ic.getOreId("Diamond"));
-        assertEquals("diamond_ore", ic.getOreId("dIaMoNd"));
+        assertEquals(Material.DIAMOND_ORE, ic.getOre(Material.DIAMOND));
+        assertEquals(Material.EMERALD_ORE, ic.getOre(Material.EMERALD));
+        assertEquals(Material.ANCIENT_DEBRIS, ic.getOre(Material.ANCIENT_DEBRIS));
+    }
+
+    @Test
+    public void testInitThrowsForUnknownMaterial() {
+        OrefinderContext ctx = createContext(List.of("diamond"), List.of("diamond_oar"));
+        ItemConf ic = new ItemConf(ctx);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, ic::init);
+        assertTrue(e.getMessage().contains("diamond_oar"), "The error should name the bad entry: " + e.getMessage());
+    }
+
+    @Test
+    public void testInitThrowsWhenLookforIsNotABlock() {
+        OrefinderContext ctx = createContext(List.of("diamond"), List.of("diamond"));
+        ItemConf ic = new ItemConf(ctx);
+        assertThrows(IllegalArgumentException.class, ic::init);
+    }
+
+    @Test
+    public void testFailedInitKeepsPreviousMapping() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("indicate.inhand", List.of("diamond"));
+        config.set("indicate.lookfor", List.of("diamond_ore"));
+        ItemConf ic = new ItemConf(new TestContext(config, "ItemConfTest"));
+        ic.init();
+
+        config.set("indicate.lookfor", List.of("not_a_block"));
+        assertThrows(IllegalArgumentException.class, ic::init);
+        assertEquals(Material.DIAMOND_ORE, ic.getOre(Material.DIAMOND),
+                "A failed reload must leave the previous mapping in place");
     }
 
     @Test
@@ -106,9 +125,75 @@ public class ItemConfTest {
         ItemConf ic = new ItemConf(ctx);
         ic.init();
 
-        assertEquals("diamond_ore", ic.getOreId("diamond"));
-        assertEquals("emerald_ore", ic.getOreId("emerald"));
-        assertEquals("", ic.getOreId("ancient_debris"),
+        assertEquals(Material.DIAMOND_ORE, ic.getOre(Material.DIAMOND));
+        assertEquals(Material.EMERALD_ORE, ic.getOre(Material.EMERALD));
+        assertNull(ic.getOre(Material.ANCIENT_DEBRIS),
                 "Third entry is beyond the shorter lookfor list and should not be mapped");
     }
+
+    @Test
+    public void testProspectorItemTargetsEveryOre() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("indicate.inhand", List.of("diamond", "emerald"));
+        config.set("indicate.lookfor", List.of("diamond_ore", "emerald_ore"));
+        config.set("indicate.prospector", List.of("compass"));
+        ItemConf ic = new ItemConf(new TestContext(config, "ItemConfTest"));
+        ic.init();
+
+        assertArrayEquals(new Material[]{Material.DIAMOND_ORE}, ic.getTargets(Material.DIAMOND));
+        Material[] targets = ic.getTargets(Material.COMPASS);
+        assertNotNull(targets, "A prospector item should be recognised");
+        assertEquals(Set.of(Material.DIAMOND_ORE, Material.EMERALD_ORE), Set.of(targets));
+    }
+
+    @Test
+    public void testInitThrowsWhenItemIsBothInhandAndProspector() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("indicate.inhand", List.of("diamond"));
+        config.set("indicate.lookfor", List.of("diamond_ore"));
+        config.set("indicate.prospector", List.of("diamond"));
+        ItemConf ic = new ItemConf(new TestContext(config, "ItemConfTest"));
+        assertThrows(IllegalArgumentException.class, ic::init);
+    }
+
+    @Test
+    public void testItemWithoutSettingsUsesSearchDefaults() {
+        OrefinderContext ctx = createContext(List.of("diamond"), List.of("diamond_ore"));
+        ItemConf ic = new ItemConf(ctx);
+        ic.init();
+
+        SearchProfile profile = ic.getProfile(Material.DIAMOND);
+        assertEquals(OreLocator.SEARCH_RADIUS, profile.radius());
+        assertEquals(SearchProfile.Shape.CUBE, profile.shape());
+    }
+
+    @Test
+    public void testPerItemSettingsOverrideSearchDefaults() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("indicate.inhand", List.of("diamond", "ancient_debris"));
+        config.set("indicate.lookfor", List.of("diamond_ore", "ancient_debris"));
+        config.set("search.max_blocks", 1000);
+        config.set("indicate.settings.ancient_debris.radius", 32);
+        config.set("indicate.settings.ancient_debris.shape", "sphere");
+        ItemConf ic = new ItemConf(new TestContext(config, "ItemConfTest"));
+        ic.init();
+
+        SearchProfile debris = ic.getProfile(Material.ANCIENT_DEBRIS);
+        assertEquals(32, debris.radius());
+        assertEquals(SearchProfile.Shape.SPHERE, debris.shape());
+        assertEquals(31, debris.verticalRadius(), "An unset vertical radius should follow the item's radius");
+        assertEquals(1000, debris.maxBlocks(), "Unset values should come from the search section");
+        assertEquals(OreLocator.SEARCH_RADIUS, ic.getProfile(Material.DIAMOND).radius());
+    }
+
+    @Test
+    public void testInitThrowsForSettingsOfUnmappedItem() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("indicate.inhand", List.of("diamond"));
+        config.set("indicate.lookfor", List.of("diamond_ore"));
+        config.set("indicate.settings.emerald.radius", 10);
+        ItemConf ic = new ItemConf(new TestContext(config, "ItemConfTest"));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, ic::init);
+        assertTrue(e.getMessage().contains("indicate.settings.emerald"), "The error should name the bad entry: " + e.getMessage());
+    }
 }
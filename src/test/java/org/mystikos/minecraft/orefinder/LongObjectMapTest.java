@@ -0,0 +1,82 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link LongObjectMap}, the open-addressing map from primitive long keys.
+ */
+public class LongObjectMapTest {
+
+    @Test
+    public void putGetAndRemove() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+        assertNull(map.put(42L, "a"));
+        assertEquals("a", map.put(42L, "b"));
+        assertEquals("b", map.get(42L));
+        assertNull(map.get(43L));
+        assertEquals("b", map.remove(42L));
+        assertNull(map.remove(42L));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void zeroAndNegativeKeysAreOrdinaryKeys() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+        map.put(0L, "zero");
+        map.put(-1L, "minus one");
+        map.put(Long.MIN_VALUE, "min");
+        assertEquals("zero", map.get(0L));
+        assertEquals("minus one", map.get(-1L));
+        assertEquals("min", map.get(Long.MIN_VALUE));
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    public void matchesHashMapUnderRandomOperations() {
+        // Keys that differ only in their high bits, like packed chunk coordinates, collide a lot
+        Random random = new Random(1);
+        LongObjectMap<Long> map = new LongObjectMap<>();
+        Map<Long, Long> expected = new HashMap<>();
+        for (int i = 0; i < 50_000; i++) {
+            long key = (long) random.nextInt(2_000) << 42;
+            Long value = random.nextLong();
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, value), map.put(key, value));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> assertEquals(value, map.get(key)));
+    }
+
+    @Test
+    public void removeIfRemovesMatchingEntries() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+        for (long key = 0; key < 100; key++) {
+            map.put(key, "v" + key);
+        }
+        assertEquals(50, map.removeIf((key, value) -> key % 2 == 0));
+        assertEquals(50, map.size());
+        long[] sum = {0};
+        map.forEach((key, value) -> {
+            assertEquals("v" + key, value);
+            sum[0] += key;
+        });
+        assertEquals(2500, sum[0], "Only the odd keys should be left");
+    }
+
+    @Test
+    public void nullValuesAreRejected() {
+        assertThrows(NullPointerException.class, () -> new LongObjectMap<String>().put(1L, null));
+    }
+}
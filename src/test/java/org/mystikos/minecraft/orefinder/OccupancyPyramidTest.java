@@ -0,0 +1,75 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link OccupancyPyramid}, the per-section occupancy summary behind band-level
+ * index searches. None of them needs a mock server.
+ */
+public class OccupancyPyramidTest {
+
+    private static int pack(int x, int y, int z) {
+        return y << 8 | z << 4 | x;
+    }
+
+    @Test
+    public void emptySectionHoldsNothing() {
+        OccupancyPyramid pyramid = new OccupancyPyramid(new int[0]);
+        assertTrue(pyramid.isEmpty());
+        assertEquals(OccupancyPyramid.Result.NONE, pyramid.test(0, 0, 0, 15, 15, 15));
+    }
+
+    @Test
+    public void occupiedCellsInsideTheBoxSettleIt() {
+        OccupancyPyramid pyramid = new OccupancyPyramid(new int[]{pack(5, 5, 5)});
+        assertFalse(pyramid.isEmpty());
+        assertEquals(OccupancyPyramid.Result.SOME, pyramid.test(0, 0, 0, 15, 15, 15));
+        assertEquals(OccupancyPyramid.Result.SOME, pyramid.test(4, 4, 4, 7, 7, 7), "A 4-block cell");
+        assertEquals(OccupancyPyramid.Result.SOME, pyramid.test(4, 4, 4, 5, 5, 5), "A 2-block cell");
+    }
+
+    @Test
+    public void boxesMissingEveryOccupiedCellAreSettled() {
+        OccupancyPyramid pyramid = new OccupancyPyramid(new int[]{pack(5, 5, 5)});
+        assertEquals(OccupancyPyramid.Result.NONE, pyramid.test(8, 0, 0, 15, 15, 15), "Another 8-block cell");
+        assertEquals(OccupancyPyramid.Result.NONE, pyramid.test(0, 0, 0, 3, 15, 15), "Another 4-block cell");
+        assertEquals(OccupancyPyramid.Result.NONE, pyramid.test(6, 0, 0, 7, 7, 7), "Another 2-block cell");
+    }
+
+    @Test
+    public void cellsStraddlingTheEdgeAreLeftToThePositions() {
+        OccupancyPyramid pyramid = new OccupancyPyramid(new int[]{pack(5, 5, 5)});
+        assertEquals(OccupancyPyramid.Result.EDGE, pyramid.test(0, 0, 0, 4, 15, 15));
+        assertEquals(OccupancyPyramid.Result.EDGE, pyramid.test(5, 4, 4, 5, 4, 5));
+    }
+
+    @Test
+    public void neverContradictsThePositions() {
+        Random random = new Random(25);
+        for (int round = 0; round < 5000; round++) {
+            int[] positions = new int[random.nextInt(round % 2 == 0 ? 6 : 300)];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = random.nextInt(4096);
+            }
+            int minX = random.nextInt(16), minY = random.nextInt(16), minZ = random.nextInt(16);
+            int maxX = minX + random.nextInt(16 - minX);
+            int maxY = minY + random.nextInt(16 - minY);
+            int maxZ = minZ + random.nextInt(16 - minZ);
+            boolean inside = false;
+            for (int packed : positions) {
+                int x = packed & 15, y = packed >> 8, z = (packed >> 4) & 15;
+                inside |= x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+            }
+            OccupancyPyramid.Result result = new OccupancyPyramid(positions).test(minX, minY, minZ, maxX, maxY, maxZ);
+            assertNotEquals(inside ? OccupancyPyramid.Result.NONE : OccupancyPyramid.Result.SOME, result,
+                    "Box " + minX + "," + minY + "," + minZ + " to " + maxX + "," + maxY + "," + maxZ);
+        }
+    }
+}
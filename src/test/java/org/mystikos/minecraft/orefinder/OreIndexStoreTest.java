@@ -0,0 +1,235 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.world.WorldMock;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link OreIndexStore}, which keeps the sections of the {@link OreIndex} on disk
+ * between restarts.
+ */
+public class OreIndexStoreTest {
+
+    private static final Set<Material> ORES = Set.of(Material.DIAMOND_ORE, Material.EMERALD_ORE);
+
+    @TempDir
+    Path directory;
+
+    private WorldMock world;
+    private final OreLocator locator = new OreLocator();
+
+    @BeforeEach
+    public void setUp() {
+        MockBukkit.mock();
+        world = TestWorlds.stone();
+        world.getBlockAt(7, 20, -3).setType(Material.DIAMOND_ORE);
+        world.getBlockAt(-5, 22, 4).setType(Material.EMERALD_ORE);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    private OreIndexStore openStore(Set<Material> materials) {
+        OreIndexStore store = new OreIndexStore(directory.toFile(), materials, Logger.getLogger("OreIndexStoreTest"));
+        store.open(world);
+        return store;
+    }
+
+    private OreIndex newIndex(OreIndexStore store, Set<Material> materials) {
+        OreIndex index = new OreIndex();
+        index.reset(materials, 4096);
+        index.setStore(store);
+        return index;
+    }
+
+    private int indexedDistance(OreIndex index, Material target) {
+        return locator.getBlockTypeDistance(index, new WorldChunkSource(world), index.stamp(), 0, 20, 0, target);
+    }
+
+    /**
+     * Runs a search against a fresh store, then closes it the way the plugin does on disable.
+     */
+    private void populate() {
+        OreIndexStore store = openStore(ORES);
+        OreIndex index = newIndex(store, ORES);
+        assertEquals(7, indexedDistance(index, Material.DIAMOND_ORE));
+        store.close();
+    }
+
+    /**
+     * Loads a section on a thread of its own, as the search and pre-indexer workers do.
+     */
+    private OreIndex.Section loadOffMainThread(OreIndexStore store, boolean interrupted) throws InterruptedException {
+        AtomicReference<OreIndex.Section> section = new AtomicReference<>();
+        Thread worker = new Thread(() -> {
+            if (interrupted) Thread.currentThread().interrupt();
+            section.set(store.load(world.getUID(), 0, 1, -1));
+        });
+        worker.start();
+        worker.join();
+        return section.get();
+    }
+
+    private long regionFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(file -> file.toString().endsWith(".idx")).count();
+        }
+    }
+
+    @Test
+    public void sectionsSurviveARestart() throws IOException {
+        populate();
+        assertTrue(regionFiles() > 0, "Closing the store should write the scanned sections");
+
+        OreIndexStore store = openStore(ORES);
+        assertEquals(7, indexedDistance(newIndex(store, ORES), Material.DIAMOND_ORE));
+        store.flush();
+        OreIndex index = newIndex(store, ORES);
+        assertEquals(7, indexedDistance(index, Material.DIAMOND_ORE));
+        assertEquals(5, indexedDistance(index, Material.EMERALD_ORE));
+        assertTrue(index.getLoads() > 0, "Sections should be read back instead of scanned");
+    }
+
+    @Test
+    public void mainThreadLoadsReadRegionsOnTheNextFlush() throws InterruptedException {
+        populate();
+        OreIndexStore store = openStore(ORES);
+        assertNull(store.load(world.getUID(), 0, 1, -1), "The main thread must not read the file");
+        store.flush();
+        assertNotNull(store.load(world.getUID(), 0, 1, -1), "The flush read the region");
+        assertNotNull(loadOffMainThread(openStore(ORES), false), "Other threads read the file themselves");
+    }
+
+    @Test
+    public void replacedWorldDiscardsSections() throws IOException {
+        populate();
+        // As if the world was restored from a backup taken before the store was closed
+        world.getPersistentDataContainer().remove(NamespacedKey.fromString("orefinder:index_token"));
+
+        OreIndex index = newIndex(openStore(ORES), ORES);
+        assertEquals(0, regionFiles(), "The world does not match the files, so they are stale");
+        assertEquals(7, indexedDistance(index, Material.DIAMOND_ORE));
+        assertEquals(0, index.getLoads());
+    }
+
+    @Test
+    public void uncleanShutdownDiscardsSections() throws IOException {
+        OreIndexStore store = openStore(ORES);
+        indexedDistance(newIndex(store, ORES), Material.DIAMOND_ORE);
+        store.flush();
+        assertTrue(regionFiles() > 0);
+
+        // Not closed: changes made after the flush may be missing from the files
+        newIndex(openStore(ORES), ORES);
+        assertEquals(0, regionFiles());
+    }
+
+    @Test
+    public void discardedStoreWritesNothing() throws IOException {
+        OreIndexStore store = openStore(ORES);
+        indexedDistance(newIndex(store, ORES), Material.DIAMOND_ORE);
+        store.flush();
+        assertTrue(regionFiles() > 0);
+        store.remove(world.getUID(), 0, 1, -1);
+        store.discard();
+        store.flush();
+        assertNull(store.load(world.getUID(), 0, 1, -1), "The world is no longer open");
+
+        // Not closed: a store replaced by a reload leaves its files to be discarded
+        newIndex(openStore(ORES), ORES);
+        assertEquals(0, regionFiles());
+    }
+
+    @Test
+    public void corruptFileIsDiscarded() throws IOException {
+        populate();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.filter(f -> f.toString().endsWith(".idx")).toList()) {
+                byte[] bytes = Files.readAllBytes(file);
+                bytes[bytes.length - 1] ^= 0x55;
+                Files.write(file, bytes);
+            }
+        }
+
+        OreIndex index = newIndex(openStore(ORES), ORES);
+        assertEquals(7, indexedDistance(index, Material.DIAMOND_ORE));
+        assertEquals(0, index.getLoads(), "A file failing its checksum must not be used");
+    }
+
+    @Test
+    public void interruptedReadKeepsTheFile() throws IOException, InterruptedException {
+        populate();
+        OreIndexStore store = openStore(ORES);
+        assertNull(loadOffMainThread(store, true), "A cancelled search gets no section");
+        assertTrue(regionFiles() > 0, "An interrupted read must not discard the file");
+        assertNotNull(loadOffMainThread(store, false));
+    }
+
+    @Test
+    public void otherMaterialsDiscardSections() {
+        populate();
+        Set<Material> more = Set.of(Material.DIAMOND_ORE, Material.EMERALD_ORE, Material.GOLD_ORE);
+        world.getBlockAt(2, 20, 0).setType(Material.GOLD_ORE);
+
+        OreIndex index = newIndex(openStore(more), more);
+        assertEquals(2, indexedDistance(index, Material.GOLD_ORE),
+                "Sections stored without gold would hide the new ore");
+        assertEquals(0, index.getLoads());
+    }
+
+    @Test
+    public void blockChangeRemovesStoredSection() {
+        OreIndexStore store = openStore(ORES);
+        OreIndex index = newIndex(store, ORES);
+        assertEquals(7, indexedDistance(index, Material.DIAMOND_ORE));
+        world.getBlockAt(7, 20, -3).setType(Material.STONE);
+        index.blockChanged(world, 7, 20, -3);
+        store.close();
+
+        OreIndex reopened = newIndex(openStore(ORES), ORES);
+        assertEquals(OreLocator.NOT_FOUND, indexedDistance(reopened, Material.DIAMOND_ORE));
+    }
+
+    @Test
+    public void changesToRegionsNotInMemoryAreQueued() throws InterruptedException {
+        populate();
+        OreIndexStore store = openStore(ORES);
+        // The region has not been read since the restart, so this must not read it either
+        store.remove(world.getUID(), 0, 1, -1);
+        store.flush();
+        assertNull(store.load(world.getUID(), 0, 1, -1), "The queued removal applies once the region is read");
+        store.close();
+
+        assertNull(loadOffMainThread(openStore(ORES), false));
+    }
+
+    @Test
+    public void unopenedWorldIsNotStored() throws IOException {
+        OreIndexStore store = new OreIndexStore(new File(directory.toFile(), "unused"), ORES,
+                Logger.getLogger("OreIndexStoreTest"));
+        indexedDistance(newIndex(store, ORES), Material.DIAMOND_ORE);
+        store.close();
+        assertEquals(0, regionFiles());
+    }
+}
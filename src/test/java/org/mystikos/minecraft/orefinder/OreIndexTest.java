@@ -0,0 +1,248 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.ServerMock;
+import org.mockbukkit.mockbukkit.world.WorldMock;
+
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link OreIndex} and the index-backed search in {@link OreLocator}.
+ */
+public class OreIndexTest {
+
+    private ServerMock server;
+    private WorldMock world;
+    private OreIndex index;
+    private final OreLocator locator = new OreLocator();
+
+    @BeforeEach
+    public void setUp() {
+        server = MockBukkit.mock();
+        world = TestWorlds.stone();
+        index = new OreIndex();
+        index.reset(Set.of(Material.DIAMOND_ORE, Material.EMERALD_ORE), 4096);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    private int indexedDistance(int x, int y, int z, Material target) {
+        return locator.getBlockTypeDistance(index, new WorldChunkSource(world), index.stamp(), x, y, z, target);
+    }
+
+    @Test
+    public void indexedSearchMatchesShellWalk() {
+        world.getBlockAt(7, 20, -3).setType(Material.DIAMOND_ORE);
+        world.getBlockAt(-12, 25, 14).setType(Material.DIAMOND_ORE);
+        assertEquals(locator.getBlockTypeDistance(world.getBlockAt(0, 20, 0).getLocation(), Material.DIAMOND_ORE),
+                indexedDistance(0, 20, 0, Material.DIAMOND_ORE));
+        assertEquals(7, indexedDistance(0, 20, 0, Material.DIAMOND_ORE));
+    }
+
+    @Test
+    public void indexedSearchReturnsNegativeOneOutsideRadius() {
+        world.getBlockAt(20, 20, 0).setType(Material.DIAMOND_ORE);
+        assertEquals(-1, indexedDistance(0, 20, 0, Material.DIAMOND_ORE));
+    }
+
+    @Test
+    public void secondSearchIsServedFromCache() {
+        world.getBlockAt(3, 20, 0).setType(Material.EMERALD_ORE);
+        indexedDistance(0, 20, 0, Material.EMERALD_ORE);
+        long misses = index.getMisses();
+        assertTrue(misses > 0, "The first search should have to scan sections");
+
+        assertEquals(3, indexedDistance(0, 20, 0, Material.EMERALD_ORE));
+        assertEquals(misses, index.getMisses(), "A repeated search should not rescan any section");
+        assertTrue(index.getHits() > 0);
+    }
+
+    @Test
+    public void minedOreIsRemovedFromCachedSection() {
+        Block ore = world.getBlockAt(3, 20, 0);
+        ore.setType(Material.DIAMOND_ORE);
+        assertEquals(3, indexedDistance(0, 20, 0, Material.DIAMOND_ORE));
+        long misses = index.getMisses();
+
+        BlockChangeListener listener = new BlockChangeListener();
+        listener.addObserver(index);
+        listener.onBlockBreak(new BlockBreakEvent(ore, server.addPlayer()));
+        ore.setType(Material.AIR);
+
+        assertEquals(1, index.getUpdates());
+        assertEquals(0, index.getInvalidations(), "The section should be updated, not dropped");
+        assertEquals(-1, indexedDistance(0, 20, 0, Material.DIAMOND_ORE),
+                "A mined ore must not be reported from the cache");
+        assertEquals(misses, index.getMisses(), "The updated section should not be rescanned");
+    }
+
+    @Test
+    public void placedOreIsAddedToCachedSection() {
+        assertEquals(-1, indexedDistance(0, 20, 0, Material.EMERALD_ORE));
+        long misses = index.getMisses();
+
+        world.getBlockAt(-4, 22, 5).setType(Material.EMERALD_ORE);
+        index.blockReplaced(world, -4, 22, 5, Material.EMERALD_ORE);
+        assertEquals(5, indexedDistance(0, 20, 0, Material.EMERALD_ORE));
+
+        world.getBlockAt(-4, 22, 5).setType(Material.DIAMOND_ORE);
+        index.blockReplaced(world, -4, 22, 5, Material.DIAMOND_ORE);
+        assertEquals(-1, indexedDistance(0, 20, 0, Material.EMERALD_ORE));
+        assertEquals(5, indexedDistance(0, 20, 0, Material.DIAMOND_ORE));
+        assertEquals(misses, index.getMisses(), "Updated sections should not be rescanned");
+    }
+
+    @Test
+    public void gridMatchesShellWalkAcrossEvictionsAndUpdates() {
+        Random random = new Random(4);
+        for (int i = 0; i < 300; i++) {
+            world.getBlockAt(random.nextInt(80) - 40, random.nextInt(40), random.nextInt(80) - 40)
+                    .setType(random.nextBoolean() ? Material.DIAMOND_ORE : Material.EMERALD_ORE);
+        }
+        index.reset(Set.of(Material.DIAMOND_ORE, Material.EMERALD_ORE), 64);
+        Material[] targets = {Material.DIAMOND_ORE, Material.EMERALD_ORE};
+        for (int query = 0; query < 40; query++) {
+            int x = random.nextInt(60) - 30, y = random.nextInt(40), z = random.nextInt(60) - 30;
+            if (query % 4 == 0) {
+                Block block = world.getBlockAt(x + random.nextInt(9) - 4, y, z + random.nextInt(9) - 4);
+                Material type = random.nextBoolean() ? Material.AIR : Material.DIAMOND_ORE;
+                block.setType(type);
+                index.blockReplaced(world, block.getX(), block.getY(), block.getZ(), type);
+            }
+            int[] expected = locator.getBlockTypeDistances(world.getBlockAt(x, y, z).getLocation(), targets,
+                    SearchProfile.DEFAULT);
+            assertArrayEquals(expected, locator.getBlockTypeDistances(index, new WorldChunkSource(world),
+                    index.stamp(), x, y, z, targets, SearchProfile.DEFAULT), "Search from " + x + ", " + y + ", " + z);
+        }
+        assertTrue(index.getEvictions() > 0, "The index should have evicted sections along the way");
+    }
+
+    @Test
+    public void replacementsThatChangeNothingAreNotCounted() {
+        world.getBlockAt(3, 20, 0).setType(Material.DIAMOND_ORE);
+        assertEquals(3, indexedDistance(0, 20, 0, Material.DIAMOND_ORE));
+        index.blockReplaced(world, 3, 20, 0, Material.DIAMOND_ORE);
+        index.blockReplaced(world, 4, 20, 0, Material.AIR);
+        assertEquals(0, index.getUpdates(), "Neither replacement changes the cached section");
+        index.blockReplaced(world, 3, 20, 0, Material.AIR);
+        assertEquals(1, index.getUpdates());
+    }
+
+    @Test
+    public void chunkUnloadInvalidatesAllSectionsOfTheChunk() {
+        indexedDistance(8, 20, 8, Material.DIAMOND_ORE);
+        int cached = index.size();
+        index.chunkUnloaded(world, 0, 0);
+        assertTrue(index.size() < cached, "Sections of the unloaded chunk should be dropped");
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedSectionsBeyondLimit() {
+        index.reset(Set.of(Material.DIAMOND_ORE), 4);
+        indexedDistance(0, 20, 0, Material.DIAMOND_ORE);
+        assertEquals(4, index.size(), "The index must never hold more sections than its limit");
+        assertTrue(index.getEvictions() > 0);
+    }
+
+    @Test
+    public void scanOfSnapshotTakenBeforeChangeIsNotCached() {
+        long stamp = index.stamp();
+        SnapshotRegion region = SnapshotRegion.capture(world, 0, 0, OreLocator.SEARCH_RADIUS - 1);
+        world.getBlockAt(2, 20, 0).setType(Material.DIAMOND_ORE);
+        index.blockChanged(world, 2, 20, 0);
+
+        // The stale snapshot still answers this search, but must not poison the cache
+        assertEquals(-1, locator.getBlockTypeDistance(index, region, stamp, 0, 20, 0, Material.DIAMOND_ORE));
+        assertEquals(2, indexedDistance(0, 20, 0, Material.DIAMOND_ORE));
+    }
+
+    @Test
+    public void filterSkipsCachedSectionsWithoutTarget() {
+        world.getBlockAt(3, 20, 0).setType(Material.EMERALD_ORE);
+        indexedDistance(0, 20, 0, Material.EMERALD_ORE);
+        SnapshotRegion region = SnapshotRegion.capture(world, 0, 0, 0);
+        assertTrue(index.mayContain(world.getUID(), region.getChunkSnapshot(0, 0), 20 >> 4, Material.EMERALD_ORE));
+        assertFalse(index.mayContain(world.getUID(), region.getChunkSnapshot(0, 0), 20 >> 4, Material.DIAMOND_ORE),
+                "A cached section without diamond ore should be skipped");
+        assertTrue(index.mayContain(world.getUID(), region.getChunkSnapshot(0, 0), 20 >> 4, Material.GOLD_ORE),
+                "Materials the index does not record can never be ruled out");
+    }
+
+    @Test
+    public void bandSearchReportsTheBandOfTheExactDistance() {
+        Material[] targets = {Material.DIAMOND_ORE, Material.EMERALD_ORE};
+        Random random = new Random(25);
+        for (int i = 0; i < 30; i++) {
+            world.getBlockAt(random.nextInt(64) - 32, 10 + random.nextInt(30), random.nextInt(64) - 32)
+                    .setType(targets[i % 2]);
+        }
+        SearchProfile profile = SearchProfile.DEFAULT;
+        for (int query = 0; query < 100; query++) {
+            int x = random.nextInt(40) - 20, y = 10 + random.nextInt(30), z = random.nextInt(40) - 20;
+            int[] exact = locator.getBlockTypeDistances(world.getBlockAt(x, y, z).getLocation(), targets, profile);
+            int[] bands = locator.getBlockTypeBands(index, new WorldChunkSource(world), index.stamp(), x, y, z,
+                    targets, profile, null);
+            for (int t = 0; t < targets.length; t++) {
+                int expected = exact[t] == OreLocator.NOT_FOUND ? OreLocator.NOT_FOUND
+                        : profile.bandEnd(profile.band(exact[t])) - 1;
+                assertEquals(expected, bands[t], "Target " + targets[t] + " from " + x + ", " + y + ", " + z);
+            }
+        }
+    }
+
+    @Test
+    public void bandSearchMatchesTheExactSearchAcrossEvictions() {
+        Material[] targets = {Material.DIAMOND_ORE, Material.EMERALD_ORE};
+        Random random = new Random(19);
+        for (int i = 0; i < 200; i++) {
+            world.getBlockAt(random.nextInt(80) - 40, random.nextInt(40), random.nextInt(80) - 40)
+                    .setType(targets[i % 2]);
+        }
+        index.reset(Set.of(targets), 64);
+        SearchProfile profile = SearchProfile.DEFAULT;
+        for (int query = 0; query < 40; query++) {
+            int x = random.nextInt(60) - 30, y = random.nextInt(40), z = random.nextInt(60) - 30;
+            int[] exact = locator.getBlockTypeDistances(world.getBlockAt(x, y, z).getLocation(), targets, profile);
+            int[] bands = locator.getBlockTypeBands(index, new WorldChunkSource(world), index.stamp(), x, y, z,
+                    targets, profile, null);
+            for (int t = 0; t < targets.length; t++) {
+                int expected = exact[t] == OreLocator.NOT_FOUND ? OreLocator.NOT_FOUND
+                        : profile.bandEnd(profile.band(exact[t])) - 1;
+                assertEquals(expected, bands[t], "Target " + targets[t] + " from " + x + ", " + y + ", " + z);
+            }
+        }
+        assertTrue(index.getEvictions() > 0, "The index should have evicted sections along the way");
+    }
+
+    @Test
+    public void bandSearchChecksOutdatedLimits() {
+        world.getBlockAt(10, 20, 0).setType(Material.DIAMOND_ORE);
+        Material[] targets = {Material.DIAMOND_ORE, Material.EMERALD_ORE};
+        int[] bands = locator.getBlockTypeBands(index, new WorldChunkSource(world), index.stamp(), 0, 20, 0,
+                targets, SearchProfile.DEFAULT, new int[]{3, 3});
+        int band = SearchProfile.DEFAULT.bandEnd(SearchProfile.DEFAULT.band(10)) - 1;
+        assertArrayEquals(new int[]{band, OreLocator.NOT_FOUND}, bands,
+                "Neither target is within its limit, so both are searched for without it");
+    }
+
+    @Test
+    public void bandSearchOnlyScansTheSectionsItsBandsReach() {
+        world.getBlockAt(1, 20, 0).setType(Material.DIAMOND_ORE);
+        int[] bands = locator.getBlockTypeBands(index, new WorldChunkSource(world), index.stamp(), 0, 20, 0,
+                new Material[]{Material.DIAMOND_ORE}, SearchProfile.DEFAULT, null);
+        assertArrayEquals(new int[]{1}, bands);
+        assertEquals(4, index.getMisses(), "Only the sections within a block of the origin");
+    }
+}
@@ -2,13 +2,19 @@ package org.mystikos.minecraft.orefinder;
 
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.configuration.file.YamlConfiguration;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockbukkit.mockbukkit.MockBukkit;
 import org.mockbukkit.mockbukkit.world.WorldMock;
 
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Unit tests for {@link OreLocator}, which performs the expanding cubic-shell
@@ -22,7 +28,7 @@ public class OreLocatorTest {
     @BeforeEach
     public void setUp() {
         MockBukkit.mock();
-        world = new WorldMock(Material.STONE, 100, 50);
+        world = TestWorlds.stone();
     }
 
     @AfterEach
@@ -42,28 +48,28 @@ public class OreLocatorTest {
     @Test
     public void returnsNegativeOneWhenWorldIsNull() {
         Location loc = new Location(null, 0, 0, 0);
-        assertEquals(-1, locator.getBlockTypeDistance(loc, "diamond_ore"),
+        assertEquals(-1, locator.getBlockTypeDistance(loc, Material.DIAMOND_ORE),
                 "A null world should short-circuit to -1");
     }
 
     @Test
     public void returnsZeroWhenOriginBlockMatches() {
         setBlock(0, 0, 0, Material.DIAMOND_ORE);
-        assertEquals(0, locator.getBlockTypeDistance(origin(), "diamond_ore"),
+        assertEquals(0, locator.getBlockTypeDistance(origin(), Material.DIAMOND_ORE),
                 "A match at the origin should be distance 0");
     }
 
     @Test
     public void findsOreOneBlockAbove() {
         setBlock(0, 1, 0, Material.DIAMOND_ORE);
-        assertEquals(1, locator.getBlockTypeDistance(origin(), "diamond_ore"),
+        assertEquals(1, locator.getBlockTypeDistance(origin(), Material.DIAMOND_ORE),
                 "Ore directly above should be distance 1");
     }
 
     @Test
     public void usesChebyshevDistanceAlongAnAxis() {
         setBlock(5, 0, 0, Material.DIAMOND_ORE);
-        assertEquals(5, locator.getBlockTypeDistance(origin(), "diamond_ore"),
+        assertEquals(5, locator.getBlockTypeDistance(origin(), Material.DIAMOND_ORE),
                 "Ore 5 blocks east should be distance 5");
     }
 
@@ -71,21 +77,267 @@ public class OreLocatorTest {
     public void usesChebyshevDistanceForDiagonals() {
         // A block offset by (3,0,3) is Chebyshev distance 3, not 6.
         setBlock(3, 0, 3, Material.DIAMOND_ORE);
-        assertEquals(3, locator.getBlockTypeDistance(origin(), "diamond_ore"),
+        assertEquals(3, locator.getBlockTypeDistance(origin(), Material.DIAMOND_ORE),
                 "Diagonal offset (3,0,3) should be Chebyshev distance 3");
     }
 
     @Test
-    public void matchingIsCaseInsensitive() {
+    public void ignoresOtherBlockTypes() {
+        setBlock(1, 0, 0, Material.EMERALD_ORE);
         setBlock(2, 0, 0, Material.DIAMOND_ORE);
-        assertEquals(2, locator.getBlockTypeDistance(origin(), "DiAmOnD_OrE"),
-                "Block matching should ignore case");
+        assertEquals(2, locator.getBlockTypeDistance(origin(), Material.DIAMOND_ORE),
+                "Only blocks of the target type should match");
     }
 
     @Test
     public void returnsNegativeOneWhenNoMatchWithinRadius() {
         // World is solid stone; no diamond ore exists anywhere.
-        assertEquals(-1, locator.getBlockTypeDistance(origin(), "diamond_ore"),
+        assertEquals(-1, locator.getBlockTypeDistance(origin(), Material.DIAMOND_ORE),
                 "No match within the 20-block radius should return -1");
     }
+
+    // ===== SNAPSHOT SCAN TESTS =====
+
+    private int snapshotDistance(Material target) {
+        Location loc = origin();
+        SnapshotRegion region = SnapshotRegion.capture(world, loc.getBlockX(), loc.getBlockZ(),
+                OreLocator.SEARCH_RADIUS - 1);
+        return locator.getBlockTypeDistance(region, loc.getBlockX(), loc.getBlockY(), loc.getBlockZ(), target);
+    }
+
+    @Test
+    public void snapshotScanMatchesShellWalkForDiagonal() {
+        setBlock(-4, 2, 6, Material.DIAMOND_ORE);
+        assertEquals(locator.getBlockTypeDistance(origin(), Material.DIAMOND_ORE), snapshotDistance(Material.DIAMOND_ORE),
+                "Snapshot scan should report the same distance as the live-world shell walk");
+        assertEquals(6, snapshotDistance(Material.DIAMOND_ORE));
+    }
+
+    @Test
+    public void snapshotScanFindsOreInNeighbouringChunk() {
+        // 19 blocks out on both horizontal axes always lands outside the origin's chunk
+        setBlock(19, 0, -19, Material.DIAMOND_ORE);
+        assertEquals(19, snapshotDistance(Material.DIAMOND_ORE),
+                "Snapshot scan should cover every chunk the search cube touches");
+    }
+
+    @Test
+    public void snapshotScanReturnsNegativeOneWhenNoMatchWithinRadius() {
+        setBlock(20, 0, 0, Material.DIAMOND_ORE);
+        assertEquals(-1, snapshotDistance(Material.DIAMOND_ORE),
+                "Ore at distance 20 is outside the search radius");
+    }
+
+    // ===== SECTION FILTER TESTS =====
+
+    @Test
+    public void sectionFilterCanSkipSectionsHoldingOre() {
+        setBlock(4, 0, 0, Material.DIAMOND_ORE);
+        Location loc = origin();
+        SnapshotRegion region = SnapshotRegion.capture(world, loc.getBlockX(), loc.getBlockZ(),
+                OreLocator.SEARCH_RADIUS - 1);
+        OreLocator skipAll = new OreLocator((worldId, snapshot, sectionY, target) -> false);
+        assertEquals(-1, skipAll.getBlockTypeDistance(region, loc.getBlockX(), loc.getBlockY(), loc.getBlockZ(),
+                Material.DIAMOND_ORE), "Sections rejected by the filter must not be scanned");
+    }
+
+    @Test
+    public void sectionFilterIsAskedOncePerSection() {
+        Location loc = origin();
+        SnapshotRegion region = SnapshotRegion.capture(world, loc.getBlockX(), loc.getBlockZ(),
+                OreLocator.SEARCH_RADIUS - 1);
+        int[] calls = new int[1];
+        OreLocator counting = new OreLocator((worldId, snapshot, sectionY, target) -> {
+            calls[0]++;
+            return true;
+        });
+        counting.getBlockTypeDistance(region, loc.getBlockX(), loc.getBlockY(), loc.getBlockZ(), Material.DIAMOND_ORE);
+        assertTrue(calls[0] > 0 && calls[0] <= 5 * 5 * 3,
+                "The filter should be consulted per section, not per block, but was called " + calls[0] + " times");
+    }
+
+    @Test
+    public void paletteFilterNeverHidesOre() {
+        setBlock(-7, 3, 11, Material.DIAMOND_ORE);
+        Location loc = origin();
+        SnapshotRegion region = SnapshotRegion.capture(world, loc.getBlockX(), loc.getBlockZ(),
+                OreLocator.SEARCH_RADIUS - 1);
+        OreLocator filtered = new OreLocator(new PaletteSectionFilter(Set.of(Material.DIAMOND_ORE)));
+        assertEquals(11, filtered.getBlockTypeDistance(region, loc.getBlockX(), loc.getBlockY(), loc.getBlockZ(),
+                Material.DIAMOND_ORE));
+    }
+
+    // ===== MULTI-TARGET TESTS =====
+
+    private static final Material[] ORES = {Material.DIAMOND_ORE, Material.EMERALD_ORE, Material.ANCIENT_DEBRIS};
+
+    @Test
+    public void multiTargetSearchReportsEachOre() {
+        setBlock(2, 0, 0, Material.DIAMOND_ORE);
+        setBlock(0, -9, 4, Material.EMERALD_ORE);
+        int[] expected = {2, 9, -1};
+        assertArrayEquals(expected, locator.getBlockTypeDistances(origin(), ORES, SearchProfile.DEFAULT),
+                "The live-world walk should report every ore from one traversal");
+
+        Location loc = origin();
+        SnapshotRegion region = SnapshotRegion.capture(world, loc.getBlockX(), loc.getBlockZ(),
+                OreLocator.SEARCH_RADIUS - 1);
+        assertArrayEquals(expected, locator.getBlockTypeDistances(region, loc.getBlockX(), loc.getBlockY(),
+                loc.getBlockZ(), ORES, SearchProfile.DEFAULT), "The snapshot scan should report every ore from one traversal");
+    }
+
+    @Test
+    public void multiTargetSearchMatchesSingleTargetSearches() {
+        setBlock(-5, 1, 13, Material.DIAMOND_ORE);
+        setBlock(6, 6, 6, Material.DIAMOND_ORE);
+        setBlock(-17, 0, 0, Material.ANCIENT_DEBRIS);
+        int[] distances = locator.getBlockTypeDistances(origin(), ORES, SearchProfile.DEFAULT);
+        for (int i = 0; i < ORES.length; i++) {
+            assertEquals(locator.getBlockTypeDistance(origin(), ORES[i]), distances[i],
+                    "Distance for " + ORES[i] + " should not depend on the other targets");
+        }
+    }
+
+    @Test
+    public void blockSourcesMatchTheOtherEngines() {
+        setBlock(-5, 1, 13, Material.DIAMOND_ORE);
+        setBlock(6, 6, 6, Material.DIAMOND_ORE);
+        setBlock(-17, 0, 0, Material.ANCIENT_DEBRIS);
+        Location loc = origin();
+        int x = loc.getBlockX(), y = loc.getBlockY(), z = loc.getBlockZ();
+        SnapshotRegion region = SnapshotRegion.capture(world, x, z, OreLocator.SEARCH_RADIUS - 1);
+        int[] expected = locator.getBlockTypeDistances(loc, ORES, SearchProfile.DEFAULT);
+        assertArrayEquals(expected, locator.getBlockTypeDistances(new WorldBlockSource(world), x, y, z, ORES,
+                SearchProfile.DEFAULT));
+        assertArrayEquals(expected, locator.getBlockTypeDistances((BlockSource) region, x, y, z, ORES,
+                SearchProfile.DEFAULT), "Bulk reads of snapshots match the palette-filtered scan");
+    }
+
+    // ===== SEARCH PROFILE TESTS =====
+
+    private static SearchProfile profile(Object... settings) {
+        YamlConfiguration config = new YamlConfiguration();
+        for (int i = 0; i < settings.length; i += 2) {
+            config.set((String) settings[i], settings[i + 1]);
+        }
+        return SearchProfile.fromConfig(config, "search", SearchProfile.DEFAULT);
+    }
+
+    private int[] searchAllEngines(SearchProfile profile, Material target) {
+        Location loc = origin();
+        int x = loc.getBlockX(), y = loc.getBlockY(), z = loc.getBlockZ();
+        SnapshotRegion region = SnapshotRegion.capture(world, x, z, profile.reach());
+        OreIndex index = new OreIndex();
+        index.reset(Set.of(target), 1024);
+        Material[] targets = {target};
+        return new int[]{
+                locator.getBlockTypeDistances(loc, targets, profile)[0],
+                locator.getBlockTypeDistances(region, x, y, z, targets, profile)[0],
+                locator.getBlockTypeDistances(index, region, index.stamp(), x, y, z, targets, profile)[0]
+        };
+    }
+
+    @Test
+    public void largerRadiusFindsDistantOre() {
+        setBlock(30, 0, 0, Material.DIAMOND_ORE);
+        assertArrayEquals(new int[]{-1, -1, -1}, searchAllEngines(SearchProfile.DEFAULT, Material.DIAMOND_ORE));
+        assertArrayEquals(new int[]{30, 30, 30}, searchAllEngines(profile("radius", 32), Material.DIAMOND_ORE));
+    }
+
+    @Test
+    public void sphereMeasuresStraightLineDistance() {
+        setBlock(6, 0, 6, Material.DIAMOND_ORE);
+        // sqrt(72) is 8.49, rounded down
+        assertArrayEquals(new int[]{8, 8, 8}, searchAllEngines(profile("shape", "sphere"), Material.DIAMOND_ORE));
+    }
+
+    @Test
+    public void sphereExcludesCornersOfTheCube() {
+        setBlock(15, 15, 0, Material.DIAMOND_ORE);
+        assertArrayEquals(new int[]{-1, -1, -1}, searchAllEngines(profile("shape", "sphere"), Material.DIAMOND_ORE),
+                "A block 21 blocks away in a straight line is outside a 20-block sphere");
+    }
+
+    @Test
+    public void verticalRadiusClampsTheSearch() {
+        setBlock(0, 5, 0, Material.DIAMOND_ORE);
+        setBlock(12, 0, 0, Material.DIAMOND_ORE);
+        assertArrayEquals(new int[]{12, 12, 12}, searchAllEngines(profile("vertical_radius", 4), Material.DIAMOND_ORE),
+                "Ore above the vertical radius should be ignored");
+    }
+
+    @Test
+    public void exhaustedBudgetIsInconclusive() {
+        setBlock(10, 0, 0, Material.DIAMOND_ORE);
+        assertArrayEquals(new int[]{OreLocator.INCONCLUSIVE, OreLocator.INCONCLUSIVE, OreLocator.INCONCLUSIVE},
+                searchAllEngines(profile("max_blocks", 1000), Material.DIAMOND_ORE));
+    }
+
+    @Test
+    public void orePinnedDownWithinBudgetIsReported() {
+        setBlock(1, 0, 0, Material.DIAMOND_ORE);
+        assertEquals(1, locator.getBlockTypeDistances(origin(), new Material[]{Material.DIAMOND_ORE},
+                profile("max_blocks", 1000))[0], "Ore found before the budget runs out is still reported");
+    }
+
+    @Test
+    public void limitsKnownToBeBeatenDoNotChangeTheResult() {
+        setBlock(9, 2, -4, Material.DIAMOND_ORE);
+        Location loc = origin();
+        int x = loc.getBlockX(), y = loc.getBlockY(), z = loc.getBlockZ();
+        SnapshotRegion region = SnapshotRegion.capture(world, x, z, OreLocator.SEARCH_RADIUS - 1);
+        Material[] targets = {Material.DIAMOND_ORE};
+        int[] limits = {10};
+        assertArrayEquals(new int[]{9}, locator.getBlockTypeDistances(loc, targets, SearchProfile.DEFAULT, limits));
+        assertArrayEquals(new int[]{9}, locator.getBlockTypeDistances(region, x, y, z, targets, SearchProfile.DEFAULT, limits));
+    }
+
+    @Test
+    public void outdatedLimitsAreSearchedPast() {
+        setBlock(9, 2, -4, Material.DIAMOND_ORE);
+        Location loc = origin();
+        int x = loc.getBlockX(), y = loc.getBlockY(), z = loc.getBlockZ();
+        SnapshotRegion region = SnapshotRegion.capture(world, x, z, OreLocator.SEARCH_RADIUS - 1);
+        Material[] targets = {Material.DIAMOND_ORE, Material.EMERALD_ORE};
+        // As if a closer diamond and an emerald had been mined since the limits were worked out
+        int[] limits = {5, 8};
+        int[] expected = {9, OreLocator.NOT_FOUND};
+        assertArrayEquals(expected, locator.getBlockTypeDistances(loc, targets, SearchProfile.DEFAULT, limits));
+        assertArrayEquals(expected, locator.getBlockTypeDistances(region, x, y, z, targets, SearchProfile.DEFAULT, limits));
+    }
+
+    // ===== UNLOADED CHUNK TESTS =====
+
+    @Test
+    public void searchesNeverLoadChunks() {
+        // Six blocks from the first unloaded chunk
+        int x = TestWorlds.LOADED_CHUNKS * 16 + 10, y = origin().getBlockY(), z = 8;
+        int unloaded = TestWorlds.LOADED_CHUNKS + 1;
+        world.getBlockAt(x - 8, y, z).setType(Material.DIAMOND_ORE);
+        Material[] targets = {Material.DIAMOND_ORE};
+        SnapshotRegion region = SnapshotRegion.capture(world, x, z, OreLocator.SEARCH_RADIUS - 1);
+        OreIndex index = new OreIndex();
+        index.reset(Set.of(Material.DIAMOND_ORE), 1024);
+        assertArrayEquals(new int[]{8}, locator.getBlockTypeDistances(new Location(world, x, y, z), targets,
+                SearchProfile.DEFAULT));
+        assertArrayEquals(new int[]{8}, locator.getBlockTypeDistances(region, x, y, z, targets, SearchProfile.DEFAULT));
+        assertArrayEquals(new int[]{8}, locator.getBlockTypeDistances(index, new WorldChunkSource(world), index.stamp(),
+                x, y, z, targets, SearchProfile.DEFAULT));
+        assertFalse(world.isChunkLoaded(unloaded, 0));
+        long column = (long) unloaded << 32;
+        assertArrayEquals(new long[]{column | 0xFFFFFFFFL, column, column | 1},
+                OreLocator.unloadedChunks(world, x, z, SearchProfile.DEFAULT), "Chunks at z = -1, 0 and 1 are in reach");
+    }
+
+    @Test
+    public void unloadedChunksMakeFartherResultsInconclusive() {
+        int x = TestWorlds.LOADED_CHUNKS * 16 + 10, z = 8;
+        long[] chunks = OreLocator.unloadedChunks(world, x, z, SearchProfile.DEFAULT);
+        int[] distances = {3, 8, OreLocator.NOT_FOUND, OreLocator.INCONCLUSIVE};
+        assertArrayEquals(new int[]{3, OreLocator.INCONCLUSIVE, OreLocator.INCONCLUSIVE, OreLocator.INCONCLUSIVE},
+                OreLocator.markUnloaded(distances, chunks, x, z, SearchProfile.DEFAULT),
+                "Only a match nearer than the unloaded chunk is settled");
+        assertArrayEquals(new int[]{8, OreLocator.NOT_FOUND},
+                OreLocator.markUnloaded(new int[]{8, OreLocator.NOT_FOUND}, new long[0], x, z, SearchProfile.DEFAULT));
+    }
 }
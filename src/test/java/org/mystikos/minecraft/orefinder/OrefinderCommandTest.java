@@ -59,4 +59,28 @@ public class OrefinderCommandTest {
         assertNotNull(message, "An unknown subcommand should produce a usage message");
         assertTrue(message.contains("Usage"), "Expected a usage hint but got: " + message);
     }
+
+    @Test
+    public void opCanViewStats() {
+        PlayerMock player = server.addPlayer();
+        player.setOp(true);
+        player.performCommand("orefinder stats");
+        String message = player.nextMessage();
+        assertNotNull(message, "Stats should produce output");
+        assertTrue(message.contains("stats"), "Expected the stats header but got: " + message);
+        String searches = player.nextMessage();
+        assertNotNull(searches);
+        assertTrue(searches.contains("Searches"), "Expected the search counts but got: " + searches);
+    }
+
+    @Test
+    public void statsAreDeniedWithoutPermission() {
+        PlayerMock player = server.addPlayer();
+        player.setOp(false);
+        player.performCommand("orefinder stats");
+        String message = player.nextMessage();
+        assertNotNull(message, "Denied stats should still produce a message");
+        assertTrue(message.contains("permission"),
+                "Player without orefinder.stats should be denied but got: " + message);
+    }
 }
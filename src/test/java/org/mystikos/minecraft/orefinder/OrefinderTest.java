@@ -19,7 +19,11 @@ import org.mockbukkit.mockbukkit.world.WorldMock;
 
 import java.util.List;
 import java.util.UUID;
-import java.util.logging.Logger;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -40,7 +44,7 @@ public class OrefinderTest {
         listener = new PlayerInteractionListener(context);
         listener.init();
         System.out.println("Creating world");
-        world = new WorldMock(Material.STONE, 100, 50);
+        world = TestWorlds.stone();
         System.out.println("Adding player");
         player = server.addPlayer();
         player.setOp(true);
@@ -60,18 +64,9 @@ public class OrefinderTest {
         config.set("functions.block_stealing", false);
         config.set("indicate.inhand", List.of("diamond", "emerald", "ancient_debris"));
         config.set("indicate.lookfor", List.of("diamond_ore", "emerald_ore", "ancient_debris"));
-        Logger logger = Logger.getLogger("OrefinderTest");
-        return new OrefinderContext() {
-            @Override
-            public YamlConfiguration getConfig() {
-                return config;
-            }
-
-            @Override
-            public Logger getLogger() {
-                return logger;
-            }
-        };
+        // Tests put ores wherever they like, not where vanilla generates them
+        config.set("search.generation.enabled", false);
+        return new TestContext(config, "OrefinderTest");
     }
 
     @AfterEach
@@ -230,6 +225,58 @@ public class OrefinderTest {
         assertTrue(message.contains("Cold."), "Expected 'Cold.' but got: " + message);
     }
 
+    // ===== PROSPECTOR TESTS =====
+
+    @Test
+    public void testProspectorReportsEveryOre() {
+        YamlConfiguration config = (YamlConfiguration) createTestContext().getConfig();
+        config.set("indicate.prospector", List.of("compass"));
+        PlayerInteractionListener prospecting = new PlayerInteractionListener(new TestContext(config, "OrefinderTest"));
+        prospecting.init();
+
+        world.getBlockAt(player.getLocation().add(1, 0, 0)).setType(Material.STONE);
+        world.getBlockAt(player.getLocation().add(4, 0, 0)).setType(Material.DIAMOND_ORE);
+        ItemStack compass = new ItemStack(Material.COMPASS);
+        player.getInventory().setItemInMainHand(compass);
+        PlayerInteractEvent event = new PlayerInteractEvent(player, Action.LEFT_CLICK_BLOCK, compass,
+                world.getBlockAt(player.getLocation().add(1, 0, 0)), null);
+        prospecting.onPlayerInteract(event);
+
+        StringBuilder messages = new StringBuilder();
+        String message;
+        int count = 0;
+        while ((message = player.nextMessage()) != null) {
+            messages.append(message).append('\n');
+            count++;
+        }
+        assertEquals(3, count, "A prospector should get one line per configured ore but got: " + messages);
+        assertTrue(messages.toString().contains("Diamond Ore: "), "Lines should be labelled with the ore: " + messages);
+        assertTrue(messages.toString().contains("Very hot!"), "Diamond ore 3 blocks away should be very hot: " + messages);
+    }
+
+    // ===== GENERATION RULES TEST =====
+
+    @Test
+    public void testDiamondAboveItsBandIsIceCold() {
+        YamlConfiguration config = (YamlConfiguration) createTestContext().getConfig();
+        config.set("search.generation.enabled", true);
+        PlayerInteractionListener generating = new PlayerInteractionListener(new TestContext(config, "OrefinderTest"));
+        generating.init();
+
+        // Far above the diamond band, so the ore cannot have generated here
+        world.getBlockAt(0, 60, 0).setType(Material.STONE);
+        world.getBlockAt(3, 60, 0).setType(Material.DIAMOND_ORE);
+        ItemStack diamond = new ItemStack(Material.DIAMOND);
+        player.getInventory().setItemInMainHand(diamond);
+        PlayerInteractEvent event = new PlayerInteractEvent(player, Action.LEFT_CLICK_BLOCK, diamond,
+                world.getBlockAt(0, 60, 0), null);
+        generating.onPlayerInteract(event);
+
+        String message = player.nextMessage();
+        assertNotNull(message, "Message should not be null");
+        assertTrue(message.contains("Ice cold!"), "Diamond search above the band should be ice cold: " + message);
+    }
+
     // ===== PERMISSION CHECK TEST =====
 
     @Test
@@ -290,6 +337,21 @@ public class OrefinderTest {
         assertNotNull(player.nextMessage(), "Use after player quit should succeed (cooldown record was cleared)");
     }
 
+    @Test
+    public void testInvalidReloadKeepsThePreviousCooldown() {
+        YamlConfiguration config = (YamlConfiguration) createTestContext().getConfig();
+        PlayerInteractionListener reloaded = new PlayerInteractionListener(new TestContext(config, "OrefinderTest"));
+        reloaded.init();
+        config.set("search.cooldown_ms", 0L);
+        config.set("search.session.max_shift", -1);
+        assertThrows(IllegalArgumentException.class, reloaded::init);
+
+        clickWithDiamond(reloaded, player);
+        assertNotNull(player.nextMessage());
+        clickWithDiamond(reloaded, player);
+        assertNull(player.nextMessage(), "The cooldown of the rejected config must not take effect");
+    }
+
     // ===== BLOCK STEALING TESTS =====
 
     private PlayerInteractionListener createStealingListener() {
@@ -306,18 +368,7 @@ public class OrefinderTest {
         config.set("functions.block_stealing", true);
         config.set("indicate.inhand", List.of("diamond", "emerald", "ancient_debris"));
         config.set("indicate.lookfor", List.of("diamond_ore", "emerald_ore", "ancient_debris"));
-        Logger logger = Logger.getLogger("OrefinderTest");
-        OrefinderContext ctx = new OrefinderContext() {
-            @Override
-            public YamlConfiguration getConfig() {
-                return config;
-            }
-
-            @Override
-            public Logger getLogger() {
-                return logger;
-            }
-        };
+        OrefinderContext ctx = new TestContext(config, "OrefinderTest");
         PlayerInteractionListener stealingListener = new PlayerInteractionListener(ctx);
         stealingListener.init();
         return stealingListener;
@@ -365,12 +416,96 @@ public class OrefinderTest {
         assertEquals(2, player.getInventory().getItemInMainHand().getAmount(), "Diamond stack should be decremented from 3 to 2 after stealing");
     }
 
+    // ===== ASYNC SEARCH TESTS =====
+
+    /**
+     * Creates a listener that searches on a single worker thread with room for one waiting
+     * search, and hands the tasks meant for the main thread to {@code mainThread}.
+     */
+    private PlayerInteractionListener createAsyncListener(Consumer<Runnable> mainThread) {
+        YamlConfiguration config = (YamlConfiguration) createTestContext().getConfig();
+        config.set("search.cooldown_ms", 60000L);
+        config.set("search.async.enabled", true);
+        config.set("search.async.threads", 1);
+        config.set("search.async.queue_size", 1);
+        OrefinderContext ctx = new TestContext(config, "OrefinderTest") {
+            @Override
+            public void runOnMainThread(Runnable task) {
+                mainThread.accept(task);
+            }
+        };
+        PlayerInteractionListener asyncListener = new PlayerInteractionListener(ctx);
+        asyncListener.init();
+        return asyncListener;
+    }
+
+    private void clickWithDiamond(PlayerInteractionListener target, PlayerMock clicker) {
+        ItemStack diamond = new ItemStack(Material.DIAMOND);
+        clicker.getInventory().setItemInMainHand(diamond);
+        target.onPlayerInteract(new PlayerInteractEvent(clicker, Action.LEFT_CLICK_BLOCK, diamond,
+                world.getBlockAt(clicker.getLocation().add(1, 0, 0)), null));
+    }
+
+    @Test
+    public void testAsyncSearchAnswersOnTheMainThread() throws InterruptedException {
+        BlockingQueue<Runnable> mainThread = new LinkedBlockingQueue<>();
+        PlayerInteractionListener asyncListener = createAsyncListener(mainThread::add);
+        try {
+            world.getBlockAt(player.getLocation().add(3, 0, 0)).setType(Material.DIAMOND_ORE);
+            clickWithDiamond(asyncListener, player);
+            assertNull(player.nextMessage(), "The answer should wait for the main thread");
+
+            Runnable answer = mainThread.poll(5, TimeUnit.SECONDS);
+            assertNotNull(answer, "The search should hand its answer to the main thread");
+            answer.run();
+            String message = player.nextMessage();
+            assertNotNull(message, "Message should not be null");
+            assertTrue(message.contains("Very hot!"), "Expected message to contain: Very hot! but contained: " + message);
+        } finally {
+            asyncListener.shutdown();
+        }
+    }
+
+    @Test
+    public void testRejectedAsyncSearchRefundsTheCooldown() throws InterruptedException {
+        CountDownLatch answering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // The worker stays busy handing over the first answer until the test is done
+        PlayerInteractionListener asyncListener = createAsyncListener(task -> {
+            answering.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        try {
+            server.setMaxPlayers(3);
+            PlayerMock waiting = server.addPlayer();
+            PlayerMock rejected = server.addPlayer();
+            waiting.setOp(true);
+            rejected.setOp(true);
+
+            clickWithDiamond(asyncListener, player);
+            assertTrue(answering.await(5, TimeUnit.SECONDS), "The first search should run");
+            clickWithDiamond(asyncListener, waiting);
+            clickWithDiamond(asyncListener, rejected);
+
+            PlayerCooldownManager cooldowns = asyncListener.getCooldowns();
+            assertFalse(cooldowns.canUse(waiting.getUniqueId()), "A queued search should use the cooldown");
+            assertTrue(cooldowns.canUse(rejected.getUniqueId()), "A rejected search should give the cooldown back");
+        } finally {
+            release.countDown();
+            asyncListener.shutdown();
+        }
+    }
+
     // ===== getBlockTypeDistance EDGE CASE TESTS =====
 
     @Test
     public void testGetBlockTypeDistanceReturnsNegativeOneWhenNullWorld() {
         Location loc = new Location(null, 0, 0, 0);
-        assertEquals(-1, listener.getBlockTypeDistance(loc, "diamond_ore"),
+        assertEquals(-1, listener.getBlockTypeDistance(loc, Material.DIAMOND_ORE),
                 "Should return -1 immediately when the location's world is null");
     }
 
@@ -378,7 +513,7 @@ public class OrefinderTest {
     public void testGetBlockTypeDistanceFindsOreAlongYAxis() {
         Location loc = world.getSpawnLocation();
         world.getBlockAt(loc.getBlockX(), loc.getBlockY() + 1, loc.getBlockZ()).setType(Material.DIAMOND_ORE);
-        assertEquals(1, listener.getBlockTypeDistance(loc, "diamond_ore"),
+        assertEquals(1, listener.getBlockTypeDistance(loc, Material.DIAMOND_ORE),
                 "Should find ore exactly 1 block above the search origin");
     }
 
@@ -0,0 +1,89 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.world.WorldMock;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link ParallelOreLocator}, which splits a snapshot search across a fork-join
+ * pool and must report exactly what the sequential search reports.
+ */
+public class ParallelOreLocatorTest {
+
+    private static final Material[] ORES = {Material.DIAMOND_ORE, Material.EMERALD_ORE, Material.ANCIENT_DEBRIS};
+
+    private WorldMock world;
+    private ParallelOreLocator parallel;
+    private final OreLocator sequential = new OreLocator();
+
+    @BeforeEach
+    public void setUp() {
+        MockBukkit.mock();
+        world = TestWorlds.stone();
+        parallel = new ParallelOreLocator(4, 32, SectionFilter.NONE, new SearchMetrics());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        parallel.shutdown(1000L);
+        MockBukkit.unmock();
+    }
+
+    private static SearchProfile profile(Object... settings) {
+        YamlConfiguration config = new YamlConfiguration();
+        for (int i = 0; i < settings.length; i += 2) {
+            config.set((String) settings[i], settings[i + 1]);
+        }
+        return SearchProfile.fromConfig(config, "search", SearchProfile.DEFAULT);
+    }
+
+    private void setBlock(int dx, int dy, int dz, Material material) {
+        Location loc = world.getSpawnLocation();
+        world.getBlockAt(loc.getBlockX() + dx, loc.getBlockY() + dy, loc.getBlockZ() + dz).setType(material);
+    }
+
+    @Test
+    public void matchesTheSequentialSearch() {
+        setBlock(30, 2, -20, Material.DIAMOND_ORE);
+        setBlock(-5, -3, 7, Material.DIAMOND_ORE);
+        setBlock(0, 10, 39, Material.EMERALD_ORE);
+        for (SearchProfile profile : new SearchProfile[]{
+                profile("radius", 40, "max_blocks", 0),
+                profile("radius", 40, "max_blocks", 0, "shape", "sphere"),
+                profile("radius", 40, "max_blocks", 0, "vertical_radius", 2)}) {
+            Location loc = world.getSpawnLocation();
+            int x = loc.getBlockX(), y = loc.getBlockY(), z = loc.getBlockZ();
+            SnapshotRegion region = SnapshotRegion.capture(world, x, z, profile.reach());
+            assertArrayEquals(sequential.getBlockTypeDistances(region, x, y, z, ORES, profile),
+                    parallel.getBlockTypeDistances(region, x, y, z, ORES, profile, () -> false),
+                    "The parallel search must report the sequential result for " + profile.shape());
+        }
+    }
+
+    @Test
+    public void cancelledSearchHasNoResult() {
+        SearchProfile profile = profile("radius", 40, "max_blocks", 0);
+        Location loc = world.getSpawnLocation();
+        SnapshotRegion region = SnapshotRegion.capture(world, loc.getBlockX(), loc.getBlockZ(), profile.reach());
+        assertNull(parallel.getBlockTypeDistances(region, loc.getBlockX(), loc.getBlockY(), loc.getBlockZ(),
+                ORES, profile, () -> true));
+    }
+
+    @Test
+    public void onlyLargeSearchesThatFitTheBudgetRunInParallel() {
+        assertFalse(parallel.handles(SearchProfile.DEFAULT), "The default radius is below the threshold");
+        assertTrue(parallel.handles(profile("radius", 64, "max_blocks", 0)));
+        assertFalse(parallel.handles(profile("radius", 64, "max_blocks", 100_000)),
+                "A budget the search box exceeds could make the results differ");
+    }
+}
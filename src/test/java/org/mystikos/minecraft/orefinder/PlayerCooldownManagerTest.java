@@ -3,8 +3,13 @@ package org.mystikos.minecraft.orefinder;
 import org.junit.jupiter.api.Test;
 
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -24,7 +29,7 @@ public class PlayerCooldownManagerTest {
         PlayerCooldownManager cooldowns = new PlayerCooldownManager();
         UUID playerId = UUID.randomUUID();
         cooldowns.canUse(playerId);
-        assertFalse(cooldowns.canUse(playerId), "A second use within the same second should be blocked");
+        assertFalse(cooldowns.canUse(playerId), "A second use within the cooldown should be blocked");
     }
 
     @Test
@@ -46,10 +51,89 @@ public class PlayerCooldownManagerTest {
         assertTrue(cooldowns.canUse(playerId), "After removal the player should be able to use the detector again");
     }
 
+    @Test
+    public void refundedUseCanBeRepeated() {
+        PlayerCooldownManager cooldowns = new PlayerCooldownManager();
+        UUID playerId = UUID.randomUUID();
+        cooldowns.canUse(playerId);
+        cooldowns.refund(playerId);
+        assertTrue(cooldowns.canUse(playerId), "A use that came to nothing should not start the cooldown");
+        assertFalse(cooldowns.canUse(playerId), "The repeated use should start it");
+    }
+
     @Test
     public void removingUnknownPlayerIsHarmless() {
         PlayerCooldownManager cooldowns = new PlayerCooldownManager();
         // Removing a player that was never recorded must not throw.
         cooldowns.removePlayer(UUID.randomUUID());
     }
+
+    @Test
+    public void useIsAllowedAgainOnceTheCooldownElapses() {
+        AtomicLong now = new AtomicLong(10_000L);
+        PlayerCooldownManager cooldowns = new PlayerCooldownManager(250L, now::get);
+        UUID playerId = UUID.randomUUID();
+        assertTrue(cooldowns.canUse(playerId));
+        now.addAndGet(249L);
+        assertFalse(cooldowns.canUse(playerId), "One millisecond short of the cooldown should still be blocked");
+        now.addAndGet(1L);
+        assertTrue(cooldowns.canUse(playerId), "Use should be allowed exactly when the cooldown elapses");
+        assertFalse(cooldowns.canUse(playerId), "The successful use should start a new cooldown");
+    }
+
+    @Test
+    public void zeroCooldownNeverBlocks() {
+        PlayerCooldownManager cooldowns = new PlayerCooldownManager(0L, () -> 42L);
+        UUID playerId = UUID.randomUUID();
+        assertTrue(cooldowns.canUse(playerId));
+        assertTrue(cooldowns.canUse(playerId));
+    }
+
+    @Test
+    public void sweepDropsOnlyElapsedCooldowns() {
+        AtomicLong now = new AtomicLong(0L);
+        PlayerCooldownManager cooldowns = new PlayerCooldownManager(1000L, now::get);
+        UUID stale = UUID.randomUUID();
+        UUID active = UUID.randomUUID();
+        cooldowns.canUse(stale);
+        now.set(600L);
+        cooldowns.canUse(active);
+        now.set(1200L);
+
+        assertEquals(1, cooldowns.sweep(), "Only the player whose cooldown elapsed should be dropped");
+        assertEquals(1, cooldowns.size());
+        assertFalse(cooldowns.canUse(active), "A sweep must not cut a running cooldown short");
+        assertTrue(cooldowns.canUse(stale), "A swept player should be able to use the detector");
+    }
+
+    @Test
+    public void concurrentClicksPassOnlyOnce() throws InterruptedException {
+        PlayerCooldownManager cooldowns = new PlayerCooldownManager(60_000L, System::currentTimeMillis);
+        UUID playerId = UUID.randomUUID();
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicInteger passed = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    if (cooldowns.canUse(playerId)) passed.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        start.countDown();
+        done.await();
+        assertEquals(1, passed.get(), "Exactly one of the simultaneous clicks should pass");
+    }
+
+    @Test
+    public void negativeCooldownIsRejected() {
+        PlayerCooldownManager cooldowns = new PlayerCooldownManager();
+        assertThrows(IllegalArgumentException.class, () -> cooldowns.setCooldownMillis(-1L));
+    }
 }
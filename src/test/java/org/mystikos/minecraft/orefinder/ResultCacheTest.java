@@ -0,0 +1,167 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.Material;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.world.WorldMock;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for {@link ResultCache}, which bounds the distances of a search from the results
+ * of earlier searches nearby.
+ */
+public class ResultCacheTest {
+
+    private static final Material[] DIAMOND = {Material.DIAMOND_ORE};
+
+    private WorldMock world;
+    private UUID worldId;
+    private final AtomicLong now = new AtomicLong(1_000L);
+    private final ResultCache cache = new ResultCache(now::get);
+
+    @BeforeEach
+    public void setUp() {
+        MockBukkit.mock();
+        world = TestWorlds.stone();
+        worldId = world.getUID();
+        cache.reset(64, 5_000L);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    private void store(int x, int y, int z, SearchProfile profile, int distance) {
+        cache.store(cache.stamp(), worldId, x, y, z, DIAMOND, profile, new int[]{distance});
+    }
+
+    private ResultCache.Bounds lookup(int x, int y, int z, SearchProfile profile) {
+        return cache.lookup(worldId, x, y, z, DIAMOND, profile);
+    }
+
+    @Test
+    public void sameOriginIsAnsweredExactly() {
+        store(10, 60, 10, SearchProfile.DEFAULT, 7);
+        assertArrayEquals(new int[]{7}, lookup(10, 60, 10, SearchProfile.DEFAULT).answer());
+    }
+
+    @Test
+    public void nearbyOriginInTheSameBandIsAnswered() {
+        // 10 blocks from (10, 60, 10) means 9 to 11 blocks from one block further east: all "lukewarm"
+        store(10, 60, 10, SearchProfile.DEFAULT, 10);
+        int[] answer = lookup(11, 60, 10, SearchProfile.DEFAULT).answer();
+        assertEquals(SearchProfile.DEFAULT.band(10), SearchProfile.DEFAULT.band(answer[0]));
+    }
+
+    @Test
+    public void boundsAcrossABandOnlyNarrowTheSearch() {
+        // 7 to 9 blocks spans the "warm" and "lukewarm" messages
+        store(10, 60, 10, SearchProfile.DEFAULT, 8);
+        ResultCache.Bounds bounds = lookup(11, 60, 10, SearchProfile.DEFAULT);
+        assertNull(bounds.answer());
+        assertArrayEquals(new int[]{10}, bounds.limits(), "The search only has to look closer than 9 + 1 blocks");
+    }
+
+    @Test
+    public void missIsOnlyAnsweredAtTheSameOrigin() {
+        store(10, 60, 10, SearchProfile.DEFAULT, OreLocator.NOT_FOUND);
+        assertArrayEquals(new int[]{OreLocator.NOT_FOUND}, lookup(10, 60, 10, SearchProfile.DEFAULT).answer());
+        ResultCache.Bounds moved = lookup(11, 60, 10, SearchProfile.DEFAULT);
+        assertNull(moved.answer(), "Ore may have come into range one block away");
+        assertNull(moved.limits(), "A miss gives no upper bound");
+    }
+
+    @Test
+    public void inconclusiveResultsAreNotKept() {
+        store(10, 60, 10, SearchProfile.DEFAULT, OreLocator.INCONCLUSIVE);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void otherProfilesAreNotUsed() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("radius", 30);
+        SearchProfile wide = SearchProfile.fromConfig(config, "search", SearchProfile.DEFAULT);
+        store(10, 60, 10, SearchProfile.DEFAULT, 7);
+        assertNull(lookup(10, 60, 10, wide).answer());
+    }
+
+    @Test
+    public void profilesSharingACellAreKeptApart() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("radius", 30);
+        SearchProfile wide = SearchProfile.fromConfig(config, "search", SearchProfile.DEFAULT);
+        store(10, 60, 10, SearchProfile.DEFAULT, 7);
+        store(10, 60, 10, wide, 25);
+        assertArrayEquals(new int[]{7}, lookup(10, 60, 10, SearchProfile.DEFAULT).answer(),
+                "A result for another profile must not replace this one");
+        assertArrayEquals(new int[]{25}, lookup(10, 60, 10, wide).answer());
+    }
+
+    @Test
+    public void verticalClampIgnoresOtherHeights() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("vertical_radius", 4);
+        SearchProfile flat = SearchProfile.fromConfig(config, "search", SearchProfile.DEFAULT);
+        store(10, 60, 10, flat, 10);
+        assertNull(lookup(10, 61, 10, flat).answer(), "A clamped search one block up sees different blocks");
+        assertArrayEquals(new int[]{10}, lookup(10, 60, 10, flat).answer());
+    }
+
+    @Test
+    public void resultsExpire() {
+        store(10, 60, 10, SearchProfile.DEFAULT, 7);
+        now.addAndGet(5_000L);
+        assertNull(lookup(10, 60, 10, SearchProfile.DEFAULT).answer());
+    }
+
+    @Test
+    public void blockChangeInRangeDropsResult() {
+        store(10, 60, 10, SearchProfile.DEFAULT, 7);
+        store(500, 60, 500, SearchProfile.DEFAULT, 7);
+        cache.blockChanged(world, 20, 55, 0);
+        assertNull(lookup(10, 60, 10, SearchProfile.DEFAULT).answer());
+        assertArrayEquals(new int[]{7}, lookup(500, 60, 500, SearchProfile.DEFAULT).answer(),
+                "A change far away must not drop the result");
+    }
+
+    @Test
+    public void blockChangeReachesResultsInOtherBuckets() {
+        // The origins lie in different 32-block buckets, both within reach of the change
+        store(31, 60, 10, SearchProfile.DEFAULT, 7);
+        store(32, 60, 10, SearchProfile.DEFAULT, 7);
+        cache.blockChanged(world, 40, 70, 0);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void resultReadBeforeANearbyChangeIsNotKept() {
+        long stamp = cache.stamp();
+        cache.blockChanged(world, 12, 60, 10);
+        cache.store(stamp, worldId, 10, 60, 10, DIAMOND, SearchProfile.DEFAULT, new int[]{7});
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void zeroEntriesKeepsNothing() {
+        cache.reset(0, 5_000L);
+        store(10, 60, 10, SearchProfile.DEFAULT, 7);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void negativeLifetimeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> cache.reset(16, -1L));
+    }
+}
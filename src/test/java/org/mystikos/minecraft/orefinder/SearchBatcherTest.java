@@ -0,0 +1,203 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.world.WorldMock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link SearchBatcher}, which answers the searches queued during a tick from
+ * shared chunk captures.
+ */
+public class SearchBatcherTest {
+
+    private static final Material[] DIAMOND = {Material.DIAMOND_ORE};
+
+    private WorldMock world;
+    private SearchMetrics metrics;
+    private SearchBatcher batcher;
+
+    @BeforeEach
+    public void setUp() {
+        MockBukkit.mock();
+        world = TestWorlds.stone();
+        metrics = new SearchMetrics();
+        batcher = new SearchBatcher(SectionFilter.NONE, metrics, 50.0);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    private Location origin() {
+        return world.getSpawnLocation();
+    }
+
+    private void setBlock(int dx, int dy, int dz, Material material) {
+        Location loc = origin();
+        world.getBlockAt(loc.getBlockX() + dx, loc.getBlockY() + dy, loc.getBlockZ() + dz).setType(material);
+    }
+
+    private void submit(int dx, int dy, int dz, Material[] targets, SearchProfile profile, List<int[]> results) {
+        Location loc = origin();
+        batcher.submit(world, loc.getBlockX() + dx, loc.getBlockY() + dy, loc.getBlockZ() + dz,
+                targets, profile, (distances, unloaded) -> results.add(distances));
+    }
+
+    @Test
+    public void searchesWaitForTheNextTick() {
+        List<int[]> results = new ArrayList<>();
+        submit(0, 0, 0, DIAMOND, SearchProfile.DEFAULT, results);
+        assertEquals(1, batcher.pending());
+        assertEquals(0, results.size(), "Nothing should be answered before the tick");
+
+        assertEquals(1, batcher.tick());
+        assertEquals(0, batcher.pending());
+        assertEquals(1, results.size());
+    }
+
+    @Test
+    public void nearbySearchesMatchTheLocator() {
+        setBlock(4, 1, -3, Material.DIAMOND_ORE);
+        setBlock(-12, -2, 7, Material.EMERALD_ORE);
+        Material[] targets = {Material.DIAMOND_ORE, Material.EMERALD_ORE, Material.GOLD_ORE};
+        OreLocator locator = new OreLocator();
+        List<int[]> results = new ArrayList<>();
+        int[][] offsets = {{0, 0, 0}, {6, 0, 2}, {-5, 3, 9}};
+        for (int[] offset : offsets) {
+            submit(offset[0], offset[1], offset[2], targets, SearchProfile.DEFAULT, results);
+        }
+
+        assertEquals(3, batcher.tick());
+        for (int i = 0; i < offsets.length; i++) {
+            Location loc = origin().add(offsets[i][0], offsets[i][1], offsets[i][2]);
+            assertArrayEquals(locator.getBlockTypeDistances(loc, targets, SearchProfile.DEFAULT), results.get(i),
+                    "A batched search should report the same distances as a lone search");
+        }
+    }
+
+    @Test
+    public void overlappingSearchesShareOneScan() {
+        List<int[]> results = new ArrayList<>();
+        submit(0, 0, 0, DIAMOND, SearchProfile.DEFAULT, results);
+        submit(1, 0, 1, DIAMOND, SearchProfile.DEFAULT, results);
+        batcher.tick();
+        long shared = metrics.getSectionsScanned();
+
+        SearchMetrics alone = new SearchMetrics();
+        SearchBatcher single = new SearchBatcher(SectionFilter.NONE, alone, 50.0);
+        Location loc = origin();
+        single.submit(world, loc.getBlockX(), loc.getBlockY(), loc.getBlockZ(), DIAMOND, SearchProfile.DEFAULT,
+                (distances, unloaded) -> { });
+        single.tick();
+
+        assertEquals(2, metrics.getSearches());
+        assertTrue(shared < alone.getSectionsScanned() * 2,
+                "Two overlapping searches should scan fewer sections than two separate ones");
+    }
+
+    @Test
+    public void oreOutsideTheRadiusIsNotReported() {
+        setBlock(20, 0, 0, Material.DIAMOND_ORE);
+        List<int[]> results = new ArrayList<>();
+        submit(0, 0, 0, DIAMOND, SearchProfile.DEFAULT, results);
+        batcher.tick();
+        assertArrayEquals(new int[]{OreLocator.NOT_FOUND}, results.get(0));
+    }
+
+    @Test
+    public void distantSearchesAreServedSeparately() {
+        setBlock(0, 0, 0, Material.DIAMOND_ORE);
+        List<int[]> results = new ArrayList<>();
+        submit(0, 0, 0, DIAMOND, SearchProfile.DEFAULT, results);
+        submit(400, 0, 0, DIAMOND, SearchProfile.DEFAULT, results);
+        assertEquals(2, batcher.tick(), "A generous budget should serve both groups in one tick");
+        assertArrayEquals(new int[]{0}, results.get(0));
+        assertArrayEquals(new int[]{OreLocator.NOT_FOUND}, results.get(1));
+    }
+
+    @Test
+    public void aTinyBudgetStillDrainsTheQueue() {
+        setBlock(4, 1, -3, Material.DIAMOND_ORE);
+        SearchBatcher slow = new SearchBatcher(SectionFilter.NONE, metrics, 0.000001);
+        List<int[]> results = new ArrayList<>();
+        Location loc = origin();
+        slow.submit(world, loc.getBlockX(), loc.getBlockY(), loc.getBlockZ(), DIAMOND, SearchProfile.DEFAULT,
+                (distances, unloaded) -> results.add(distances));
+        int ticks = 0;
+        while (slow.pending() > 0) {
+            slow.tick();
+            ticks++;
+        }
+        assertTrue(ticks > 1, "A group larger than the budget should be spread over several ticks");
+        assertArrayEquals(new int[]{4}, results.get(0));
+    }
+
+    @Test
+    public void fullQueueRefusesSearches() {
+        List<int[]> results = new ArrayList<>();
+        for (int i = 0; i < SearchBatcher.MAX_PENDING; i++) {
+            submit(0, 0, 0, DIAMOND, SearchProfile.DEFAULT, results);
+        }
+        Location loc = origin();
+        assertFalse(batcher.submit(world, loc.getBlockX(), loc.getBlockY(), loc.getBlockZ(), DIAMOND,
+                SearchProfile.DEFAULT, (distances, unloaded) -> results.add(distances)));
+        assertEquals(SearchBatcher.MAX_PENDING, batcher.pending());
+    }
+
+    @Test
+    public void searchesStopAtTheirBlockBudget() {
+        setBlock(18, 0, 0, Material.DIAMOND_ORE);
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("max_blocks", 4096);
+        SearchProfile small = SearchProfile.fromConfig(config, "search", SearchProfile.DEFAULT);
+        List<int[]> results = new ArrayList<>();
+        submit(0, 0, 0, DIAMOND, small, results);
+        batcher.tick();
+        assertArrayEquals(new int[]{OreLocator.INCONCLUSIVE}, results.get(0));
+    }
+
+    @Test
+    public void finishAnswersEverySearch() {
+        SearchBatcher slow = new SearchBatcher(SectionFilter.NONE, metrics, 0.000001);
+        List<int[]> results = new ArrayList<>();
+        Location loc = origin();
+        slow.submit(world, loc.getBlockX(), loc.getBlockY(), loc.getBlockZ(), DIAMOND, SearchProfile.DEFAULT,
+                (distances, unloaded) -> results.add(distances));
+        slow.submit(world, loc.getBlockX() + 400, loc.getBlockY(), loc.getBlockZ(), DIAMOND, SearchProfile.DEFAULT,
+                (distances, unloaded) -> results.add(distances));
+        assertEquals(2, slow.finish());
+        assertEquals(0, slow.pending());
+        assertEquals(2, results.size());
+    }
+
+    @Test
+    public void chunksUnloadedBeforeTheTickAreReported() {
+        List<long[]> unloaded = new ArrayList<>();
+        batcher.submit(world, 8, 20, 8, DIAMOND, SearchProfile.DEFAULT, (distances, missed) -> unloaded.add(missed));
+        batcher.submit(world, 400, 20, 8, DIAMOND, SearchProfile.DEFAULT, (distances, missed) -> unloaded.add(missed));
+        world.unloadChunk(1, 0);
+        assertEquals(2, batcher.tick());
+        assertArrayEquals(new long[]{1L << 32}, unloaded.get(0), "The chunk read as empty is reported");
+        assertArrayEquals(new long[0], unloaded.get(1), "Searches out of its reach are unaffected");
+    }
+
+    @Test
+    public void nonPositiveBudgetIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> batcher.setBudgetMillis(0));
+    }
+}
@@ -0,0 +1,89 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link SearchMetrics}.
+ */
+public class SearchMetricsTest {
+
+    private final SearchMetrics metrics = new SearchMetrics();
+
+    @Test
+    public void classifiesSearchOutcomes() {
+        metrics.recordSearch(1_000L, new int[]{4});
+        metrics.recordSearch(1_000L, new int[]{-1, 7});
+        metrics.recordSearch(1_000L, new int[]{-1});
+        metrics.recordSearch(1_000L, new int[]{-1, OreLocator.INCONCLUSIVE});
+        assertEquals(4, metrics.getSearches());
+        assertEquals(2, metrics.getFound(), "A search counts as found if any target was found");
+        assertEquals(1, metrics.getMissed());
+        assertEquals(1, metrics.getInconclusive());
+    }
+
+    @Test
+    public void reportsLatencyPercentilesWithinAFactorOfTwo() {
+        for (int i = 0; i < 99; i++) {
+            metrics.recordSearch(100_000L, new int[]{-1});
+        }
+        metrics.recordSearch(50_000_000L, new int[]{-1});
+        long p50 = metrics.getPercentileMicros(50);
+        assertTrue(p50 > 100 && p50 <= 200, "p50 of 100 µs searches should be bounded by 128 µs but was " + p50);
+        long p100 = metrics.getPercentileMicros(100);
+        assertTrue(p100 > 50_000 && p100 <= 100_000, "The slowest search should land in its own bucket but was " + p100);
+        assertEquals(50_000, metrics.getMaxMicros());
+        assertEquals(599, metrics.getMeanMicros());
+    }
+
+    @Test
+    public void emptyMetricsReportZero() {
+        assertEquals(0, metrics.getMeanMicros());
+        assertEquals(0, metrics.getPercentileMicros(99));
+        assertEquals(0.0, metrics.getSearchesPerTick());
+    }
+
+    @Test
+    public void accumulatesWork() {
+        metrics.recordWork(343, 4, 0);
+        metrics.recordWork(4096, 0, 2);
+        assertEquals(4439, metrics.getBlocksExamined());
+        assertEquals(4, metrics.getShellsWalked());
+        assertEquals(2, metrics.getSectionsScanned());
+    }
+
+    @Test
+    public void countsRejections() {
+        metrics.recordCooldownRejection();
+        metrics.recordCooldownRejection();
+        metrics.recordQueueRejection();
+        assertEquals(2, metrics.getCooldownRejections());
+        assertEquals(1, metrics.getQueueRejections());
+    }
+
+    @Test
+    public void countsChunkLoadsAvoidedAndDeferred() {
+        metrics.recordChunkLoadsAvoided(3);
+        metrics.recordChunkLoadsAvoided(2);
+        metrics.recordChunkLoaded();
+        assertEquals(5, metrics.getChunkLoadsAvoided());
+        assertEquals(1, metrics.getChunksLoaded());
+        assertTrue(metrics.summary().contains("5 chunk loads avoided"));
+    }
+
+    @Test
+    public void samplesSearchesPerTick() {
+        metrics.tick();
+        metrics.recordSearch(1_000L, new int[]{-1});
+        metrics.recordSearch(1_000L, new int[]{-1});
+        metrics.recordSearch(1_000L, new int[]{-1});
+        metrics.tick();
+        metrics.recordSearch(1_000L, new int[]{-1});
+        metrics.tick();
+        metrics.tick();
+        assertEquals(3, metrics.getMaxSearchesPerTick());
+        assertEquals(1.0, metrics.getSearchesPerTick(), 1e-9);
+    }
+}
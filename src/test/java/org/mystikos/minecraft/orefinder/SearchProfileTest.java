@@ -0,0 +1,110 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link SearchProfile}, which reads and validates the search settings.
+ */
+public class SearchProfileTest {
+
+    private static SearchProfile read(YamlConfiguration config) {
+        return SearchProfile.fromConfig(config, "search", SearchProfile.DEFAULT);
+    }
+
+    @Test
+    public void missingSectionUsesDefaults() {
+        assertSame(SearchProfile.DEFAULT, SearchProfile.fromConfig(null, "search", SearchProfile.DEFAULT));
+    }
+
+    @Test
+    public void defaultBandsMatchTheHistoricMessages() {
+        SearchProfile profile = SearchProfile.DEFAULT;
+        assertEquals(0, profile.band(1));
+        assertEquals(1, profile.band(2));
+        assertEquals(2, profile.band(5));
+        assertEquals(3, profile.band(7));
+        assertEquals(4, profile.band(14));
+        assertEquals(5, profile.band(19));
+    }
+
+    @Test
+    public void configuredBandsAreUsed() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("bands", List.of(1, 3, 5, 10, 25));
+        config.set("radius", 30);
+        SearchProfile profile = read(config);
+        assertEquals(1, profile.band(2));
+        assertEquals(4, profile.band(20));
+        assertEquals(5, profile.band(29));
+    }
+
+    @Test
+    public void bandsEndAtTheRadius() {
+        assertEquals(2, SearchProfile.DEFAULT.bandEnd(0));
+        assertEquals(15, SearchProfile.DEFAULT.bandEnd(4));
+        assertEquals(20, SearchProfile.DEFAULT.bandEnd(5));
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("radius", 10);
+        assertEquals(10, read(config).bandEnd(4), "The default bands reach beyond a smaller radius");
+    }
+
+    @Test
+    public void sphereDistanceRoundsDown() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("shape", "SPHERE");
+        SearchProfile profile = read(config);
+        assertEquals(5, profile.distance(3, 4, 0));
+        assertEquals(1, profile.distance(1, 1, 1));
+        assertEquals(4, SearchProfile.DEFAULT.distance(-4, 2, 3));
+    }
+
+    @Test
+    public void verticalRadiusIsClampedToTheReach() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("radius", 10);
+        config.set("vertical_radius", 50);
+        assertEquals(9, read(config).verticalRadius());
+    }
+
+    @Test
+    public void rejectsRadiusOutOfRange() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("radius", SearchProfile.MAX_RADIUS + 1);
+        assertThrows(IllegalArgumentException.class, () -> read(config));
+    }
+
+    @Test
+    public void rejectsUnknownShape() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("shape", "pyramid");
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> read(config));
+        assertTrue(e.getMessage().contains("pyramid"), "The error should name the bad entry: " + e.getMessage());
+    }
+
+    @Test
+    public void rejectsBandsThatAreNotIncreasing() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("bands", List.of(2, 4, 4, 8, 15));
+        assertThrows(IllegalArgumentException.class, () -> read(config));
+    }
+
+    @Test
+    public void rejectsBandsBeyondTheRadius() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("radius", 10);
+        config.set("bands", List.of(2, 4, 6, 8, 15));
+        assertThrows(IllegalArgumentException.class, () -> read(config));
+    }
+
+    @Test
+    public void rejectsNegativeBudget() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("max_blocks", -1);
+        assertThrows(IllegalArgumentException.class, () -> read(config));
+    }
+}
@@ -0,0 +1,184 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.world.WorldMock;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link SearchSessions}, which resumes a player's previous search by reading
+ * only the blocks that came into range.
+ */
+public class SearchSessionsTest {
+
+    private static final Material[] ORES = {Material.DIAMOND_ORE, Material.EMERALD_ORE};
+
+    private WorldMock world;
+    private SearchMetrics metrics;
+    private SearchSessions sessions;
+    private final AtomicLong now = new AtomicLong(0L);
+    private final UUID playerId = UUID.randomUUID();
+    private final OreLocator locator = new OreLocator();
+
+    @BeforeEach
+    public void setUp() {
+        MockBukkit.mock();
+        world = TestWorlds.stone();
+        metrics = new SearchMetrics();
+        sessions = new SearchSessions(metrics, now::get);
+        sessions.reset(SectionFilter.NONE, 4, 30_000L, 65_536L);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    private Location origin() {
+        return world.getSpawnLocation();
+    }
+
+    private void setBlock(int dx, int dy, int dz, Material material) {
+        Location loc = origin();
+        world.getBlockAt(loc.getBlockX() + dx, loc.getBlockY() + dy, loc.getBlockZ() + dz).setType(material);
+    }
+
+    private int[] search(int dx, int dy, int dz) {
+        return search(dx, dy, dz, SearchProfile.DEFAULT, null);
+    }
+
+    private int[] search(int dx, int dy, int dz, SearchProfile profile, int[] limits) {
+        Location loc = origin();
+        return sessions.search(playerId, world, loc.getBlockX() + dx, loc.getBlockY() + dy, loc.getBlockZ() + dz,
+                ORES, profile, limits);
+    }
+
+    private int[] expected(int dx, int dy, int dz) {
+        return locator.getBlockTypeDistances(origin().add(dx, dy, dz), ORES, SearchProfile.DEFAULT);
+    }
+
+    @Test
+    public void resumedSearchesMatchTheLocator() {
+        setBlock(21, 0, 0, Material.DIAMOND_ORE);
+        setBlock(-8, 3, 12, Material.EMERALD_ORE);
+        for (int[] step : List.of(new int[]{0, 0, 0}, new int[]{1, 0, 0}, new int[]{3, 1, -2}, new int[]{4, 0, 2})) {
+            assertArrayEquals(expected(step[0], step[1], step[2]), search(step[0], step[1], step[2]),
+                    "A resumed session should report what a fresh search would");
+        }
+        assertEquals(1, sessions.getStarted());
+        assertEquals(3, sessions.getResumed());
+    }
+
+    @Test
+    public void smallMoveOnlyReadsTheNewSlab() {
+        search(0, 0, 0);
+        long fullScan = metrics.getBlocksExamined();
+        search(1, 0, 0);
+        long slab = metrics.getBlocksExamined() - fullScan;
+        assertTrue(slab * 10 < fullScan, "Moving one block should read a thin slab, but read " + slab
+                + " blocks after a full read of " + fullScan);
+    }
+
+    @Test
+    public void largeMoveStartsAFreshSession() {
+        search(0, 0, 0);
+        search(10, 0, 0);
+        assertEquals(2, sessions.getStarted());
+        assertEquals(0, sessions.getResumed());
+    }
+
+    @Test
+    public void idleSessionExpires() {
+        search(0, 0, 0);
+        now.addAndGet(30_000L);
+        search(1, 0, 0);
+        assertEquals(2, sessions.getStarted());
+    }
+
+    @Test
+    public void blockChangeInsideTheBoxEndsTheSession() {
+        search(0, 0, 0);
+        setBlock(5, 0, 0, Material.DIAMOND_ORE);
+        Location loc = origin();
+        sessions.blockChanged(world, loc.getBlockX() + 5, loc.getBlockY(), loc.getBlockZ());
+        assertEquals(0, sessions.size());
+        assertArrayEquals(expected(1, 0, 0), search(1, 0, 0), "The new ore must be seen after the change");
+    }
+
+    @Test
+    public void positionCapDropsTheSession() {
+        sessions.reset(SectionFilter.NONE, 4, 30_000L, 1L);
+        setBlock(2, 0, 0, Material.DIAMOND_ORE);
+        setBlock(3, 0, 0, Material.DIAMOND_ORE);
+        assertArrayEquals(new int[]{2, OreLocator.NOT_FOUND}, search(0, 0, 0),
+                "The answer is still reported when the session is too big to keep");
+        assertEquals(0, sessions.size());
+        assertEquals(0, sessions.getPositions());
+    }
+
+    @Test
+    public void removingThePlayerEndsTheSession() {
+        search(0, 0, 0);
+        sessions.remove(playerId);
+        assertEquals(0, sessions.size());
+    }
+
+    @Test
+    public void limitsNarrowTheFirstRead() {
+        setBlock(2, 0, 0, Material.DIAMOND_ORE);
+        setBlock(0, 3, 0, Material.EMERALD_ORE);
+        assertArrayEquals(expected(0, 0, 0), search(0, 0, 0, SearchProfile.DEFAULT, new int[]{3, 4}));
+        long narrowed = metrics.getBlocksExamined();
+        sessions.remove(playerId);
+        search(0, 0, 0);
+        long full = metrics.getBlocksExamined() - narrowed;
+        assertTrue(narrowed * 10 < full, "Limits of 3 and 4 should read a small cube, but read " + narrowed
+                + " blocks against " + full);
+    }
+
+    @Test
+    public void outdatedLimitsWidenTheRead() {
+        setBlock(10, 0, 0, Material.DIAMOND_ORE);
+        assertArrayEquals(expected(0, 0, 0), search(0, 0, 0, SearchProfile.DEFAULT, new int[]{3, 3}),
+                "Targets missing within their limits are searched for in the whole box");
+        assertArrayEquals(expected(1, 0, 0), search(1, 0, 0), "The session covers the whole box afterwards");
+    }
+
+    @Test
+    public void searchOverTheBudgetGivesUp() {
+        search(0, 0, 0);
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("max_blocks", 1000);
+        SearchProfile budgeted = SearchProfile.fromConfig(config, "search", SearchProfile.DEFAULT);
+        long before = metrics.getBlocksExamined();
+        assertNull(search(10, 0, 0, budgeted, null), "A search over its budget reads nothing and gives up");
+        assertEquals(before, metrics.getBlocksExamined());
+        assertEquals(0, sessions.size(), "The session it would have replaced has ended");
+    }
+
+    @Test
+    public void unloadedChunksEndTheSession() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("shape", "sphere");
+        SearchProfile sphere = SearchProfile.fromConfig(config, "search", SearchProfile.DEFAULT);
+        world.unloadChunk(-2, -2);
+        assertEquals(0, OreLocator.unloadedChunks(world, 0, 0, sphere).length,
+                "The unloaded chunk only lies in a corner of the search box");
+        assertNull(sessions.search(playerId, world, 0, 20, 0, ORES, sphere, null),
+                "The session would count the unloaded chunk as read");
+        assertEquals(0, sessions.size());
+    }
+}
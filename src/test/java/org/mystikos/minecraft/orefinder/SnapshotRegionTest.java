@@ -0,0 +1,80 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.Material;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.world.WorldMock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Unit tests for {@link SnapshotRegion}, which reads block types from captured chunk snapshots.
+ */
+public class SnapshotRegionTest {
+
+    private WorldMock world;
+
+    @BeforeEach
+    public void setUp() {
+        MockBukkit.mock();
+        world = TestWorlds.stone();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    @Test
+    public void readsBlockTypesFromCapturedChunks() {
+        world.getBlockAt(-3, 10, 5).setType(Material.DIAMOND_ORE);
+        SnapshotRegion region = SnapshotRegion.capture(world, 0, 0, 8);
+        assertEquals(Material.DIAMOND_ORE, region.getType(-3, 10, 5));
+        assertEquals(Material.STONE, region.getType(2, 10, -2));
+    }
+
+    @Test
+    public void doesNotSeeChangesMadeAfterCapture() {
+        SnapshotRegion region = SnapshotRegion.capture(world, 0, 0, 8);
+        world.getBlockAt(1, 10, 1).setType(Material.DIAMOND_ORE);
+        assertEquals(Material.STONE, region.getType(1, 10, 1),
+                "A snapshot is an immutable copy of the chunk");
+    }
+
+    @Test
+    public void returnsNullOutsideCapturedChunks() {
+        SnapshotRegion region = SnapshotRegion.capture(world, 0, 0, 8);
+        assertNull(region.getType(40, 10, 0), "Positions outside the captured chunks have no type");
+    }
+
+    @Test
+    public void returnsNullOutsideWorldHeight() {
+        SnapshotRegion region = SnapshotRegion.capture(world, 0, 0, 8);
+        assertNull(region.getType(0, world.getMaxHeight(), 0));
+        assertNull(region.getType(0, world.getMinHeight() - 1, 0));
+    }
+
+    @Test
+    public void leavesUnloadedChunksOut() {
+        int x = (TestWorlds.LOADED_CHUNKS + 1) * 16;
+        SnapshotRegion region = SnapshotRegion.capture(world, x, 0, 8);
+        assertNull(region.getChunkSnapshot(x >> 4, 0));
+        assertNull(region.getType(x, 10, 0), "Unloaded chunks read as absent");
+        assertEquals(Material.STONE, region.getType(x - 1, 10, 0));
+        assertFalse(world.isChunkLoaded(x >> 4, 0), "Capturing must not load the chunk");
+    }
+
+    @Test
+    public void leavesSkippedChunksOut() {
+        long skipped = (long) -1 << 32 | -1 & 0xFFFFFFFFL;
+        SnapshotRegion region = SnapshotRegion.capture(world, 0, 0, 8, new long[]{skipped});
+        assertNull(region.getChunkSnapshot(-1, -1), "The skipped chunk is not captured");
+        assertNull(region.getType(-3, 10, -3));
+        assertEquals(Material.STONE, region.getType(-3, 10, 3));
+        assertEquals(Material.STONE, region.getType(3, 10, -3));
+    }
+}
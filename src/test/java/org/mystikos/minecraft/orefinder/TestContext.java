@@ -0,0 +1,53 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.logging.Logger;
+
+/**
+ * A minimal {@link OrefinderContext} for tests that exercise plugin components without
+ * loading the whole plugin. Main-thread tasks run immediately on the calling thread, and the
+ * data folder is a fresh temporary directory.
+ */
+class TestContext implements OrefinderContext {
+
+    private final YamlConfiguration config;
+    private final Logger logger;
+    private File dataFolder;
+
+    TestContext(YamlConfiguration config, String loggerName) {
+        this.config = config;
+        this.logger = Logger.getLogger(loggerName);
+    }
+
+    @Override
+    public YamlConfiguration getConfig() {
+        return config;
+    }
+
+    @Override
+    public Logger getLogger() {
+        return logger;
+    }
+
+    @Override
+    public File getDataFolder() {
+        if (dataFolder == null) {
+            try {
+                dataFolder = Files.createTempDirectory("orefinder-test").toFile();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return dataFolder;
+    }
+
+    @Override
+    public void runOnMainThread(Runnable task) {
+        task.run();
+    }
+}
@@ -0,0 +1,33 @@
+package org.mystikos.minecraft.orefinder;
+
+import org.bukkit.Material;
+import org.mockbukkit.mockbukkit.world.WorldMock;
+
+/**
+ * Mock worlds for tests that search the terrain around the spawn point. Searches never load
+ * chunks themselves, so the chunks around spawn are loaded up front.
+ */
+final class TestWorlds {
+
+    /**
+     * Chunks up to this many chunks away from spawn along either axis are loaded.
+     */
+    static final int LOADED_CHUNKS = 10;
+
+    private TestWorlds() {
+    }
+
+    /**
+     * Creates a stone world with grass at height 50 and the chunks around spawn loaded. Requires
+     * {@code MockBukkit.mock()} to have been called.
+     */
+    static WorldMock stone() {
+        WorldMock world = new WorldMock(Material.STONE, 100, 50);
+        for (int cx = -LOADED_CHUNKS; cx <= LOADED_CHUNKS; cx++) {
+            for (int cz = -LOADED_CHUNKS; cz <= LOADED_CHUNKS; cz++) {
+                world.loadChunk(cx, cz);
+            }
+        }
+        return world;
+    }
+}